@@ -0,0 +1,16 @@
+-- tj_course库的增量表结构变更，按时间顺序执行
+
+-- 课程事件发件箱，与课程数据在同一个事务中写入，由投递任务按id顺序发送到mq，broker确认后才标记为已投递
+CREATE TABLE IF NOT EXISTS `course_event_outbox` (
+    `id` bigint NOT NULL AUTO_INCREMENT COMMENT '自增id，决定投递顺序',
+    `exchange` varchar(64) NOT NULL COMMENT '交换机',
+    `routing_key` varchar(64) NOT NULL COMMENT '路由key',
+    `biz_id` bigint NOT NULL COMMENT '业务id，即消息内容，例如课程id',
+    `status` tinyint NOT NULL DEFAULT '0' COMMENT '状态，0：待投递，1：已投递',
+    `retry_times` int NOT NULL DEFAULT '0' COMMENT '投递失败次数',
+    `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    KEY `idx_status_id` (`status`, `id`),
+    KEY `idx_status_update_time` (`status`, `update_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='课程事件发件箱';
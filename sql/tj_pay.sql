@@ -0,0 +1,16 @@
+-- tj_pay库的增量表结构变更，按时间顺序执行
+
+-- 支付事件发件箱，与支付单状态在同一个事务中写入，由投递任务按id顺序发送到mq，broker确认后才标记为已投递
+CREATE TABLE IF NOT EXISTS `pay_event_outbox` (
+    `id` bigint NOT NULL AUTO_INCREMENT COMMENT '自增id，决定投递顺序',
+    `exchange` varchar(64) NOT NULL COMMENT '交换机',
+    `routing_key` varchar(64) NOT NULL COMMENT '路由key',
+    `pay_order_no` bigint NOT NULL COMMENT '支付单号',
+    `status` tinyint NOT NULL DEFAULT '0' COMMENT '状态，0：待投递，1：已投递',
+    `retry_times` int NOT NULL DEFAULT '0' COMMENT '投递失败次数',
+    `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    KEY `idx_status_id` (`status`, `id`),
+    KEY `idx_status_update_time` (`status`, `update_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='支付事件发件箱';
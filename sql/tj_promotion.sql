@@ -0,0 +1,6 @@
+-- tj_promotion库的增量表结构变更，按时间顺序执行
+
+-- 兑换码序列号区间，创建兑换码生成任务时写入，任务信息丢失后按该区间恢复，不依赖已经写入的兑换码
+ALTER TABLE `coupon`
+    ADD COLUMN `code_begin` bigint NULL DEFAULT NULL COMMENT '兑换码的最小序列号' AFTER `user_limit`,
+    ADD COLUMN `code_end` bigint NULL DEFAULT NULL COMMENT '兑换码的最大序列号' AFTER `code_begin`;
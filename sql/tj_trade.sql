@@ -0,0 +1,22 @@
+-- tj_trade库的增量表结构变更，按时间顺序执行
+
+-- 订单使用的全部优惠券id，逗号分隔，支付成功后据此通知促销服务核销
+ALTER TABLE `order`
+    ADD COLUMN `coupon_ids` varchar(255) NULL DEFAULT NULL COMMENT '订单使用的全部优惠券id，逗号分隔' AFTER `coupon_id`;
+
+-- 课程和学员的报名统计，随订单明细状态增量更新。历史数据不需要预先导入，读取或累加时发现没有记录会从order_detail汇总补齐
+CREATE TABLE IF NOT EXISTS `course_enroll_stat` (
+    `course_id` bigint NOT NULL COMMENT '课程id',
+    `enroll_num` int NOT NULL DEFAULT '0' COMMENT '报名人数',
+    `refund_num` int NOT NULL DEFAULT '0' COMMENT '退款人数',
+    `real_pay_amount` int NOT NULL DEFAULT '0' COMMENT '实付总金额，单位分',
+    `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`course_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='课程报名统计';
+
+CREATE TABLE IF NOT EXISTS `student_enroll_stat` (
+    `user_id` bigint NOT NULL COMMENT '学员id',
+    `enroll_num` int NOT NULL DEFAULT '0' COMMENT '报名课程数',
+    `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='学员报名统计';
@@ -0,0 +1,61 @@
+package com.tianji.api.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.dto.course.CourseSimpleInfoDTO;
+import com.tianji.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@RequiredArgsConstructor
+public class CourseCache {
+
+    private final Cache<Long, CourseSimpleInfoDTO> courseCaches;
+
+    private final CourseClient courseClient;
+
+    public CourseSimpleInfoDTO getCourse(Long id) {
+        return getCourseMap(CollUtils.singletonList(id)).get(id);
+    }
+
+    /**
+     * 批量查询课程简单信息，缓存未命中的课程合并成一次远程调用，不存在的课程不会出现在结果中
+     */
+    public Map<Long, CourseSimpleInfoDTO> getCourseMap(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return CollUtils.emptyMap();
+        }
+        return courseCaches.getAll(new HashSet<>(ids), this::loadCourses);
+    }
+
+    public List<CourseSimpleInfoDTO> queryCourseByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return CollUtils.emptyList();
+        }
+        Map<Long, CourseSimpleInfoDTO> map = getCourseMap(ids);
+        return ids.stream()
+                .map(map::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 课程上下架、修改后清理缓存
+     */
+    public void invalidate(Long id) {
+        courseCaches.invalidate(id);
+    }
+
+    private Map<Long, CourseSimpleInfoDTO> loadCourses(Set<? extends Long> ids) {
+        // 1.从CourseClient查询
+        List<CourseSimpleInfoDTO> list = courseClient.getSimpleInfoList(new ArrayList<>(ids));
+        if (list == null || list.isEmpty()) {
+            return CollUtils.emptyMap();
+        }
+        // 2.转换数据
+        return list.stream().collect(Collectors.toMap(CourseSimpleInfoDTO::getId, Function.identity()));
+    }
+}
@@ -46,6 +46,16 @@ public interface CourseClient {
     @GetMapping("/course/{id}/searchInfo")
     CourseSearchDTO getSearchInfo(@PathVariable("id") Long id);
 
+    /**
+     * 按id游标分批查询已上架课程的索引库数据
+     *
+     * @param lastId 上一批最后一个课程id，第一批传0
+     * @param size 每批数量，最多1000
+     * @return 索引库需要的数据，按id升序
+     */
+    @GetMapping("/course/searchInfo/list")
+    List<CourseSearchDTO> querySearchInfoAfter(@RequestParam("lastId") Long lastId, @RequestParam("size") int size);
+
     /**
      * 根据课程id集合查询课程简单信息
      * @param ids id集合
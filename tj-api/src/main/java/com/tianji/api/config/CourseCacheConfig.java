@@ -0,0 +1,31 @@
+package com.tianji.api.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.api.cache.CourseCache;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.dto.course.CourseSimpleInfoDTO;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Duration;
+
+public class CourseCacheConfig {
+    /**
+     * 课程简单信息的caffeine缓存
+     */
+    @Bean
+    public Cache<Long, CourseSimpleInfoDTO> courseCaches(){
+        return Caffeine.newBuilder()
+                .initialCapacity(1)
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofMinutes(5))
+                .build();
+    }
+    /**
+     * 课程简单信息的缓存工具
+     */
+    @Bean
+    public CourseCache courseCache(Cache<Long, CourseSimpleInfoDTO> courseCaches, CourseClient courseClient){
+        return new CourseCache(courseCaches, courseClient);
+    }
+}
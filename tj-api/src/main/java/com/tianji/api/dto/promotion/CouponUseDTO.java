@@ -0,0 +1,28 @@
+package com.tianji.api.dto.promotion;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 订单支付成功后核销优惠券的消息
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponUseDTO {
+    /**
+     * 订单id，同一个订单只核销一次
+     */
+    private Long orderId;
+    /**
+     * 下单用户id
+     */
+    private Long userId;
+    /**
+     * 订单使用的优惠券id
+     */
+    private List<Long> couponIds;
+}
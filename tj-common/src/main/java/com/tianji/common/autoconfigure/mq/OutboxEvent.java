@@ -0,0 +1,22 @@
+package com.tianji.common.autoconfigure.mq;
+
+/**
+ * 发件箱中的一条事件，与业务数据在同一个事务中写入，由{@link OutboxRelay}按id顺序发送到mq
+ */
+public interface OutboxEvent {
+
+    /**
+     * 自增id，决定投递顺序
+     */
+    Long getId();
+
+    /**
+     * 交换机
+     */
+    String getExchange();
+
+    /**
+     * 路由key
+     */
+    String getRoutingKey();
+}
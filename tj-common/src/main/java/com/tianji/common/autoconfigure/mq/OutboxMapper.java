@@ -0,0 +1,34 @@
+package com.tianji.common.autoconfigure.mq;
+
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 发件箱表的读写操作，由各服务的发件箱Mapper继承并给出具体的sql
+ *
+ * @param <E> 发件箱事件类型
+ */
+public interface OutboxMapper<E extends OutboxEvent> {
+
+    /**
+     * 按id顺序查询待投递的事件
+     */
+    List<E> queryPending(@Param("limit") int limit);
+
+    /**
+     * 批量标记为已投递
+     */
+    int markSent(@Param("ids") List<Long> ids);
+
+    /**
+     * 投递失败次数+1
+     */
+    int incrRetryTimes(@Param("id") Long id);
+
+    /**
+     * 删除指定时间之前已投递的事件，每次最多删除limit条
+     */
+    int deleteSentBefore(@Param("time") LocalDateTime time, @Param("limit") int limit);
+}
@@ -0,0 +1,132 @@
+package com.tianji.common.autoconfigure.mq;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.TransactionUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * 发件箱事件的投递器
+ * 事件与业务数据在同一个事务中写入发件箱，事务提交后异步触发投递，定时任务兜底；
+ * 同一时间只有一个节点在投递，按id顺序逐条发送并等待broker确认，遇到失败立即停止，
+ * 保证后面的事件不会先于失败的事件到达，也不会把broker没有收到的事件标记为已投递
+ *
+ * @param <E> 发件箱事件类型
+ */
+@Slf4j
+public class OutboxRelay<E extends OutboxEvent> {
+
+    // 每次从发件箱中取出的事件数量
+    private static final int RELAY_BATCH_SIZE = 100;
+    // 已投递事件的保留天数
+    private static final int SENT_RETAIN_DAYS = 7;
+    // 每次清理的事件数量
+    private static final int CLEAN_BATCH_SIZE = 1000;
+    // 等待broker确认的超时时间
+    private static final Duration CONFIRM_TIMEOUT = Duration.ofSeconds(3);
+
+    private final String lockName;
+    private final OutboxMapper<E> outboxMapper;
+    private final Function<List<E>, Map<Long, ?>> messageConverter;
+    private final RabbitMqHelper rabbitMqHelper;
+    private final RedissonClient redissonClient;
+    private final Executor executor;
+
+    /**
+     * @param lockName 投递锁的名称，每个发件箱一把锁
+     * @param outboxMapper 发件箱表的Mapper
+     * @param messageConverter 把一批事件转换为消息内容，key为事件id，没有消息的事件视为无需投递，直接标记为已投递
+     * @param rabbitMqHelper mq工具
+     * @param redissonClient 用于获取投递锁
+     * @param executor 事务提交后执行投递的线程池
+     */
+    public OutboxRelay(String lockName, OutboxMapper<E> outboxMapper, Function<List<E>, Map<Long, ?>> messageConverter,
+                       RabbitMqHelper rabbitMqHelper, RedissonClient redissonClient, Executor executor) {
+        this.lockName = lockName;
+        this.outboxMapper = outboxMapper;
+        this.messageConverter = messageConverter;
+        this.rabbitMqHelper = rabbitMqHelper;
+        this.redissonClient = redissonClient;
+        this.executor = executor;
+    }
+
+    /**
+     * 事务提交后异步触发一次投递，不等待定时任务，没有事务时立即触发
+     */
+    public void relayAfterCommit() {
+        TransactionUtils.afterCommit(() -> executor.execute(this::relay));
+    }
+
+    /**
+     * 按id顺序投递待发送的事件
+     */
+    public void relay() {
+        // 1.尝试获取投递锁，获取失败说明其它线程或节点正在投递，直接结束
+        RLock lock = redissonClient.getLock(lockName);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            while (true) {
+                // 2.按id顺序查询待投递的事件
+                List<E> events = outboxMapper.queryPending(RELAY_BATCH_SIZE);
+                if (CollUtils.isEmpty(events)) {
+                    return;
+                }
+                // 3.转换为消息内容
+                Map<Long, ?> messages = messageConverter.apply(events);
+                // 4.逐条投递并等待broker确认，拒绝、无法路由或超时都算失败，遇到失败立即停止
+                List<Long> sentIds = new ArrayList<>(events.size());
+                boolean failed = false;
+                for (E event : events) {
+                    Object message = messages.get(event.getId());
+                    if (message == null) {
+                        log.error("发件箱事件没有对应的消息内容，跳过投递，lock：{}，id：{}", lockName, event.getId());
+                        sentIds.add(event.getId());
+                        continue;
+                    }
+                    try {
+                        rabbitMqHelper.sendAndConfirm(
+                                event.getExchange(), event.getRoutingKey(), message, CONFIRM_TIMEOUT);
+                        sentIds.add(event.getId());
+                    } catch (Exception e) {
+                        log.error("发件箱事件投递失败，lock：{}，id：{}，routingKey：{}，message：{}",
+                                lockName, event.getId(), event.getRoutingKey(), message, e);
+                        outboxMapper.incrRetryTimes(event.getId());
+                        failed = true;
+                        break;
+                    }
+                }
+                // 5.只把broker已确认的事件批量标记为已投递
+                if (CollUtils.isNotEmpty(sentIds)) {
+                    outboxMapper.markSent(sentIds);
+                }
+                if (failed || events.size() < RELAY_BATCH_SIZE) {
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清理已投递的历史事件
+     */
+    public void cleanSentEvents() {
+        LocalDateTime time = LocalDateTime.now().minusDays(SENT_RETAIN_DAYS);
+        int deleted;
+        do {
+            deleted = outboxMapper.deleteSentBefore(time, CLEAN_BATCH_SIZE);
+        } while (deleted >= CLEAN_BATCH_SIZE);
+    }
+}
@@ -3,6 +3,7 @@ package com.tianji.common.autoconfigure.mq;
 import cn.hutool.core.lang.UUID;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
@@ -10,7 +11,10 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.tianji.common.constants.Constant.REQUEST_ID_HEADER;
 
@@ -54,6 +58,36 @@ public class RabbitMqHelper {
         rabbitTemplate.convertAndSend(exchange, routingKey, t, processor, correlationData);
     }
 
+    /**
+     * 根据exchange和routingKey发送消息，并同步等待broker的确认结果
+     * broker拒绝、消息无法路由或者等待超时都会抛出异常，交给调用者重试，需要开启publisher-confirm-type: correlated
+     */
+    public <T> void sendAndConfirm(String exchange, String routingKey, T t, Duration timeout) {
+        log.debug("准备发送消息并等待确认，exchange：{}， RoutingKey：{}， message：{}", exchange, routingKey, t);
+        // 1.设置消息标示，用于消息确认
+        String id = UUID.randomUUID().toString(true);
+        CorrelationData correlationData = new CorrelationData(id);
+        // 2.发送消息，同时设置消息id
+        rabbitTemplate.convertAndSend(exchange, routingKey, t, processor, correlationData);
+        // 3.等待broker确认
+        CorrelationData.Confirm confirm;
+        try {
+            confirm = correlationData.getFuture().get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmqpException("等待消息确认被中断，id：" + id, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new AmqpException("等待消息确认失败，id：" + id, e);
+        }
+        // 4.broker拒绝或者消息没有路由到队列，都算发送失败
+        if (!confirm.isAck()) {
+            throw new AmqpException("消息被broker拒绝，id：" + id + "，原因：" + confirm.getReason());
+        }
+        if (correlationData.getReturned() != null) {
+            throw new AmqpException("消息没有路由到队列，id：" + id);
+        }
+    }
+
     /**
      * 根据exchange和routingKey发送消息，并且可以设置延迟时间
      */
@@ -3,10 +3,17 @@ package com.tianji.common.autoconfigure.redisson;
 import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.util.StrUtil;
 import com.tianji.common.autoconfigure.redisson.aspect.LockAspect;
+import com.tianji.common.autoconfigure.redisson.executor.LockExecutor;
+import com.tianji.common.autoconfigure.redisson.executor.LockMetrics;
+import com.tianji.common.autoconfigure.redisson.executor.LockNameResolver;
+import com.tianji.common.autoconfigure.redisson.executor.MicrometerLockMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
@@ -28,8 +35,21 @@ public class RedissonConfig {
 
     @Bean
     @ConditionalOnMissingBean
-    public LockAspect lockAspect(RedissonClient redissonClient){
-        return new LockAspect(redissonClient);
+    public LockMetrics lockMetrics(ObjectProvider<MeterRegistry> meterRegistry){
+        // 没有注册中心时使用全局注册中心，引入actuator后会自动把指标导出
+        return new MicrometerLockMetrics(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public LockExecutor lockExecutor(LockMetrics lockMetrics){
+        return new LockExecutor(new LockNameResolver(), lockMetrics);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public LockAspect lockAspect(RedissonClient redissonClient, LockExecutor lockExecutor){
+        return new LockAspect(redissonClient, lockExecutor);
     }
 
     @Bean
@@ -50,4 +50,10 @@ public @interface Lock {
      * 锁策略，包括5种，默认策略是 不断尝试获取锁，直到成功或超时，超时后抛出异常
      */
     LockStrategy lockStrategy() default LockStrategy.FAIL_AFTER_RETRY_TIMEOUT;
+
+    /**
+     * 是否先在本地排队，开启后同一个JVM内的线程先竞争锁名称对应的本地锁，只有本地的胜出者才去竞争分布式锁，
+     * 适合同一实例内并发较高的锁，读锁不生效。注意总的等待时长最多为 2 * waitTime
+     */
+    boolean localFirst() default false;
 }
@@ -12,6 +12,11 @@ public enum LockStrategy {
         public boolean tryLock(RLock lock, Lock properties) throws InterruptedException {
             return lock.tryLock(0, properties.leaseTime(), properties.timeUnit());
         }
+
+        @Override
+        public boolean tryLocalLock(java.util.concurrent.locks.Lock lock, Lock properties) {
+            return lock.tryLock();
+        }
     },
     /**
      * 不重试，直接结束，抛出异常
@@ -25,6 +30,14 @@ public enum LockStrategy {
             }
             return true;
         }
+
+        @Override
+        public boolean tryLocalLock(java.util.concurrent.locks.Lock lock, Lock properties) {
+            if (!lock.tryLock()) {
+                throw new RuntimeException("请求太频繁");
+            }
+            return true;
+        }
     },
     /**
      * 重试，直到超时后，直接结束
@@ -34,6 +47,11 @@ public enum LockStrategy {
         public boolean tryLock(RLock lock, Lock properties) throws InterruptedException {
             return lock.tryLock(properties.waitTime(), properties.leaseTime(), properties.timeUnit());
         }
+
+        @Override
+        public boolean tryLocalLock(java.util.concurrent.locks.Lock lock, Lock properties) throws InterruptedException {
+            return lock.tryLock(properties.waitTime(), properties.timeUnit());
+        }
     },
     /**
      * 重试，直到超时后，抛出异常
@@ -47,6 +65,14 @@ public enum LockStrategy {
             }
             return true;
         }
+
+        @Override
+        public boolean tryLocalLock(java.util.concurrent.locks.Lock lock, Lock properties) throws InterruptedException {
+            if (!lock.tryLock(properties.waitTime(), properties.timeUnit())) {
+                throw new RuntimeException("请求超时");
+            }
+            return true;
+        }
     },
     /**
      * 不停重试，直到成功为止
@@ -57,8 +83,19 @@ public enum LockStrategy {
             lock.lock(properties.leaseTime(), properties.timeUnit());
             return true;
         }
+
+        @Override
+        public boolean tryLocalLock(java.util.concurrent.locks.Lock lock, Lock properties) throws InterruptedException {
+            lock.lockInterruptibly();
+            return true;
+        }
     },
     ;
 
     public abstract boolean tryLock(RLock lock, Lock properties) throws InterruptedException;
+
+    /**
+     * 获取本地锁，等待和失败的处理方式与获取分布式锁一致
+     */
+    public abstract boolean tryLocalLock(java.util.concurrent.locks.Lock lock, Lock properties) throws InterruptedException;
 }
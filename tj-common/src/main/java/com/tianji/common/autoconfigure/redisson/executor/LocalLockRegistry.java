@@ -0,0 +1,55 @@
+package com.tianji.common.autoconfigure.redisson.executor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 本地锁注册表，每个锁名称对应一把独立的ReentrantLock
+ * 同一个JVM内竞争同一把分布式锁的线程先在本地排队，只有本地的胜出者才去竞争Redisson锁，
+ * 从而把Redis上的加锁请求和pub/sub唤醒减少到每个实例一个
+ * 锁按引用计数管理，最后一个使用者释放后从注册表中移除，不同名称的锁之间不会互相阻塞
+ */
+public class LocalLockRegistry {
+
+    private final ConcurrentHashMap<String, LocalLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * 获取锁名称对应的本地锁并增加引用计数，使用完毕后必须调用{@link #release(LocalLock)}
+     * @param name 解析后的锁名称
+     * @return 本地锁
+     */
+    public LocalLock acquire(String name) {
+        return locks.compute(name, (k, lock) -> {
+            if (lock == null) {
+                lock = new LocalLock(k);
+            }
+            lock.refs++;
+            return lock;
+        });
+    }
+
+    /**
+     * 减少本地锁的引用计数，计数归零时从注册表中移除
+     * @param lock 本地锁，调用前应当已经释放
+     */
+    public void release(LocalLock lock) {
+        locks.computeIfPresent(lock.name, (k, current) -> {
+            if (current != lock) {
+                return current;
+            }
+            return --current.refs == 0 ? null : current;
+        });
+    }
+
+    public static class LocalLock extends ReentrantLock {
+        private final String name;
+        /**
+         * 引用计数，只在注册表的compute中修改
+         */
+        private int refs;
+
+        private LocalLock(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.tianji.common.autoconfigure.redisson.executor;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.redisson.api.RLock;
+
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+/**
+ * 分布式锁的执行模板，负责解析锁名称、获取锁、执行业务、释放锁，并记录锁的等待、持有、竞争和失败指标
+ * 各个锁切面只需要提供锁对象的创建方式和获取锁的策略
+ */
+public class LockExecutor {
+
+    private final LockNameResolver nameResolver;
+    private final LockMetrics metrics;
+    private final LocalLockRegistry localLocks = new LocalLockRegistry();
+
+    public LockExecutor(LockNameResolver nameResolver, LockMetrics metrics) {
+        this.nameResolver = nameResolver;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 加锁执行切入点
+     * @param pjp 切入点
+     * @param name 锁名称模板，支持SPEL表达式
+     * @param lockFactory 根据锁名称创建锁对象
+     * @param acquirer 获取锁的策略
+     * @param autoUnlock 方法结束后是否释放锁
+     * @return 切入点的返回值，获取锁失败时返回null
+     */
+    public Object execute(ProceedingJoinPoint pjp, String name, Function<String, RLock> lockFactory,
+                          LockAcquirer acquirer, boolean autoUnlock) throws Throwable {
+        return execute(pjp, name, lockFactory, null, acquirer, autoUnlock);
+    }
+
+    /**
+     * 加锁执行切入点，可以在分布式锁之前增加一层本地锁
+     * @param pjp 切入点
+     * @param name 锁名称模板，支持SPEL表达式
+     * @param lockFactory 根据锁名称创建锁对象
+     * @param localAcquirer 获取本地锁的策略，为null时不使用本地锁
+     * @param acquirer 获取锁的策略
+     * @param autoUnlock 方法结束后是否释放锁，本地锁总是在方法结束后释放
+     * @return 切入点的返回值，获取锁失败时返回null
+     */
+    public Object execute(ProceedingJoinPoint pjp, String name, Function<String, RLock> lockFactory,
+                          LocalLockAcquirer localAcquirer, LockAcquirer acquirer, boolean autoUnlock) throws Throwable {
+        // 1.基于SPEL表达式解析锁的 name
+        String lockName = nameResolver.resolve(name, pjp);
+        long begin = System.nanoTime();
+        // 2.先在本地排队，本地的胜出者才去竞争分布式锁
+        LocalLockRegistry.LocalLock localLock = null;
+        if (localAcquirer != null) {
+            LocalLockRegistry.LocalLock candidate = localLocks.acquire(lockName);
+            boolean locked = false;
+            try {
+                locked = tryAcquire(name, begin, () -> localAcquirer.tryLock(candidate));
+            } finally {
+                if (!locked) {
+                    localLocks.release(candidate);
+                }
+            }
+            if (!locked) {
+                return null;
+            }
+            localLock = candidate;
+        }
+        try {
+            // 3.得到锁对象
+            RLock lock = lockFactory.apply(lockName);
+            // 4.尝试获取锁
+            if (!tryAcquire(name, begin, () -> acquirer.tryLock(lock))) {
+                // 获取锁失败，结束
+                return null;
+            }
+            long acquired = System.nanoTime();
+            metrics.recordAcquire(name, acquired - begin, true);
+            try {
+                // 5.执行被代理方法
+                return pjp.proceed();
+            } finally {
+                // 6.释放锁
+                if (autoUnlock) {
+                    lock.unlock();
+                }
+                metrics.recordHold(name, System.nanoTime() - acquired);
+            }
+        } finally {
+            if (localLock != null) {
+                localLock.unlock();
+                localLocks.release(localLock);
+            }
+        }
+    }
+
+    private boolean tryAcquire(String name, long begin, Acquisition acquisition) throws InterruptedException {
+        boolean success;
+        try {
+            success = acquisition.acquire();
+        } catch (InterruptedException | RuntimeException e) {
+            metrics.recordAcquire(name, System.nanoTime() - begin, false);
+            throw e;
+        }
+        // 成功只在分布式锁获取之后记录一次，本地锁的等待时长计入总的等待时长
+        if (!success) {
+            metrics.recordAcquire(name, System.nanoTime() - begin, false);
+        }
+        return success;
+    }
+
+    /**
+     * 获取锁的策略
+     */
+    @FunctionalInterface
+    public interface LockAcquirer {
+        boolean tryLock(RLock lock) throws InterruptedException;
+    }
+
+    /**
+     * 获取本地锁的策略
+     */
+    @FunctionalInterface
+    public interface LocalLockAcquirer {
+        boolean tryLock(Lock lock) throws InterruptedException;
+    }
+
+    @FunctionalInterface
+    private interface Acquisition {
+        boolean acquire() throws InterruptedException;
+    }
+}
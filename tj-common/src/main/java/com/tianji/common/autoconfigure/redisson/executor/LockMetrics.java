@@ -0,0 +1,32 @@
+package com.tianji.common.autoconfigure.redisson.executor;
+
+/**
+ * 分布式锁的指标记录，name为锁名称模板（解析SPEL之前），保证指标的维度数量有限
+ */
+public interface LockMetrics {
+
+    LockMetrics NOOP = new LockMetrics() {
+        @Override
+        public void recordAcquire(String name, long waitNanos, boolean success) {
+        }
+
+        @Override
+        public void recordHold(String name, long holdNanos) {
+        }
+    };
+
+    /**
+     * 记录一次获取锁
+     * @param name 锁名称模板
+     * @param waitNanos 获取锁的等待时长
+     * @param success 是否获取成功
+     */
+    void recordAcquire(String name, long waitNanos, boolean success);
+
+    /**
+     * 记录一次持有锁
+     * @param name 锁名称模板
+     * @param holdNanos 持有锁的时长
+     */
+    void recordHold(String name, long holdNanos);
+}
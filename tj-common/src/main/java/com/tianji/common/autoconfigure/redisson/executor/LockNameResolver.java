@@ -0,0 +1,185 @@
+package com.tianji.common.autoconfigure.redisson.executor;
+
+import com.tianji.common.utils.StringUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.util.ObjectUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 锁名称解析器，支持SPEL表达式
+ * 每个切入点的锁名称模板只编译一次：解析后的Expression、目标方法、参数名称都会被缓存，
+ * 形如 #{userId} 这种直接引用方法参数的表达式，直接按下标取参数值，不走SPEL
+ */
+public class LockNameResolver {
+    /**
+     * SPEL的正则规则
+     */
+    private static final Pattern pattern = Pattern.compile("\\#\\{([^\\}]*)\\}");
+    /**
+     * 简单参数名的正则规则
+     */
+    private static final Pattern SIMPLE_NAME = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+    /**
+     * 方法参数解析器
+     */
+    private static final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    private final ExpressionParser parser = new SpelExpressionParser();
+    private final Map<CacheKey, CompiledName> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 解析锁名称
+     * @param name 原始锁名称
+     * @param pjp 切入点
+     * @return 解析后的锁名称
+     */
+    public String resolve(String name, ProceedingJoinPoint pjp) {
+        // 1.判断是否存在spel表达式
+        if (StringUtils.isBlank(name) || !name.contains("#")) {
+            // 不存在，直接返回
+            return name;
+        }
+        // 2.获取编译后的锁名称模板
+        MethodSignature signature = (MethodSignature) pjp.getSignature();
+        Class<?> targetClass = pjp.getTarget().getClass();
+        CompiledName compiled = cache.computeIfAbsent(
+                new CacheKey(signature.getMethod(), targetClass, name), this::compile);
+        // 3.用参数值渲染锁名称
+        return compiled.render(pjp.getArgs());
+    }
+
+    private CompiledName compile(CacheKey key) {
+        // 1.解析目标方法和参数名称
+        Method method = tryGetDeclaredMethod(key.targetClass, key.method.getName(), key.method.getParameterTypes());
+        if (method == null) {
+            method = key.method;
+        }
+        String[] paramNames = parameterNameDiscoverer.getParameterNames(method);
+        // 2.拆分模板，字面量原样保留，表达式编译后保留
+        List<Object> parts = new ArrayList<>();
+        Matcher matcher = pattern.matcher(key.name);
+        int last = 0;
+        while (matcher.find()) {
+            if (matcher.start() > last) {
+                parts.add(key.name.substring(last, matcher.start()));
+            }
+            String group = matcher.group(1);
+            int index = indexOf(paramNames, group);
+            if (index >= 0) {
+                // 2.1.简单参数名，直接按下标取值
+                parts.add(index);
+            } else {
+                // 2.2.以 T( 开头的属于解析静态方法，不走上下文
+                parts.add(parser.parseExpression(group.startsWith("T(") ? group : "#" + group));
+            }
+            last = matcher.end();
+        }
+        if (last < key.name.length()) {
+            parts.add(key.name.substring(last));
+        }
+        return new CompiledName(method, parts.toArray());
+    }
+
+    private static int indexOf(String[] paramNames, String group) {
+        if (paramNames == null || !SIMPLE_NAME.matcher(group).matches()) {
+            return -1;
+        }
+        for (int i = 0; i < paramNames.length; i++) {
+            if (paramNames[i].equals(group)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Method tryGetDeclaredMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        try {
+            // 反射获取方法
+            return clazz.getDeclaredMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            Class<?> superClass = clazz.getSuperclass();
+            if (superClass != null) {
+                // 尝试从父类寻找
+                return tryGetDeclaredMethod(superClass, name, parameterTypes);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 编译后的锁名称模板，parts中的元素为：字面量String、参数下标Integer、SPEL表达式Expression
+     */
+    private static class CompiledName {
+        private final Method method;
+        private final Object[] parts;
+
+        private CompiledName(Method method, Object[] parts) {
+            this.method = method;
+            this.parts = parts;
+        }
+
+        private String render(Object[] args) {
+            StringBuilder sb = new StringBuilder(64);
+            EvaluationContext context = null;
+            for (Object part : parts) {
+                if (part instanceof String) {
+                    sb.append((String) part);
+                } else if (part instanceof Integer) {
+                    sb.append(ObjectUtils.nullSafeToString(args[(Integer) part]));
+                } else {
+                    if (context == null) {
+                        context = new MethodBasedEvaluationContext(TypedValue.NULL, method, args, parameterNameDiscoverer);
+                    }
+                    sb.append(ObjectUtils.nullSafeToString(((Expression) part).getValue(context)));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private static class CacheKey {
+        private final Method method;
+        private final Class<?> targetClass;
+        private final String name;
+
+        private CacheKey(Method method, Class<?> targetClass, String name) {
+            this.method = method;
+            this.targetClass = targetClass;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return method.equals(that.method) && targetClass.equals(that.targetClass) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, targetClass, name);
+        }
+    }
+}
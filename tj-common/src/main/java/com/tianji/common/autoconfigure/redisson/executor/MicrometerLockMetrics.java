@@ -0,0 +1,71 @@
+package com.tianji.common.autoconfigure.redisson.executor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Micrometer的分布式锁指标
+ * <ul>
+ *     <li>lock.wait：获取锁的等待时长，按result区分成功和失败</li>
+ *     <li>lock.hold：持有锁的时长</li>
+ *     <li>lock.contention：等待时长超过阈值的次数，说明锁存在竞争</li>
+ *     <li>lock.failure：获取锁失败的次数</li>
+ * </ul>
+ */
+public class MicrometerLockMetrics implements LockMetrics {
+    /**
+     * 等待超过该时长，认为发生了锁竞争，无竞争时获取锁只需要一次Redis往返
+     */
+    private static final long CONTENTION_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final MeterRegistry registry;
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    public MicrometerLockMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordAcquire(String name, long waitNanos, boolean success) {
+        Meters m = meters(name);
+        if (success) {
+            m.waitSuccess.record(waitNanos, TimeUnit.NANOSECONDS);
+        } else {
+            m.waitFailure.record(waitNanos, TimeUnit.NANOSECONDS);
+            m.failure.increment();
+        }
+        if (!success || waitNanos > CONTENTION_THRESHOLD_NANOS) {
+            m.contention.increment();
+        }
+    }
+
+    @Override
+    public void recordHold(String name, long holdNanos) {
+        meters(name).hold.record(holdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Meters meters(String name) {
+        return meters.computeIfAbsent(name, Meters::new);
+    }
+
+    private class Meters {
+        private final Timer waitSuccess;
+        private final Timer waitFailure;
+        private final Timer hold;
+        private final Counter contention;
+        private final Counter failure;
+
+        private Meters(String name) {
+            waitSuccess = Timer.builder("lock.wait").tag("name", name).tag("result", "success").register(registry);
+            waitFailure = Timer.builder("lock.wait").tag("name", name).tag("result", "failure").register(registry);
+            hold = Timer.builder("lock.hold").tag("name", name).register(registry);
+            contention = Counter.builder("lock.contention").tag("name", name).register(registry);
+            failure = Counter.builder("lock.failure").tag("name", name).register(registry);
+        }
+    }
+}
@@ -27,6 +27,12 @@ public interface MqConstants {
 
         /*促销服务有关的交换机*/
         String PROMOTION_EXCHANGE = "promotion.topic";
+
+        /*用户有关的交换机*/
+        String USER_EXCHANGE = "user.topic";
+
+        /*考试有关的交换机*/
+        String EXAM_EXCHANGE = "exam.topic";
     }
     interface Queue {
         String ERROR_QUEUE_TEMPLATE = "error.{}.queue";
@@ -42,6 +48,7 @@ public interface MqConstants {
         /*订单有关的RoutingKey*/
         String ORDER_PAY_KEY = "order.pay";
         String ORDER_REFUND_KEY = "order.refund";
+        String ORDER_INTAKE_KEY = "order.intake";
 
         /*积分相关RoutingKey*/
         /* 写回答 */
@@ -77,5 +84,17 @@ public interface MqConstants {
 
         /*领取优惠券有关的key*/
         String COUPON_RECEIVE = "coupon.receive";
+        /*兑换码兑换优惠券有关的key*/
+        String COUPON_EXCHANGE = "coupon.exchange";
+        /*订单支付成功后核销优惠券的key*/
+        String COUPON_USE = "coupon.use";
+
+        /*用户名称修改的key*/
+        String USER_NAME_CHANGE_KEY = "user.name.change";
+        /*用户兴趣爱好修改的key*/
+        String USER_INTERESTS_CHANGE_KEY = "user.interests.change";
+
+        /*题目和业务关联关系或题目分数变化的key*/
+        String QUESTION_BIZ_CHANGE_KEY = "question.biz.change";
     }
 }
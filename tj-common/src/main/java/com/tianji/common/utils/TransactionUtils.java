@@ -0,0 +1,29 @@
+package com.tianji.common.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务相关工具类
+ */
+public class TransactionUtils {
+
+    /**
+     * 如果存在事务，则在事务提交之后再执行任务，事务回滚时不执行；不存在事务时立即执行
+     * 用于失效缓存、发送消息等不能先于数据库修改生效的操作
+     *
+     * @param task 要执行的任务
+     */
+    public static void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+}
@@ -24,4 +24,10 @@ public class CourseConstants {
         public static final int PRATICE = 3; //练习或测试
     }
 
+    //课程事件发件箱状态
+    public class OutboxStatus{
+        public static final int PENDING = 0; //待投递
+        public static final int SENT = 1; //已投递
+    }
+
 }
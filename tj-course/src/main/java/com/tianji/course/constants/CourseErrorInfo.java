@@ -88,6 +88,8 @@ public class CourseErrorInfo {
         public static final String COURSE_UP_SHELF_PRACTICE_WITHOUT_SUBJECT = "练习《{}》未上传题目";
         public static final String COURSE_UP_SHELF_NOT_FOUND_COURSE = "未找到对应的课程";
         public static final String COURSE_UP_SHELF_AREADY = "课程已经上架，请勿重复操作";
+        public static final String COURSE_UP_SHELF_EMPTY = "请选择要上架的课程";
+        public static final String COURSE_UP_SHELF_TOO_MANY = "单次最多上架100门课程";
         public static final String COURSE_DOWN_SHELF_FAILD = "当前课程不能下架";
         public static final String COURSE_CHECK_NOT_FOUND = "未查询到课程信息";
         public static final String COURSE_CHECK_NOT_EXISTS = "某些课程不存在或已经删除";
@@ -10,6 +10,24 @@ public class RedisConstants {
     //一级二级分类拥有的三级分类的数量
     public static final String REDIS_KEY_CATEGORY_THIRD_NUMBER = "CATEGORY:THIRD_NUMBER";
 
+    //课程分类快照的版本号和变更记录在同一个脚本中修改，使用相同的hash tag，集群模式下在同一个slot
+    private static final String CATEGORY_SNAPSHOT_HASH_TAG = "{COURSE:CATEGORY:SNAPSHOT}";
+
+    //课程分类快照的版本号，分类或课程数量变化时递增
+    public static final String CATEGORY_SNAPSHOT_VERSION = CATEGORY_SNAPSHOT_HASH_TAG + ":VERSION";
+
+    //课程分类快照的变更记录，score为版本号
+    public static final String CATEGORY_SNAPSHOT_CHANGES = CATEGORY_SNAPSHOT_HASH_TAG + ":CHANGES";
+
+    //已上架课程的目录快照，后缀为课程id:版本号
+    public static final String COURSE_CATALOGUE_SNAPSHOT_PREFIX = "COURSE:CATALOGUE:";
+
+    //已上架课程的目录快照版本号，目录变化时递增，后缀为课程id
+    public static final String COURSE_CATALOGUE_VERSION_PREFIX = "COURSE:CATALOGUE_VERSION:";
+
+    //课程事件发件箱投递锁，保证同一时间只有一个节点按顺序投递
+    public static final String COURSE_EVENT_OUTBOX_LOCK = "COURSE:EVENT_OUTBOX:LOCK";
+
     public static class Formatter {
         public static final String STATISTICS_EXAMINFO = "COURSE:SUBJECT:ANSWER_PROCESS_#{examDetailInfoDTO.recordId}";
         public static final String STATISTICS_COURSE_NUM_CATE = "COURSE:COURSE_NUM_CATEGORY";
@@ -150,6 +150,12 @@ public class CourseController {
         courseDraftService.upShelf(courseIdDTO.getId());
     }
 
+    @PostMapping("upShelf/batch")
+    @ApiOperation("课程批量上架")
+    public void upShelfBatch(@RequestBody List<Long> ids) {
+        courseDraftService.upShelfBatch(ids);
+    }
+
     @GetMapping("checkBeforeUpShelf/{id}")
     @ApiOperation("课程上架前校验")
     public void checkBeforeUpShelf(@PathVariable("id") Long id){
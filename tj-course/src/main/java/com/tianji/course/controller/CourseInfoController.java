@@ -69,6 +69,14 @@ public class CourseInfoController {
         return courseCatalogueService.countMediaUserInfo(mediaIds);
     }
 
+    @GetMapping("/searchInfo/list")
+    @ApiOperation("重建索引时，按id游标分批查询已上架课程信息")
+    public List<CourseDTO> querySearchInfoAfter(
+            @ApiParam("上一批最后一个课程id") @RequestParam(value = "lastId", defaultValue = "0") Long lastId,
+            @ApiParam("每批数量") @RequestParam(value = "size", defaultValue = "500") Integer size) {
+        return courseService.querySearchInfoAfter(lastId, size);
+    }
+
     @GetMapping("/{id}/searchInfo")
     @ApiOperation("课程上架时，需要查询课程信息，加入索引库")
     public CourseDTO getSearchInfo(@ApiParam("课程id") @PathVariable("id") Long id) {
@@ -0,0 +1,57 @@
+package com.tianji.course.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 课程分类快照的变更，通过redis发布到所有课程服务节点
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryChangeDTO {
+    /**
+     * 分类信息变化，重新加载分类
+     */
+    public static final int TYPE_CATEGORY = 1;
+    /**
+     * 课程数量变化，按增量更新分类的课程数量
+     */
+    public static final int TYPE_COURSE = 2;
+    /**
+     * 课程批量变化，重新统计分类的课程数量
+     */
+    public static final int TYPE_RELOAD = 3;
+
+    /**
+     * 变更类型
+     */
+    private Integer type;
+    /**
+     * 课程的一二三级分类id
+     */
+    private List<Long> cateIds;
+    /**
+     * 课程数量的变化，包括已上架、已完结的课程和课程草稿
+     */
+    private Integer courseNum;
+    /**
+     * 已上架课程数量的变化
+     */
+    private Integer shelfNum;
+
+    public static CategoryChangeDTO ofCategory() {
+        return new CategoryChangeDTO(TYPE_CATEGORY, null, 0, 0);
+    }
+
+    public static CategoryChangeDTO ofCourse(List<Long> cateIds, int courseNum, int shelfNum) {
+        return new CategoryChangeDTO(TYPE_COURSE, cateIds, courseNum, shelfNum);
+    }
+
+    public static CategoryChangeDTO ofReload() {
+        return new CategoryChangeDTO(TYPE_RELOAD, null, 0, 0);
+    }
+}
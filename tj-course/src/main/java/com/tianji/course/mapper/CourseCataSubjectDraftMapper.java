@@ -33,6 +33,13 @@ public interface CourseCataSubjectDraftMapper extends BaseMapper<CourseCataSubje
     @ResultMap("BaseResultMap")
     List<CourseCataSubjectDraft> getByCourseId(@Param("courseId") Long courseId);
 
+    @Select("<script>select course_id,cata_id,subject_id from course_cata_subject_draft where course_id in <foreach collection='courseIds' item='courseId' open='(' separator=',' close=')'>#{courseId}</foreach></script>")
+    @ResultMap("BaseResultMap")
+    List<CourseCataSubjectDraft> getByCourseIds(@Param("courseIds") List<Long> courseIds);
+
+    @Delete("<script>delete from course_cata_subject_draft where course_id in <foreach collection='courseIds' item='courseId' open='(' separator=',' close=')'>#{courseId}</foreach></script>")
+    int deleteByCourseIds(@Param("courseIds") List<Long> courseIds);
+
     @Insert("insert into course_cata_subject_draft (course_id,cata_id,subject_id) " +
             "(select course_id,cata_id,subject_id from course_cata_subject where course_id=#{courseId})")
     int insertFromCourseCataSubject(@Param("courseId") Long courseId);
@@ -2,6 +2,10 @@ package com.tianji.course.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.tianji.course.domain.po.CourseCatalogue;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +17,16 @@ import com.tianji.course.domain.po.CourseCatalogue;
  */
 public interface CourseCatalogueMapper extends BaseMapper<CourseCatalogue> {
 
+    String COLUMNS = "id, name, trailer, course_id, type, parent_catalogue_id, media_id, video_name, c_index, media_duration, dep_id";
+
+    /**
+     * 批量将目录草稿上架，已存在的目录直接覆盖
+     */
+    @Insert("<script>insert into course_catalogue (" + COLUMNS + ") (select " + COLUMNS + " from course_catalogue_draft " +
+            "where course_id in <foreach collection='courseIds' item='courseId' open='(' separator=',' close=')'>#{courseId}</foreach>) " +
+            "on duplicate key update name = values(name), trailer = values(trailer), type = values(type), " +
+            "parent_catalogue_id = values(parent_catalogue_id), media_id = values(media_id), video_name = values(video_name), " +
+            "c_index = values(c_index), media_duration = values(media_duration)</script>")
+    int upsertFromDraft(@Param("courseIds") List<Long> courseIds);
+
 }
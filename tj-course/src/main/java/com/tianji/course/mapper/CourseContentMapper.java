@@ -2,6 +2,10 @@ package com.tianji.course.mapper;
 
 import com.tianji.course.domain.po.CourseContent;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,6 +17,12 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface CourseContentMapper extends BaseMapper<CourseContent> {
 
+    String COLUMNS = "id,course_introduce,use_people,course_detail,dep_id,create_time,update_time,creater,updater";
 
+    @Insert("<script>insert into course_content (" + COLUMNS + ") (select " + COLUMNS + " from course_content_draft " +
+            "where id in <foreach collection='courseIds' item='courseId' open='(' separator=',' close=')'>#{courseId}</foreach>) " +
+            "on duplicate key update course_introduce = values(course_introduce), use_people = values(use_people), " +
+            "course_detail = values(course_detail), update_time = values(update_time), updater = values(updater)</script>")
+    int upsertFromDraft(@Param("courseIds") List<Long> courseIds);
 
 }
@@ -0,0 +1,36 @@
+package com.tianji.course.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.common.autoconfigure.mq.OutboxMapper;
+import com.tianji.course.domain.po.CourseEventOutbox;
+import org.apache.ibatis.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * <p>
+ * 课程事件发件箱 Mapper 接口
+ * </p>
+ */
+public interface CourseEventOutboxMapper extends BaseMapper<CourseEventOutbox>, OutboxMapper<CourseEventOutbox> {
+
+    @Insert("<script>insert into course_event_outbox (exchange, routing_key, biz_id, status, retry_times) values " +
+            "<foreach collection='bizIds' item='bizId' separator=','>(#{exchange}, #{routingKey}, #{bizId}, 0, 0)</foreach></script>")
+    int batchInsert(@Param("exchange") String exchange, @Param("routingKey") String routingKey,
+                    @Param("bizIds") List<Long> bizIds);
+
+    @Select("select id, exchange, routing_key, biz_id, status, retry_times from course_event_outbox " +
+            "where status = 0 order by id limit #{limit}")
+    List<CourseEventOutbox> queryPending(@Param("limit") int limit);
+
+    @Update("<script>update course_event_outbox set status = 1 where id in " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int markSent(@Param("ids") List<Long> ids);
+
+    @Update("update course_event_outbox set retry_times = retry_times + 1 where id = #{id}")
+    int incrRetryTimes(@Param("id") Long id);
+
+    @Delete("delete from course_event_outbox where status = 1 and update_time < #{time} limit #{limit}")
+    int deleteSentBefore(@Param("time") LocalDateTime time, @Param("limit") int limit);
+}
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.tianji.api.dto.IdAndNumDTO;
 import com.tianji.course.domain.po.Category3PO;
 import com.tianji.course.domain.po.Course;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
@@ -23,6 +24,31 @@ public interface CourseMapper extends BaseMapper<Course> {
 
     int updateVariableById(@Param("po") Course course);
 
+    /**
+     * 批量将课程草稿上架到正式课程，首次上架插入，再次上架只更新可变字段，发布次数+1。
+     * 课程视频总时长由草稿中小节的时长汇总，所以必须在目录草稿删除之前执行
+     * @param courseIds 课程id集合
+     * @param status 上架后的课程状态
+     * @return 影响行数
+     */
+    @Insert("<script>insert into course (id, name, course_type, cover_url, first_cate_id, second_cate_id, third_cate_id, " +
+            "free, price, template_type, template_url, status, purchase_start_time, purchase_end_time, step, " +
+            "media_duration, valid_duration, section_num, dep_id, create_time, update_time, creater, updater, " +
+            "score, publish_time, publish_times) " +
+            "(select d.id, d.name, d.course_type, d.cover_url, d.first_cate_id, d.second_cate_id, d.third_cate_id, " +
+            "d.free, d.price, d.template_type, d.template_url, #{status}, d.purchase_start_time, d.purchase_end_time, d.step, " +
+            "ifnull(m.duration, 0), d.valid_duration, d.section_num, d.dep_id, d.create_time, d.update_time, d.creater, d.updater, " +
+            "floor(40 + rand() * 10), now(), 1 " +
+            "from course_draft d left join (select course_id, sum(media_duration) as duration from course_catalogue_draft " +
+            "where type = 2 and course_id in <foreach collection='courseIds' item='courseId' open='(' separator=',' close=')'>#{courseId}</foreach> group by course_id) m on m.course_id = d.id " +
+            "where d.id in <foreach collection='courseIds' item='courseId' open='(' separator=',' close=')'>#{courseId}</foreach>) " +
+            "on duplicate key update status = values(status), cover_url = values(cover_url), " +
+            "purchase_start_time = values(purchase_start_time), purchase_end_time = values(purchase_end_time), " +
+            "media_duration = values(media_duration), update_time = values(update_time), updater = values(updater), " +
+            "publish_time = values(publish_time), publish_times = ifnull(course.publish_times, 0) + 1, " +
+            "score = values(score), section_num = values(section_num)</script>")
+    int upsertFromDraft(@Param("courseIds") List<Long> courseIds, @Param("status") Integer status);
+
     /**
      * 批量查询老师所负责的课程数量
      * @param teacherIds
@@ -6,6 +6,8 @@ import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
+
 /**
  * <p>
  * 课程老师关系表草稿 Mapper 接口
@@ -25,6 +27,9 @@ public interface CourseTeacherDraftMapper extends BaseMapper<CourseTeacherDraft>
     @Delete("delete from course_teacher_draft where course_id=#{courseId}")
     int deleteByCourseId(@Param("courseId") Long courseId);
 
+    @Delete("<script>delete from course_teacher_draft where course_id in <foreach collection='courseIds' item='courseId' open='(' separator=',' close=')'>#{courseId}</foreach></script>")
+    int deleteByCourseIds(@Param("courseIds") List<Long> courseIds);
+
     @Insert("insert into course_teacher_draft (" + COLUMNS + ") (select " + COLUMNS + " from course_teacher " +
             "where course_id= #{courseId} and deleted = 0)")
     int insertFromCourseTeacher(@Param("courseId") Long courseId);
@@ -3,8 +3,11 @@ package com.tianji.course.mapper;
 import com.tianji.course.domain.po.CourseTeacher;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
+
 /**
  * <p>
  * 课程老师关系表草稿 Mapper 接口
@@ -18,4 +21,12 @@ public interface CourseTeacherMapper extends BaseMapper<CourseTeacher> {
     @Delete("delete from course_teacher where course_id=#{courseId}")
     int deleteByCourseId(@Param("courseId") Long courseId);
 
+    @Delete("<script>delete from course_teacher where course_id in <foreach collection='courseIds' item='courseId' open='(' separator=',' close=')'>#{courseId}</foreach></script>")
+    int deleteByCourseIds(@Param("courseIds") List<Long> courseIds);
+
+    @Insert("<script>insert into course_teacher (" + CourseTeacherDraftMapper.COLUMNS + ") (select " +
+            CourseTeacherDraftMapper.COLUMNS + " from course_teacher_draft " +
+            "where course_id in <foreach collection='courseIds' item='courseId' open='(' separator=',' close=')'>#{courseId}</foreach> and deleted = 0)</script>")
+    int insertFromDraft(@Param("courseIds") List<Long> courseIds);
+
 }
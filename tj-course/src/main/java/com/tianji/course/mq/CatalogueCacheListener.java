@@ -0,0 +1,52 @@
+package com.tianji.course.mq;
+
+import com.tianji.course.service.ICourseCatalogueService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+import static com.tianji.common.constants.MqConstants.Exchange.COURSE_EXCHANGE;
+import static com.tianji.common.constants.MqConstants.Exchange.EXAM_EXCHANGE;
+import static com.tianji.common.constants.MqConstants.Key.COURSE_UP_KEY;
+import static com.tianji.common.constants.MqConstants.Key.QUESTION_BIZ_CHANGE_KEY;
+
+/**
+ * 课程目录快照的失效通知。队列是匿名的临时队列，每个节点都会收到消息，用来清理各自的本地缓存
+ */
+@Slf4j
+@Component
+public class CatalogueCacheListener {
+
+    @Autowired
+    private ICourseCatalogueService courseCatalogueService;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(),
+            exchange = @Exchange(name = COURSE_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = COURSE_UP_KEY
+    ))
+    public void listenCourseUp(Long courseId) {
+        if (courseId == null) {
+            return;
+        }
+        log.debug("课程{}上架，清理本地目录快照", courseId);
+        courseCatalogueService.evictLocalCatalogueSnapshot(courseId);
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(),
+            exchange = @Exchange(name = EXAM_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = QUESTION_BIZ_CHANGE_KEY
+    ))
+    public void listenQuestionBizChange(List<Long> bizIds) {
+        log.debug("题目关联关系变化，bizIds：{}", bizIds);
+        courseCatalogueService.handleQuestionBizChange(bizIds);
+    }
+}
@@ -76,6 +76,20 @@ public interface ICategoryService extends IService<Category> {
 
     List<CategoryVO> allOfOneLevel();
 
+    /**
+     * 课程数量变化后调用，事务提交后发布到所有节点的课程分类快照
+     *
+     * @param cateIds 课程的一二三级分类id
+     * @param courseNum 课程数量的变化，包括已上架、已完结的课程和课程草稿
+     * @param shelfNum 已上架课程数量的变化
+     */
+    void publishCourseChange(List<Long> cateIds, int courseNum, int shelfNum);
+
+    /**
+     * 课程状态批量变化后调用，所有节点重新统计分类的课程数量
+     */
+    void publishCourseReload();
+
     /**
      * 根据课程分类id查询分类列表
      * @param ids  课程分类id
@@ -9,7 +9,6 @@ import com.tianji.course.domain.vo.CataSimpleSubjectVO;
 import com.tianji.course.domain.vo.CataVO;
 
 import java.util.List;
-import java.util.Map;
 
 /**
  * <p>
@@ -60,30 +59,6 @@ public interface ICourseCatalogueDraftService extends IService<CourseCatalogueDr
      */
     void checkCataInfoImplated(Long courseId);
 
-    /**
-     * 复制试题到架上
-     *
-     * @param courseId
-     * @param isFirstShelf
-     */
-    void copySubjectToShelf(Long courseId, Boolean isFirstShelf);
-
-    /**
-     * copy目录到架上
-     *
-     * @param courseId
-     * @param isFirstShelf
-     */
-    void copyToShelf(Long courseId, Boolean isFirstShelf);
-
-    /**
-     * 计算当前课程中每个章媒资时长
-     *
-     * @param courseId
-     * @return
-     */
-    Map<Long, Integer> calculateMediaDuration(Long courseId);
-
     /**
      * 课程总节和练习数，不包含章
      *
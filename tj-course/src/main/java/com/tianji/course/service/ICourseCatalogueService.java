@@ -56,5 +56,33 @@ public interface ICourseCatalogueService extends IService<CourseCatalogue> {
 
     CataSimpleInfoVO querySectionInfoById(Long id);
 
+    /**
+     * 查询已上架课程的目录，包含每个目录的题目数量和总分，数据来自目录快照缓存
+     *
+     * @param courseId 课程id
+     * @param withPractice 是否包含练习
+     * @return 课程目录，没有目录时返回null
+     */
     List<CataVO> queryCourseCataloguesVO(Long courseId, Boolean withPractice);
+
+    /**
+     * 课程目录变化后失效目录快照，如果存在事务，则在事务提交之后再失效
+     *
+     * @param courseId 课程id
+     */
+    void evictCatalogueSnapshot(Long courseId);
+
+    /**
+     * 只失效当前节点的目录快照，用于接收其它节点的失效通知
+     *
+     * @param courseId 课程id
+     */
+    void evictLocalCatalogueSnapshot(Long courseId);
+
+    /**
+     * 题目和目录的关联关系或题目分数变化后，失效相关课程的目录快照
+     *
+     * @param bizIds 目录id
+     */
+    void handleQuestionBizChange(List<Long> bizIds);
 }
@@ -54,6 +54,13 @@ public interface ICourseDraftService extends IService<CourseDraft> {
      */
     void upShelf(Long id);
 
+    /**
+     * 批量上架课程，一批课程在同一个事务中上架，上架事件通过发件箱按顺序投递
+     *
+     * @param ids 课程id集合
+     */
+    void upShelfBatch(List<Long> ids);
+
     void checkBeforeUpShelf(Long id);
 
     /**
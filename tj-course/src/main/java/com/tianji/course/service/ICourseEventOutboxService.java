@@ -0,0 +1,32 @@
+package com.tianji.course.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.tianji.course.domain.po.CourseEventOutbox;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 课程事件发件箱 服务类
+ * </p>
+ */
+public interface ICourseEventOutboxService extends IService<CourseEventOutbox> {
+
+    /**
+     * 在当前事务中写入课程事件，事务提交后立即触发一次投递
+     * @param exchange 交换机
+     * @param routingKey 路由key
+     * @param bizIds 业务id集合，每个id一条消息
+     */
+    void saveEvents(String exchange, String routingKey, List<Long> bizIds);
+
+    /**
+     * 按id顺序投递待发送的事件，同一时间只有一个节点在投递
+     */
+    void relay();
+
+    /**
+     * 清理已投递的历史事件
+     */
+    void cleanSentEvents();
+}
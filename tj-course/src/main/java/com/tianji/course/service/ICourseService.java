@@ -33,6 +33,15 @@ public interface ICourseService extends IService<Course> {
 
     CourseDTO getCourseDTOById(Long id);
 
+    /**
+     * 按id游标分页查询已上架课程的索引库数据，用于重建索引
+     *
+     * @param lastId 上一批最后一个课程id，第一批传0
+     * @param size 每批数量
+     * @return 索引库需要的数据，按id升序
+     */
+    List<CourseDTO> querySearchInfoAfter(Long lastId, int size);
+
 
     void delete(Long id);
 
@@ -32,10 +32,4 @@ public interface ICourseTeacherDraftService extends IService<CourseTeacherDraft>
      */
     List<CourseTeacherVO> queryTeacherOfCourse(Long courseId,Boolean see);
 
-    /**
-     * 课程老师上架
-     * @param courseId 课程id
-     */
-    void copyToShelf(Long courseId, Boolean isFirstShelf);
-
 }
@@ -14,12 +14,15 @@ import com.tianji.common.utils.*;
 import com.tianji.course.constants.CourseConstants;
 import com.tianji.course.constants.CourseErrorInfo;
 import com.tianji.course.constants.CourseStatus;
+import com.tianji.course.constants.RedisConstants;
 import com.tianji.course.domain.dto.CategoryAddDTO;
+import com.tianji.course.domain.dto.CategoryChangeDTO;
 import com.tianji.course.domain.dto.CategoryDisableOrEnableDTO;
 import com.tianji.course.domain.dto.CategoryListDTO;
 import com.tianji.course.domain.dto.CategoryUpdateDTO;
 import com.tianji.course.domain.po.Category;
 import com.tianji.course.domain.po.Course;
+import com.tianji.course.domain.po.CourseDraft;
 import com.tianji.course.domain.vo.CategoryInfoVO;
 import com.tianji.course.domain.vo.CategoryVO;
 import com.tianji.course.domain.vo.SimpleCategoryVO;
@@ -30,15 +33,21 @@ import com.tianji.course.service.ICourseDraftService;
 import com.tianji.course.service.ICourseService;
 import com.tianji.course.utils.CategoryDataWrapper;
 import com.tianji.course.utils.CategoryDataWrapper2;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.util.*;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -53,9 +62,25 @@ import java.util.stream.Collectors;
 @Slf4j
 public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> implements ICategoryService {
 
+    private static final RedisScript<Long> PUBLISH_CHANGE_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/publish_category_change.lua"), Long.class);
+
+    /**
+     * redis中保留的变更记录数量，落后更多版本的节点直接全量重建快照
+     */
+    private static final int MAX_CHANGES = 1000;
+
+    /**
+     * 全量重建快照时，查询期间版本号发生变化的最大查询次数
+     */
+    private static final int MAX_REBUILD_TIMES = 3;
+
     @Autowired
     private RedisTemplate redisTemplate;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
     @Autowired
     private SubjectCategoryMapper subjectCategoryMapper;
 
@@ -68,36 +93,22 @@ public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> i
     @Resource(name = "taskExecutor")
     private Executor taskExecutor;
 
+    /**
+     * 课程分类快照，只读不可变，变化时整体替换，读取时不需要加锁
+     */
+    private volatile CategorySnapshot snapshot;
+    private final Object snapshotLock = new Object();
+
     @Override
     public List<CategoryVO> list(CategoryListDTO categoryListDTO) {
-
-        //1.搜索条件根据priority正序排序，id逆序排序
-        LambdaQueryWrapper<Category> queryWrapper =
-                Wrappers.lambdaQuery(Category.class)
-                        .orderByAsc(Category::getPriority)
-                        .orderByDesc(Category::getUpdateTime);
-        //2.查询数据
-        List<Category> list = super.list(queryWrapper);
-        if (CollUtils.isEmpty(list)) {
-            return new ArrayList<>();
+        //1.从快照中获取分类树
+        CategorySnapshot current = getSnapshot();
+        //2.没有过滤条件，直接返回快照中的分类树
+        if (StringUtils.isEmpty(categoryListDTO.getName()) && categoryListDTO.getStatus() == null) {
+            return copyCategoryTree(current.tree);
         }
-
-        //3.获取课程分类拥有的课程数量
-        Map<Long, Long> thirdCategoryNumMap = this.statisticThirdCategory();
-
-        Map<Long, Integer> cateIdAndNumMap = courseService
-                .countCourseNumOfCategory();
-        //4.通过TreeDataUtils组装数据
-        List<CategoryVO> categoryVOS = TreeDataUtils.parseToTree(list, CategoryVO.class,
-                //4.1设置转换
-                (category, categoryVO) -> {
-                    //4.2设置三级分类数量、课程数量、状态描述、排序
-                    categoryVO.setThirdCategoryNum(NumberUtils.null2Zero(thirdCategoryNumMap.get(category.getId())).intValue());
-                    categoryVO.setCourseNum(NumberUtils.null2Zero(cateIdAndNumMap.get(category.getId())));
-                    categoryVO.setStatusDesc(CommonStatus.desc(category.getStatus()));
-                    categoryVO.setIndex(category.getPriority());
-                }, new CategoryDataWrapper2());
-        //5.根据条件过滤
+        //3.过滤会修改子分类列表，基于快照重新组装分类树后再过滤
+        List<CategoryVO> categoryVOS = buildCategoryTree(current.categories, current.thirdCategoryNums, current.courseNums);
         if (CollUtils.isNotEmpty(categoryVOS)) {
             return fiter(categoryVOS, categoryListDTO);
         } else {
@@ -139,6 +150,8 @@ public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> i
         if (this.baseMapper.insert(category) <= 0) {
             throw new DbException(null);
         }
+        //发布分类变更
+        publishChange(CategoryChangeDTO.ofCategory());
     }
 
     @Override
@@ -214,6 +227,8 @@ public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> i
         if (result <= 0) {
             throw new DbException(CourseErrorInfo.Msg.CATEGORY_DELETE_FAILD);
         }
+        //6.发布分类变更
+        publishChange(CategoryChangeDTO.ofCategory());
     }
 
     /**
@@ -286,6 +301,8 @@ public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> i
             //5.2更新关联分类状态
             baseMapper.update(updateCategory, updateWrapper);
         }
+        //5.3发布分类变更
+        publishChange(CategoryChangeDTO.ofCategory());
         //6.课程分类禁用触发课程批量下架
         if (categoryDisableOrEnableDTO.getStatus() == CommonStatus.DISABLE.getValue()) {
             Long userId = UserContext.getUser();
@@ -316,55 +333,276 @@ public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> i
         if (result <= 0) {
             throw new BizIllegalException(ErrorInfo.Msg.DB_UPDATE_EXCEPTION);
         }
+        //5.发布分类变更
+        publishChange(CategoryChangeDTO.ofCategory());
     }
 
     @Override
     public List<SimpleCategoryVO> all(Boolean admin) {
-        // 1.查询有课程的课程分类id列表
-        List<Long> categoryIdList = admin ?
-                null :courseService.getCategoryIdListWithCourse();
-        // 1.1.判空
-        if(!admin && CollUtils.isEmpty(categoryIdList)){
-            return new ArrayList<>();
-        }
+        // 管理端返回所有分类，用户端只返回启用且有已上架课程的分类
+        CategorySnapshot current = getSnapshot();
+        return copySimpleCategoryTree(admin ? current.adminTree : current.portalTree);
+    }
 
-        // 2.升序查询所有未禁用的课程分类
-        LambdaQueryWrapper<Category> queryWrapper = Wrappers.lambdaQuery(Category.class)
-                .eq(!admin, Category::getStatus, CommonStatus.ENABLE.getValue())
-                .in(CollectionUtil.isNotEmpty(categoryIdList), Category::getId, categoryIdList)
-                .orderByAsc(Category::getPriority)
-                .orderByDesc(Category::getId);
-        List<Category> categories = this.baseMapper.selectList(queryWrapper);
+    @Override
+    public Map<Long, String> getCateIdAndName() {
+        return getSnapshot().idAndNameMap;
+    }
 
-        // 3.将课程分类转换成树状结构
-        List<SimpleCategoryVO> simpleCategoryVOS = TreeDataUtils.parseToTree(categories,
-                SimpleCategoryVO.class, new CategoryDataWrapper());
-        // 4.过滤掉没有三级子课程分类的课程分类
-        filter(simpleCategoryVOS);
-        return simpleCategoryVOS;
+    @Override
+    public List<CategoryVO> allOfOneLevel() {
+        return copyCategoryTree(getSnapshot().oneLevelList);
+    }
 
+    @Override
+    public void publishCourseChange(List<Long> cateIds, int courseNum, int shelfNum) {
+        if (CollUtils.isEmpty(cateIds) || (courseNum == 0 && shelfNum == 0)) {
+            return;
+        }
+        publishChange(CategoryChangeDTO.ofCourse(cateIds, courseNum, shelfNum));
     }
 
     @Override
-    public Map<Long, String> getCateIdAndName() {
-        List<Category> categories = this.baseMapper.selectList(null);
-        return categories.stream()
+    public void publishCourseReload() {
+        publishChange(CategoryChangeDTO.ofReload());
+    }
+
+    /**
+     * 发布分类快照的变更，如果存在事务，则在事务提交之后再发布
+     *
+     * @param change 变更内容
+     */
+    private void publishChange(CategoryChangeDTO change) {
+        TransactionUtils.afterCommit(() -> doPublishChange(change));
+    }
+
+    private void doPublishChange(CategoryChangeDTO change) {
+        //1.递增版本号并记录变更
+        try {
+            Long version = stringRedisTemplate.execute(PUBLISH_CHANGE_SCRIPT,
+                    Arrays.asList(RedisConstants.CATEGORY_SNAPSHOT_VERSION, RedisConstants.CATEGORY_SNAPSHOT_CHANGES),
+                    JsonUtils.toJsonStr(change), String.valueOf(MAX_CHANGES));
+            log.debug("课程分类快照发生变化，版本号更新为：{}", version);
+        } catch (Exception e) {
+            log.error("课程分类快照变更发布失败，等待定时全量重建，change：{}", change, e);
+            return;
+        }
+        //2.当前节点立即同步，其它节点在下一次定时同步时生效
+        syncSnapshot();
+    }
+
+    /**
+     * 定时检查快照版本号，有变化时按变更记录增量更新快照
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void syncSnapshot() {
+        if (snapshot == null) {
+            // 还未读取过分类数据，首次读取时再全量构建
+            return;
+        }
+        synchronized (snapshotLock) {
+            CategorySnapshot current = snapshot;
+            //1.比较版本号
+            long version = currentSnapshotVersion();
+            if (version <= current.version) {
+                return;
+            }
+            //2.读取快照版本之后的变更记录，记录不完整时全量重建
+            Set<String> changes = stringRedisTemplate.opsForZSet().rangeByScore(
+                    RedisConstants.CATEGORY_SNAPSHOT_CHANGES, current.version + 1, version);
+            if (changes == null || changes.size() != version - current.version) {
+                rebuildSnapshot();
+                return;
+            }
+            //3.应用变更
+            boolean categoryChanged = false;
+            Map<Long, Integer> courseNums = new HashMap<>(current.courseNums);
+            Map<Long, Integer> shelfNums = new HashMap<>(current.shelfNums);
+            for (String value : changes) {
+                CategoryChangeDTO change = JsonUtils.toBean(value.substring(value.indexOf(':') + 1), CategoryChangeDTO.class);
+                if (change.getType() == CategoryChangeDTO.TYPE_RELOAD) {
+                    rebuildSnapshot();
+                    return;
+                }
+                if (change.getType() == CategoryChangeDTO.TYPE_CATEGORY) {
+                    categoryChanged = true;
+                    continue;
+                }
+                addNum(courseNums, change.getCateIds(), change.getCourseNum());
+                addNum(shelfNums, change.getCateIds(), change.getShelfNum());
+            }
+            //4.分类信息变化时只重新查询分类表，课程数量沿用增量结果
+            List<Category> categories = categoryChanged ? baseMapper.selectList(null) : current.categories;
+            snapshot = buildSnapshot(version, categories, courseNums, shelfNums);
+        }
+    }
+
+    /**
+     * 定时全量重建快照，校准增量维护的课程数量
+     */
+    @Scheduled(initialDelay = 10, fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void calibrateSnapshot() {
+        if (snapshot != null) {
+            rebuildSnapshot();
+        }
+    }
+
+    private CategorySnapshot getSnapshot() {
+        CategorySnapshot current = snapshot;
+        return current != null ? current : rebuildSnapshot();
+    }
+
+    private CategorySnapshot rebuildSnapshot() {
+        synchronized (snapshotLock) {
+            //1.查询DB前后各读一次版本号，期间有新的变更发布时重新查询，避免增量同步时重复累加已经查到的变更
+            long version = currentSnapshotVersion();
+            for (int i = 1; ; i++) {
+                CategorySnapshot loaded = loadSnapshot(version);
+                long after = currentSnapshotVersion();
+                //2.查询期间没有新的变更，或者重试次数用完，重试次数用完时的误差由定时全量重建校准
+                if (after == version || i >= MAX_REBUILD_TIMES) {
+                    snapshot = loaded;
+                    return snapshot;
+                }
+                version = after;
+            }
+        }
+    }
+
+    private CategorySnapshot loadSnapshot(long version) {
+        //1.查询所有分类
+        List<Category> categories = baseMapper.selectList(null);
+        //2.统计已上架、已完结的课程数量和已上架的课程数量
+        Map<Long, Integer> courseNums = new HashMap<>();
+        Map<Long, Integer> shelfNums = new HashMap<>();
+        List<Course> courses = courseService.lambdaQuery()
+                .select(Course::getFirstCateId, Course::getSecondCateId, Course::getThirdCateId, Course::getStatus)
+                .in(Course::getStatus, CourseStatus.SHELF.getStatus(), CourseStatus.FINISHED.getStatus())
+                .list();
+        for (Course course : courses) {
+            List<Long> cateIds = Arrays.asList(course.getFirstCateId(), course.getSecondCateId(), course.getThirdCateId());
+            addNum(courseNums, cateIds, 1);
+            if (CourseStatus.SHELF.equals(course.getStatus())) {
+                addNum(shelfNums, cateIds, 1);
+            }
+        }
+        //3.统计课程草稿数量
+        List<CourseDraft> drafts = courseDraftService.lambdaQuery()
+                .select(CourseDraft::getFirstCateId, CourseDraft::getSecondCateId, CourseDraft::getThirdCateId)
+                .list();
+        for (CourseDraft draft : drafts) {
+            addNum(courseNums, Arrays.asList(draft.getFirstCateId(), draft.getSecondCateId(), draft.getThirdCateId()), 1);
+        }
+        //4.构建快照
+        return buildSnapshot(version, categories, courseNums, shelfNums);
+    }
+
+    private long currentSnapshotVersion() {
+        String version = stringRedisTemplate.opsForValue().get(RedisConstants.CATEGORY_SNAPSHOT_VERSION);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+    private void addNum(Map<Long, Integer> nums, List<Long> cateIds, Integer delta) {
+        if (CollUtils.isEmpty(cateIds) || delta == null || delta == 0) {
+            return;
+        }
+        for (Long cateId : cateIds) {
+            if (cateId != null) {
+                nums.merge(cateId, delta, Integer::sum);
+            }
+        }
+    }
+
+    private CategorySnapshot buildSnapshot(long version, List<Category> categories,
+                                           Map<Long, Integer> courseNums, Map<Long, Integer> shelfNums) {
+        //1.一级二级分类拥有的三级分类数量
+        Map<Long, Long> thirdCategoryNums = statisticThirdCategory(categories);
+        //2.分类id和名称
+        Map<Long, String> idAndNameMap = categories.stream()
                 .collect(Collectors.toMap(Category::getId, Category::getName));
+        //3.管理端分类列表，每个分类带有三级分类数量和课程数量
+        List<CategoryVO> tree = buildCategoryTree(categories, thirdCategoryNums, courseNums);
+        List<CategoryVO> oneLevelList = BeanUtils.copyList(categories, CategoryVO.class, (category, categoryVO) -> {
+            categoryVO.setThirdCategoryNum(thirdCategoryNums.getOrDefault(category.getId(), 0L).intValue());
+        });
+        //4.所有分类的树状结构，管理端返回全部分类，用户端只返回启用且有已上架课程的分类
+        List<Category> sorted = categories.stream()
+                .sorted(Comparator.comparing(Category::getPriority, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(Category::getId, Comparator.reverseOrder()))
+                .collect(Collectors.toList());
+        List<SimpleCategoryVO> adminTree = buildSimpleCategoryTree(sorted);
+        List<SimpleCategoryVO> portalTree = buildSimpleCategoryTree(sorted.stream()
+                .filter(c -> CommonStatus.ENABLE.getValue() == c.getStatus())
+                .filter(c -> NumberUtils.null2Zero(shelfNums.get(c.getId())) > 0)
+                .collect(Collectors.toList()));
+        return new CategorySnapshot(version, Collections.unmodifiableList(categories),
+                Collections.unmodifiableMap(courseNums), Collections.unmodifiableMap(shelfNums),
+                Collections.unmodifiableMap(thirdCategoryNums), Collections.unmodifiableMap(idAndNameMap),
+                Collections.unmodifiableList(tree), Collections.unmodifiableList(oneLevelList),
+                Collections.unmodifiableList(adminTree), Collections.unmodifiableList(portalTree));
     }
 
-    @Override
-    public List<CategoryVO> allOfOneLevel() {
-        //1.查询数据
-        List<Category> list = super.list();
-        if (CollUtils.isEmpty(list)) {
+    /**
+     * 快照中的分类树是所有请求共享的，返回给调用方之前逐层复制，避免调用方修改快照
+     */
+    private static List<CategoryVO> copyCategoryTree(List<CategoryVO> tree) {
+        if (tree == null) {
+            return null;
+        }
+        List<CategoryVO> copies = new ArrayList<>(tree.size());
+        for (CategoryVO vo : tree) {
+            CategoryVO copy = BeanUtils.copyBean(vo, CategoryVO.class);
+            copy.setChildren(copyCategoryTree(vo.getChildren()));
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private static List<SimpleCategoryVO> copySimpleCategoryTree(List<SimpleCategoryVO> tree) {
+        if (tree == null) {
+            return null;
+        }
+        List<SimpleCategoryVO> copies = new ArrayList<>(tree.size());
+        for (SimpleCategoryVO vo : tree) {
+            SimpleCategoryVO copy = BeanUtils.copyBean(vo, SimpleCategoryVO.class);
+            copy.setChildren(copySimpleCategoryTree(vo.getChildren()));
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private List<CategoryVO> buildCategoryTree(List<Category> categories,
+                                               Map<Long, Long> thirdCategoryNumMap, Map<Long, Integer> cateIdAndNumMap) {
+        if (CollUtils.isEmpty(categories)) {
             return new ArrayList<>();
         }
+        //1.根据priority正序排序，更新时间逆序排序
+        List<Category> list = categories.stream()
+                .sorted(Comparator.comparing(Category::getPriority, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(Category::getUpdateTime, Comparator.nullsLast(Comparator.reverseOrder())))
+                .collect(Collectors.toList());
+        //2.通过TreeDataUtils组装数据
+        return TreeDataUtils.parseToTree(list, CategoryVO.class,
+                //2.1设置转换
+                (category, categoryVO) -> {
+                    //2.2设置三级分类数量、课程数量、状态描述、排序
+                    categoryVO.setThirdCategoryNum(NumberUtils.null2Zero(thirdCategoryNumMap.get(category.getId())).intValue());
+                    categoryVO.setCourseNum(NumberUtils.null2Zero(cateIdAndNumMap.get(category.getId())));
+                    categoryVO.setStatusDesc(CommonStatus.desc(category.getStatus()));
+                    categoryVO.setIndex(category.getPriority());
+                }, new CategoryDataWrapper2());
+    }
 
-        //2.统计一级二级目录对应的三级目录的数量，做一个三分钟的redis缓存
-        Map<Long, Long> thirdCategoryNumMap = this.statisticThirdCategory();
-        return BeanUtils.copyList(list, CategoryVO.class, (category, categoryVO) -> {
-            categoryVO.setThirdCategoryNum(thirdCategoryNumMap.getOrDefault(category.getId(), 0L).intValue());
-        });
+    private List<SimpleCategoryVO> buildSimpleCategoryTree(List<Category> categories) {
+        if (CollUtils.isEmpty(categories)) {
+            return new ArrayList<>();
+        }
+        // 1.将课程分类转换成树状结构
+        List<SimpleCategoryVO> simpleCategoryVOS = TreeDataUtils.parseToTree(categories,
+                SimpleCategoryVO.class, new CategoryDataWrapper());
+        // 2.过滤掉没有三级子课程分类的课程分类
+        filter(simpleCategoryVOS);
+        return simpleCategoryVOS;
     }
 
     @Override
@@ -511,11 +749,9 @@ public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> i
      *
      * @return
      */
-    private Map<Long, Long> statisticThirdCategory() {
+    private Map<Long, Long> statisticThirdCategory(List<Category> categories) {
         Map<Long, Long> result = new HashMap<>();
-        // 1.查询所有数据
-        List<Category> categories = baseMapper.selectList(null);
-        // 1.1.判空
+        // 1.判空
         if(CollUtils.isEmpty(categories)){
             return result;
         }
@@ -644,4 +880,27 @@ public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> i
             }
         }
     }
+
+    /**
+     * 课程分类快照，创建后不再修改，集合都是只读的，分类树返回给调用方时复制
+     */
+    @AllArgsConstructor
+    private static class CategorySnapshot {
+        private final long version;
+        private final List<Category> categories;
+        /**
+         * 分类的课程数量，包括已上架、已完结的课程和课程草稿
+         */
+        private final Map<Long, Integer> courseNums;
+        /**
+         * 分类的已上架课程数量
+         */
+        private final Map<Long, Integer> shelfNums;
+        private final Map<Long, Long> thirdCategoryNums;
+        private final Map<Long, String> idAndNameMap;
+        private final List<CategoryVO> tree;
+        private final List<CategoryVO> oneLevelList;
+        private final List<SimpleCategoryVO> adminTree;
+        private final List<SimpleCategoryVO> portalTree;
+    }
 }
@@ -5,7 +5,6 @@ import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.api.client.exam.ExamClient;
-import com.tianji.api.dto.exam.QuestionBizDTO;
 import com.tianji.api.dto.exam.QuestionDTO;
 import com.tianji.common.constants.ErrorInfo;
 import com.tianji.common.exceptions.BizIllegalException;
@@ -299,65 +298,6 @@ public class CourseCatalogueDraftServiceImpl extends ServiceImpl<CourseCatalogue
         });
     }
 
-    @Override
-    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = {DbException.class, Exception.class})
-    public void copySubjectToShelf(Long courseId, Boolean isFirstShelf) {
-        //1.从草稿中查出题目信息
-        List<CourseCataSubjectDraft> courseCataSubjectDrafts = courseCataSubjectDraftMapper.getByCourseId(courseId);
-        List<QuestionBizDTO> subjects = courseCataSubjectDrafts.stream()
-                .map(s -> QuestionBizDTO.of(s.getCataId(), s.getSubjectId())).collect(Collectors.toList());
-        //2.删除练习和题目之间的关系
-        if (CollUtils.isEmpty(courseCataSubjectDrafts)) {
-            // 草稿中没有题目，直接结束
-            return;
-        }
-        //3.将新的练习和题目之间的关系上架
-        examClient.saveQuestionBizInfoBatch(subjects);
-        //4.删除草稿
-        int result = courseCataSubjectDraftMapper.deleteByCourseId(courseId);
-        if (result != courseCataSubjectDrafts.size()) {
-            throw new DbException(ErrorInfo.Msg.DB_UPDATE_EXCEPTION);
-        }
-    }
-
-    @Override
-    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = {DbException.class, Exception.class})
-    public void copyToShelf(Long courseId, Boolean isFirstShelf) {
-        //1.从草稿中查出目录信息
-        List<CourseCatalogueDraft> courseCatalogueDrafts = baseMapper.getByCourseId(courseId);
-        List<CourseCatalogue> courseCatalogues = BeanUtils.copyList(courseCatalogueDrafts, CourseCatalogue.class);
-        //2.保存数据上架
-        boolean result = courseCatalogueService.saveOrUpdateBatch(courseCatalogues);
-        if (!result) {
-            throw new DbException(ErrorInfo.Msg.DB_UPDATE_EXCEPTION);
-        }
-        //3.删除草稿
-        int deleteResult = courseCatalogueDraftMapper.deleteByCourseId(courseId, Arrays.asList(
-                CourseConstants.CataType.CHAPTER,
-                CourseConstants.CataType.SECTION,
-                CourseConstants.CataType.PRATICE
-        ));
-        if (deleteResult != courseCatalogueDrafts.size()) {
-            throw new DbException(ErrorInfo.Msg.DB_UPDATE_EXCEPTION);
-        }
-    }
-
-    @Override
-    public Map<Long, Integer> calculateMediaDuration(Long courseId) {
-        LambdaQueryWrapper<CourseCatalogueDraft> queryWrapper =
-                Wrappers.lambdaQuery(CourseCatalogueDraft.class)
-                        .eq(CourseCatalogueDraft::getCourseId, courseId)
-                        .eq(CourseCatalogueDraft::getType, CourseConstants.CataType.SECTION);
-        List<CourseCatalogueDraft> list = list(queryWrapper);
-        if (CollUtils.isEmpty(list)) {
-            return new HashMap<>();
-        }
-        return list.stream()
-                .collect(Collectors.groupingBy(
-                        CourseCatalogueDraft::getParentCatalogueId,
-                        Collectors.summingInt(CourseCatalogueDraft::getMediaDuration)));
-    }
-
     @Override
     public Integer totalSectionNums(Long courseId) {
         LambdaQueryWrapper<CourseCatalogueDraft> queryWrapper = new LambdaQueryWrapper<>();
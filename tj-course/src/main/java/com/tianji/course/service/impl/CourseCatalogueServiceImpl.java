@@ -3,6 +3,8 @@ package com.tianji.course.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.tianji.api.client.exam.ExamClient;
 import com.tianji.api.dto.course.CatalogueDTO;
 import com.tianji.api.dto.course.MediaQuoteDTO;
@@ -12,15 +14,19 @@ import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.utils.*;
 import com.tianji.course.constants.CourseConstants;
 import com.tianji.course.constants.CourseErrorInfo;
+import com.tianji.course.constants.RedisConstants;
 import com.tianji.course.domain.po.CourseCatalogue;
 import com.tianji.course.domain.vo.CataSimpleInfoVO;
 import com.tianji.course.domain.vo.CataVO;
 import com.tianji.course.mapper.CourseCatalogueMapper;
 import com.tianji.course.properties.CourseProperties;
 import com.tianji.course.service.ICourseCatalogueService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -32,15 +38,38 @@ import java.util.stream.Collectors;
  * @author wusongsong
  * @since 2022-07-19
  */
+@Slf4j
 @Service
 public class CourseCatalogueServiceImpl extends ServiceImpl<CourseCatalogueMapper, CourseCatalogue> implements ICourseCatalogueService {
 
+    /**
+     * redis中目录快照的有效期，到期后由下一次查询重新加载
+     */
+    private static final Duration SNAPSHOT_TTL = Duration.ofMinutes(10);
+    /**
+     * 目录快照版本号的有效期，比快照长，版本号过期时对应的快照一定已经过期
+     */
+    private static final Duration SNAPSHOT_VERSION_TTL = Duration.ofDays(1);
+
     @Autowired
     private CourseProperties courseProperties;
 
     @Autowired
     private ExamClient examClient;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 目录快照的本地缓存，key为课程id。课程上架后目录不会变化，其它节点的失效通知通过mq广播，
+     * 有效期用来兜底通知丢失的情况
+     */
+    private final Cache<Long, CatalogueSnapshot> snapshotCache = Caffeine.newBuilder()
+            .initialCapacity(256)
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
     @Override
     public List<CatalogueDTO> queryCourseCatalogues(Long courseId, Boolean withPractice) {
         //1.课程目录查询条件
@@ -196,27 +225,113 @@ public class CourseCatalogueServiceImpl extends ServiceImpl<CourseCatalogueMappe
 
     @Override
     public List<CataVO> queryCourseCataloguesVO(Long courseId, Boolean withPractice) {
-        //1.课程目录查询条件
+        //1.先查本地缓存，再查redis，最后查数据库
+        CatalogueSnapshot snapshot = snapshotCache.get(courseId, this::loadCatalogueSnapshot);
+        if (snapshot.degraded) {
+            // 降级的快照只用于本次查询，不留在本地缓存
+            snapshotCache.invalidate(courseId);
+        }
+        //2.没有目录
+        if (CollUtils.isEmpty(snapshot.withPractice)) {
+            return null;
+        }
+        return withPractice ? snapshot.withPractice : snapshot.withoutPractice;
+    }
+
+    @Override
+    public void evictCatalogueSnapshot(Long courseId) {
+        TransactionUtils.afterCommit(() -> doEvictCatalogueSnapshot(Collections.singleton(courseId)));
+    }
+
+    @Override
+    public void evictLocalCatalogueSnapshot(Long courseId) {
+        snapshotCache.invalidate(courseId);
+    }
+
+    @Override
+    public void handleQuestionBizChange(List<Long> bizIds) {
+        if (CollUtils.isEmpty(bizIds)) {
+            return;
+        }
+        //1.查询目录所属的课程
+        Set<Long> courseIds = lambdaQuery()
+                .select(CourseCatalogue::getCourseId)
+                .in(CourseCatalogue::getId, bizIds)
+                .list()
+                .stream()
+                .map(CourseCatalogue::getCourseId)
+                .collect(Collectors.toSet());
+        //2.失效课程的目录快照
+        doEvictCatalogueSnapshot(courseIds);
+    }
+
+    private void doEvictCatalogueSnapshot(Collection<Long> courseIds) {
+        if (CollUtils.isEmpty(courseIds)) {
+            return;
+        }
+        //1.递增redis中的快照版本号，之后的查询读写新版本的快照。
+        // 失效之前开始加载的查询只会把旧数据写入旧版本的快照，不会覆盖新版本，避免删除缓存和回写缓存的竞争
+        for (Long courseId : courseIds) {
+            String versionKey = RedisConstants.COURSE_CATALOGUE_VERSION_PREFIX + courseId;
+            Long version = stringRedisTemplate.opsForValue().increment(versionKey);
+            stringRedisTemplate.expire(versionKey, SNAPSHOT_VERSION_TTL);
+            //1.1.旧版本的快照不会再被读取，直接删除
+            if (version != null) {
+                stringRedisTemplate.delete(snapshotKey(courseId, version - 1));
+            }
+        }
+        //2.删除本地缓存，其它节点通过mq通知删除
+        snapshotCache.invalidateAll(courseIds);
+    }
+
+    private String snapshotKey(Long courseId, long version) {
+        return RedisConstants.COURSE_CATALOGUE_SNAPSHOT_PREFIX + courseId + ":" + version;
+    }
+
+    private CatalogueSnapshot loadCatalogueSnapshot(Long courseId) {
+        //1.先查询快照版本号，快照按版本号读写
+        String version = stringRedisTemplate.opsForValue().get(RedisConstants.COURSE_CATALOGUE_VERSION_PREFIX + courseId);
+        String key = snapshotKey(courseId, version == null ? 0 : Long.parseLong(version));
+        //2.查询redis，新节点启动后直接使用其它节点生成的快照
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (json != null) {
+            return CatalogueSnapshot.of(JsonUtils.toList(json, CataVO.class));
+        }
+        //3.查询数据库
+        CatalogueSnapshot snapshot = queryCourseCataloguesFromDb(courseId);
+        //4.题目信息降级时不写入redis，等考试服务恢复后重新加载
+        if (snapshot.degraded) {
+            return snapshot;
+        }
+        //5.写入redis，没有目录的课程也写入，避免重复查询
+        stringRedisTemplate.opsForValue().set(key, JsonUtils.toJsonStr(snapshot.withPractice), SNAPSHOT_TTL);
+        return snapshot;
+    }
+
+    private CatalogueSnapshot queryCourseCataloguesFromDb(Long courseId) {
+        //1.课程目录查询条件，包含练习，不包含练习的目录从中过滤得到
         LambdaQueryWrapper<CourseCatalogue> queryWrapper =
                 Wrappers.lambdaQuery(CourseCatalogue.class)
                         .eq(CourseCatalogue::getCourseId, courseId);
-        if (!withPractice) {
-            //1.1课程目录不带练习设置目录查询类型
-            queryWrapper.in(CourseCatalogue::getType,
-                    Arrays.asList(CourseConstants.CataType.SECTION,
-                            CourseConstants.CataType.CHAPTER));
-        }
-        //1.2根据目录类型和序号排序
+        //1.1根据目录类型和序号排序
         queryWrapper.last(" order by type,c_index");
         //2.查询课程目录列表
         List<CourseCatalogue> courseCatalogues = baseMapper.selectList(queryWrapper);
         if (CollUtils.isEmpty(courseCatalogues)) {
-            return null;
+            return CatalogueSnapshot.of(new ArrayList<>());
         }
 
-        //3.查询课程目录id、题目id及分数列表
+        //3.查询课程目录id、题目id及分数列表，考试服务不可用或返回空结果时降级为没有题目信息
         Set<Long> ids = courseCatalogues.stream().map(CourseCatalogue::getId).collect(Collectors.toSet());
-        List<QuestionBizDTO> questionBizDTOS = examClient.queryQuestionIdsByBizIds(ids);
+        List<QuestionBizDTO> questionBizDTOS = null;
+        Map<Long, Integer> scoreMap = null;
+        try {
+            questionBizDTOS = examClient.queryQuestionIdsByBizIds(ids);
+            scoreMap = examClient.queryQuestionScoresByBizIds(ids);
+        } catch (Exception e) {
+            log.error("查询课程{}的题目信息失败，目录快照降级为没有题目信息", courseId, e);
+        }
+        boolean degraded = questionBizDTOS == null || scoreMap == null;
         //4.转化目录id和题目id、分数对应关系
         Map<Long, Long> cataIdAndNumMap =
                 CollUtils.isEmpty(questionBizDTOS)
@@ -225,7 +340,7 @@ public class CourseCatalogueServiceImpl extends ServiceImpl<CourseCatalogueMappe
                                 .stream()
                                 .collect(Collectors.groupingBy(QuestionBizDTO::getBizId, Collectors.counting()));
         //5.转化录id和题目id、总分数关系
-        Map<Long, Integer> cataIdAndTotalScoreMap = examClient.queryQuestionScoresByBizIds(ids);
+        Map<Long, Integer> cataIdAndTotalScoreMap = scoreMap == null ? new HashMap<>() : scoreMap;
         //6.数据目录结构转化
         List<CataVO> cataVOS =
                 TreeDataUtils.parseToTree(courseCatalogues, CataVO.class,
@@ -243,7 +358,52 @@ public class CourseCatalogueServiceImpl extends ServiceImpl<CourseCatalogueMappe
                                     cataIdAndTotalScoreMap.get(courseCatalogue.getId()))); //练习总分数
                         }, new CourseCatalogDataWrapper2());
 
-        return cataVOS;
+        return degraded ? CatalogueSnapshot.degraded(cataVOS) : CatalogueSnapshot.of(cataVOS);
+    }
+
+    /**
+     * 课程目录快照，创建后不再修改
+     */
+    private static class CatalogueSnapshot {
+        private final List<CataVO> withPractice;
+        private final List<CataVO> withoutPractice;
+        /**
+         * 考试服务不可用时缺少题目信息，这样的快照不缓存
+         */
+        private final boolean degraded;
+
+        private CatalogueSnapshot(List<CataVO> withPractice, List<CataVO> withoutPractice, boolean degraded) {
+            this.withPractice = withPractice;
+            this.withoutPractice = withoutPractice;
+            this.degraded = degraded;
+        }
+
+        static CatalogueSnapshot of(List<CataVO> cataVOS) {
+            return new CatalogueSnapshot(cataVOS, removePractice(cataVOS), false);
+        }
+
+        static CatalogueSnapshot degraded(List<CataVO> cataVOS) {
+            return new CatalogueSnapshot(cataVOS, removePractice(cataVOS), true);
+        }
+
+        /**
+         * 复制目录树并去掉其中的练习
+         */
+        private static List<CataVO> removePractice(List<CataVO> cataVOS) {
+            if (cataVOS == null) {
+                return null;
+            }
+            List<CataVO> result = new ArrayList<>(cataVOS.size());
+            for (CataVO cataVO : cataVOS) {
+                if (cataVO.getType() != null && cataVO.getType() == CourseConstants.CataType.PRATICE) {
+                    continue;
+                }
+                CataVO copy = BeanUtils.copyBean(cataVO, CataVO.class);
+                copy.setSections(removePractice(cataVO.getSections()));
+                result.add(copy);
+            }
+            return result;
+        }
     }
 
     //课程目录树形转化模型
@@ -13,7 +13,6 @@ import com.tianji.api.dto.course.CourseDTO;
 import com.tianji.api.dto.course.CoursePurchaseInfoDTO;
 import com.tianji.api.dto.exam.QuestionBizDTO;
 import com.tianji.api.dto.user.UserDTO;
-import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.constants.ErrorInfo;
 import com.tianji.common.constants.MqConstants;
 import com.tianji.common.domain.dto.PageDTO;
@@ -40,10 +39,7 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.validation.ValidatorFactory;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -57,6 +53,9 @@ import java.util.stream.Collectors;
 @Service
 public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, CourseDraft> implements ICourseDraftService {
 
+    // 单次批量上架的最大课程数量，一批课程在一个事务中上架
+    private static final int MAX_UP_SHELF_BATCH_SIZE = 100;
+
     @Autowired
     private CourseMapper courseMapper;
 
@@ -75,9 +74,6 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
     @Autowired
     private ICourseCatalogueDraftService courseCatalogueDraftService;
 
-    @Autowired
-    private ICourseTeacherDraftService courseTeacherDraftService;
-
     @Autowired
     private CourseCatalogueDraftMapper courseCatalogueDraftMapper;
 
@@ -93,9 +89,6 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
     @Autowired
     private ICategoryService categoryService;
 
-    @Autowired
-    private RabbitMqHelper rabbitMqHelper;
-
     @Autowired
     private TradeClient tradeClient;
 
@@ -105,6 +98,18 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
     @Autowired
     private LearningClient learningClient;
 
+    @Autowired
+    private CourseTeacherMapper courseTeacherMapper;
+
+    @Autowired
+    private CourseCatalogueMapper courseCatalogueMapper;
+
+    @Autowired
+    private ICourseCatalogueService courseCatalogueService;
+
+    @Autowired
+    private ICourseEventOutboxService courseEventOutboxService;
+
     @Override
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = {DbException.class, Exception.class})
     public CourseSaveVO save(CourseBaseInfoSaveDTO courseBaseInfoSaveDTO) {
@@ -173,14 +178,24 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
             baseMapper.insert(courseDraft);
             //3.1.5.插入课程草稿内容
             courseContentDraftMapper.insert(courseContentDraft);
+            //3.1.6.分类的课程数量+1
+            categoryService.publishCourseChange(categoryIdList, 1, 0);
         } else {
             //3.2.编辑课程草稿
             //3.2.1.设置课程id
             courseContentDraft.setId(courseBaseInfoSaveDTO.getId());
             courseDraft.setId(courseBaseInfoSaveDTO.getId());
-            //3.2.2.更新课程草稿
+            //3.2.2.未上架过的课程可以修改分类，分类的课程数量随之转移
+            if (course == null) {
+                CourseDraft oldDraft = baseMapper.selectById(courseBaseInfoSaveDTO.getId());
+                if (oldDraft != null && !Objects.equals(oldDraft.getThirdCateId(), courseDraft.getThirdCateId())) {
+                    categoryService.publishCourseChange(getCateIds(oldDraft), -1, 0);
+                    categoryService.publishCourseChange(categoryIdList, 1, 0);
+                }
+            }
+            //3.2.3.更新课程草稿
             baseMapper.updateById(courseDraft);
-            //3.2.3.更新课程草稿内容
+            //3.2.4.更新课程草稿内容
             courseContentDraftMapper.updateById(courseContentDraft);
         }
         //4.返回课程新增dto
@@ -323,91 +338,80 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
     @Override
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = {DbException.class, Exception.class})
     public void upShelf(Long id) {
-        // 1.信息获取
-        //1.1获取上架的课程草稿信息
-        CourseDraft courseDraft = baseMapper.selectById(id);
-        //1.2获取课程信息
-        Course course = courseMapper.selectById(id);
-        boolean isFirstUpShelf = (course == null);
+        upShelfBatch(Collections.singletonList(id));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = {DbException.class, Exception.class})
+    public void upShelfBatch(List<Long> ids) {
+        // 1.参数校验
+        if (CollUtils.isEmpty(ids)) {
+            throw new BadRequestException(CourseErrorInfo.Msg.COURSE_UP_SHELF_EMPTY);
+        }
+        List<Long> courseIds = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (courseIds.size() > MAX_UP_SHELF_BATCH_SIZE) {
+            throw new BadRequestException(CourseErrorInfo.Msg.COURSE_UP_SHELF_TOO_MANY);
+        }
 
         // 2.校验课程
-        checkBeforeUpShelf(id);
-
-        //3.计算每个章节的课时视频时长
-        Map<Long, Integer> mediaDurations = courseCatalogueDraftService.calculateMediaDuration(id);
-        //3.1.计算课程视屏总时长
-        int totalMediaDuration = mediaDurations
-                .values()
-                .stream()
-                .mapToInt(p -> p)
-                .sum();
-
-
-        //4.草稿信息上架到正式环境
-        //4.1课程老师信息
-        courseTeacherDraftService.copyToShelf(id, isFirstUpShelf);
-        //4.2 题目信息上架
-        courseCatalogueDraftService.copySubjectToShelf(id, isFirstUpShelf);
-        //4.3目录信息上架
-        courseCatalogueDraftService.copyToShelf(id, isFirstUpShelf);
-        //4.4 组装课程基本信息、课程内容信息
-        CourseContentDraft courseContentDraft = courseContentDraftMapper.selectById(id);
-        CourseContent courseContent = BeanUtils.toBean(courseContentDraft, CourseContent.class);
-        Course courseToShelf = BeanUtils.toBean(courseDraft, Course.class);
-        //4.4.1.课程视频总时长
-        courseToShelf.setMediaDuration(totalMediaDuration);
-        //4.4.2.课程有效期月数
-        courseToShelf.setValidDuration(courseDraft.getValidDuration());
-        //4.4.3.课程发布时间
-        courseToShelf.setPublishTime(DateUtils.now());
-        //4.4.4.课程状态设置为已上架
-        courseToShelf.setStatus(CourseStatus.SHELF.getStatus());
-        //4.4.5.课程发布次数
-        int publishTimes = (course == null) ?
-                1 : NumberUtils.null2Zero(course.getPublishTimes()) + 1;
-        courseToShelf.setPublishTimes(publishTimes);
-        // 4.4.6.评分
-        courseToShelf.setScore((int)(Math.random() * 10) + 40);
-
-        //4.5.首次上架
-        if (isFirstUpShelf) {
-            //4.5.1.插入课程内容信息
-            int result = courseContentMapper.insert(courseContent);
-            if (result <= 0) {
-                throw new DbException(ErrorInfo.Msg.DB_UPDATE_EXCEPTION);
-            }
-            //4.5.2.插入课程基本信息
-            result = courseMapper.insert(courseToShelf);
-            if (result <= 0) {
-                throw new DbException(ErrorInfo.Msg.DB_UPDATE_EXCEPTION);
-            }
-            //4.5.1.删除课程草稿基本信息
-            baseMapper.deleteById(id);
-            //4.5.2.删除课程草稿内容信息
-            courseContentDraftMapper.deleteById(id);
-        } else {
-            //4.6.再次上架
-            //4.6.1.更新正式课程内容信息
-            int result = courseContentMapper.updateById(courseContent);
-            if (result <= 0) {
-                throw new DbException(ErrorInfo.Msg.DB_UPDATE_EXCEPTION);
-            }
-            //4.6.2.更新正式课程基本信息
-            result = courseMapper.updateVariableById(courseToShelf);
-            if (result <= 0) {
+        courseIds.forEach(this::checkBeforeUpShelf);
+        //2.1.同一批次中首次上架的课程不能同名
+        List<CourseDraft> courseDrafts = baseMapper.selectBatchIds(courseIds);
+        Set<Long> shelvedIds = courseMapper.selectBatchIds(courseIds).stream()
+                .map(Course::getId).collect(Collectors.toSet());
+        long firstUpShelfNum = courseDrafts.stream().filter(d -> !shelvedIds.contains(d.getId())).count();
+        long distinctNameNum = courseDrafts.stream().filter(d -> !shelvedIds.contains(d.getId()))
+                .map(CourseDraft::getName).distinct().count();
+        if (distinctNameNum < firstUpShelfNum) {
+            throw new BadRequestException(CourseErrorInfo.Msg.COURSE_SAVE_NAME_EXISTS);
+        }
+
+        // 3.草稿信息上架到正式环境，全部是基于集合的INSERT...SELECT语句
+        //3.1.课程基本信息，首次上架插入，再次上架更新；视频总时长由目录草稿汇总，必须在目录草稿删除前执行
+        int result = courseMapper.upsertFromDraft(courseIds, CourseStatus.SHELF.getStatus());
+        if (result < courseIds.size()) {
+            throw new DbException(ErrorInfo.Msg.DB_UPDATE_EXCEPTION);
+        }
+        //3.2.课程内容信息
+        courseContentMapper.upsertFromDraft(courseIds);
+        //3.3.课程老师信息，先删除架上的老师再从草稿复制
+        courseTeacherMapper.deleteByCourseIds(courseIds);
+        courseTeacherMapper.insertFromDraft(courseIds);
+        if (courseTeacherDraftMapper.deleteByCourseIds(courseIds) <= 0) {
+            throw new DbException(ErrorInfo.Msg.DB_DELETE_EXCEPTION);
+        }
+        //3.4.题目信息，题目关系保存在考试服务，整批合并成一次远程调用
+        List<CourseCataSubjectDraft> subjectDrafts = courseCataSubjectDraftMapper.getByCourseIds(courseIds);
+        if (CollUtils.isNotEmpty(subjectDrafts)) {
+            examClient.saveQuestionBizInfoBatch(subjectDrafts.stream()
+                    .map(s -> QuestionBizDTO.of(s.getCataId(), s.getSubjectId()))
+                    .collect(Collectors.toList()));
+            if (courseCataSubjectDraftMapper.deleteByCourseIds(courseIds) != subjectDrafts.size()) {
                 throw new DbException(ErrorInfo.Msg.DB_UPDATE_EXCEPTION);
             }
-            //4.6.3.删除课程草稿基本信息
-            baseMapper.deleteById(id);
-            //4.6.4.删除课程草稿内容信息
-            courseContentDraftMapper.deleteById(id);
-
         }
-        //5.课程上架mq
-        rabbitMqHelper.sendAsyn(MqConstants.Exchange.COURSE_EXCHANGE,
-                MqConstants.Key.COURSE_UP_KEY,
-                id,
-                200L);
+        //3.5.目录信息
+        List<Integer> cataTypes = Arrays.asList(
+                CourseConstants.CataType.CHAPTER,
+                CourseConstants.CataType.SECTION,
+                CourseConstants.CataType.PRATICE);
+        int cataNum = courseCatalogueDraftMapper.countByCourseIds(courseIds, cataTypes);
+        courseCatalogueMapper.upsertFromDraft(courseIds);
+        if (courseCatalogueDraftMapper.deleteByCourseIds(courseIds, cataTypes) != cataNum) {
+            throw new DbException(ErrorInfo.Msg.DB_UPDATE_EXCEPTION);
+        }
+        //3.6.删除课程草稿基本信息和内容信息
+        baseMapper.deleteBatchIds(courseIds);
+        courseContentDraftMapper.deleteBatchIds(courseIds);
+
+        // 4.事务提交后失效目录快照，分类的已上架课程数量+1，草稿转为正式课程，课程数量不变
+        for (CourseDraft courseDraft : courseDrafts) {
+            courseCatalogueService.evictCatalogueSnapshot(courseDraft.getId());
+            categoryService.publishCourseChange(getCateIds(courseDraft), 0, 1);
+        }
+        // 5.课程上架事件写入发件箱，与上架数据一起提交，提交后按顺序投递
+        courseEventOutboxService.saveEvents(MqConstants.Exchange.COURSE_EXCHANGE,
+                MqConstants.Key.COURSE_UP_KEY, courseIds);
     }
 
     @Override
@@ -473,8 +477,12 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
         copySubject2Draft(id);
         //7.课程老师copy到草稿中
         courseTeacherDraftMapper.insertFromCourseTeacher(id);
-        //8.下架mq广播
-        rabbitMqHelper.send(MqConstants.Exchange.COURSE_EXCHANGE, MqConstants.Key.COURSE_DOWN_KEY, id);
+        //8.分类的已上架课程数量-1，正式课程转为草稿，课程数量不变
+        categoryService.publishCourseChange(
+                Arrays.asList(course.getFirstCateId(), course.getSecondCateId(), course.getThirdCateId()), 0, -1);
+        //9.课程下架事件写入发件箱，与下架数据一起提交，提交后按顺序投递
+        courseEventOutboxService.saveEvents(MqConstants.Exchange.COURSE_EXCHANGE,
+                MqConstants.Key.COURSE_DOWN_KEY, List.of(id));
     }
 
     @GlobalTransactional
@@ -537,6 +545,7 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = {DbException.class, Exception.class})
     public void delete(Long id) {
         //1.删除课程草稿
+        CourseDraft courseDraft = baseMapper.selectById(id);
         baseMapper.deleteById(id);
         //2.删除课程内容草稿
         courseContentDraftMapper.deleteById(id);
@@ -550,6 +559,10 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
         ));
         //5.删除课程老师关系草稿
         courseTeacherDraftMapper.deleteByCourseId(id);
+        //6.分类的课程数量-1
+        if (courseDraft != null) {
+            categoryService.publishCourseChange(getCateIds(courseDraft), -1, 0);
+        }
     }
 
     @Override
@@ -584,12 +597,8 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
         Map<Long, String> updaterMap =
                 CollUtils.isEmpty(updaterList) ?
                         new HashMap<>() : userDTOS.stream().collect(Collectors.toMap(UserDTO::getId, UserDTO::getName));
-        //2.4.查询课程分类列表
-        List<Category> list = categoryService.list();
-        //2.5.转化课程分类id+name映射关系
-        Map<Long, String> categoryNameMap =
-                CollUtils.isEmpty(list) ?
-                        new HashMap<>() : list.stream().collect(Collectors.toMap(Category::getId, Category::getName));
+        //2.4.从课程分类快照获取课程分类id+name映射关系
+        Map<Long, String> categoryNameMap = categoryService.getCateIdAndName();
         //2.6.课程id列表
         List<Long> courseIdList = page.getRecords().stream().map(CourseDraft::getId).collect(Collectors.toList());
         //2.7.统计课程报名人数map
@@ -673,4 +682,8 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
             throw new BadRequestException(CourseErrorInfo.Msg.COURSE_SAVE_NAME_EXISTS);
         }
     }
+
+    private List<Long> getCateIds(CourseDraft courseDraft) {
+        return Arrays.asList(courseDraft.getFirstCateId(), courseDraft.getSecondCateId(), courseDraft.getThirdCateId());
+    }
 }
@@ -0,0 +1,72 @@
+package com.tianji.course.service.impl;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.tianji.common.autoconfigure.mq.OutboxRelay;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.course.constants.RedisConstants;
+import com.tianji.course.domain.po.CourseEventOutbox;
+import com.tianji.course.mapper.CourseEventOutboxMapper;
+import com.tianji.course.service.ICourseEventOutboxService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * 课程事件发件箱 服务实现类
+ * </p>
+ */
+@Slf4j
+@Service
+public class CourseEventOutboxServiceImpl extends ServiceImpl<CourseEventOutboxMapper, CourseEventOutbox> implements ICourseEventOutboxService {
+
+    @Autowired
+    private RabbitMqHelper rabbitMqHelper;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    private OutboxRelay<CourseEventOutbox> outboxRelay;
+
+    @PostConstruct
+    public void initOutboxRelay() {
+        // 课程事件的消息内容就是业务id
+        outboxRelay = new OutboxRelay<>(RedisConstants.COURSE_EVENT_OUTBOX_LOCK, baseMapper,
+                events -> events.stream().collect(Collectors.toMap(CourseEventOutbox::getId, CourseEventOutbox::getBizId)),
+                rabbitMqHelper, redissonClient, taskExecutor);
+    }
+
+    @Override
+    public void saveEvents(String exchange, String routingKey, List<Long> bizIds) {
+        if (CollUtils.isEmpty(bizIds)) {
+            return;
+        }
+        // 1.与业务数据在同一个事务中写入发件箱
+        baseMapper.batchInsert(exchange, routingKey, bizIds);
+        // 2.事务提交后异步触发投递，不等待定时任务
+        outboxRelay.relayAfterCommit();
+    }
+
+    @Override
+    public void relay() {
+        outboxRelay.relay();
+    }
+
+    @Override
+    public void cleanSentEvents() {
+        outboxRelay.cleanSentEvents();
+    }
+}
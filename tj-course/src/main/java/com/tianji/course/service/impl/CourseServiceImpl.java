@@ -13,7 +13,6 @@ import com.tianji.api.dto.course.*;
 import com.tianji.api.dto.leanring.LearningLessonDTO;
 import com.tianji.api.dto.leanring.LearningRecordDTO;
 import com.tianji.api.dto.user.UserDTO;
-import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.constants.ErrorInfo;
 import com.tianji.common.constants.MqConstants;
 import com.tianji.common.domain.dto.PageDTO;
@@ -25,7 +24,6 @@ import com.tianji.course.constants.CourseStatus;
 import com.tianji.course.constants.RedisContants;
 import com.tianji.course.domain.dto.CoursePageQuery;
 import com.tianji.course.domain.dto.CourseSimpleInfoListDTO;
-import com.tianji.course.domain.po.Category;
 import com.tianji.course.domain.po.Category3PO;
 import com.tianji.course.domain.po.Course;
 import com.tianji.course.domain.po.CourseTeacher;
@@ -67,7 +65,7 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
     private ICourseDraftService courseDraftService;
 
     @Autowired
-    private RabbitMqHelper rabbitMqHelper;
+    private ICourseEventOutboxService courseEventOutboxService;
 
     @Autowired
     private ICourseCatalogueService courseCatalogueService;
@@ -122,44 +120,86 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
                         .last(true, "limit 1");
         // 2.查询教师
         List<CourseTeacher> courseTeachers = courseTeacherMapper.selectList(queryWrapper);
+        Long teacherId = CollUtils.isNotEmpty(courseTeachers) ? courseTeachers.get(0).getTeacherId() : 0L;
 
-        // 3.课程数据封装
+        // 3.统计课程销量
+        Map<Long, Integer> peoNumOfCourseMap = tradeClient.countEnrollNumOfCourse(CollUtils.singletonList(id));
+        int sold = CollUtils.isNotEmpty(peoNumOfCourseMap) ? peoNumOfCourseMap.getOrDefault(id, 0) : 0;
+
+        //4.返回数据
+        return toCourseDTO(course, teacherId, sold);
+
+    }
+
+    @Override
+    public List<CourseDTO> querySearchInfoAfter(Long lastId, int size) {
+        // 1.按id游标查询一批已上架课程
+        List<Course> courses = lambdaQuery()
+                .eq(Course::getStatus, CourseStatus.SHELF.getStatus())
+                .gt(Course::getId, lastId == null ? 0L : lastId)
+                .orderByAsc(Course::getId)
+                .last("limit " + Math.min(Math.max(size, 1), 1000))
+                .list();
+        if (CollUtils.isEmpty(courses)) {
+            return CollUtils.emptyList();
+        }
+        List<Long> courseIds = courses.stream().map(Course::getId).collect(Collectors.toList());
+
+        // 2.批量查询教师，每门课程取排序最靠后的一位，与单个查询保持一致
+        List<CourseTeacher> courseTeachers = courseTeacherMapper.selectList(
+                Wrappers.lambdaQuery(CourseTeacher.class).in(CourseTeacher::getCourseId, courseIds));
+        Map<Long, Long> teacherMap = courseTeachers.stream().collect(Collectors.groupingBy(
+                CourseTeacher::getCourseId,
+                Collectors.collectingAndThen(
+                        Collectors.maxBy(Comparator.comparing(CourseTeacher::getCIndex,
+                                Comparator.nullsFirst(Comparator.naturalOrder()))),
+                        o -> o.map(CourseTeacher::getTeacherId).orElse(0L))));
+
+        // 3.批量统计课程销量
+        Map<Long, Integer> soldMap = tradeClient.countEnrollNumOfCourse(courseIds);
+        if (soldMap == null) {
+            soldMap = CollUtils.emptyMap();
+        }
+
+        // 4.数据封装
+        List<CourseDTO> list = new ArrayList<>(courses.size());
+        for (Course course : courses) {
+            list.add(toCourseDTO(course,
+                    teacherMap.getOrDefault(course.getId(), 0L),
+                    soldMap.getOrDefault(course.getId(), 0)));
+        }
+        return list;
+    }
+
+    private CourseDTO toCourseDTO(Course course, Long teacherId, int sold) {
         CourseDTO courseDTO = BeanUtils.toBean(course, CourseDTO.class);
-        //3.1.一级课程分类
+        //1.一级课程分类
         courseDTO.setCategoryIdLv1(course.getFirstCateId());
-        //3.2.二级课程分类
+        //2.二级课程分类
         courseDTO.setCategoryIdLv2(course.getSecondCateId());
-        //3.3.三级课程分类
+        //3.三级课程分类
         courseDTO.setCategoryIdLv3(course.getThirdCateId());
-        //3.4.媒资信息
+        //4.媒资信息
         courseDTO.setDuration(course.getMediaDuration());
-        //3.5.课程发布时间
+        //5.课程发布时间
         courseDTO.setPublishTime(course.getCreateTime());
-        //3.6.课程小节数量
+        //6.课程小节数量
         courseDTO.setSections(course.getSectionNum());
-        //3.7.课程第一位老师
-        if (CollUtils.isNotEmpty(courseTeachers)) {
-            courseDTO.setTeacher(courseTeachers.get(0).getTeacherId());
-        } else {
-            courseDTO.setTeacher(0L);
-        }
-
-        // 4.统计课程销量
-        Map<Long, Integer> peoNumOfCourseMap = tradeClient.countEnrollNumOfCourse(CollUtils.singletonList(id));
-        if (CollUtils.isNotEmpty(peoNumOfCourseMap)) {
-            courseDTO.setSold(peoNumOfCourseMap.getOrDefault(id, 0));
-        }
-        //5.返回数据
+        //7.课程第一位老师
+        courseDTO.setTeacher(teacherId);
+        //8.课程销量
+        courseDTO.setSold(sold);
         return courseDTO;
-
     }
 
     @Override
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = Exception.class)
     public void delete(Long id) {
         //1.删除草稿信息
         courseDraftService.delete(id);
-        //2.发送删除草稿mq
-        rabbitMqHelper.send(MqConstants.Exchange.COURSE_EXCHANGE, MqConstants.Key.COURSE_DELETE_KEY, id);
+        //2.课程删除事件写入发件箱，与删除一起提交，提交后按顺序投递
+        courseEventOutboxService.saveEvents(MqConstants.Exchange.COURSE_EXCHANGE,
+                MqConstants.Key.COURSE_DELETE_KEY, List.of(id));
     }
 
     @Override
@@ -373,6 +413,8 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
         for (Course course: courses){
             courseDraftService.delete(course.getId());
         }
+        //6.课程状态批量变化，重新统计分类的课程数量
+        categoryService.publishCourseReload();
 
         return updateCourses.size();
     }
@@ -481,14 +523,8 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
                         : userDTOS
                         .stream()
                         .collect(Collectors.toMap(UserDTO::getId, UserDTO::getName));
-        //3.获取所有课程分类信息
-        List<Category> list = categoryService.list();
-        //3.1.转化课程分类id+name map关系
-        Map<Long, String> categoryNameMap =
-                CollUtils.isEmpty(list) ?
-                        new HashMap<>()
-                        : list.stream()
-                        .collect(Collectors.toMap(Category::getId, Category::getName));
+        //3.从课程分类快照获取课程分类id+name map关系
+        Map<Long, String> categoryNameMap = categoryService.getCateIdAndName();
         //4.课程id列表
         List<Long> courseIdList = page
                 .getRecords()
@@ -516,17 +552,14 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
     }
 
     /**
-     * 异步发送课程完结mq
+     * 课程完结事件写入发件箱，与课程状态一起提交，提交后按顺序投递
      *
      * @param finishedCourse
      */
     private void sendFinishedCourse(List<Course> finishedCourse) {
-        //1.遍历发送课程完结mq
-        for (Course course : finishedCourse) {
-            rabbitMqHelper.sendAsyn(MqConstants.Exchange.COURSE_EXCHANGE,
-                    MqConstants.Key.COURSE_EXPIRE_KEY,
-                    course.getId());
-        }
+        List<Long> courseIds = finishedCourse.stream().map(Course::getId).collect(Collectors.toList());
+        courseEventOutboxService.saveEvents(MqConstants.Exchange.COURSE_EXCHANGE,
+                MqConstants.Key.COURSE_EXPIRE_KEY, courseIds);
     }
 
     /**
@@ -6,13 +6,10 @@ import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.user.UserDTO;
-import com.tianji.common.constants.ErrorInfo;
-import com.tianji.common.exceptions.DbException;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.course.constants.CourseConstants;
 import com.tianji.course.domain.dto.CourseTeacherSaveDTO;
-import com.tianji.course.domain.po.CourseTeacher;
 import com.tianji.course.domain.po.CourseTeacherDraft;
 import com.tianji.course.domain.vo.CourseTeacherVO;
 import com.tianji.course.mapper.CourseTeacherDraftMapper;
@@ -96,26 +93,6 @@ public class CourseTeacherDraftServiceImpl extends ServiceImpl<CourseTeacherDraf
         }
     }
 
-    @Override
-    @Transactional(rollbackFor = {DbException.class, Exception.class})
-    public void copyToShelf(Long courseId, Boolean isFirstShelf) {
-        //1.先将草稿中的数据查出来
-        LambdaQueryWrapper<CourseTeacherDraft> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(CourseTeacherDraft::getCourseId, courseId);
-        List<CourseTeacherDraft> courseTeacherDrafts = baseMapper.selectList(queryWrapper);
-        //2.删除架上的老师数据，
-        if (!isFirstShelf) {
-            courseTeacherService.deleteByCourseId(courseId);
-        }
-        //3.将草稿上架
-        List<CourseTeacher> courseTeachers = BeanUtils.copyList(courseTeacherDrafts, CourseTeacher.class);
-        courseTeacherService.saveOrUpdateBatch(courseTeachers);
-        //4.删除草稿
-        if (baseMapper.deleteByCourseId(courseId) <= 0) {
-            throw new DbException(ErrorInfo.Msg.DB_DELETE_EXCEPTION);
-        }
-    }
-
     private List<CourseTeacherVO> queryTeachers(Long couserId) {
 
         //1.查询条件
@@ -0,0 +1,22 @@
+package com.tianji.course.task;
+
+import com.tianji.course.service.ICourseEventOutboxService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class CourseEventRelayTask {
+    private final ICourseEventOutboxService courseEventOutboxService;
+
+    @Scheduled(fixedDelay = 1000) // 每秒补偿投递一次，处理提交后触发失败或投递失败的事件
+    public void relay() {
+        courseEventOutboxService.relay();
+    }
+
+    @Scheduled(cron = "0 0 3 * * ?") // 每天凌晨3点清理已投递的历史事件
+    public void cleanSentEvents() {
+        courseEventOutboxService.cleanSentEvents();
+    }
+}
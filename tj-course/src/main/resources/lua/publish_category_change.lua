@@ -0,0 +1,15 @@
+-- 发布课程分类快照的变更，递增版本号并记录本次变更
+-- KEYS[1]：快照版本号key    KEYS[2]：变更记录的ZSet key
+-- 两个key使用相同的hash tag，集群模式下在同一个slot
+-- ARGV[1]：变更内容    ARGV[2]：保留的变更记录数量
+-- 返回值：本次变更对应的版本号
+
+-- 1. 递增版本号
+local version = redis.call('INCR', KEYS[1])
+
+-- 2. 记录变更，member以版本号开头保证唯一
+redis.call('ZADD', KEYS[2], version, version .. ':' .. ARGV[1])
+
+-- 3. 清理过旧的变更记录
+redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', version - tonumber(ARGV[2]))
+return version
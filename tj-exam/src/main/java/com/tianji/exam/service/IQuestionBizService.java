@@ -28,5 +28,10 @@ public interface IQuestionBizService extends IService<QuestionBiz> {
 
     void saveQuestionBizInfoBatch(List<QuestionBizDTO> qbs);
 
+    /**
+     * 题目分数等信息变化后，通知引用了该题目的业务
+     */
+    void publishBizChangeOfQuestion(Long questionId);
+
     Map<Long, Integer> queryQuestionScoresByBizIds(Iterable<Long> bizIds);
 }
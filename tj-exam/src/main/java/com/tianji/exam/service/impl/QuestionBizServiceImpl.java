@@ -3,15 +3,22 @@ package com.tianji.exam.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.tianji.api.dto.IdAndNumDTO;
 import com.tianji.api.dto.exam.QuestionBizDTO;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.constants.MqConstants;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.TransactionUtils;
 import com.tianji.exam.domain.po.QuestionBiz;
 import com.tianji.exam.mapper.QuestionBizMapper;
 import com.tianji.exam.service.IQuestionBizService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -25,9 +32,13 @@ import java.util.stream.Collectors;
  * @author 虎哥
  * @since 2022-09-02
  */
+@Slf4j
 @Service
+@RequiredArgsConstructor
 public class QuestionBizServiceImpl extends ServiceImpl<QuestionBizMapper, QuestionBiz> implements IQuestionBizService {
 
+    private final RabbitMqHelper mqHelper;
+
     @Override
     public int countUsedTimes(Long questionId) {
         Integer count = lambdaQuery()
@@ -78,6 +89,41 @@ public class QuestionBizServiceImpl extends ServiceImpl<QuestionBizMapper, Quest
                 .map(q -> QuestionBiz.of(null, q.getBizId(), q.getQuestionId()))
                 .collect(Collectors.toList());
         saveBatch(list);
+        // 4.通知业务方关联关系变化
+        publishBizChange(bizIds);
+    }
+
+    @Override
+    public void publishBizChangeOfQuestion(Long questionId) {
+        // 1.查询引用了题目的业务id
+        Set<Long> bizIds = lambdaQuery()
+                .select(QuestionBiz::getBizId)
+                .eq(QuestionBiz::getQuestionId, questionId)
+                .list()
+                .stream()
+                .map(QuestionBiz::getBizId)
+                .collect(Collectors.toSet());
+        // 2.通知业务方
+        publishBizChange(bizIds);
+    }
+
+    /**
+     * 通知业务方题目关联关系变化，如果存在事务，则在事务提交之后再通知
+     */
+    private void publishBizChange(Collection<Long> bizIds) {
+        if (CollUtils.isEmpty(bizIds)) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> doPublishBizChange(bizIds));
+    }
+
+    private void doPublishBizChange(Collection<Long> bizIds) {
+        try {
+            mqHelper.send(MqConstants.Exchange.EXAM_EXCHANGE,
+                    MqConstants.Key.QUESTION_BIZ_CHANGE_KEY, new ArrayList<>(bizIds));
+        } catch (Exception e) {
+            log.error("题目关联关系变化的消息发送失败，bizIds：{}", bizIds, e);
+        }
     }
 
     @Override
@@ -92,6 +92,9 @@ public class QuestionServiceImpl extends ServiceImpl<QuestionMapper, Question> i
                 .setAnswer(questionDTO.getAnswer())
                 .setOptions(questionDTO.getOptions());
         detailService.updateById(detail);
+
+        // 3.题目分数可能变化，通知引用了题目的业务
+        bizService.publishBizChangeOfQuestion(question.getId());
     }
 
     @Override
@@ -6,6 +6,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.List;
 
@@ -35,6 +36,15 @@ public interface PayClient {
     @GetMapping("/pay-orders/{bizOrderId}/status")
     PayResultDTO queryPayResult(@PathVariable("bizOrderId") Long bizOrderId);
 
+    /**
+     * 根据业务端订单id批量查询支付结果
+     *
+     * @param bizOrderIds 业务订单id集合
+     * @return 支付结果，不存在支付单的订单不会出现在结果中
+     */
+    @GetMapping("/pay-orders/status/list")
+    List<PayResultDTO> queryPayResults(@RequestParam("ids") Iterable<Long> bizOrderIds);
+
     /**
      * 申请退款接口
      *
@@ -52,4 +62,13 @@ public interface PayClient {
      */
     @GetMapping("/refund-orders/{bizRefundOrderId}/status")
     RefundResultDTO queryRefundResult(@PathVariable("bizRefundOrderId") Long bizRefundOrderId);
+
+    /**
+     * 批量查询退款结果，只读取支付中心记录的状态，不会逐个查询第三方渠道
+     *
+     * @param bizRefundOrderIds 要退款的订单id集合
+     * @return 退款结果，不存在退款单的订单不会出现在结果中
+     */
+    @GetMapping("/refund-orders/status/list")
+    List<RefundResultDTO> queryRefundResults(@RequestParam("ids") Iterable<Long> bizRefundOrderIds);
 }
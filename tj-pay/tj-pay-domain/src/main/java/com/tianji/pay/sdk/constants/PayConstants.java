@@ -3,14 +3,20 @@ package com.tianji.pay.sdk.constants;
 public interface PayConstants {
     String ALI_CHANNEL_CODE = "aliPay";
     String WX_CHANNEL_CODE = "wxPay";
+    /**
+     * 本地模拟支付渠道，仅用于压测，不会真正发起支付
+     */
+    String FAKE_CHANNEL_CODE = "fakePay";
 
     /**
      * redis key前缀
      */
    interface RedisKeyFormatter {
         String PAY_APPLY = "pay:apply:bizOrderNo:#{payApplyDTO.bizOrderNo}";
-        String PAY_NOTIFY = "pay:notify:payOrderNo:#{tradingOrderNo}";
+        String PAY_NOTIFY_DONE = "pay:notify:done:";
+        String PAY_EVENT_OUTBOX_LOCK = "pay:event:outbox:lock";
         String PAY_ORDER_CHECK_TASK = "pay:notify:payOrderNo:#{payOrder.payOrderNo}";
+        String PAY_CHECK_RATE_LIMITER = "pay:check:limiter:";
 
         String REFUND_APPLY = "pay:refund:bizOrderNo:#{refundApplyDTO.bizOrderNo}";
 
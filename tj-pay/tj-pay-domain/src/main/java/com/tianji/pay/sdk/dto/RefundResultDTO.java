@@ -21,6 +21,8 @@ public class RefundResultDTO {
     private int status;
     @ApiModelProperty("支付失败原因")
     private String msg;
+    @ApiModelProperty("退款失败时渠道返回的错误码")
+    private String code;
     @ApiModelProperty("业务端支付订单号")
     private Long bizPayOrderId;
     @ApiModelProperty("业务端退款订单号")
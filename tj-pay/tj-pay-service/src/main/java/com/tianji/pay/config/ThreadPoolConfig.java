@@ -0,0 +1,44 @@
+package com.tianji.pay.config;
+
+import com.tianji.pay.third.CommonPayProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ThreadPoolConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor payOrderCheckExecutor(CommonPayProperties payProperties){
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 线程数即查询渠道的最大并发数
+        int concurrency = payProperties.getCheck().getConcurrency();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        // 队列很小，满了由对账线程自己查询，从而限制同时在途的查询数量
+        executor.setQueueCapacity(concurrency * 2);
+        //配置线程池中的线程的名称前缀
+        executor.setThreadNamePrefix("pay-order-check-");
+        // 由调用者线程执行
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor payEventRelayExecutor(){
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 投递本身有分布式锁，单线程即可
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        // 已经有一个投递任务在排队时，新的触发可以直接丢弃，排队的任务会一并投递
+        executor.setQueueCapacity(1);
+        //配置线程池中的线程的名称前缀
+        executor.setThreadNamePrefix("pay-event-relay-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
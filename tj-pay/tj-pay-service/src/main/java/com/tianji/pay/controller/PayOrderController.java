@@ -13,6 +13,8 @@ import io.swagger.annotations.ApiParam;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 /**
  * <p>
  * 支付订单 前端控制器
@@ -45,4 +47,12 @@ public class PayOrderController {
     ){
         return payOrderService.queryPayResult(bizOrderId);
     }
+
+    @ApiOperation("根据业务端订单id批量查询支付结果")
+    @GetMapping("/status/list")
+    public List<PayResultDTO> queryPayResults(
+            @ApiParam("业务订单id集合") @RequestParam("ids") List<Long> bizOrderIds
+    ){
+        return payOrderService.queryPayResults(bizOrderIds);
+    }
 }
@@ -10,6 +10,8 @@ import io.swagger.annotations.ApiParam;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 /**
  * <p>
  * 退款订单 前端控制器
@@ -39,6 +41,13 @@ public class RefundOrderController {
         return refundOrderService.queryRefundResult(bizRefundOrderId);
     }
 
+    @GetMapping("status/list")
+    @ApiOperation("批量查询退款结果")
+    public List<RefundResultDTO> queryRefundResults(
+            @ApiParam("业务端退款的子订单id集合") @RequestParam("ids") List<Long> bizRefundOrderIds) {
+        return refundOrderService.queryRefundResults(bizRefundOrderIds);
+    }
+
 /*    @GetMapping("{bizRefundOrderId}/detail")
     @ApiOperation("查询退款详情")
     public RefundResultDTO queryRefundDetail(
@@ -0,0 +1,67 @@
+package com.tianji.pay.domain.po;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.tianji.common.autoconfigure.mq.OutboxEvent;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 支付事件发件箱，与支付单状态在同一个事务中写入，由投递任务按id顺序发送到mq
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("pay_event_outbox")
+public class PayEventOutbox implements Serializable, OutboxEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 自增id，决定投递顺序
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 交换机
+     */
+    private String exchange;
+
+    /**
+     * 路由key
+     */
+    private String routingKey;
+
+    /**
+     * 支付单号，投递时根据支付单组装消息
+     */
+    private Long payOrderNo;
+
+    /**
+     * 状态，0：待投递，1：已投递
+     */
+    private Integer status;
+
+    /**
+     * 投递失败次数
+     */
+    private Integer retryTimes;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,36 @@
+package com.tianji.pay.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.common.autoconfigure.mq.OutboxMapper;
+import com.tianji.pay.domain.po.PayEventOutbox;
+import org.apache.ibatis.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * <p>
+ * 支付事件发件箱 Mapper 接口
+ * </p>
+ */
+public interface PayEventOutboxMapper extends BaseMapper<PayEventOutbox>, OutboxMapper<PayEventOutbox> {
+
+    @Insert("insert into pay_event_outbox (exchange, routing_key, pay_order_no, status, retry_times) " +
+            "values (#{exchange}, #{routingKey}, #{payOrderNo}, 0, 0)")
+    int insertEvent(@Param("exchange") String exchange, @Param("routingKey") String routingKey,
+                    @Param("payOrderNo") Long payOrderNo);
+
+    @Select("select id, exchange, routing_key, pay_order_no, status, retry_times from pay_event_outbox " +
+            "where status = 0 order by id limit #{limit}")
+    List<PayEventOutbox> queryPending(@Param("limit") int limit);
+
+    @Update("<script>update pay_event_outbox set status = 1 where id in " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int markSent(@Param("ids") List<Long> ids);
+
+    @Update("update pay_event_outbox set retry_times = retry_times + 1 where id = #{id}")
+    int incrRetryTimes(@Param("id") Long id);
+
+    @Delete("delete from pay_event_outbox where status = 1 and update_time < #{time} limit #{limit}")
+    int deleteSentBefore(@Param("time") LocalDateTime time, @Param("limit") int limit);
+}
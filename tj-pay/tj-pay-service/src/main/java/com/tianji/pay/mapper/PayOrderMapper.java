@@ -2,6 +2,9 @@ package com.tianji.pay.mapper;
 
 import com.tianji.pay.domain.po.PayOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,17 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface PayOrderMapper extends BaseMapper<PayOrder> {
 
+    /**
+     * 按id哈希分片，游标分页查询指定状态的支付单
+     */
+    List<PayOrder> queryPayingOrdersAfter(@Param("status") int status, @Param("shardIndex") int shardIndex,
+                                          @Param("shardTotal") int shardTotal, @Param("lastId") long lastId,
+                                          @Param("limit") int limit);
+
+    List<Long> lockPayingByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 批量写入对账结果，只修改未提交或待支付的支付单
+     */
+    int batchUpdateCheckResults(@Param("orders") List<PayOrder> orders);
 }
@@ -0,0 +1,30 @@
+package com.tianji.pay.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.tianji.pay.domain.po.PayEventOutbox;
+
+/**
+ * <p>
+ * 支付事件发件箱 服务类
+ * </p>
+ */
+public interface IPayEventOutboxService extends IService<PayEventOutbox> {
+
+    /**
+     * 在当前事务中写入支付事件，事务提交后立即触发一次投递
+     * @param exchange 交换机
+     * @param routingKey 路由key
+     * @param payOrderNo 支付单号
+     */
+    void saveEvent(String exchange, String routingKey, Long payOrderNo);
+
+    /**
+     * 按id顺序投递待发送的事件，同一时间只有一个节点在投递
+     */
+    void relay();
+
+    /**
+     * 清理已投递的历史事件
+     */
+    void cleanSentEvents();
+}
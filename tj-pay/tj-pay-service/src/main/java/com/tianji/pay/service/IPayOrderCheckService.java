@@ -0,0 +1,17 @@
+package com.tianji.pay.service;
+
+/**
+ * 支付单对账服务，主动查询渠道，修正未收到回调的支付单状态
+ */
+public interface IPayOrderCheckService {
+
+    /**
+     * 对账一个分片内的所有待支付订单
+     *
+     * @param shardIndex 分片序号，从0开始
+     * @param shardTotal 分片总数
+     * @param size 每批查询的支付单数量
+     * @return 本次检查的支付单数量
+     */
+    int checkShard(int shardIndex, int shardTotal, int size);
+}
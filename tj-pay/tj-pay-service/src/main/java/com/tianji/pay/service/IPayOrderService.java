@@ -1,12 +1,12 @@
 package com.tianji.pay.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
-import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.pay.domain.po.PayOrder;
 import com.tianji.pay.sdk.dto.PayApplyDTO;
 import com.tianji.pay.sdk.dto.PayResultDTO;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * <p>
@@ -24,11 +24,13 @@ public interface IPayOrderService extends IService<PayOrder> {
 
     PayResultDTO queryPayResult(Long bizOrderId);
 
+    List<PayResultDTO> queryPayResults(List<Long> bizOrderIds);
+
     PayOrder queryByPayOrderNo(Long payOrderNo);
 
-    boolean markPayOrderSuccess(Long id, LocalDateTime successTime);
+    boolean markPayOrderSuccess(Long payOrderNo, Integer amount, LocalDateTime successTime);
 
-    PageDTO<PayOrder> queryPayingOrderByPage(int page, int size);
+    List<PayOrder> queryPayingOrdersAfter(int shardIndex, int shardTotal, long lastId, int size);
 
-    void checkPayOrder(PayOrder payOrder);
+    List<PayOrder> applyCheckResults(List<PayOrder> results);
 }
@@ -6,6 +6,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.tianji.pay.sdk.dto.RefundApplyDTO;
 import com.tianji.pay.sdk.dto.RefundResultDTO;
 
+import java.util.List;
+
 /**
  * <p>
  * 退款订单 服务类
@@ -20,6 +22,8 @@ public interface IRefundOrderService extends IService<RefundOrder> {
 
     RefundResultDTO queryRefundResult(Long bizRefundOrderId);
 
+    List<RefundResultDTO> queryRefundResults(List<Long> bizRefundOrderIds);
+
     RefundOrder queryByRefundOrderNo(Long refundOrderNo);
 
     PageDTO<RefundOrder> queryRefundingOrderByPage(int pageNo, int size);
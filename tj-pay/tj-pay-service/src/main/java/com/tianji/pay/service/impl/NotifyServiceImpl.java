@@ -4,11 +4,11 @@ import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import com.alipay.easysdk.factory.Factory;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
-import com.tianji.common.autoconfigure.redisson.annotations.Lock;
 import com.tianji.common.constants.MqConstants;
 import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.exceptions.CommonException;
+import com.tianji.common.utils.BooleanUtils;
 import com.tianji.common.utils.DateUtils;
 import com.tianji.common.utils.JsonUtils;
 import com.tianji.common.utils.StringUtils;
@@ -16,7 +16,6 @@ import com.tianji.pay.domain.po.PayOrder;
 import com.tianji.pay.domain.po.RefundOrder;
 import com.tianji.pay.sdk.constants.PayConstants;
 import com.tianji.pay.sdk.constants.PayErrorInfo;
-import com.tianji.pay.sdk.dto.PayResultDTO;
 import com.tianji.pay.sdk.dto.RefundResultDTO;
 import com.tianji.pay.service.INotifyService;
 import com.tianji.pay.service.IPayOrderService;
@@ -34,10 +33,12 @@ import com.wechat.pay.contrib.apache.httpclient.notification.NotificationHandler
 import com.wechat.pay.contrib.apache.httpclient.notification.NotificationRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Map;
 
@@ -50,6 +51,12 @@ public class NotifyServiceImpl implements INotifyService {
     private final IPayOrderService payOrderService;
     private final RabbitMqHelper rabbitMqHelper;
     private final IRefundOrderService refundOrderService;
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 已处理的支付通知标记的有效期，覆盖支付平台的通知重试周期
+     */
+    private static final Duration NOTIFY_DONE_TTL = Duration.ofDays(1);
 
     @Override
     public void handleWxPayNotify(NotificationRequest request) {
@@ -73,20 +80,8 @@ public class NotifyServiceImpl implements INotifyService {
         // 3.3.订单支付时间
         LocalDateTime successTime = data.getLocalDateTime("success_time", LocalDateTime.now());
 
-        // 4.校验通知数据，主要是业务校验、幂等校验
-        PayOrder payOrder = checkNotifyData(tradingOrderNo, amount, successTime);
-        if (payOrder == null) return;
-
-        // 5.通知业务服务
-        rabbitMqHelper.send(
-                MqConstants.Exchange.PAY_EXCHANGE,
-                MqConstants.Key.PAY_SUCCESS,
-                PayResultDTO.builder()
-                        .payChannel(payOrder.getPayChannelCode())
-                        .payOrderNo(payOrder.getPayOrderNo())
-                        .bizOrderId(payOrder.getBizOrderNo())
-                        .successTime(successTime)
-                        .build());
+        // 4.校验通知数据，更新支付单状态，由发件箱异步通知业务服务
+        handlePaySuccessNotify(tradingOrderNo, amount, successTime);
     }
 
 
@@ -158,21 +153,8 @@ public class NotifyServiceImpl implements INotifyService {
         LocalDateTime successTime = StringUtils.isBlank(success_time) ?
                 LocalDateTime.now() : DateUtils.parse(success_time, DateUtils.DEFAULT_DATE_TIME_FORMAT);
 
-        // 4.校验通知数据，主要是业务校验、幂等校验
-        PayOrder payOrder = checkNotifyData(tradingOrderNo, amount, successTime);
-        if (payOrder == null) return;
-
-        // 5.通知业务服务
-        rabbitMqHelper.send(
-                MqConstants.Exchange.PAY_EXCHANGE,
-                MqConstants.Key.PAY_SUCCESS,
-                PayResultDTO.builder()
-                        .payOrderNo(payOrder.getPayOrderNo())
-                        .payChannel(payOrder.getPayChannelCode())
-                        .bizOrderId(payOrder.getBizOrderNo())
-                        .successTime(successTime)
-                        .build()
-        );
+        // 4.校验通知数据，更新支付单状态，由发件箱异步通知业务服务
+        handlePaySuccessNotify(tradingOrderNo, amount, successTime);
     }
 
 
@@ -251,44 +233,55 @@ public class NotifyServiceImpl implements INotifyService {
         }
     }
 
-    @Nullable
-    @Lock(name = PayConstants.RedisKeyFormatter.PAY_NOTIFY)
-    private PayOrder checkNotifyData(Long tradingOrderNo, Integer amount, LocalDateTime successTime) {
+    private void handlePaySuccessNotify(Long tradingOrderNo, Integer amount, LocalDateTime successTime) {
         // 1.数据非空校验
         if (tradingOrderNo == null || amount == null) {
             throw new BadRequestException(400, PayErrorInfo.INVALID_NOTIFY_PARAM);
         }
         log.info("支付回调通知：payOrderNo = {},  amount = {}", tradingOrderNo, amount);
 
-        // 2.查询交易单，幂等校验
+        // 2.已经处理过的通知直接返回，重复通知无需访问数据库
+        String doneKey = PayConstants.RedisKeyFormatter.PAY_NOTIFY_DONE + tradingOrderNo;
+        if (BooleanUtils.isTrue(redisTemplate.hasKey(doneKey))) {
+            log.debug("支付回调通知的支付单{}已经处理过，属于重复通知", tradingOrderNo);
+            return;
+        }
+
+        // 3.更新支付单状态并写入发件箱，基于状态和金额做原子的幂等处理
+        if (payOrderService.markPayOrderSuccess(tradingOrderNo, amount, successTime)) {
+            markNotifyDone(doneKey);
+            return;
+        }
+
+        // 4.更新失败，查询支付单判断原因
         PayOrder payOrder = payOrderService.queryByPayOrderNo(tradingOrderNo);
-        // 2.1.非空校验
+        // 4.1.非空校验
         if (payOrder == null) {
             log.error("支付回调通知的支付单{}不存在", tradingOrderNo);
-            return null;
+            return;
         }
-        // 2.2.支付单如果是已支付或已关闭，则不能重复处理
+        // 4.2.支付单如果是已支付或已关闭，则不能重复处理
         if (payOrder.success() || payOrder.closed()) {
             log.error("支付回调通知的支付单{}已经支付或已经关闭，属于重复通知", tradingOrderNo);
-            return null;
+            markNotifyDone(doneKey);
+            return;
         }
-
-        // 3.校验支付金额
+        // 4.3.校验支付金额
         if (!payOrder.getAmount().equals(amount)) {
             // 金额有误
             log.error("支付回调通知的金额有误，支付单号：{}，通知金额：{}， 实际金额：{}",
                     tradingOrderNo, amount, payOrder.getAmount());
             throw new BizIllegalException("微信通知的金额有误");
         }
+    }
 
-        // 4.更新订单状态，同时基于乐观锁做幂等处理
-        boolean success = payOrderService.markPayOrderSuccess(payOrder.getId(), successTime);
-        if (!success) {
-            // 如果更新失败，说明是重复通知
-            return null;
+    private void markNotifyDone(String doneKey) {
+        try {
+            redisTemplate.opsForValue().set(doneKey, "1", NOTIFY_DONE_TTL);
+        } catch (Exception e) {
+            // 标记失败不影响结果，重复通知会由数据库的状态判断兜底
+            log.error("标记支付通知已处理失败，key：{}", doneKey, e);
         }
-
-        return payOrder;
     }
 
 }
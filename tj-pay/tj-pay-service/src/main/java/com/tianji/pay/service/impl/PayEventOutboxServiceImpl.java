@@ -0,0 +1,105 @@
+package com.tianji.pay.service.impl;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.tianji.common.autoconfigure.mq.OutboxRelay;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.pay.domain.po.PayEventOutbox;
+import com.tianji.pay.domain.po.PayOrder;
+import com.tianji.pay.mapper.PayEventOutboxMapper;
+import com.tianji.pay.mapper.PayOrderMapper;
+import com.tianji.pay.sdk.constants.PayConstants;
+import com.tianji.pay.sdk.dto.PayResultDTO;
+import com.tianji.pay.service.IPayEventOutboxService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * 支付事件发件箱 服务实现类
+ * </p>
+ */
+@Slf4j
+@Service
+public class PayEventOutboxServiceImpl extends ServiceImpl<PayEventOutboxMapper, PayEventOutbox> implements IPayEventOutboxService {
+
+    @Autowired
+    private RabbitMqHelper rabbitMqHelper;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private PayOrderMapper payOrderMapper;
+
+    @Autowired
+    @Qualifier("payEventRelayExecutor")
+    private Executor payEventRelayExecutor;
+
+    private OutboxRelay<PayEventOutbox> outboxRelay;
+
+    @PostConstruct
+    public void initOutboxRelay() {
+        outboxRelay = new OutboxRelay<>(PayConstants.RedisKeyFormatter.PAY_EVENT_OUTBOX_LOCK, baseMapper,
+                this::toPayResults, rabbitMqHelper, redissonClient, payEventRelayExecutor);
+    }
+
+    @Override
+    public void saveEvent(String exchange, String routingKey, Long payOrderNo) {
+        // 1.与支付单状态在同一个事务中写入发件箱
+        baseMapper.insertEvent(exchange, routingKey, payOrderNo);
+        // 2.事务提交后异步触发投递，回调请求无需等待mq
+        outboxRelay.relayAfterCommit();
+    }
+
+    @Override
+    public void relay() {
+        outboxRelay.relay();
+    }
+
+    /**
+     * 批量查询事件对应的支付单，转换为支付结果，支付单不存在的事件没有消息内容，不再投递
+     */
+    private Map<Long, PayResultDTO> toPayResults(List<PayEventOutbox> events) {
+        List<Long> payOrderNos = events.stream().map(PayEventOutbox::getPayOrderNo).collect(Collectors.toList());
+        Map<Long, PayOrder> payOrderMap = payOrderMapper.selectList(
+                Wrappers.<PayOrder>lambdaQuery().in(PayOrder::getPayOrderNo, payOrderNos))
+                .stream().collect(Collectors.toMap(PayOrder::getPayOrderNo, Function.identity()));
+        Map<Long, PayResultDTO> results = new HashMap<>(events.size());
+        for (PayEventOutbox event : events) {
+            PayOrder payOrder = payOrderMap.get(event.getPayOrderNo());
+            if (payOrder == null) {
+                log.error("支付事件对应的支付单不存在，id：{}，payOrderNo：{}", event.getId(), event.getPayOrderNo());
+                continue;
+            }
+            results.put(event.getId(), toPayResult(payOrder));
+        }
+        return results;
+    }
+
+    private PayResultDTO toPayResult(PayOrder payOrder) {
+        return PayResultDTO.builder()
+                .status(PayResultDTO.SUCCESS)
+                .payChannel(payOrder.getPayChannelCode())
+                .payOrderNo(payOrder.getPayOrderNo())
+                .bizOrderId(payOrder.getBizOrderNo())
+                .successTime(payOrder.getPaySuccessTime())
+                .build();
+    }
+
+    @Override
+    public void cleanSentEvents() {
+        outboxRelay.cleanSentEvents();
+    }
+}
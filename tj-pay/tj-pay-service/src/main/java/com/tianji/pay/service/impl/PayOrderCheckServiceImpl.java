@@ -0,0 +1,154 @@
+package com.tianji.pay.service.impl;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.pay.constants.NotifyStatus;
+import com.tianji.pay.domain.po.PayOrder;
+import com.tianji.pay.sdk.constants.PayConstants;
+import com.tianji.pay.service.IPayOrderCheckService;
+import com.tianji.pay.service.IPayOrderService;
+import com.tianji.pay.third.CommonPayProperties;
+import com.tianji.pay.third.IPayService;
+import com.tianji.pay.third.model.PayStatus;
+import com.tianji.pay.third.model.PayStatusResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RRateLimiter;
+import org.redisson.api.RateIntervalUnit;
+import org.redisson.api.RateType;
+import org.redisson.api.RedissonClient;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PayOrderCheckServiceImpl implements IPayOrderCheckService {
+
+    @Resource
+    private Map<String, IPayService> payServiceChannels;
+    private final IPayOrderService payOrderService;
+    private final RedissonClient redissonClient;
+    private final CommonPayProperties payProperties;
+    private final ThreadPoolTaskExecutor payOrderCheckExecutor;
+
+    /**
+     * 每个渠道的限流器，基于redis实现，所有分片共享同一个渠道的查询配额
+     */
+    private final Map<String, RRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+    @Override
+    public int checkShard(int shardIndex, int shardTotal, int size) {
+        long lastId = 0;
+        int total = 0;
+        // 按id游标分批处理，直到分片内的支付单全部检查完
+        while (true) {
+            List<PayOrder> payOrders = payOrderService.queryPayingOrdersAfter(shardIndex, shardTotal, lastId, size);
+            if (CollUtils.isEmpty(payOrders)) {
+                break;
+            }
+            checkPayOrders(payOrders);
+            total += payOrders.size();
+            if (payOrders.size() < size) {
+                break;
+            }
+            lastId = payOrders.get(payOrders.size() - 1).getId();
+        }
+        return total;
+    }
+
+    private void checkPayOrders(List<PayOrder> payOrders) {
+        LocalDateTime now = LocalDateTime.now();
+        List<PayOrder> results = new ArrayList<>(payOrders.size());
+        List<CompletableFuture<PayOrder>> futures = new ArrayList<>(payOrders.size());
+        for (PayOrder payOrder : payOrders) {
+            // 1.渠道不存在或已超时，直接关闭
+            IPayService payService = payServiceChannels.get(payOrder.getPayChannelCode());
+            if (payService == null) {
+                log.error("支付渠道不存在，业务单号：{}", payOrder.getBizOrderNo());
+                results.add(closeResult(payOrder, "支付渠道不存在"));
+                continue;
+            }
+            if (payOrder.getPayOverTime().isBefore(now)) {
+                log.debug("支付单{}已经超时，关闭订单", payOrder.getPayOrderNo());
+                results.add(closeResult(payOrder, "支付超时"));
+                continue;
+            }
+            // 2.并发查询渠道支付状态
+            futures.add(CompletableFuture.supplyAsync(() -> queryPayStatus(payService, payOrder), payOrderCheckExecutor));
+        }
+        for (CompletableFuture<PayOrder> future : futures) {
+            PayOrder result = future.join();
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        if (results.isEmpty()) {
+            return;
+        }
+        // 3.批量更新状态有变化的支付单，支付成功的由发件箱通知业务服务
+        payOrderService.applyCheckResults(results);
+    }
+
+    private PayOrder queryPayStatus(IPayService payService, PayOrder payOrder) {
+        try {
+            // 1.渠道限流
+            getRateLimiter(payOrder.getPayChannelCode()).acquire();
+            // 2.查询支付状态
+            PayStatusResponse response = payService.queryPayOrderStatus(payOrder.getPayOrderNo().toString());
+            Integer payStatus = response.getPayStatus();
+            // 2.1.查询异常、正在支付或状态没有变更，无需处理
+            if (!response.isSuccess() || PayStatus.WAIT_BUYER_PAY.equalsValue(payStatus)
+                    || payStatus == null || payStatus.equals(payOrder.getStatus())) {
+                return null;
+            }
+            // 2.2.状态是支付成功或失败
+            PayOrder result = copyKeys(payOrder);
+            result.setStatus(payStatus);
+            result.setResultCode(response.getCode() == null ? "" : response.getCode());
+            result.setResultMsg(response.getMsg() == null ? "" : response.getMsg());
+            if (PayStatus.TRADE_SUCCESS.equalsValue(payStatus)) {
+                result.setPaySuccessTime(response.getSuccessTime());
+                result.setNotifyStatus(NotifyStatus.CALLING.getValue());
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("查询支付单{}状态异常：", payOrder.getPayOrderNo(), e);
+            return null;
+        }
+    }
+
+    private RRateLimiter getRateLimiter(String channel) {
+        return rateLimiters.computeIfAbsent(channel, c -> {
+            CommonPayProperties.CheckProperties check = payProperties.getCheck();
+            int rate = check.getRateLimits().getOrDefault(c, check.getDefaultRateLimit());
+            RRateLimiter limiter = redissonClient.getRateLimiter(PayConstants.RedisKeyFormatter.PAY_CHECK_RATE_LIMITER + c);
+            limiter.trySetRate(RateType.OVERALL, rate, 1, RateIntervalUnit.SECONDS);
+            return limiter;
+        });
+    }
+
+    private PayOrder closeResult(PayOrder payOrder, String msg) {
+        PayOrder result = copyKeys(payOrder);
+        result.setStatus(PayStatus.TRADE_CLOSED.getValue());
+        result.setResultCode("");
+        result.setResultMsg(msg);
+        return result;
+    }
+
+    private PayOrder copyKeys(PayOrder payOrder) {
+        PayOrder result = new PayOrder();
+        result.setId(payOrder.getId());
+        result.setPayOrderNo(payOrder.getPayOrderNo());
+        result.setBizOrderNo(payOrder.getBizOrderNo());
+        result.setPayChannelCode(payOrder.getPayChannelCode());
+        return result;
+    }
+}
@@ -1,17 +1,13 @@
 package com.tianji.pay.service.impl;
 
-import com.baomidou.mybatisplus.core.metadata.OrderItem;
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.autoconfigure.redisson.annotations.Lock;
-import com.tianji.common.autoconfigure.redisson.enums.LockStrategy;
 import com.tianji.common.constants.MqConstants;
-import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.utils.BeanUtils;
+import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.StringUtils;
 import com.tianji.pay.constants.NotifyStatus;
 import com.tianji.pay.domain.po.PayOrder;
@@ -20,6 +16,7 @@ import com.tianji.pay.sdk.constants.PayConstants;
 import com.tianji.pay.sdk.constants.PayErrorInfo;
 import com.tianji.pay.sdk.dto.PayApplyDTO;
 import com.tianji.pay.sdk.dto.PayResultDTO;
+import com.tianji.pay.service.IPayEventOutboxService;
 import com.tianji.pay.service.IPayOrderService;
 import com.tianji.pay.third.IPayService;
 import com.tianji.pay.third.model.PayStatus;
@@ -28,10 +25,15 @@ import com.tianji.pay.third.model.PrepayResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.tianji.pay.sdk.constants.PayErrorInfo.*;
 
@@ -50,10 +52,10 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
 
     @Resource
     private Map<String, IPayService> payServiceChannels;
-    private final RabbitMqHelper rabbitMqHelper;
+    private final IPayEventOutboxService payEventOutboxService;
 
     @Override
-    @Lock(name = PayConstants.RedisKeyFormatter.PAY_APPLY, leaseTime = 3, autoUnlock = false)
+    @Lock(name = PayConstants.RedisKeyFormatter.PAY_APPLY, leaseTime = 3, autoUnlock = false, localFirst = true)
     public String applyPayOrder(PayApplyDTO payApplyDTO) {
         log.debug("准备创建支付单，业务订单号：{}", payApplyDTO.getBizOrderNo());
         // 1.选择支付渠道
@@ -161,23 +163,42 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
             throw new BizIllegalException(PAY_ORDER_NOT_FOUND);
         }
         // 2.判断支付状态
+        return toPayResult(payOrder);
+    }
+
+    @Override
+    public List<PayResultDTO> queryPayResults(List<Long> bizOrderIds) {
+        if (CollUtils.isEmpty(bizOrderIds)) {
+            return CollUtils.emptyList();
+        }
+        // 1.批量查询支付单
+        List<PayOrder> payOrders = lambdaQuery().in(PayOrder::getBizOrderNo, bizOrderIds).list();
+        // 2.转换支付结果
+        return payOrders.stream().map(this::toPayResult).collect(Collectors.toList());
+    }
+
+    private PayResultDTO toPayResult(PayOrder payOrder) {
         if (payOrder.success()) {
-            // 2.1.支付成功
+            // 1.支付成功
             return PayResultDTO.builder()
+                    .status(PayResultDTO.SUCCESS)
+                    .bizOrderId(payOrder.getBizOrderNo())
                     .payOrderNo(payOrder.getPayOrderNo())
                     .successTime(payOrder.getPaySuccessTime())
                     .payChannel(payOrder.getPayChannelCode())
                     .build();
         }
-        // 2.2.未支付
+        // 2.未支付
         if (payOrder.notCommit() || payOrder.waitBuyerPay()) {
             return PayResultDTO.builder()
                     .status(PayStatus.WAIT_BUYER_PAY.getValue())
+                    .bizOrderId(payOrder.getBizOrderNo())
                     .build();
         }
-        // 2.2.支付失败
+        // 3.支付失败
         return PayResultDTO.builder()
                 .status(PayStatus.TRADE_CLOSED.getValue())
+                .bizOrderId(payOrder.getBizOrderNo())
                 .msg(payOrder.getResultMsg())
                 .build();
     }
@@ -188,93 +209,56 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
     }
 
     @Override
-    public boolean markPayOrderSuccess(Long id, LocalDateTime successTime) {
-        return lambdaUpdate()
+    @Transactional
+    public boolean markPayOrderSuccess(Long payOrderNo, Integer amount, LocalDateTime successTime) {
+        // 1.原子的状态变更，支付单号、金额和状态都匹配才会更新，重复通知不会重复更新
+        boolean success = lambdaUpdate()
                 .set(PayOrder::getStatus, PayStatus.TRADE_SUCCESS.getValue())
                 .set(PayOrder::getNotifyStatus, NotifyStatus.CALLING.getValue())
                 .set(PayOrder::getPaySuccessTime, successTime)
-                .eq(PayOrder::getId, id)
+                .eq(PayOrder::getPayOrderNo, payOrderNo)
+                .eq(PayOrder::getAmount, amount)
                 // 支付状态的乐观锁判断
                 .in(PayOrder::getStatus, PayStatus.NOT_COMMIT.getValue(), PayStatus.WAIT_BUYER_PAY.getValue())
                 .update();
+        if (!success) {
+            return false;
+        }
+        // 2.同一个事务中写入发件箱，由投递任务通知业务服务
+        payEventOutboxService.saveEvent(MqConstants.Exchange.PAY_EXCHANGE, MqConstants.Key.PAY_SUCCESS, payOrderNo);
+        return true;
     }
 
     @Override
-    public PageDTO<PayOrder> queryPayingOrderByPage(int pageNo, int size) {
-        // 1.分页和排序条件
-        Page<PayOrder> page = new Page<>(pageNo, size);
-        page.addOrder(new OrderItem("id", true));
-        // 2.查询
-        Page<PayOrder> result = lambdaQuery()
-                .eq(PayOrder::getStatus, PayStatus.WAIT_BUYER_PAY.getValue())
-                .page(page);
-        return PageDTO.of(result);
+    public List<PayOrder> queryPayingOrdersAfter(int shardIndex, int shardTotal, long lastId, int size) {
+        return getBaseMapper().queryPayingOrdersAfter(
+                PayStatus.WAIT_BUYER_PAY.getValue(), shardIndex, shardTotal, lastId, size);
     }
 
     @Override
-    @Lock(name = PayConstants.RedisKeyFormatter.PAY_ORDER_CHECK_TASK, lockStrategy = LockStrategy.SKIP_AFTER_RETRY_TIMEOUT)
-    public void checkPayOrder(PayOrder payOrder) {
-        // 1.选择支付渠道
-        IPayService payService = payServiceChannels.get(payOrder.getPayChannelCode());
-        if (payService == null) {
-            log.error("支付渠道不存在，业务单号：{}", payOrder.getBizOrderNo());
-            // 异常订单，需要关闭支付单
-            closeOrder(payOrder.getId());
-            return;
-        }
-        // 2.判断订单是否超时
-        if (payOrder.getPayOverTime().isBefore(LocalDateTime.now())) {
-            log.debug("支付单{}已经超时，关闭订单", payOrder.getPayOrderNo());
-            closeOrder(payOrder.getId());
-            return;
-        }
-        // 3.查询支付状态
-        PayStatusResponse response = payService.queryPayOrderStatus(payOrder.getPayOrderNo().toString());
-        Integer payStatus = response.getPayStatus();
-        // 3.1.判断是否查询失败或者正在支付
-        if (!response.isSuccess() || PayStatus.WAIT_BUYER_PAY.equalsValue(payStatus)) {
-            // 查询异常或正在支付，结束
-            return;
+    @Transactional
+    public List<PayOrder> applyCheckResults(List<PayOrder> results) {
+        if (CollUtils.isEmpty(results)) {
+            return CollUtils.emptyList();
         }
-        // 3.2.判断支付状态是否变更
-        if (payStatus.equals(payOrder.getStatus())) {
-            // 支付状态没有变更
-            return;
+        // 1.锁定仍未支付的支付单，已被支付回调等处理过的支付单不再修改
+        List<Long> ids = results.stream().map(PayOrder::getId).collect(Collectors.toList());
+        Set<Long> payingIds = new HashSet<>(getBaseMapper().lockPayingByIds(ids));
+        List<PayOrder> changes = results.stream()
+                .filter(r -> payingIds.contains(r.getId()))
+                .collect(Collectors.toList());
+        if (changes.isEmpty()) {
+            return changes;
         }
-        // 3.3.状态是支付成功或失败，直接更新订单状态
-        updatePayStatus2DB(response, payOrder.getId());
-        // 3.4.判断状态是否是成功，成功需要发送MQ消息通知
-        if (PayStatus.TRADE_SUCCESS.equalsValue(response.getPayStatus())) {
-            rabbitMqHelper.send(
-                    MqConstants.Exchange.PAY_EXCHANGE,
-                    MqConstants.Key.PAY_SUCCESS,
-                    PayResultDTO.builder()
-                            .payOrderNo(payOrder.getPayOrderNo())
-                            .bizOrderId(payOrder.getBizOrderNo())
-                            .payChannel(payOrder.getPayChannelCode())
-                            .successTime(response.getSuccessTime())
-                            .build()
-            );
+        // 2.一条语句批量更新
+        getBaseMapper().batchUpdateCheckResults(changes);
+        // 3.支付成功的写入发件箱
+        for (PayOrder change : changes) {
+            if (PayStatus.TRADE_SUCCESS.equalsValue(change.getStatus())) {
+                payEventOutboxService.saveEvent(
+                        MqConstants.Exchange.PAY_EXCHANGE, MqConstants.Key.PAY_SUCCESS, change.getPayOrderNo());
+            }
         }
-    }
-
-    private void updatePayStatus2DB(PayStatusResponse response, Long id) {
-        try {
-            lambdaUpdate()
-                    .set(PayOrder::getStatus, response.getPayStatus())
-                    .set(PayOrder::getResultCode, response.getCode() == null ? "" : response.getCode())
-                    .set(PayOrder::getResultMsg, response.getMsg() == null ? "" : response.getMsg())
-                    .eq(PayOrder::getId, id)
-                    .update();
-        } catch (Exception e) {
-            log.error("更新支付单结果到数据时发生异常", e);
-        }
-    }
-
-    private void closeOrder(Long id) {
-        PayOrder payOrder = new PayOrder();
-        payOrder.setId(id);
-        payOrder.setStatus(PayStatus.TRADE_CLOSED.getValue());
-        updateById(payOrder);
+        return changes;
     }
 }
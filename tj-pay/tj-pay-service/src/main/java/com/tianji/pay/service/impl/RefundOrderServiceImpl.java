@@ -11,6 +11,7 @@ import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.utils.BeanUtils;
+import com.tianji.common.utils.CollUtils;
 import com.tianji.pay.domain.po.PayOrder;
 import com.tianji.pay.domain.po.RefundOrder;
 import com.tianji.pay.mapper.RefundOrderMapper;
@@ -28,6 +29,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static com.tianji.pay.sdk.constants.PayErrorInfo.INVALID_PAY_CHANNEL;
@@ -147,6 +150,34 @@ public class RefundOrderServiceImpl extends ServiceImpl<RefundOrderMapper, Refun
         return null;
     }
 
+    @Override
+    public List<RefundResultDTO> queryRefundResults(List<Long> bizRefundOrderIds) {
+        if (CollUtils.isEmpty(bizRefundOrderIds)) {
+            return CollUtils.emptyList();
+        }
+        // 1.批量查询退款单
+        List<RefundOrder> refundOrders = lambdaQuery().in(RefundOrder::getBizRefundOrderNo, bizRefundOrderIds).list();
+        // 2.转换结果，状态未知的退款单由退款单检查任务去第三方查询，这里统一返回退款中
+        List<RefundResultDTO> results = new ArrayList<>(refundOrders.size());
+        for (RefundOrder refundOrder : refundOrders) {
+            RefundResultDTO.RefundResultDTOBuilder builder;
+            if (refundOrder.success()) {
+                builder = RefundResultDTO.success();
+            } else if (refundOrder.failed()) {
+                builder = RefundResultDTO.failed().msg(refundOrder.getResultMsg());
+            } else {
+                builder = RefundResultDTO.running();
+            }
+            results.add(builder
+                    .refundOrderNo(refundOrder.getRefundOrderNo())
+                    .bizPayOrderId(refundOrder.getBizOrderNo())
+                    .bizRefundOrderId(refundOrder.getBizRefundOrderNo())
+                    .refundChannel(refundOrder.getRefundChannel())
+                    .build());
+        }
+        return results;
+    }
+
     private RefundOrder queryByBizRefundOrder(Long bizRefundOrderId) {
         return lambdaQuery()
                 .eq(RefundOrder::getBizRefundOrderNo, bizRefundOrderId)
@@ -280,7 +311,7 @@ public class RefundOrderServiceImpl extends ServiceImpl<RefundOrderMapper, Refun
 
     private RefundResultDTO transferRefundResult(RefundResponse refundResponse) {
         if (!refundResponse.getSuccess()) {
-            return RefundResultDTO.failed()
+            return RefundResultDTO.failed().code(refundResponse.getCode())
                     .msg(refundResponse.getMsg()).refundChannel(refundResponse.getChannel()).build();
         }
         if (refundResponse.refundSuccess()) {
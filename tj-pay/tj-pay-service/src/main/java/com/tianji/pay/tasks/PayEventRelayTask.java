@@ -0,0 +1,29 @@
+package com.tianji.pay.tasks;
+
+import com.tianji.pay.service.IPayEventOutboxService;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class PayEventRelayTask {
+
+    private final IPayEventOutboxService payEventOutboxService;
+
+    /**
+     * 补偿投递，处理提交后触发失败或投递失败的事件，建议每秒执行一次
+     */
+    @XxlJob("payEventRelayHandler")
+    public void relay() {
+        payEventOutboxService.relay();
+    }
+
+    /**
+     * 清理已投递的历史事件，建议每天凌晨执行
+     */
+    @XxlJob("payEventCleanHandler")
+    public void cleanSentEvents() {
+        payEventOutboxService.cleanSentEvents();
+    }
+}
@@ -4,9 +4,56 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "tj.pay")
 public class CommonPayProperties {
     private String notifyHost;
+    /**
+     * 支付单对账配置
+     */
+    private CheckProperties check = new CheckProperties();
+    /**
+     * 模拟支付渠道配置
+     */
+    private FakeProperties fake = new FakeProperties();
+
+    @Data
+    public static class CheckProperties {
+        /**
+         * 同时查询渠道的最大并发数
+         */
+        private int concurrency = 16;
+        /**
+         * 每个渠道默认每秒最多查询次数
+         */
+        private int defaultRateLimit = 50;
+        /**
+         * 指定渠道每秒最多查询次数，key是渠道编码
+         */
+        private Map<String, Integer> rateLimits = new HashMap<>();
+    }
+
+    @Data
+    public static class FakeProperties {
+        /**
+         * 是否启用模拟渠道
+         */
+        private boolean enabled = false;
+        /**
+         * 模拟的渠道响应耗时，单位毫秒
+         */
+        private long latencyMillis = 50;
+        /**
+         * 查询支付状态时返回支付成功的概率
+         */
+        private double successRate = 0.2;
+        /**
+         * 查询支付状态时返回交易关闭的概率
+         */
+        private double closedRate = 0.1;
+    }
 }
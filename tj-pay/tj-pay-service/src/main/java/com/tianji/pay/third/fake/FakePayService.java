@@ -0,0 +1,99 @@
+package com.tianji.pay.third.fake;
+
+import com.tianji.pay.sdk.constants.PayConstants;
+import com.tianji.pay.third.CommonPayProperties;
+import com.tianji.pay.third.IPayService;
+import com.tianji.pay.third.model.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 本地模拟支付渠道，按配置的耗时和概率返回结果，用于对账等批量任务的压测
+ */
+@Slf4j
+@Service(PayConstants.FAKE_CHANNEL_CODE)
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "tj.pay.fake", name = "enabled", havingValue = "true")
+public class FakePayService implements IPayService {
+
+    private final CommonPayProperties payProperties;
+
+    @Override
+    public PrepayResponse createPrepayOrder(String title, String orderNo, Integer amount) {
+        simulateLatency();
+        return PrepayResponse.builder()
+                .success(true)
+                .payUrl("fake://pay/" + orderNo)
+                .build();
+    }
+
+    @Override
+    public PayStatusResponse queryPayOrderStatus(String payOrderNo) {
+        simulateLatency();
+        CommonPayProperties.FakeProperties fake = payProperties.getFake();
+        double random = ThreadLocalRandom.current().nextDouble();
+        // 1.支付成功
+        if (random < fake.getSuccessRate()) {
+            return PayStatusResponse.builder()
+                    .success(true)
+                    .payOrderNo(payOrderNo)
+                    .payStatus(PayStatus.TRADE_SUCCESS.getValue())
+                    .successTime(LocalDateTime.now())
+                    .build();
+        }
+        // 2.交易关闭
+        if (random < fake.getSuccessRate() + fake.getClosedRate()) {
+            return PayStatusResponse.builder()
+                    .success(true)
+                    .payOrderNo(payOrderNo)
+                    .payStatus(PayStatus.TRADE_CLOSED.getValue())
+                    .code("FAKE_CLOSED")
+                    .msg("模拟交易关闭")
+                    .build();
+        }
+        // 3.等待支付
+        return PayStatusResponse.builder()
+                .success(true)
+                .payOrderNo(payOrderNo)
+                .payStatus(PayStatus.WAIT_BUYER_PAY.getValue())
+                .build();
+    }
+
+    @Override
+    public RefundResponse refundOrder(String payOrderNo, String refundOrderNo, Integer refundAmount, Integer totalAmount) {
+        simulateLatency();
+        return RefundResponse.builder()
+                .success(true)
+                .channel(PayConstants.FAKE_CHANNEL_CODE)
+                .amount(refundAmount)
+                .status(RefundStatus.SUCCESS.getValue())
+                .build();
+    }
+
+    @Override
+    public RefundResponse queryRefundStatus(String orderNo, String refundOrderNo) {
+        simulateLatency();
+        return RefundResponse.builder()
+                .success(true)
+                .channel(PayConstants.FAKE_CHANNEL_CODE)
+                .status(RefundStatus.SUCCESS.getValue())
+                .build();
+    }
+
+    private void simulateLatency() {
+        long latency = payProperties.getFake().getLatencyMillis();
+        if (latency <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.tianji.promotion.config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -34,6 +37,27 @@ public class PromotionConfig {
     }
 
 
+    /**
+     * 兑换码分片写入线程池，队列很小，满了由协调线程自己执行，从而限制内存中同时存在的分片数量
+     */
+    @Bean
+    public Executor exchangeCodeChunkExecutor(){
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 1. 核心线程池大小
+        executor.setCorePoolSize(4);
+        // 2. 最大线程池大小
+        executor.setMaxPoolSize(4);
+        // 3. 队列大小
+        executor.setQueueCapacity(8);
+        // 4. 线程名称
+        executor.setThreadNamePrefix("exchange-code-chunk-");
+        // 5. 拒绝策略
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+
     @Bean
     public Executor calculateSolutionExecutor(){
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -50,4 +74,26 @@ public class PromotionConfig {
         executor.initialize();
         return executor;
     }
-}
\ No newline at end of file
+
+
+    /**
+     * 批量消费的监听容器工厂，攒够一批或者等待超时后，一次性把整批消息交给监听器
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        // 1. 开启批量消费
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        // 2. 每批最多消息数量
+        factory.setBatchSize(200);
+        factory.setPrefetchCount(400);
+        // 3. 不足一批时的最长等待时间
+        factory.setReceiveTimeout(500L);
+        // 4. 批量消费不使用有状态的重试，失败时由监听器逐条处理
+        factory.setAdviceChain();
+        return factory;
+    }
+}
@@ -2,11 +2,38 @@ package com.tianji.promotion.constants;
 
 public interface PromotionConstants {
     String COUPON_CODE_SERIAL_KEY = "coupon:code:serial";   // 自增长id对应的键
-    String COUPON_CODE_MAP_KEY = "coupon:code:map"; // 校验兑换码是否兑换    借助于Redis的Bitmap实现
+    String COUPON_CODE_MAP_KEY = "coupon:code:map:"; // 校验兑换码是否兑换    借助于Redis的Bitmap实现，按优惠券和序列号分段，key后缀为{优惠券id}:段号
+    int COUPON_CODE_MAP_SEGMENT_BITS = 20;  // 每段Bitmap覆盖2^20个序列号，单个key最大128KB
+    String COUPON_CODE_LEGACY_MAP_KEY = "coupon:code:map";  // 分段之前的单个Bitmap，offset为序列号，迁移到分段后不再写入
+    String COUPON_CODE_MAP_MIGRATED_KEY = "coupon:code:map:migrated";   // 旧Bitmap已经迁移到分段的标记
 
-    String COUPON_CACHE_KEY_PREFIX = "prs:coupon:";
-    String USER_COUPON_CACHE_KEY_PREFIX = "prs:user:coupon:";
+    String COUPON_CACHE_KEY_PREFIX = "prs:coupon:";  // 优惠券缓存，hash结构，key后缀为{优惠券id}
+    String USER_COUPON_CACHE_KEY_PREFIX = "prs:user:coupon:";   // 用户领券数量，hash结构，key后缀为{优惠券id}，field为用户id
     String COUPON_RANGE_KEY = "coupon:code:range";
+    String COUPON_RANGE_BEGIN_KEY = "coupon:code:range:begin";  // 每个优惠券兑换码的最小序列号，hash结构，field为优惠券id
+    String COUPON_CODE_TASK_KEY_PREFIX = "coupon:code:task:";   // 兑换码生成任务信息（序列号区间、截止时间、进度、心跳），hash结构
+    String COUPON_CODE_TASK_CHUNK_KEY_PREFIX = "coupon:code:task:chunk:";   // 兑换码生成任务中已完成的分片，set结构，member为分片序号
+    String COUPON_CODE_TASK_RESUME_KEY_PREFIX = "coupon:code:task:resume:"; // 兑换码生成任务的恢复权，后缀为优惠券id，超时后自动过期
+    String COUPON_CODE_TASK_PENDING_KEY = "coupon:code:task:pending";   // 未完成的兑换码生成任务，set结构，member为优惠券id
+    int EXCHANGE_CODE_CHUNK_SIZE = 1000;    // 兑换码生成的分片大小，每个分片一次批量写入
+    String COUPON_USE_ORDER_KEY_PREFIX = "prs:coupon:use:order:";  // 已经核销过优惠券的订单，后缀为订单id，用于核销消息去重
+    long COUPON_USE_ORDER_TTL_DAYS = 7;
+    String COUPON_SCOPE_VERSION_KEY = "prs:coupon:scope:version";   // 优惠券限定范围的版本号，范围变化时递增，用于失效本地缓存
+
+    /**
+     * 优惠券id作为hash tag，同一张优惠券的兑换标记、优惠券缓存和用户领券数量落在同一个slot，可以在一个脚本中原子操作
+     */
+    static String couponHashTag(Long couponId) {
+        return "{" + couponId + "}";
+    }
+
+    static String couponCacheKey(Long couponId) {
+        return COUPON_CACHE_KEY_PREFIX + couponHashTag(couponId);
+    }
+
+    static String userCouponCacheKey(Long couponId) {
+        return USER_COUPON_CACHE_KEY_PREFIX + couponHashTag(couponId);
+    }
 
     String[] RECEIVE_COUPON_ERROR_MSG = {
             "活动未开始",
@@ -20,6 +47,7 @@ public interface PromotionConstants {
             "无效兑换码",
             "活动未开始",
             "活动已经结束",
-            "领取次数过多"
+            "领取次数过多",
+            "库存不足"
     };
 }
@@ -12,4 +12,8 @@ public class UserCouponDTO {
      * 优惠券id
      */
     private Long couponId;
+    /**
+     * 兑换码序列号，只有兑换码兑换时才有值
+     */
+    private Long serialNum;
 }
@@ -92,6 +92,12 @@ public class Coupon implements Serializable {
     @ApiModelProperty(value = "每个人限领的数量，默认1")
     private Integer userLimit;
 
+    @ApiModelProperty(value = "兑换码的最小序列号，指定发放的优惠券创建兑换码生成任务时写入")
+    private Long codeBegin;
+
+    @ApiModelProperty(value = "兑换码的最大序列号")
+    private Long codeEnd;
+
     @ApiModelProperty(value = "拓展参数字段，保留字段")
     private String extParam;
 
@@ -1,5 +1,7 @@
 package com.tianji.promotion.handler;
 
+import com.tianji.api.dto.promotion.CouponUseDTO;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.constants.MqConstants;
 import com.tianji.promotion.domain.dto.UserCouponDTO;
 import com.tianji.promotion.service.IUserCouponService;
@@ -10,13 +12,25 @@ import org.springframework.amqp.rabbit.annotation.Exchange;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.List;
+
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class PromotionCouponHandler {
+    private static final Duration CONFIRM_TIMEOUT = Duration.ofSeconds(3);
+
     private final IUserCouponService userCouponService;
+    private final RabbitMqHelper rabbitMqHelper;
+
+    @Value("${spring.application.name}")
+    private String applicationName;
 
 
     @RabbitListener(bindings = @QueueBinding(
@@ -28,4 +42,47 @@ public class PromotionCouponHandler {
         log.info("消费者接收到优惠券领取消息：{}", uc);
         userCouponService.checkAndCreateUserCouponNew(uc);
     }
+
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(name = "coupon.use.queue", durable = "true"),
+            exchange = @Exchange(name = MqConstants.Exchange.PROMOTION_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = MqConstants.Key.COUPON_USE
+    ))
+    public void listenCouponUseMessage(CouponUseDTO dto){
+        log.info("消费者接收到优惠券核销消息：{}", dto);
+        userCouponService.useCoupons(dto);
+    }
+
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(name = "coupon.exchange.queue", durable = "true"),
+            exchange = @Exchange(name = MqConstants.Exchange.PROMOTION_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = MqConstants.Key.COUPON_EXCHANGE
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenCouponExchangeMessage(List<UserCouponDTO> ucs){
+        log.info("消费者接收到兑换码兑换消息{}条", ucs.size());
+        try {
+            userCouponService.createExchangedUserCoupons(ucs);
+            return;
+        } catch (Exception e) {
+            log.error("批量处理兑换码兑换消息失败，开始逐条处理", e);
+        }
+        // 整批处理失败，逐条重试，避免一条异常消息拖累整批
+        for (UserCouponDTO uc : ucs) {
+            try {
+                userCouponService.createExchangedUserCoupons(List.of(uc));
+            } catch (TransientDataAccessException | DataAccessResourceFailureException e) {
+                // 数据库暂时不可用，抛出异常让整批消息重新入队，已经处理过的兑换码会按状态过滤掉
+                log.error("处理兑换码兑换消息失败，数据库暂时不可用，整批消息重新入队", e);
+                throw e;
+            } catch (Exception e) {
+                // Redis中已经标记了兑换码并扣减了库存，消息不能丢，转发到本服务的错误队列等待人工处理
+                // 转发失败时异常会抛出，整批消息重新入队
+                log.error("处理兑换码兑换消息失败，转发到错误队列：{}", uc, e);
+                rabbitMqHelper.sendAndConfirm(MqConstants.Exchange.ERROR_EXCHANGE,
+                        MqConstants.Key.ERROR_KEY_PREFIX + applicationName, uc, CONFIRM_TIMEOUT);
+            }
+        }
+    }
 }
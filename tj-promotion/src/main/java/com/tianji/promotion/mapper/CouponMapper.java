@@ -20,4 +20,21 @@ public interface CouponMapper extends BaseMapper<Coupon> {
      */
     @Update("UPDATE coupon SET issue_num = issue_num + 1 WHERE id = #{id} and issue_num < total_num")
     int incrIssueNum(@Param("id") Long id);
+
+    /**
+     * 批量累加优惠券已领取数量，库存已经在Redis中扣减过了，这里不再校验
+     * @param id
+     * @param num
+     */
+    @Update("UPDATE coupon SET issue_num = issue_num + #{num} WHERE id = #{id}")
+    int incrIssueNumBy(@Param("id") Long id, @Param("num") int num);
+
+    /**
+     * 记录兑换码的序列号区间，只有还没有记录过区间时才写入，并发分配时以先写入的区间为准
+     * @param id
+     * @param begin
+     * @param end
+     */
+    @Update("UPDATE coupon SET code_begin = #{begin}, code_end = #{end} WHERE id = #{id} AND code_begin IS NULL")
+    int initCodeRange(@Param("id") Long id, @Param("begin") long begin, @Param("end") long end);
 }
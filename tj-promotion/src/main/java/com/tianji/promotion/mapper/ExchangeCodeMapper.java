@@ -2,6 +2,9 @@ package com.tianji.promotion.mapper;
 
 import com.tianji.promotion.domain.po.ExchangeCode;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -12,5 +15,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  * @since 2025-02-07
  */
 public interface ExchangeCodeMapper extends BaseMapper<ExchangeCode> {
-
+    /**
+     * 多行VALUES批量写入兑换码，已存在的id直接忽略，保证分片重试时幂等
+     * @param codes
+     * @return
+     */
+    int insertIgnoreBatch(@Param("codes") List<ExchangeCode> codes);
 }
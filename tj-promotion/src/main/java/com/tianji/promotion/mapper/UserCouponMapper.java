@@ -1,5 +1,6 @@
 package com.tianji.promotion.mapper;
 
+import com.tianji.api.dto.IdAndNumDTO;
 import com.tianji.promotion.domain.dto.CouponDiscountDTO;
 import com.tianji.promotion.domain.po.Coupon;
 import com.tianji.promotion.domain.po.UserCoupon;
@@ -22,4 +23,12 @@ public interface UserCouponMapper extends BaseMapper<UserCoupon> {
             "FROM coupon c INNER JOIN user_coupon uc  ON  c.id = uc.coupon_id \n" +
             "WHERE uc.user_id = #{userId} AND uc.`status` = 1")
     List<Coupon> queryMyCoupons(@Param("userId") Long userId);
+
+    /**
+     * 统计每个用户领取某个优惠券的数量，id为用户id，num为已领数量
+     * @param couponId
+     * @return
+     */
+    @Select("SELECT user_id AS id, COUNT(*) AS num FROM user_coupon WHERE coupon_id = #{couponId} GROUP BY user_id")
+    List<IdAndNumDTO> countUserCouponOfCoupon(@Param("couponId") Long couponId);
 }
@@ -3,6 +3,10 @@ package com.tianji.promotion.service;
 import com.tianji.promotion.domain.po.CouponScope;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  * 优惠券作用范围信息 服务类
@@ -12,5 +16,17 @@ import com.baomidou.mybatisplus.extension.service.IService;
  * @since 2025-02-07
  */
 public interface ICouponScopeService extends IService<CouponScope> {
+    /**
+     * 批量查询优惠券的限定范围
+     * @param couponIds 优惠券id集合
+     * @return key为优惠券id，value为升序排列的范围业务id（分类id）数组
+     */
+    Map<Long, long[]> queryScopeMap(Collection<Long> couponIds);
 
+    /**
+     * 覆盖保存优惠券的限定范围，并失效范围缓存
+     * @param couponId
+     * @param bizIds
+     */
+    void saveScopes(Long couponId, List<Long> bizIds);
 }
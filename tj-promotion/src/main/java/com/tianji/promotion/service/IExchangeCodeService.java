@@ -19,6 +19,11 @@ public interface IExchangeCodeService extends IService<ExchangeCode> {
      */
     void asyncgenerateExchangeCode(Coupon coupon);
 
+    /**
+     * 恢复中断的兑换码生成任务
+     */
+    void resumeGenerateExchangeCode();
+
     /**
      * 校验是否已经兑换 SETBIT KEY 4 1 ，这里直接执行setbit，通过返回值来判断是否兑换过
      * @param serialNum
@@ -26,4 +31,23 @@ public interface IExchangeCodeService extends IService<ExchangeCode> {
      * @return
      */
     boolean updateExchangeMark(long serialNum, boolean b);
+
+    /**
+     * 判断兑换码是否在Bitmap分段之前就已经兑换，旧Bitmap迁移完成后直接返回false
+     * @param serialNum
+     * @return
+     */
+    boolean isLegacyExchanged(long serialNum);
+
+    /**
+     * 把分段之前的旧Bitmap中已兑换的标记迁移到分段Bitmap
+     */
+    void migrateLegacyExchangeMarks();
+
+    /**
+     * 根据兑换码序列号查询对应的优惠券id，基于coupon:code:range在本地解析，不查询数据库
+     * @param serialNum
+     * @return 优惠券id，不存在则返回null
+     */
+    Long queryCouponIdBySerialNum(long serialNum);
 }
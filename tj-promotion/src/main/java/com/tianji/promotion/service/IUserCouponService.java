@@ -1,5 +1,6 @@
 package com.tianji.promotion.service;
 
+import com.tianji.api.dto.promotion.CouponUseDTO;
 import com.tianji.promotion.domain.dto.CouponDiscountDTO;
 import com.tianji.promotion.domain.dto.OrderCourseDTO;
 import com.tianji.promotion.domain.dto.UserCouponDTO;
@@ -48,6 +49,20 @@ public interface IUserCouponService extends IService<UserCoupon> {
     void checkAndCreateUserCouponNew(UserCouponDTO uc);
 
 
+    /**
+     * 消费者批量接收到兑换码兑换消息，批量生成用户券并更新兑换码状态
+     * @param ucs
+     */
+    void createExchangedUserCoupons(List<UserCouponDTO> ucs);
+
+
+    /**
+     * 消费者接收到订单支付成功后的核销消息，核销订单使用的优惠券
+     * @param dto
+     */
+    void useCoupons(CouponUseDTO dto);
+
+
     /**
      * 查询我的优惠券可用方案
      * @param orderCourses
@@ -1,10 +1,23 @@
 package com.tianji.promotion.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.TransactionUtils;
+import com.tianji.promotion.constants.PromotionConstants;
 import com.tianji.promotion.domain.po.CouponScope;
 import com.tianji.promotion.mapper.CouponScopeMapper;
 import com.tianji.promotion.service.ICouponScopeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -14,7 +27,130 @@ import org.springframework.stereotype.Service;
  * @author lzj
  * @since 2025-02-07
  */
+@Slf4j
 @Service
+@RequiredArgsConstructor
 public class CouponScopeServiceImpl extends ServiceImpl<CouponScopeMapper, CouponScope> implements ICouponScopeService {
+    private static final long[] EMPTY_SCOPE = new long[0];
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 优惠券限定范围的本地缓存，key为优惠券id，value为带版本号的分类id数组
+     */
+    private final Cache<Long, ScopeEntry> scopeCache = Caffeine.newBuilder()
+            .initialCapacity(256)
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofMinutes(30))
+            .build();
+
+
+    /**
+     * 批量查询优惠券的限定范围，版本号一致的缓存直接返回，其余的一次性从DB加载
+     * @param couponIds
+     * @return
+     */
+    @Override
+    public Map<Long, long[]> queryScopeMap(Collection<Long> couponIds) {
+        if (CollUtils.isEmpty(couponIds)) {
+            return CollUtils.emptyMap();
+        }
+
+        // 1. 读取当前的范围版本号，先读版本再查DB，保证加载到的数据不会比版本号旧
+        long version = currentVersion();
+
+
+        // 2. 命中本地缓存且版本一致的直接使用
+        Map<Long, long[]> result = new HashMap<>(couponIds.size());
+        List<Long> missIds = new ArrayList<>();
+        for (Long couponId : couponIds) {
+            ScopeEntry entry = scopeCache.getIfPresent(couponId);
+            if (entry != null && entry.version == version) {
+                result.put(couponId, entry.bizIds);
+            } else {
+                missIds.add(couponId);
+            }
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+
+
+        // 3. 未命中的优惠券，一次批量查询出全部范围
+        log.info("本地缓存未命中的优惠券范围，version：{}，couponIds：{}", version, missIds);
+        Map<Long, List<CouponScope>> scopeMap = lambdaQuery()
+                .in(CouponScope::getCouponId, missIds)
+                .list()
+                .stream()
+                .collect(Collectors.groupingBy(CouponScope::getCouponId));
+
+
+        // 4. 转为升序的long数组写入缓存，没有范围的优惠券也缓存空数组，避免重复查库
+        for (Long couponId : missIds) {
+            List<CouponScope> scopes = scopeMap.get(couponId);
+            long[] bizIds = CollUtils.isEmpty(scopes) ? EMPTY_SCOPE : scopes.stream()
+                    .mapToLong(CouponScope::getBizId).sorted().distinct().toArray();
+            scopeCache.put(couponId, new ScopeEntry(version, bizIds));
+            result.put(couponId, bizIds);
+        }
+        return result;
+    }
+
+
+    /**
+     * 覆盖保存优惠券的限定范围，事务提交后递增范围版本号，使所有节点的本地缓存失效
+     * @param couponId
+     * @param bizIds
+     */
+    @Override
+    @Transactional
+    public void saveScopes(Long couponId, List<Long> bizIds) {
+        // 1. 删除旧的范围
+        lambdaUpdate().eq(CouponScope::getCouponId, couponId).remove();
+
+        // 2. 保存新的范围
+        if (CollUtils.isNotEmpty(bizIds)) {
+            List<CouponScope> list = bizIds.stream()
+                    .map(bizId -> new CouponScope().setBizId(bizId).setCouponId(couponId).setType(1))
+                    .collect(Collectors.toList());
+            saveBatch(list);
+        }
+
+        // 3. 范围发生变化，失效缓存
+        evictScopeCache(couponId);
+    }
+
+
+    /**
+     * 失效优惠券范围缓存，如果存在事务，则在事务提交之后再失效
+     * @param couponId
+     */
+    private void evictScopeCache(Long couponId) {
+        TransactionUtils.afterCommit(() -> bumpVersion(couponId));
+    }
+
+    private void bumpVersion(Long couponId) {
+        scopeCache.invalidate(couponId);
+        Long version = redisTemplate.opsForValue().increment(PromotionConstants.COUPON_SCOPE_VERSION_KEY);
+        log.info("优惠券{}的限定范围发生变化，范围版本号更新为：{}", couponId, version);
+    }
+
+    private long currentVersion() {
+        String version = redisTemplate.opsForValue().get(PromotionConstants.COUPON_SCOPE_VERSION_KEY);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+
+    /**
+     * 带版本号的范围缓存项，bizIds升序排列，便于二分查找
+     */
+    private static class ScopeEntry {
+        private final long version;
+        private final long[] bizIds;
 
+        private ScopeEntry(long version, long[] bizIds) {
+            this.version = version;
+            this.bizIds = bizIds;
+        }
+    }
 }
@@ -12,7 +12,6 @@ import com.tianji.promotion.constants.PromotionConstants;
 import com.tianji.promotion.domain.dto.CouponFormDTO;
 import com.tianji.promotion.domain.dto.CouponIssueFormDTO;
 import com.tianji.promotion.domain.po.Coupon;
-import com.tianji.promotion.domain.po.CouponScope;
 import com.tianji.promotion.domain.po.UserCoupon;
 import com.tianji.promotion.domain.query.CouponQuery;
 import com.tianji.promotion.domain.vo.CouponPageVO;
@@ -88,10 +87,7 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
 
 
         // 4. 保存优惠券的使用范围到coupon_scope表中
-        List<CouponScope> list = scopes.stream()
-                .map(bizId -> new CouponScope().setBizId(bizId).setCouponId(couponId).setType(1))
-                .collect(Collectors.toList());
-        couponScopeService.saveBatch(list);
+        couponScopeService.saveScopes(couponId, scopes);
     }
 
 
@@ -180,20 +176,19 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
         updateById(c);
 
 
-        // 如果优惠券可以立即发放，则将优惠券信息（优惠券id、领券开始/结束时间、发行总数量、限领数量）采用hash存入redis
-        if (isBegin) {
-            // 组织数据
-            Map<String, String> map = new HashMap<>(4);
-            map.put("issueBeginTime", String.valueOf(DateUtils.toEpochMilli(now)));
-            // 注意这里别写成coupon.getIssueEndTime()，因为我只能用swagger测立即发放，此时coupon.getIssueEndTime()是null
-            map.put("issueEndTime", String.valueOf(DateUtils.toEpochMilli(dto.getIssueEndTime())));
-            map.put("totalNum", String.valueOf(coupon.getTotalNum()));
-            map.put("userLimit", String.valueOf(coupon.getUserLimit()));
+        // 将优惠券信息（优惠券id、领券开始/结束时间、发行总数量、限领数量）采用hash存入redis
+        // 定时发放的优惠券也写入缓存，领取和兑换时会基于缓存中的开始时间校验，兑换码兑换依赖该缓存
+        // 组织数据
+        Map<String, String> map = new HashMap<>(4);
+        map.put("issueBeginTime", String.valueOf(DateUtils.toEpochMilli(c.getIssueBeginTime())));
+        // 注意这里别写成coupon.getIssueEndTime()，因为我只能用swagger测立即发放，此时coupon.getIssueEndTime()是null
+        map.put("issueEndTime", String.valueOf(DateUtils.toEpochMilli(dto.getIssueEndTime())));
+        map.put("totalNum", String.valueOf(coupon.getTotalNum()));
+        map.put("userLimit", String.valueOf(coupon.getUserLimit()));
 
-            // 写入缓存
-            String key = PromotionConstants.COUPON_CACHE_KEY_PREFIX + coupon.getId();
-            redisTemplate.opsForHash().putAll(key, map);
-        }
+        // 写入缓存
+        String key = PromotionConstants.couponCacheKey(coupon.getId());
+        redisTemplate.opsForHash().putAll(key, map);
 
 
         // 5. 如果优惠券的领取方式是指定发放，那么需要生成兑换码
@@ -1,22 +1,35 @@
 package com.tianji.promotion.service.impl;
 
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.DateUtils;
 import com.tianji.promotion.constants.PromotionConstants;
 import com.tianji.promotion.domain.po.Coupon;
 import com.tianji.promotion.domain.po.ExchangeCode;
+import com.tianji.promotion.mapper.CouponMapper;
 import com.tianji.promotion.mapper.ExchangeCodeMapper;
 import com.tianji.promotion.service.IExchangeCodeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.promotion.utils.CodeUtil;
+import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopContext;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * <p>
@@ -30,11 +43,35 @@ import java.util.List;
 @Service
 @RequiredArgsConstructor
 public class ExchangeCodeServiceImpl extends ServiceImpl<ExchangeCodeMapper, ExchangeCode> implements IExchangeCodeService {
+    /**
+     * 任务心跳超过该时长未更新，认为生成任务已经中断
+     */
+    private static final Duration TASK_TIMEOUT = Duration.ofMinutes(5);
+
+    /**
+     * 兑换码序列号区间快照的最短加载间隔
+     */
+    private static final long RANGE_RELOAD_INTERVAL_MILLIS = 1000;
+
     private final StringRedisTemplate redisTemplate;
+    private final Executor exchangeCodeChunkExecutor;
+    private final CouponMapper couponMapper;
+
+    /**
+     * 兑换码序列号区间的本地快照，key为区间最大序列号，value为优惠券id和最小序列号，整体替换，读取无锁
+     */
+    private volatile NavigableMap<Long, CodeRange> codeRanges = new TreeMap<>();
+    private volatile long lastRangeReloadTime;
+    /**
+     * 旧Bitmap是否已经迁移到分段
+     */
+    private volatile boolean legacyMarksMigrated;
 
 
     /**
      * 异步生成兑换码
+     * 兑换码按照固定大小分片，分片在独立线程池中并行生成并批量写入，已完成的分片记录在Redis中，
+     * 任务中断后再次调用时沿用之前分配的序列号区间，只生成未完成的分片
      * @param coupon
      */
     @Override
@@ -42,57 +79,426 @@ public class ExchangeCodeServiceImpl extends ServiceImpl<ExchangeCodeMapper, Exc
     public void asyncgenerateExchangeCode(Coupon coupon) {
         log.info("开始异步生成兑换码，线程名：{}", Thread.currentThread().getName());
         Long couponId = coupon.getId(); // 表示优惠券的id
-        Integer totalNum = coupon.getTotalNum();    // 表示优惠券的发放总数量，也就是需要生成的兑换码总数量
-        LocalDateTime issueEndTime = coupon.getIssueEndTime();  // 兑换码的截止时间，就是优惠券领取的截止时间
-        log.info("准备给优惠券{}生成兑换码，数量：{}，截止时间：{}", couponId, totalNum, issueEndTime);
+        String taskKey = PromotionConstants.COUPON_CODE_TASK_KEY_PREFIX + couponId;
+        String chunkKey = PromotionConstants.COUPON_CODE_TASK_CHUNK_KEY_PREFIX + couponId;
+
+
+        // 1. 分配序列号区间，任务已存在说明是中断后的恢复，沿用之前分配的区间
+        Map<Object, Object> task = redisTemplate.opsForHash().entries(taskKey);
+        long begin, end;
+        LocalDateTime expiredTime;
+        if (task.get("begin") == null) {
+            Integer totalNum = coupon.getTotalNum();    // 表示优惠券的发放总数量，也就是需要生成的兑换码总数量
+            expiredTime = coupon.getIssueEndTime();     // 兑换码的截止时间，就是优惠券领取的截止时间
+            if (totalNum == null || expiredTime == null) {
+                log.error("优惠券{}缺少发放数量或截止时间，无法生成兑换码", couponId);
+                return;
+            }
+            log.info("准备给优惠券{}生成兑换码，数量：{}，截止时间：{}", couponId, totalNum, expiredTime);
+
+            // 1.1 区间在创建任务时持久化到优惠券表，之前已经分配过则沿用，否则一次性分配整个区间
+            long[] range = loadOrAllocateCodeRange(couponId, totalNum);
+            if (range == null) {
+                return;
+            }
+            begin = range[0];
+            end = range[1];
+
+            // 1.2 记录任务信息，用于中断后恢复
+            Map<String, String> map = new HashMap<>(5);
+            map.put("begin", String.valueOf(begin));
+            map.put("end", String.valueOf(end));
+            map.put("expiredTime", String.valueOf(DateUtils.toEpochMilli(expiredTime)));
+            map.put("done", "0");
+            map.put("heartbeat", String.valueOf(System.currentTimeMillis()));
+            redisTemplate.opsForHash().putAll(taskKey, map);
+            redisTemplate.opsForSet().add(PromotionConstants.COUPON_CODE_TASK_PENDING_KEY, couponId.toString());
+        } else {
+            begin = Long.parseLong(task.get("begin").toString());
+            end = Long.parseLong(task.get("end").toString());
+            long expiredMillis = Long.parseLong(task.get("expiredTime").toString());
+            expiredTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(expiredMillis), ZoneId.systemDefault());
+            log.info("恢复优惠券{}的兑换码生成任务，已完成数量：{}", couponId, task.get("done"));
+        }
+        log.info("生成的兑换码范围为：{}-{}", begin, end);
+
+
+        // 2. 按分片并行生成兑换码，跳过已完成的分片
+        long total = end - begin + 1;
+        int chunkSize = PromotionConstants.EXCHANGE_CODE_CHUNK_SIZE;
+        int chunkCount = (int) ((total + chunkSize - 1) / chunkSize);
+        Set<String> doneChunks = redisTemplate.opsForSet().members(chunkKey);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; ++ i) {
+            if (doneChunks != null && doneChunks.contains(String.valueOf(i))) {
+                continue;
+            }
+            int chunkIndex = i;
+            long from = begin + (long) i * chunkSize;
+            long to = Math.min(from + chunkSize - 1, end);
+            futures.add(CompletableFuture.runAsync(
+                    () -> generateChunk(couponId, from, to, expiredTime, chunkIndex, total), exchangeCodeChunkExecutor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            log.error("优惠券{}的兑换码生成任务中断，等待恢复", couponId, e);
+            return;
+        }
 
 
-        // 1. 生成自增id    借助于redis的incr命令
+        // 3. 写入Redis缓存，member：couponId，score：兑换码的最大序列号，同时记录最小序列号，用于校验序列号的下界
+        redisTemplate.opsForHash().put(PromotionConstants.COUPON_RANGE_BEGIN_KEY, couponId.toString(), String.valueOf(begin));
+        redisTemplate.opsForZSet().add(PromotionConstants.COUPON_RANGE_KEY, couponId.toString(), end);
+        lastRangeReloadTime = 0;
+
+
+        // 4. 任务完成，清理任务信息
+        redisTemplate.delete(List.of(taskKey, chunkKey));
+        redisTemplate.opsForSet().remove(PromotionConstants.COUPON_CODE_TASK_PENDING_KEY, couponId.toString());
+        log.info("优惠券{}的兑换码生成完成，数量：{}", couponId, total);
+    }
+
+
+    /**
+     * 查询优惠券已经分配的兑换码序列号区间，没有分配过则借助于redis的incrby命令一次性分配整个区间，并写入优惠券表
+     * 区间先落库再生成兑换码，任务信息丢失后可以按数据库中的区间恢复；并发分配时以先写入的区间为准，后分配的区间直接废弃
+     * @return 区间的最小和最大序列号，分配失败返回null
+     */
+    private long[] loadOrAllocateCodeRange(Long couponId, int totalNum) {
+        // 1. 已经分配过区间，直接沿用
+        Coupon stored = couponMapper.selectById(couponId);
+        if (stored != null && stored.getCodeBegin() != null) {
+            return new long[]{stored.getCodeBegin(), stored.getCodeEnd()};
+        }
+
+        // 2. 借助于redis的incrby命令一次性分配整个区间
         Long serialNum = redisTemplate.opsForValue().increment(PromotionConstants.COUPON_CODE_SERIAL_KEY, totalNum);
-        log.info("生成的兑换码序列号为：{}", serialNum);
         if (serialNum == null) {
             log.error("生成兑换码失败");
-            return;
+            return null;
         }
+        long end = serialNum;
+        long begin = end - totalNum + 1;
+
+        // 3. 写入优惠券表，没有写入说明其它任务已经分配过区间，以数据库中的区间为准
+        if (couponMapper.initCodeRange(couponId, begin, end) > 0) {
+            return new long[]{begin, end};
+        }
+        stored = couponMapper.selectById(couponId);
+        if (stored == null || stored.getCodeBegin() == null) {
+            log.error("优惠券{}不存在，无法生成兑换码", couponId);
+            return null;
+        }
+        return new long[]{stored.getCodeBegin(), stored.getCodeEnd()};
+    }
 
 
-        // 2. 循环生成兑换码
-        int R = serialNum.intValue();
-        int L = R - totalNum + 1;
-        log.info("生成的兑换码范围为：{}-{}", L, R);
-        List<ExchangeCode> list = new ArrayList<>();
-        for (int i = L; i <= R; ++ i) {
-            // 调用工具类生成兑换码
-            String code = CodeUtil.generateCode(i, couponId);   // 参数1是自增id值，参数2是优惠券id（内部会计算出0-15之间数字，然后找对应的密钥）
+    /**
+     * 生成一个分片的兑换码并批量写入数据库，写入成功后标记分片完成并上报进度
+     */
+    private void generateChunk(Long couponId, long from, long to, LocalDateTime expiredTime, int chunkIndex, long total) {
+        // 1. 生成兑换码
+        List<ExchangeCode> list = new ArrayList<>((int) (to - from + 1));
+        for (long i = from; i <= to; ++ i) {
             ExchangeCode exchangeCode = new ExchangeCode();
-            exchangeCode.setId(i);  // 设置兑换码id
-            exchangeCode.setCode(code);  // 设置兑换码
+            exchangeCode.setId((int) i);  // 设置兑换码id
+            exchangeCode.setCode(CodeUtil.generateCode(i, couponId));  // 参数1是自增id值，参数2是优惠券id
             exchangeCode.setExchangeTargetId(couponId);  // 设置兑换目标id（即优惠券id）
-            exchangeCode.setExpiredTime(issueEndTime);  // 设置兑换码的截止时间，就是优惠券领取的截止时间
+            exchangeCode.setExpiredTime(expiredTime);  // 设置兑换码的截止时间
             list.add(exchangeCode);
         }
 
 
-        // 3. 将兑换码信息批量保存到数据库
-        this.saveBatch(list);
+        // 2. 多行VALUES批量写入，重复的id直接忽略，分片重试也是幂等的
+        getBaseMapper().insertIgnoreBatch(list);
 
 
-        // 4. 写入Redis缓存，member：couponId，score：兑换码的最大序列号
-        redisTemplate.opsForZSet().add(PromotionConstants.COUPON_RANGE_KEY, coupon.getId().toString(), R);
+        // 3. 标记分片完成，并更新进度和心跳
+        String taskKey = PromotionConstants.COUPON_CODE_TASK_KEY_PREFIX + couponId;
+        redisTemplate.opsForSet().add(PromotionConstants.COUPON_CODE_TASK_CHUNK_KEY_PREFIX + couponId, String.valueOf(chunkIndex));
+        Long done = redisTemplate.opsForHash().increment(taskKey, "done", list.size());
+        redisTemplate.opsForHash().put(taskKey, "heartbeat", String.valueOf(System.currentTimeMillis()));
+        log.info("优惠券{}的兑换码生成进度：{}/{}", couponId, done, total);
+    }
+
+
+    /**
+     * 恢复中断的兑换码生成任务，心跳超时的任务重新提交生成
+     */
+    @Override
+    public void resumeGenerateExchangeCode() {
+        Set<String> couponIds = redisTemplate.opsForSet().members(PromotionConstants.COUPON_CODE_TASK_PENDING_KEY);
+        if (CollUtils.isEmpty(couponIds)) {
+            return;
+        }
+        IExchangeCodeService proxy = (IExchangeCodeService) AopContext.currentProxy();
+        long now = System.currentTimeMillis();
+        for (String couponId : couponIds) {
+            String taskKey = PromotionConstants.COUPON_CODE_TASK_KEY_PREFIX + couponId;
+            Map<Object, Object> task = redisTemplate.opsForHash().entries(taskKey);
+            Object heartbeat = task.get("heartbeat");
+            if (heartbeat != null && now - Long.parseLong(heartbeat.toString()) < TASK_TIMEOUT.toMillis()) {
+                // 任务仍在执行中
+                continue;
+            }
+            // 1.抢占恢复权，避免多个实例同时恢复同一个任务，恢复权在任务超时时长后自动过期
+            Boolean claimed = redisTemplate.opsForValue().setIfAbsent(
+                    PromotionConstants.COUPON_CODE_TASK_RESUME_KEY_PREFIX + couponId, String.valueOf(now), TASK_TIMEOUT);
+            if (!Boolean.TRUE.equals(claimed)) {
+                continue;
+            }
+            // 2.任务信息已经不存在，区间已经发布说明任务已经完成，只是没来得及移出待完成集合
+            if (task.get("begin") == null
+                    && redisTemplate.opsForZSet().score(PromotionConstants.COUPON_RANGE_KEY, couponId) != null) {
+                redisTemplate.delete(List.of(taskKey, PromotionConstants.COUPON_CODE_TASK_CHUNK_KEY_PREFIX + couponId));
+                redisTemplate.opsForSet().remove(PromotionConstants.COUPON_CODE_TASK_PENDING_KEY, couponId);
+                continue;
+            }
+            // 3.从数据库查询优惠券，任务信息丢失时需要用优惠券表中的区间和截止时间重建任务
+            Coupon coupon = couponMapper.selectById(Long.valueOf(couponId));
+            if (coupon == null) {
+                log.error("优惠券{}不存在，放弃兑换码生成任务", couponId);
+                redisTemplate.delete(List.of(taskKey, PromotionConstants.COUPON_CODE_TASK_CHUNK_KEY_PREFIX + couponId));
+                redisTemplate.opsForSet().remove(PromotionConstants.COUPON_CODE_TASK_PENDING_KEY, couponId);
+                continue;
+            }
+            if (task.get("begin") == null) {
+                rebuildTask(coupon, taskKey, now);
+            } else {
+                redisTemplate.opsForHash().put(taskKey, "heartbeat", String.valueOf(now));
+            }
+            log.info("优惠券{}的兑换码生成任务心跳超时，开始恢复", couponId);
+            proxy.asyncgenerateExchangeCode(coupon);
+        }
+    }
+
+
+    /**
+     * 任务信息丢失时，按创建任务时写入优惠券表的序列号区间重建任务，分片重新生成时重复的id会被忽略；
+     * 分片是并行写入的，已经写入的兑换码不一定从区间起点开始，不能用来推算区间。
+     * 优惠券表中没有区间说明还没有分配过，删除任务信息，重新分配区间
+     */
+    private void rebuildTask(Coupon coupon, String taskKey, long now) {
+        redisTemplate.delete(List.of(taskKey, PromotionConstants.COUPON_CODE_TASK_CHUNK_KEY_PREFIX + coupon.getId()));
+        if (coupon.getCodeBegin() == null || coupon.getCodeEnd() == null || coupon.getIssueEndTime() == null) {
+            return;
+        }
+        long begin = coupon.getCodeBegin();
+        long end = coupon.getCodeEnd();
+        Map<String, String> map = new HashMap<>(5);
+        map.put("begin", String.valueOf(begin));
+        map.put("end", String.valueOf(end));
+        map.put("expiredTime", String.valueOf(DateUtils.toEpochMilli(coupon.getIssueEndTime())));
+        map.put("done", "0");
+        map.put("heartbeat", String.valueOf(now));
+        redisTemplate.opsForHash().putAll(taskKey, map);
+        log.warn("优惠券{}的兑换码生成任务信息丢失，按优惠券表中的区间重建任务：{}-{}", coupon.getId(), begin, end);
     }
 
 
     /**
      * 校验是否已经兑换 SETBIT KEY 4 1 ，这里直接执行setbit，通过返回值来判断是否兑换过
+     * Bitmap按优惠券和序列号分段存储，避免大序列号导致单个key过大，同时把兑换流量分散到多个key上
      * @param serialNum
      * @param mark
      * @return
      */
     @Override
     public boolean updateExchangeMark(long serialNum, boolean mark) {
-        // 修改兑换码的自增id对应的offset值
-        Boolean flag = redisTemplate.opsForValue().setBit(PromotionConstants.COUPON_CODE_MAP_KEY, serialNum, mark);
-        log.info("修改兑换码的自增id为{}的offset值为{}，结果：{}", serialNum, mark, flag);
+        // 1. 根据序列号区间找到兑换码所属的优惠券，兑换标记的key以优惠券id作为hash tag
+        Long couponId = queryCouponIdBySerialNum(serialNum);
+        if (couponId == null) {
+            log.info("兑换码序列号{}不属于任何优惠券", serialNum);
+            return false;
+        }
+        // 2. 修改兑换码的自增id所在分段对应的offset值
+        String key = CodeUtil.exchangeMarkKey(couponId, serialNum);
+        long offset = CodeUtil.exchangeMarkOffset(serialNum);
+        Boolean flag = redisTemplate.opsForValue().setBit(key, offset, mark);
+        log.info("修改兑换码的自增id为{}的offset值为{}，key：{}，结果：{}", serialNum, mark, key, flag);
         return flag != null && flag;
     }
+
+
+    /**
+     * 判断兑换码是否在Bitmap分段之前就已经兑换，旧Bitmap迁移完成后不再访问
+     * @param serialNum
+     * @return
+     */
+    @Override
+    public boolean isLegacyExchanged(long serialNum) {
+        if (legacyMarksMigrated) {
+            return false;
+        }
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(PromotionConstants.COUPON_CODE_MAP_MIGRATED_KEY))) {
+            legacyMarksMigrated = true;
+            return false;
+        }
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().getBit(PromotionConstants.COUPON_CODE_LEGACY_MAP_KEY, serialNum));
+    }
+
+
+    /**
+     * 把分段之前的旧Bitmap中已兑换的标记迁移到分段Bitmap
+     * 旧Bitmap中offset为序列号，按分段大小读取对应的字节区间，把其中为1的位按所属优惠券逐个写入分段，
+     * 只写1不写0，不会覆盖迁移期间新产生的兑换标记，重复执行也是幂等的
+     */
+    @Override
+    public void migrateLegacyExchangeMarks() {
+        // 1. 已经迁移过，或者没有旧Bitmap，直接结束
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(PromotionConstants.COUPON_CODE_MAP_MIGRATED_KEY))) {
+            legacyMarksMigrated = true;
+            return;
+        }
+        byte[] legacyKey = PromotionConstants.COUPON_CODE_LEGACY_MAP_KEY.getBytes(StandardCharsets.UTF_8);
+        Long legacySize = redisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands().strLen(legacyKey));
+        if (legacySize != null && legacySize > 0) {
+            // 2. 抢占迁移权，避免多个实例同时迁移
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(
+                    PromotionConstants.COUPON_CODE_MAP_MIGRATED_KEY + ":lock", "1", Duration.ofMinutes(10));
+            if (!Boolean.TRUE.equals(locked)) {
+                return;
+            }
+            // 3. 逐段迁移
+            long segmentBytes = (1L << PromotionConstants.COUPON_CODE_MAP_SEGMENT_BITS) / 8;
+            long marks = 0;
+            for (long segment = 0; segment * segmentBytes < legacySize; segment++) {
+                long start = segment * segmentBytes;
+                byte[] bytes = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                        connection.stringCommands().getRange(legacyKey, start, start + segmentBytes - 1));
+                marks += copyMarks(segment, bytes);
+            }
+            log.info("旧兑换码Bitmap迁移完成，共迁移{}个兑换标记", marks);
+        }
+        // 4. 记录迁移完成，兑换时不再检查旧Bitmap
+        redisTemplate.opsForValue().set(PromotionConstants.COUPON_CODE_MAP_MIGRATED_KEY, "1");
+        legacyMarksMigrated = true;
+    }
+
+
+    /**
+     * 把一个分段对应的字节中为1的位写入所属优惠券的分段Bitmap，Bitmap中每个字节的最高位对应最小的offset
+     * 找不到所属优惠券的序列号，说明优惠券的区间已经清理，兑换码不会再被兑换，直接跳过
+     */
+    private long copyMarks(long segment, byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return 0;
+        }
+        long base = segment << PromotionConstants.COUPON_CODE_MAP_SEGMENT_BITS;
+        List<String> keys = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i++) {
+            for (int bit = 0; bit < 8; bit++) {
+                if ((bytes[i] & (0x80 >>> bit)) == 0) {
+                    continue;
+                }
+                long serialNum = base + (long) i * 8 + bit;
+                Long couponId = queryCouponIdBySerialNum(serialNum);
+                if (couponId == null) {
+                    continue;
+                }
+                keys.add(CodeUtil.exchangeMarkKey(couponId, serialNum));
+                offsets.add(CodeUtil.exchangeMarkOffset(serialNum));
+            }
+        }
+        if (!offsets.isEmpty()) {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection src = (StringRedisConnection) connection;
+                for (int i = 0; i < offsets.size(); i++) {
+                    src.setBit(keys.get(i), offsets.get(i), true);
+                }
+                return null;
+            });
+        }
+        return offsets.size();
+    }
+
+
+    /**
+     * 根据兑换码序列号查询对应的优惠券id
+     * coupon:code:range中member为优惠券id，score为该优惠券兑换码的最大序列号，
+     * 因此序列号对应的优惠券就是score大于等于该序列号的第一个member，并且序列号不能小于该优惠券的最小序列号，
+     * 否则序列号落在区间之间的空隙中，或者属于还没有生成完的区间
+     * @param serialNum
+     * @return
+     */
+    @Override
+    public Long queryCouponIdBySerialNum(long serialNum) {
+        // 1. 先从本地快照中查找
+        Long couponId = findCouponId(serialNum);
+        if (couponId != null) {
+            return couponId;
+        }
+
+        // 2. 快照中找不到，说明可能有新生成完的兑换码，重新加载快照
+        reloadCodeRanges();
+        return findCouponId(serialNum);
+    }
+
+
+    private Long findCouponId(long serialNum) {
+        Map.Entry<Long, CodeRange> entry = codeRanges.ceilingEntry(serialNum);
+        if (entry == null) {
+            return null;
+        }
+        CodeRange range = entry.getValue();
+        if (range.begin != null) {
+            return serialNum >= range.begin ? range.couponId : null;
+        }
+        // 记录最小序列号之前生成的区间，只能查询兑换码表确认归属
+        ExchangeCode code = lambdaQuery()
+                .select(ExchangeCode::getId, ExchangeCode::getExchangeTargetId)
+                .eq(ExchangeCode::getId, serialNum)
+                .one();
+        return code != null && range.couponId.equals(code.getExchangeTargetId()) ? range.couponId : null;
+    }
+
+
+    /**
+     * 从Redis加载兑换码序列号区间的快照，限制加载频率，避免无效兑换码导致频繁加载
+     */
+    private void reloadCodeRanges() {
+        long now = System.currentTimeMillis();
+        long last = lastRangeReloadTime;
+        if (now - last < RANGE_RELOAD_INTERVAL_MILLIS) {
+            return;
+        }
+        synchronized (this) {
+            if (lastRangeReloadTime != last) {
+                // 其它线程已经加载过了
+                return;
+            }
+            Set<ZSetOperations.TypedTuple<String>> tuples =
+                    redisTemplate.opsForZSet().rangeWithScores(PromotionConstants.COUPON_RANGE_KEY, 0, -1);
+            Map<Object, Object> begins = redisTemplate.opsForHash().entries(PromotionConstants.COUPON_RANGE_BEGIN_KEY);
+            NavigableMap<Long, CodeRange> ranges = new TreeMap<>();
+            if (tuples != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                    if (tuple.getValue() == null || tuple.getScore() == null) {
+                        continue;
+                    }
+                    Object begin = begins.get(tuple.getValue());
+                    ranges.put(tuple.getScore().longValue(), new CodeRange(
+                            Long.valueOf(tuple.getValue()), begin == null ? null : Long.valueOf(begin.toString())));
+                }
+            }
+            codeRanges = ranges;
+            lastRangeReloadTime = now;
+            log.info("重新加载兑换码序列号区间，共{}个优惠券", ranges.size());
+        }
+    }
+
+
+    /**
+     * 一个优惠券的兑换码序列号区间
+     */
+    @AllArgsConstructor
+    private static class CodeRange {
+        private final Long couponId;
+        /**
+         * 最小序列号，为空表示区间生成于记录最小序列号之前
+         */
+        private final Long begin;
+    }
 }
@@ -2,34 +2,41 @@ package com.tianji.promotion.service.impl;
 
 import cn.hutool.core.bean.copier.CopyOptions;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.tianji.api.dto.IdAndNumDTO;
+import com.tianji.api.dto.promotion.CouponUseDTO;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.constants.MqConstants;
 import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.DateUtils;
+import com.tianji.common.utils.TransactionUtils;
 import com.tianji.common.utils.UserContext;
 import com.tianji.promotion.constants.PromotionConstants;
 import com.tianji.promotion.domain.dto.CouponDiscountDTO;
 import com.tianji.promotion.domain.dto.OrderCourseDTO;
 import com.tianji.promotion.domain.dto.UserCouponDTO;
 import com.tianji.promotion.domain.po.Coupon;
-import com.tianji.promotion.domain.po.CouponScope;
 import com.tianji.promotion.domain.po.ExchangeCode;
 import com.tianji.promotion.domain.po.UserCoupon;
 import com.tianji.promotion.enums.CouponStatus;
 import com.tianji.promotion.enums.ExchangeCodeStatus;
+import com.tianji.promotion.enums.UserCouponStatus;
 import com.tianji.promotion.mapper.CouponMapper;
 import com.tianji.promotion.mapper.UserCouponMapper;
 import com.tianji.promotion.service.ICouponScopeService;
 import com.tianji.promotion.service.IExchangeCodeService;
 import com.tianji.promotion.service.IUserCouponService;
+import com.tianji.promotion.strategy.discount.CompiledCoupon;
 import com.tianji.promotion.strategy.discount.Discount;
 import com.tianji.promotion.strategy.discount.DiscountStrategy;
 import com.tianji.promotion.utils.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.framework.AopContext;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -63,6 +70,13 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
     private final ICouponScopeService couponScopeService;
     private final Executor calculateSolutionExecutor;
 
+    private static final RedisScript<Long> EXCHANGE_COUPON_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/exchange_coupon.lua"), Long.class);
+    private static final RedisScript<Long> EXCHANGE_COUPON_ROLLBACK_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/exchange_coupon_rollback.lua"), Long.class);
+    private static final RedisScript<Long> WARM_COUPON_CACHE_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/coupon_cache_warm.lua"), Long.class);
+
 
     @Override
     // 这里分布式锁对优惠券id加锁，防止多个用户同时领取同一个优惠券
@@ -73,6 +87,10 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
 
         // 1. 查询优惠券，从Redis中获取优惠券信息
         Coupon coupon = queryCouponByCache(couponId);
+        if (coupon == null && warmCouponCache(couponId)) {
+            // 缓存不存在，可能是上线前发放的优惠券，按DB数据补建缓存后重新查询
+            coupon = queryCouponByCache(couponId);
+        }
         if (coupon == null) {
             log.info("优惠券不存在");
             throw new BizIllegalException("优惠券不存在");
@@ -96,7 +114,7 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
 
         // 4. 校验每人已领数量
         Long userId = UserContext.getUser();
-        String key = PromotionConstants.USER_COUPON_CACHE_KEY_PREFIX + couponId;    // prs:user:coupon:优惠券id
+        String key = PromotionConstants.userCouponCacheKey(couponId);    // prs:user:coupon:{优惠券id}
         Long count = redisTemplate.opsForHash().increment(key, userId.toString(), 1);   // count表示本次领取后的已领数量
         log.info("用户领取优惠券，优惠券id：{}, 用户id：{}, 已领数量：{}", couponId, userId, count);
         if (count > coupon.getUserLimit()) {    // 由于count是+1之后的结果，所以此处只能写大于号，不能写等于号
@@ -107,7 +125,7 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
 
         // 5. 扣减优惠券库存
         redisTemplate.opsForHash().increment(
-                PromotionConstants.COUPON_CACHE_KEY_PREFIX + couponId, "totalNum", -1);
+                PromotionConstants.couponCacheKey(couponId), "totalNum", -1);
 
 
         // 6. 发送MQ消息    消息内容为：用户id、优惠券id
@@ -130,7 +148,7 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
         log.info("从Redis中获取优惠券信息，优惠券id：{}", couponId);
 
         // 1. 准备Redis key
-        String key = PromotionConstants.COUPON_CACHE_KEY_PREFIX + couponId;
+        String key = PromotionConstants.couponCacheKey(couponId);
 
         // 2. 从Redis中获取优惠券信息
         Map<Object, Object> objMap = redisTemplate.opsForHash().entries(key);
@@ -163,10 +181,11 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
 
     /**
      * 兑换码兑换优惠券
+     * 与领券流程一样，兑换标记、兑换时间、每人限领数量、库存的校验和扣减在一个Lua脚本中原子完成，
+     * 用户券的生成和兑换码状态的更新通过MQ交给消费者批量处理
      * @param code
      */
     @Override
-    @Transactional
     public void exchangeCoupon(String code) {
         log.info("用户兑换优惠券，兑换码：{}", code);
         if (code == null || code.isEmpty()) {
@@ -179,52 +198,98 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
         log.info("解析兑换码得到自增id：{}", serialNum);
 
 
-        // 2. 校验是否已经兑换 SETBIT KEY 4 1 ，这里直接执行setbit，通过返回值来判断是否兑换过
-        boolean exchanged = exchangeCodeService.updateExchangeMark(serialNum, true);
-        if (exchanged) {
-            log.info("兑换码已经被兑换过了");
-            throw new BizIllegalException("兑换码已经被兑换过了");
+        // 2. 根据序列号区间解析兑换码对应的优惠券id，不再查询兑换码表
+        Long couponId = exchangeCodeService.queryCouponIdBySerialNum(serialNum);
+        if (couponId == null) {
+            log.info("兑换码不存在！");
+            throw new BizIllegalException("兑换码不存在！");
         }
 
 
-        try {
-            // 3. 查询兑换码对应的优惠券id
-            ExchangeCode exchangeCode = exchangeCodeService.getById(serialNum);
-            if (exchangeCode == null) {
-                log.info("兑换码不存在！");
-                throw new BizIllegalException("兑换码不存在！");
-            }
-
-
-            // 4. 是否过期
-            LocalDateTime now = LocalDateTime.now();
-            LocalDateTime expiredTime = exchangeCode.getExpiredTime();
-            if (now.isAfter(expiredTime)) {
-                log.info("兑换码已经过期");
-                throw new BizIllegalException("兑换码已经过期");
-            }
+        // 2.1. 旧Bitmap迁移完成之前，还要检查兑换码是否在分段之前就已经兑换
+        if (exchangeCodeService.isLegacyExchanged(serialNum)) {
+            log.info("兑换码已兑换，兑换码：{}", code);
+            throw new BizIllegalException(PromotionConstants.EXCHANGE_COUPON_ERROR_MSG[0]);
+        }
 
 
-            // 5.校验并生成用户券
-            // 5.1. 查询优惠券
-            Coupon coupon = couponMapper.selectById(exchangeCode.getExchangeTargetId());
-            if (coupon == null) {
-                log.info("优惠券不存在");
-                throw new BizIllegalException("优惠券不存在");
-            }
+        // 3. 执行脚本，校验并扣减
+        Long userId = UserContext.getUser();
+        // 兑换标记、优惠券缓存、用户领券数量都以优惠券id作为hash tag，集群模式下在同一个slot
+        List<String> keys = List.of(
+                CodeUtil.exchangeMarkKey(couponId, serialNum),
+                PromotionConstants.couponCacheKey(couponId),
+                PromotionConstants.userCouponCacheKey(couponId));
+        String offset = String.valueOf(CodeUtil.exchangeMarkOffset(serialNum));
+        Long r = redisTemplate.execute(EXCHANGE_COUPON_SCRIPT, keys,
+                offset, userId.toString(), String.valueOf(System.currentTimeMillis()));
+        if (r != null && r == 2 && warmCouponCache(couponId)) {
+            // 优惠券缓存不存在，可能是上线前发放的优惠券，按DB数据补建缓存后重试一次
+            r = redisTemplate.execute(EXCHANGE_COUPON_SCRIPT, keys,
+                    offset, userId.toString(), String.valueOf(System.currentTimeMillis()));
+        }
+        if (r == null) {
+            log.info("兑换优惠券失败，脚本执行结果为空");
+            throw new BizIllegalException("兑换优惠券失败");
+        }
+        if (r != 0) {
+            String msg = PromotionConstants.EXCHANGE_COUPON_ERROR_MSG[r.intValue() - 1];
+            log.info("兑换优惠券失败，兑换码：{}，原因：{}", code, msg);
+            throw new BizIllegalException(msg);
+        }
 
-            // 5.2. 查询用户
-            Long userId = UserContext.getUser();
 
-            // 5.3. 校验并生成用户券，更新兑换码状态
-            checkAndCreateUserCoupon(coupon, userId, serialNum);
+        // 4. 发送MQ消息，由消费者批量生成用户券，发送失败则回滚Redis中的扣减
+        UserCouponDTO uc = new UserCouponDTO();
+        uc.setUserId(userId);
+        uc.setCouponId(couponId);
+        uc.setSerialNum(serialNum);
+        try {
+            rabbitMqHelper.send(
+                    MqConstants.Exchange.PROMOTION_EXCHANGE,
+                    MqConstants.Key.COUPON_EXCHANGE,
+                    uc);
         } catch (Exception e) {
-            // 将兑换码的状态充值，重置兑换的标记 0
-            exchangeCodeService.updateExchangeMark(serialNum, false);
+            log.error("兑换码兑换消息发送失败，回滚兑换标记，兑换码：{}", code, e);
+            redisTemplate.execute(EXCHANGE_COUPON_ROLLBACK_SCRIPT, keys, offset, userId.toString());
             throw e;
         }
     }
 
+    /**
+     * 按DB数据补建优惠券缓存，兑换码兑换依赖该缓存，而上线前发放的优惠券在Redis中没有缓存
+     * 先补建每个用户的已领数量，再补建优惠券信息，已经存在的缓存不覆盖，多个实例并发补建也没有问题
+     * @param couponId
+     * @return 优惠券是否需要缓存
+     */
+    private boolean warmCouponCache(Long couponId) {
+        // 1. 查询优惠券，只有未开始和发放中的优惠券需要缓存
+        Coupon coupon = couponMapper.selectById(couponId);
+        if (coupon == null || coupon.getIssueBeginTime() == null || coupon.getIssueEndTime() == null
+                || (coupon.getStatus() != CouponStatus.UN_ISSUE && coupon.getStatus() != CouponStatus.ISSUING)) {
+            return false;
+        }
+        log.info("补建优惠券缓存，优惠券id：{}", couponId);
+
+
+        // 2. 补建用户已领数量
+        String userKey = PromotionConstants.userCouponCacheKey(couponId);
+        for (IdAndNumDTO count : getBaseMapper().countUserCouponOfCoupon(couponId)) {
+            redisTemplate.opsForHash().putIfAbsent(userKey, count.getId().toString(), count.getNum().toString());
+        }
+
+
+        // 3. 补建优惠券信息，剩余库存为发行总数量减去已发放数量
+        int issueNum = coupon.getIssueNum() == null ? 0 : coupon.getIssueNum();
+        redisTemplate.execute(WARM_COUPON_CACHE_SCRIPT,
+                List.of(PromotionConstants.couponCacheKey(couponId)),
+                String.valueOf(DateUtils.toEpochMilli(coupon.getIssueBeginTime())),
+                String.valueOf(DateUtils.toEpochMilli(coupon.getIssueEndTime())),
+                String.valueOf(Math.max(coupon.getTotalNum() - issueNum, 0)),
+                String.valueOf(coupon.getUserLimit()));
+        return true;
+    }
+
     @Transactional  // 这里进事务，同时，事务方法一定要public修饰
     @Override
     @MyLock(name = "lock:coupon:uid:#{userId}", lockType = MyLockType.RE_ENTRANT_LOCK, lockStrategy = MyLockStrategy.FAIL_AFTER_RETRY_TIMEOUT)
@@ -295,6 +360,124 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
     }
 
 
+    /**
+     * 消费者批量接收到兑换码兑换消息后，调用此方法，批量生成用户券并更新兑换码状态
+     * 兑换的校验和库存扣减已经在Redis中完成，这里只负责落库
+     * @param ucs
+     */
+    @Override
+    @Transactional
+    public void createExchangedUserCoupons(List<UserCouponDTO> ucs) {
+        // 1. 按兑换码序列号去重
+        Map<Long, UserCouponDTO> ucMap = new LinkedHashMap<>(ucs.size());
+        for (UserCouponDTO uc : ucs) {
+            ucMap.putIfAbsent(uc.getSerialNum(), uc);
+        }
+
+
+        // 2. 过滤已经处理过的兑换码，消息可能重复投递
+        List<ExchangeCode> usedCodes = exchangeCodeService.lambdaQuery()
+                .select(ExchangeCode::getId)
+                .in(ExchangeCode::getId, ucMap.keySet())
+                .eq(ExchangeCode::getStatus, ExchangeCodeStatus.USED)
+                .list();
+        for (ExchangeCode usedCode : usedCodes) {
+            ucMap.remove(usedCode.getId().longValue());
+        }
+        if (ucMap.isEmpty()) {
+            log.info("兑换码兑换消息都已经处理过了");
+            return;
+        }
+        Collection<UserCouponDTO> todo = ucMap.values();
+
+
+        // 3. 批量查询优惠券
+        Set<Long> couponIds = todo.stream().map(UserCouponDTO::getCouponId).collect(Collectors.toSet());
+        Map<Long, Coupon> couponMap = couponMapper.selectBatchIds(couponIds).stream()
+                .collect(Collectors.toMap(Coupon::getId, c -> c));
+
+
+        // 4. 组装用户券和兑换码，优惠券不存在的消息直接跳过
+        List<UserCoupon> userCoupons = new ArrayList<>(todo.size());
+        List<ExchangeCode> exchangeCodes = new ArrayList<>(todo.size());
+        Map<Long, Integer> issueNumMap = new HashMap<>(couponMap.size());
+        for (UserCouponDTO uc : todo) {
+            Coupon coupon = couponMap.get(uc.getCouponId());
+            if (coupon == null) {
+                log.info("优惠券不存在，couponId：{}", uc.getCouponId());
+                continue;
+            }
+            userCoupons.add(buildUserCoupon(coupon, uc.getUserId()));
+            exchangeCodes.add(new ExchangeCode()
+                    .setId(uc.getSerialNum().intValue())
+                    .setUserId(uc.getUserId())
+                    .setStatus(ExchangeCodeStatus.USED));
+            issueNumMap.merge(coupon.getId(), 1, Integer::sum);
+        }
+        if (userCoupons.isEmpty()) {
+            return;
+        }
+
+
+        // 5. 按优惠券累加已经发放的数量，只统计真正生成了用户券的消息
+        issueNumMap.forEach(couponMapper::incrIssueNumBy);
+
+
+        // 6. 批量新增用户券
+        saveBatch(userCoupons);
+
+
+        // 7. 批量更新兑换码状态
+        exchangeCodeService.updateBatchById(exchangeCodes);
+        log.info("批量处理兑换码兑换消息完成，生成用户券{}张", userCoupons.size());
+    }
+
+
+    /**
+     * 核销订单使用的优惠券，每个优惠券核销该用户最早到期的一张未使用的券
+     * 同一个订单只核销一次，事务提交后才记录已核销的订单，避免回滚后消息被误判为重复
+     * @param dto
+     */
+    @Override
+    @Transactional
+    public void useCoupons(CouponUseDTO dto) {
+        // 1. 核销消息去重
+        String key = PromotionConstants.COUPON_USE_ORDER_KEY_PREFIX + dto.getOrderId();
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+            log.info("订单{}的优惠券已经核销过了", dto.getOrderId());
+            return;
+        }
+
+
+        // 2. 逐个核销优惠券
+        LocalDateTime now = LocalDateTime.now();
+        for (Long couponId : dto.getCouponIds()) {
+            UserCoupon uc = lambdaQuery()
+                    .eq(UserCoupon::getUserId, dto.getUserId())
+                    .eq(UserCoupon::getCouponId, couponId)
+                    .eq(UserCoupon::getStatus, UserCouponStatus.UNUSED)
+                    .orderByAsc(UserCoupon::getTermEndTime)
+                    .last("LIMIT 1")
+                    .one();
+            if (uc == null) {
+                log.warn("用户{}没有可以核销的优惠券，优惠券id：{}，订单id：{}", dto.getUserId(), couponId, dto.getOrderId());
+                continue;
+            }
+            lambdaUpdate()
+                    .set(UserCoupon::getStatus, UserCouponStatus.USED)
+                    .set(UserCoupon::getUsedTime, now)
+                    .eq(UserCoupon::getId, uc.getId())
+                    .eq(UserCoupon::getStatus, UserCouponStatus.UNUSED)
+                    .update();
+        }
+
+
+        // 3. 事务提交后记录已核销的订单
+        TransactionUtils.afterCommit(() ->
+                redisTemplate.opsForValue().set(key, "1", PromotionConstants.COUPON_USE_ORDER_TTL_DAYS, TimeUnit.DAYS));
+    }
+
+
     /**
      * 查询我的优惠券可用方案
      * @param orderCourses
@@ -316,13 +499,19 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
 
 
         // 2. 初排
-        // 2.1 计算订单总金额
-        int totalAmount = orderCourses.stream().mapToInt(OrderCourseDTO::getPrice).sum();
+        // 2.1 计算订单总金额，同时把课程价格按下标保存到数组中
+        int[] prices = new int[orderCourses.size()];
+        int totalAmount = 0;
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = orderCourses.get(i).getPrice();
+            totalAmount += prices[i];
+        }
         log.info("订单总金额：{}", totalAmount);
 
         // 2.2 筛选可用券
+        int orderAmount = totalAmount;
         List<Coupon> availableCoupons = coupons.stream()
-                .filter(c -> DiscountStrategy.getDiscount(c.getDiscountType()).canUse(totalAmount, c))
+                .filter(c -> DiscountStrategy.getDiscount(c.getDiscountType()).canUse(orderAmount, c))
                 .collect(Collectors.toList());
         log.info("经过初排后，该用户的可用优惠券有{}张，分别是：{}", availableCoupons.size(), availableCoupons);
         if (CollUtils.isEmpty(availableCoupons)) {
@@ -331,10 +520,10 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
         }
 
 
-        // 3. 精排
-        Map<Coupon, List<OrderCourseDTO>> availableCouponMap = findAvailableCoupon(availableCoupons, orderCourses);
-        log.info("经过精排后，每一个优惠券对应的可用课程: {}", availableCouponMap);
-        if (availableCouponMap.isEmpty()) {
+        // 3. 精排，得到预编译的优惠券，每张券的折扣策略只查找一次
+        List<CompiledCoupon> compiledCoupons = findAvailableCoupon(availableCoupons, orderCourses, prices);
+        log.info("经过精排后，每一个优惠券对应的可用课程: {}", compiledCoupons);
+        if (compiledCoupons.isEmpty()) {
             log.info("经过精排后，没有可用的优惠券方案");
             return CollUtils.emptyList();
         }
@@ -342,39 +531,24 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
 
         // 4. 组合
         // 4.1 添加组合的方案
-        availableCoupons = new ArrayList<>(availableCouponMap.keySet());
-        log.info("经过精排之后的可用优惠券个数：{}，分别为:{}", availableCoupons.size(), availableCoupons);
-        List<List<Coupon>> solutions = PermuteUtil.permute(availableCoupons);
+        List<List<CompiledCoupon>> solutions = PermuteUtil.permute(compiledCoupons);
 
         // 4.2 添加单券的方案
-        for (Coupon c : availableCoupons) {
+        for (CompiledCoupon c : compiledCoupons) {
             solutions.add(List.of(c));
         }
-        log.info("经过组合后， 该用户的可用优惠券有{}张，优惠券方案分别是：{}", solutions.size(), solutions);
+        log.info("经过组合后， 该用户的可用优惠券有{}张，优惠券方案有{}种", compiledCoupons.size(), solutions.size());
 
 
-//        // 5. 开始计算每一种组合的优惠明细
-//        log.info("开始计算每一种组合的优惠明细");
-//        List<CouponDiscountDTO> dtoList = new ArrayList<>();
-//        for (List<Coupon> solution : solutions) {
-//            CouponDiscountDTO dto = calculateSolutionDiscount(availableCouponMap, orderCourses, solution);
-//            log.info("方案最终优惠 {}  方案中优惠券使用了 {}  规则是 {}", dto.getDiscountAmount(), dto.getIds(), dto.getRules());
-//            dtoList.add(dto);
-//        }
-//        log.info("优惠明细结果dtoList: {}", dtoList);
-
-
-        // 6. 使用多线程改造第5步，并发计算每一种组合方案的优惠信息
+        // 5. 使用多线程并发计算每一种组合方案的优惠信息，计算过程只操作int数组，不生成规则描述
         log.info("开始使用多线程计算优惠券方案优惠信息");
-        List<CouponDiscountDTO> dtoList = Collections.synchronizedList(new ArrayList<>(solutions.size()));  // 线程安全的list
+        List<Solution> solutionList = Collections.synchronizedList(new ArrayList<>(solutions.size()));  // 线程安全的list
         CountDownLatch latch = new CountDownLatch(solutions.size());
-        for (List<Coupon> solution : solutions) {
-            CompletableFuture.supplyAsync(() -> {
-                CouponDiscountDTO dto = calculateSolutionDiscount(availableCouponMap, orderCourses, solution);
-                return dto;
-            }, calculateSolutionExecutor).thenAccept(dto -> {
-                log.info("方案最终优惠 {}  方案中优惠券使用了 {}  规则是 {}", dto.getDiscountAmount(), dto.getIds(), dto.getRules());
-                dtoList.add(dto);
+        for (List<CompiledCoupon> solution : solutions) {
+            CompletableFuture.supplyAsync(
+                    () -> calculateSolutionDiscount(prices, solution), calculateSolutionExecutor
+            ).thenAccept(result -> {
+                solutionList.add(result);
                 latch.countDown();
             });
         }
@@ -383,11 +557,11 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
         } catch (InterruptedException e) {
             log.error("多线程计算优惠券方案优惠信息失败", e);
         }
-        log.info("经过多线程计算后，有{}种方案，具体的优惠券方案优惠信息：{}", dtoList.size(), dtoList);
+        log.info("经过多线程计算后，有{}种方案", solutionList.size());
 
 
-        // 7. 筛选最优解
-        List<CouponDiscountDTO> bestDtoList = findBestSolution(dtoList);
+        // 6. 筛选最优解，只为最优解生成规则描述
+        List<CouponDiscountDTO> bestDtoList = findBestSolution(solutionList);
         log.info("筛选最优解后，有{}种方案，具体的优惠券方案优惠信息：{}", bestDtoList.size(), bestDtoList);
 
         return bestDtoList;
@@ -398,142 +572,118 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
      * 筛选最优解，遵循两个原则：
      * - 用券相同时，优惠金额最高的方案
      * - 优惠金额相同时，用券最少的方案
-     * @param dtoList
+     * @param solutions
      * @return
      */
-    private List<CouponDiscountDTO> findBestSolution(List<CouponDiscountDTO> dtoList) {
-        // log.info("筛选最优解，dtoList：{}", dtoList);
-
+    private List<CouponDiscountDTO> findBestSolution(List<Solution> solutions) {
         // 1. 准备两个Map记录最优解
-        Map<String, CouponDiscountDTO> moreDiscountMap = new HashMap<>();   // 记录用券相同，金额最高的方案
-        Map<Integer, CouponDiscountDTO> lessCouponMap = new HashMap<>();    // 记录金额相同，用券最少的方案
+        Map<Long, Solution> moreDiscountMap = new HashMap<>();      // 记录用券相同，金额最高的方案，key为用券位图
+        Map<Integer, Solution> lessCouponMap = new HashMap<>();     // 记录金额相同，用券最少的方案
 
 
         // 2. 循环遍历，向两个Map中添加记录，筛选最优解
-        for (CouponDiscountDTO solution : dtoList) {
-            // 2.1 计算当前方案的id组合
-            String ids = solution.getIds().stream()
-                    .sorted(Long::compare).map(String::valueOf).collect(Collectors.joining(","));
-
-            // 2.2 比较用券相同时，优惠金额是否最大
-            CouponDiscountDTO best = moreDiscountMap.get(ids);
-            if (best != null && best.getDiscountAmount() >= solution.getDiscountAmount()) {
-                // 当前方案优惠金额少，跳过
-                continue;
+        synchronized (solutions) {
+            for (Solution solution : solutions) {
+                // 2.1 比较用券相同时，优惠金额是否最大
+                Solution best = moreDiscountMap.get(solution.couponMask);
+                if (best != null && best.discountAmount >= solution.discountAmount) {
+                    // 当前方案优惠金额少，跳过
+                    continue;
+                }
+
+                // 2.2 比较金额相同时，用券数量是否最少
+                best = lessCouponMap.get(solution.discountAmount);
+                int size = solution.usedCoupons.size();
+                if (size > 1 && best != null && best.usedCoupons.size() <= size) {
+                    // 当前方案用券更多，放弃
+                    continue;
+                }
+
+                // 2.3 更新最优解
+                moreDiscountMap.put(solution.couponMask, solution);
+                lessCouponMap.put(solution.discountAmount, solution);
             }
-
-            // 2.3 比较金额相同时，用券数量是否最少
-            best = lessCouponMap.get(solution.getDiscountAmount());
-            int size = solution.getIds().size();
-            if (size > 1 && best != null && best.getIds().size() <= size) {
-                // 当前方案用券更多，放弃
-                continue;
-            }
-
-            // 2.4 更新最优解
-            moreDiscountMap.put(ids, solution);
-            lessCouponMap.put(solution.getDiscountAmount(), solution);
         }
 
 
-        // 3 求交集
-        Collection<CouponDiscountDTO> bestSolutions = CollUtils
-                .intersection(moreDiscountMap.values(), lessCouponMap.values());
-
-
-        // 4 排序，按优惠金额降序
-        return bestSolutions.stream()
-                .sorted(Comparator.comparingInt(CouponDiscountDTO::getDiscountAmount).reversed())
+        // 3 求交集，排序，按优惠金额降序，最后才生成DTO和规则描述
+        return CollUtils.intersection(moreDiscountMap.values(), lessCouponMap.values()).stream()
+                .sorted(Comparator.comparingInt((Solution so) -> so.discountAmount).reversed())
+                .map(Solution::toDTO)
                 .collect(Collectors.toList());
     }
 
 
     /**
      * 计算每一种组合方案的优惠信息
-     * @param availableCouponMap    优惠券和可用课程的映射集合
-     * @param orderCourses           订单中的课程集合
-     * @param solution               方案
+     * @param prices    订单中的课程价格，按下标排列
+     * @param solution  方案
      * @return
      */
-    private CouponDiscountDTO calculateSolutionDiscount(Map<Coupon, List<OrderCourseDTO>> availableCouponMap,
-                                                        List<OrderCourseDTO> orderCourses,
-                                                        List<Coupon> solution) {
-        // log.info("计算每一种组合的优惠明细，availableCouponMap：{}, orderCourses：{}, solution：{}", availableCouponMap, orderCourses, solution);
+    private Solution calculateSolutionDiscount(int[] prices, List<CompiledCoupon> solution) {
+        // 1. 初始化方案结果
+        Solution result = new Solution(solution.size());
 
-        // 1. 初始化方案结果DTO
-        CouponDiscountDTO dto = new CouponDiscountDTO();
 
-
-        // 2. 初始化商品id和商品折扣明细的映射，初始折扣明细全都设置为0，设置map结构，key为商品id，value初始值为0
-        Map<Long, Integer> detailMap = orderCourses.stream().collect(Collectors.toMap(OrderCourseDTO::getId, oc -> 0));
+        // 2. 初始化每个课程的折扣明细，下标与prices一致，初始值都为0
+        int[] details = new int[prices.length];
 
 
         // 3. 计算方案的优惠信息
         // 3.1 循环方案中的优惠券
-        for (Coupon coupon : solution) {
-            // 3.2 获取该优惠券限定范围对应的可用课程
-            List<OrderCourseDTO> availableCourses = availableCouponMap.get(coupon);
-
+        for (CompiledCoupon coupon : solution) {
             // 3.2 计算可用课程的总价（课程原价 - 折扣明细）
-            int totalAmount = availableCourses.stream()
-                    .mapToInt(oc -> oc.getPrice() - detailMap.get(oc.getId())).sum();
+            int[] courseIndexes = coupon.getCourseIndexes();
+            int totalAmount = 0;
+            for (int i : courseIndexes) {
+                totalAmount += prices[i] - details[i];
+            }
 
             // 3.3 判断该优惠券是否可用
-            Discount discount = DiscountStrategy.getDiscount(coupon.getDiscountType());
-            if (!discount.canUse(totalAmount, coupon)) {
-                log.info("该优惠券不可用");
+            if (!coupon.canUse(totalAmount)) {
                 continue;   // 该优惠券不可用，跳过，继续下一个优惠券的处理
             }
 
             // 3.4 计算使用该优惠券后的折扣值
-            int discountAmount = discount.calculateDiscount(totalAmount, coupon);
+            int discountAmount = coupon.calculateDiscount(totalAmount);
 
-            // 3.5 计算商品的折扣明细，更新到detailMap中
-            calculateDiscountDetails(detailMap, availableCourses, totalAmount, discountAmount);
+            // 3.5 计算商品的折扣明细，更新到details中
+            calculateDiscountDetails(details, prices, courseIndexes, totalAmount, discountAmount);
 
-            // 3.6 累加每一个优惠券的优惠金额，赋值给dto对象
-            dto.getIds().add(coupon.getId());  // 只要执行了当前这句话，就意味着这个优惠券生效了  coupon.getId()
-            dto.getRules().add(discount.getRule(coupon));
-            dto.setDiscountAmount(discountAmount + dto.getDiscountAmount());    // 不能直接覆盖，还应该是所有生效的优惠券累加的结果
+            // 3.6 累加每一个优惠券的优惠金额
+            result.add(coupon, discountAmount);
         }
-        return dto;
+        return result;
     }
 
 
     /**
-     * 计算商品的折扣明细，更新到detailMap中
+     * 计算商品的折扣明细，更新到details中
      * 本方法就是在使用优惠券后，计算每个商品的折扣明细
      * 规则：前面的商品按比例计算，最后一个商品折扣明细 = 总的优惠金额 - 前面所有商品的折扣金额之和
-     * @param detailMap 商品id和商品折扣明细的映射
-     * @param availableCourses   该优惠券对应的可用课程集合
-     * @param totalAmount        该优惠券对应的可用课程的总价
-     * @param discountAmount     该优惠券对应的折扣金额
+     * @param details           商品的折扣明细，按下标排列
+     * @param prices            商品的价格，按下标排列
+     * @param courseIndexes     该优惠券对应的可用课程下标
+     * @param totalAmount       该优惠券对应的可用课程的总价
+     * @param discountAmount    该优惠券对应的折扣金额
      */
-    private void calculateDiscountDetails(Map<Long, Integer> detailMap,
-                                          List<OrderCourseDTO> availableCourses,
+    private void calculateDiscountDetails(int[] details, int[] prices, int[] courseIndexes,
                                           int totalAmount, int discountAmount) {
-        // log.info("计算商品的折扣明细，detailMap：{}, availableCourses：{}, totalAmount：{}, discountAmount：{}", detailMap, availableCourses, totalAmount, discountAmount);
-
-        int times = 0;  // 代表已经处理的商品个数
         int remainDiscount = discountAmount;
+        int last = courseIndexes.length - 1;
         // 循环遍历可用订单课程
-        for (OrderCourseDTO course : availableCourses) {
-            // 更新课程已计算数量
-            ++ times;
-            int discount = 0;
-
-            // 判断是否是最后一个课程
-            if (times == availableCourses.size()) { // 说明是最后一个课程
+        for (int times = 0; times <= last; times++) {
+            int i = courseIndexes[times];
+            int discount;
+            if (times == last) {
                 // 是最后一个课程，总折扣金额 - 之前所有商品的折扣金额之和
                 discount = remainDiscount;
-            } else {                 // 不是最后一个课程
+            } else {
                 // 计算折扣明细（课程价格在总价中占的比例，乘以总的折扣）
-                discount = discountAmount * course.getPrice() / totalAmount;
+                discount = discountAmount * prices[i] / totalAmount;
                 remainDiscount -= discount;
             }
-
-            // 将商品的折扣明细添加到detailMap中
-            detailMap.put(course.getId(), discount + detailMap.get(course.getId()));
+            details[i] += discount;
         }
     }
 
@@ -542,51 +692,102 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
      * 精排，查询每一个优惠券对应的课程，分为两步
      * 1. 首先要基于优惠券的限定范围对课程筛选，找出可用课程。如果没有可用课程，则优惠券不可用。
      * 2. 然后对可用课程计算总价，判断是否达到优惠门槛，没有达到门槛则优惠券不可用
-     * @param coupons  初排之后的优惠券集合
-     * @param orderCourses      订单中的课程集合
-     * @return
+     * @param coupons       初排之后的优惠券集合
+     * @param orderCourses  订单中的课程集合
+     * @param prices        订单中的课程价格，按下标排列
+     * @return 预编译的可用优惠券
      */
-    private Map<Coupon, List<OrderCourseDTO>> findAvailableCoupon(List<Coupon> coupons, List<OrderCourseDTO> orderCourses) {
+    private List<CompiledCoupon> findAvailableCoupon(List<Coupon> coupons, List<OrderCourseDTO> orderCourses, int[] prices) {
         log.info("进入精排，查询每一个优惠券对应的课程，coupons：{}, orderCourses：{}", coupons, orderCourses);
 
-        Map<Coupon, List<OrderCourseDTO>> map = new HashMap<>();
+        // 0. 一次性批量查询所有限定了范围的优惠券的可用范围，避免循环中逐个查询
+        List<Long> specificIds = coupons.stream()
+                .filter(Coupon::getSpecific).map(Coupon::getId).collect(Collectors.toList());
+        Map<Long, long[]> scopeMap = couponScopeService.queryScopeMap(specificIds);
+
+        // 全部课程的下标，不限定范围的优惠券共用
+        int[] allIndexes = new int[orderCourses.size()];
+        for (int i = 0; i < allIndexes.length; i++) {
+            allIndexes[i] = i;
+        }
+
+        List<CompiledCoupon> list = new ArrayList<>(coupons.size());
         // 1. 循环遍历初排后的优惠券集合
         for (Coupon coupon : coupons) {
-            // 2. 找出每一个优惠券的可用课程
-            List<OrderCourseDTO> availableCourses = orderCourses;
+            // 2. 找出每一个优惠券的可用课程下标
+            int[] courseIndexes = allIndexes;
 
             // 2.1 判断优惠券是否限定了范围
             if (coupon.getSpecific()) {
-                // 2.2 限定了范围，则查询券的可用范围
-                List<CouponScope> scopes = couponScopeService.lambdaQuery()
-                        .eq(CouponScope::getCouponId, coupon.getId()).list();
-
-                // 2.3 获取限定范围对应的分类id集合
-                Set<Long> scopeIds = scopes.stream().map(CouponScope::getBizId).collect(Collectors.toSet());
-
-                // 2.4 筛选课程，从orderCourses中筛选出该范围内的课程
-                availableCourses = orderCourses.stream()
-                        .filter(c -> scopeIds.contains(c.getCateId())).collect(Collectors.toList());
+                // 2.2 限定了范围，则获取限定范围对应的分类id集合（升序）
+                long[] scopeIds = scopeMap.getOrDefault(coupon.getId(), new long[0]);
+
+                // 2.3 筛选课程，从orderCourses中筛选出该范围内的课程
+                int[] tmp = new int[orderCourses.size()];
+                int size = 0;
+                for (int i = 0; i < tmp.length; i++) {
+                    Long cateId = orderCourses.get(i).getCateId();
+                    if (cateId != null && Arrays.binarySearch(scopeIds, cateId) >= 0) {
+                        tmp[size++] = i;
+                    }
+                }
+                courseIndexes = Arrays.copyOf(tmp, size);
             }
-            if (CollUtils.isEmpty(availableCourses)) {
+            if (courseIndexes.length == 0) {
                 log.info("该优惠券没有任何可用课程");
                 continue;   // 说明当前优惠券限定了范围，但是在订单中的课程中没有找到可用课程，说明该优惠券不可用，所以忽略该优惠券，继续下一个优惠券的处理
             }
 
 
             // 3. 计算可用课程的总金额
-            int totalAmount = availableCourses.stream().mapToInt(OrderCourseDTO::getPrice).sum();
+            int totalAmount = 0;
+            for (int i : courseIndexes) {
+                totalAmount += prices[i];
+            }
 
 
-            // 4. 判断是否可用
+            // 4. 判断是否可用，可用则预编译
             Discount discount = DiscountStrategy.getDiscount(coupon.getDiscountType());
             if (discount.canUse(totalAmount, coupon)) {
-                map.put(coupon, availableCourses);
+                list.add(new CompiledCoupon(list.size(), coupon, discount, courseIndexes));
             }
         }
 
 
-        return map;
+        return list;
+    }
+
+
+    /**
+     * 一种组合方案的计算结果，规则描述等到方案被选为最优解之后才生成
+     */
+    private static class Solution {
+        /**
+         * 生效的优惠券位图，用于判断用券是否相同
+         */
+        private long couponMask;
+        private int discountAmount;
+        private final List<CompiledCoupon> usedCoupons;
+
+        private Solution(int size) {
+            this.usedCoupons = new ArrayList<>(size);
+        }
+
+        private void add(CompiledCoupon coupon, int discountAmount) {
+            usedCoupons.add(coupon);
+            couponMask |= 1L << coupon.getIndex();
+            this.discountAmount += discountAmount;
+        }
+
+        private CouponDiscountDTO toDTO() {
+            CouponDiscountDTO dto = new CouponDiscountDTO();
+            for (CompiledCoupon coupon : usedCoupons) {
+                dto.getIds().add(coupon.getCoupon().getId());
+                dto.getRules().add(coupon.getRule());
+            }
+            dto.setDiscountAmount(discountAmount);
+            return dto;
+        }
     }
 
 
@@ -597,7 +798,17 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
      */
     private void saveUserCoupon(Coupon coupon, Long userId) {
         log.info("新增用户券，优惠券id：{}, 用户id：{}", coupon.getId(), userId);
+        this.save(buildUserCoupon(coupon, userId));
+    }
+
 
+    /**
+     * 根据优惠券构建用户券，计算有效期
+     * @param coupon
+     * @param userId
+     * @return
+     */
+    private UserCoupon buildUserCoupon(Coupon coupon, Long userId) {
         // 1. 基本信息
         UserCoupon uc = new UserCoupon();
         uc.setUserId(userId);
@@ -613,9 +824,6 @@ public class UserCouponMQServiceImpl extends ServiceImpl<UserCouponMapper, UserC
         }
         uc.setTermBeginTime(termBeginTime);
         uc.setTermEndTime(termEndTime);
-
-
-        // 3.保存到DB中
-        this.save(uc);
+        return uc;
     }
 }
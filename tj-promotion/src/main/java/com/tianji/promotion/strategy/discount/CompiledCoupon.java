@@ -0,0 +1,55 @@
+package com.tianji.promotion.strategy.discount;
+
+import com.tianji.promotion.domain.po.Coupon;
+import lombok.Getter;
+
+/**
+ * <p>预编译的优惠券，精排之后生成</p>
+ * 折扣策略只查找一次，可用课程以订单课程下标的形式保存，方案计算时只需要操作int数组
+ */
+@Getter
+public class CompiledCoupon {
+    /**
+     * 在精排后可用优惠券中的位置，用于生成方案的优惠券位图
+     */
+    private final int index;
+    private final Coupon coupon;
+    private final Discount discount;
+    /**
+     * 该优惠券可用的课程在订单课程中的下标
+     */
+    private final int[] courseIndexes;
+
+    public CompiledCoupon(int index, Coupon coupon, Discount discount, int[] courseIndexes) {
+        this.index = index;
+        this.coupon = coupon;
+        this.discount = discount;
+        this.courseIndexes = courseIndexes;
+    }
+
+    /**
+     * 判断当前价格是否满足优惠券使用限制
+     */
+    public boolean canUse(int totalAmount) {
+        return discount.canUse(totalAmount, coupon);
+    }
+
+    /**
+     * 计算折扣金额
+     */
+    public int calculateDiscount(int totalAmount) {
+        return discount.calculateDiscount(totalAmount, coupon);
+    }
+
+    /**
+     * 规则描述信息，只在最终返回的方案中才需要生成
+     */
+    public String getRule() {
+        return discount.getRule(coupon);
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledCoupon(id=" + coupon.getId() + ", courses=" + courseIndexes.length + ")";
+    }
+}
@@ -0,0 +1,22 @@
+package com.tianji.promotion.task;
+
+import com.tianji.promotion.service.IExchangeCodeService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class ExchangeCodeResumeTask {
+    private final IExchangeCodeService exchangeCodeService;
+
+    @Scheduled(cron = "0 * * * * ?") // 每分钟执行一次，恢复中断的兑换码生成任务
+    public void resumeGenerateExchangeCode() {
+        exchangeCodeService.resumeGenerateExchangeCode();
+    }
+
+    @Scheduled(initialDelay = 10000, fixedDelay = 60000) // 服务启动后迁移旧的兑换码Bitmap，迁移完成后只检查一次标记
+    public void migrateLegacyExchangeMarks() {
+        exchangeCodeService.migrateLegacyExchangeMarks();
+    }
+}
@@ -2,6 +2,7 @@ package com.tianji.promotion.utils;
 
 import com.tianji.common.constants.RegexConstants;
 import com.tianji.common.exceptions.BadRequestException;
+import com.tianji.promotion.constants.PromotionConstants;
 
 /**
  * <h1 style='font-weight:500'>1.兑换码算法说明：</h1>
@@ -103,7 +104,6 @@ public class CodeUtil {
         long payload = fresh << FRESH_BIT_OFFSET | serialNum;
         // 3.计算验证码
         long checkCode = calcCheckCode(payload, (int) fresh);
-        System.out.println("checkCode = " + checkCode);
         // 4.payload做大质数异或运算，混淆数据
         payload ^= XOR_TABLE[(int) (checkCode & FRESH_MASK)];
         // 5.拼接兑换码明文: 校验码（14位） + payload（36位）
@@ -159,4 +159,26 @@ public class CodeUtil {
         }
         return payload & SERIAL_NUM_MASK;
     }
+
+
+    /**
+     * 兑换码序列号所在的Bitmap分段key，以优惠券id作为hash tag，与优惠券缓存在同一个slot
+     * @param couponId
+     * @param serialNum
+     * @return
+     */
+    public static String exchangeMarkKey(Long couponId, long serialNum) {
+        return PromotionConstants.COUPON_CODE_MAP_KEY + PromotionConstants.couponHashTag(couponId)
+                + ":" + (serialNum >>> PromotionConstants.COUPON_CODE_MAP_SEGMENT_BITS);
+    }
+
+
+    /**
+     * 兑换码序列号在所在分段中的offset
+     * @param serialNum
+     * @return
+     */
+    public static long exchangeMarkOffset(long serialNum) {
+        return serialNum & ((1L << PromotionConstants.COUPON_CODE_MAP_SEGMENT_BITS) - 1);
+    }
 }
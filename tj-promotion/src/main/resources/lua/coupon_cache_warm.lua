@@ -0,0 +1,10 @@
+-- 按DB数据补建优惠券缓存，缓存已存在时不覆盖，避免覆盖Redis中已经扣减过的库存
+-- KEYS[1]：优惠券缓存key
+-- ARGV[1]：领券开始时间毫秒值    ARGV[2]：领券结束时间毫秒值    ARGV[3]：剩余库存    ARGV[4]：每人限领数量
+-- 返回值：1-补建成功，0-缓存已存在
+
+if (redis.call('EXISTS', KEYS[1]) == 1) then
+    return 0
+end
+redis.call('HSET', KEYS[1], 'issueBeginTime', ARGV[1], 'issueEndTime', ARGV[2], 'totalNum', ARGV[3], 'userLimit', ARGV[4])
+return 1
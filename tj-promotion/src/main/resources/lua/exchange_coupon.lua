@@ -0,0 +1,41 @@
+-- 兑换码兑换优惠券，一次完成校验和扣减
+-- KEYS[1]：兑换码所在分段的Bitmap key    KEYS[2]：优惠券缓存key    KEYS[3]：用户领券数量key
+-- 三个key都以{优惠券id}作为hash tag，集群模式下在同一个slot
+-- ARGV[1]：兑换码在分段中的offset    ARGV[2]：用户id    ARGV[3]：当前时间毫秒值
+-- 返回值：0-成功，其它为PromotionConstants.EXCHANGE_COUPON_ERROR_MSG的下标+1
+
+-- 1. 校验兑换码是否已兑换
+if (redis.call('GETBIT', KEYS[1], ARGV[1]) == 1) then
+    return 1
+end
+
+-- 2. 校验优惠券是否存在
+if (redis.call('EXISTS', KEYS[2]) == 0) then
+    return 2
+end
+local coupon = redis.call('HMGET', KEYS[2], 'issueBeginTime', 'issueEndTime', 'totalNum', 'userLimit')
+local now = tonumber(ARGV[3])
+
+-- 3. 校验兑换时间
+if (now < tonumber(coupon[1])) then
+    return 3
+end
+if (now > tonumber(coupon[2])) then
+    return 4
+end
+
+-- 4. 校验每人限领数量
+if (tonumber(redis.call('HGET', KEYS[3], ARGV[2]) or 0) >= tonumber(coupon[4])) then
+    return 5
+end
+
+-- 5. 校验库存
+if (tonumber(coupon[3]) <= 0) then
+    return 6
+end
+
+-- 6. 标记兑换码已兑换，扣减库存，累加用户领券数量
+redis.call('SETBIT', KEYS[1], ARGV[1], 1)
+redis.call('HINCRBY', KEYS[2], 'totalNum', -1)
+redis.call('HINCRBY', KEYS[3], ARGV[2], 1)
+return 0
@@ -0,0 +1,15 @@
+-- 兑换码兑换优惠券失败后的回滚，与exchange_coupon.lua的参数一致
+-- KEYS[1]：兑换码所在分段的Bitmap key    KEYS[2]：优惠券缓存key    KEYS[3]：用户领券数量key
+-- 三个key都以{优惠券id}作为hash tag，集群模式下在同一个slot
+-- ARGV[1]：兑换码在分段中的offset    ARGV[2]：用户id
+
+-- 1. 兑换码未被标记，说明无需回滚
+if (redis.call('GETBIT', KEYS[1], ARGV[1]) == 0) then
+    return 0
+end
+
+-- 2. 重置兑换标记，归还库存，扣减用户领券数量
+redis.call('SETBIT', KEYS[1], ARGV[1], 0)
+redis.call('HINCRBY', KEYS[2], 'totalNum', 1)
+redis.call('HINCRBY', KEYS[3], ARGV[2], -1)
+return 1
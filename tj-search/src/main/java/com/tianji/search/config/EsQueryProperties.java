@@ -0,0 +1,17 @@
+package com.tianji.search.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "tj.search.es")
+public class EsQueryProperties {
+    /**
+     * 单次ES查询的截止时间，超时后取消请求并按查询失败处理，ES变慢时不会长期占用线程
+     */
+    private Duration timeout = Duration.ofSeconds(2);
+}
@@ -4,9 +4,19 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "tj.interests")
 public class InterestsProperties {
     private int topNumber;
+    /**
+     * 推荐课程缓存写入多久后异步刷新
+     */
+    private Duration slateRefreshAfter = Duration.ofMinutes(1);
+    /**
+     * 推荐课程缓存的最大条数，每种兴趣组合、是否免费、排序方式对应一条
+     */
+    private int slateMaxSize = 1000;
 }
@@ -0,0 +1,31 @@
+package com.tianji.search.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "tj.search.local")
+public class LocalIndexProperties {
+    /**
+     * 是否启用本地lucene索引。启用后课程事件会同时写入本地索引，ES不可用时由本地索引提供搜索
+     */
+    private boolean enabled = false;
+    /**
+     * 是否以本地索引为主，小规模部署时可以不依赖ES
+     */
+    private boolean primary = false;
+    /**
+     * 本地索引目录
+     */
+    private String path = System.getProperty("java.io.tmpdir") + "/tj-search/course";
+    /**
+     * 本地索引提交到磁盘的间隔，单位毫秒
+     */
+    private long snapshotInterval = 60000;
+    /**
+     * 本地索引从课程服务全量同步的间隔，单位毫秒。本地索引由每个节点独立维护，定时同步用来修正消息丢失造成的偏差
+     */
+    private long resyncInterval = 3600000;
+}
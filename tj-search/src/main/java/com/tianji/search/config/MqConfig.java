@@ -0,0 +1,43 @@
+package com.tianji.search.config;
+
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MqConfig {
+
+    /**
+     * 批量消费的监听容器工厂，攒够一批或者等待超过合并窗口后，一次性把整批消息交给监听器，
+     * 监听器正常返回后整批消息才会确认
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            SoldIndexerProperties properties, MessageRecoverer messageRecoverer){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        // 1.开启批量消费
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        // 2.每批最多消息数量
+        factory.setBatchSize(properties.getBatchSize());
+        factory.setPrefetchCount(properties.getBatchSize() * 2);
+        // 3.不足一批时的最长等待时间，即销量合并的窗口
+        factory.setReceiveTimeout(properties.getFlushInterval());
+        // 4.批量消费使用无状态重试，整批消息在本地按退避时间重试，销量更新按订单去重，重试是幂等的，
+        // 重试用尽后整批逐条转发到失败交换机，避免失败的批次无限重新投递
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(properties.getRetryMaxAttempts())
+                .backOffOptions(properties.getRetryInitialInterval(), 2.0, properties.getRetryMaxInterval())
+                .recoverer((MessageBatchRecoverer) (messages, cause) ->
+                        messages.forEach(message -> messageRecoverer.recover(message, cause)))
+                .build());
+        return factory;
+    }
+}
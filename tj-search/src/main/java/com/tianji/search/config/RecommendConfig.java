@@ -0,0 +1,71 @@
+package com.tianji.search.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 首页推荐的缓存配置
+ */
+@Configuration
+public class RecommendConfig {
+
+    /**
+     * 用户兴趣的本地缓存，key是用户id，value是感兴趣的二级分类id
+     */
+    @Bean
+    public Cache<Long, List<Long>> interestsCache() {
+        return Caffeine.newBuilder()
+                .initialCapacity(1024) // 初始容量
+                .maximumSize(100_000) // 最大内存限制
+                .expireAfterWrite(Duration.ofMinutes(10)) // 有效期，兴趣修改的广播丢失时最多延迟这么久生效
+                .build();
+    }
+
+    /**
+     * 推荐课程缓存的异步刷新线程池
+     */
+    @Bean
+    public Executor recommendRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 1. 核心线程池大小
+        executor.setCorePoolSize(2);
+        // 2. 最大线程池大小
+        executor.setMaxPoolSize(2);
+        // 3. 队列大小
+        executor.setQueueCapacity(1000);
+        // 4. 线程名称
+        executor.setThreadNamePrefix("recommend-refresh-");
+        // 5. 拒绝策略
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * ES查询失败后降级查询本地索引的线程池，避免在ES客户端的IO线程上执行本地查询
+     */
+    @Bean
+    public Executor searchFallbackExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 1. 核心线程池大小
+        executor.setCorePoolSize(4);
+        // 2. 最大线程池大小
+        executor.setMaxPoolSize(4);
+        // 3. 队列大小
+        executor.setQueueCapacity(200);
+        // 4. 线程名称
+        executor.setThreadNamePrefix("search-fallback-");
+        // 5. 拒绝策略，队列满时直接失败，不能回到IO线程执行
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
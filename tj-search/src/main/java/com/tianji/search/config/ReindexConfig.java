@@ -0,0 +1,35 @@
+package com.tianji.search.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 重建索引的线程池配置
+ */
+@Configuration
+public class ReindexConfig {
+
+    /**
+     * bulk写入线程池，队列满了由拉取数据的线程自己执行bulk，从而限制内存中同时存在的批次数量
+     */
+    @Bean
+    public Executor reindexExecutor(ReindexProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 1. 核心线程池大小
+        executor.setCorePoolSize(properties.getWorkers());
+        // 2. 最大线程池大小
+        executor.setMaxPoolSize(properties.getWorkers());
+        // 3. 队列大小
+        executor.setQueueCapacity(properties.getWorkers());
+        // 4. 线程名称
+        executor.setThreadNamePrefix("course-reindex-");
+        // 5. 拒绝策略
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,27 @@
+package com.tianji.search.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "tj.search.reindex")
+public class ReindexProperties {
+    /**
+     * 每批从课程服务拉取的课程数量，也是每个bulk请求的文档数
+     */
+    private int batchSize = 500;
+    /**
+     * 并行执行bulk请求的线程数
+     */
+    private int workers = 4;
+    /**
+     * 每秒最多导入的文档数，0表示不限速
+     */
+    private int maxDocsPerSecond = 0;
+    /**
+     * 切换别名后是否删除旧索引，默认保留用于回滚
+     */
+    private boolean deleteOldIndex = false;
+}
@@ -0,0 +1,37 @@
+package com.tianji.search.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "tj.search.sold")
+public class SoldIndexerProperties {
+    /**
+     * 销量增量的合并窗口，单位毫秒，批量监听器最多等待这么久凑一批消息，每批只发送一次bulk请求
+     */
+    private long flushInterval = 1000;
+    /**
+     * 每批最多合并的订单消息数量
+     */
+    private int batchSize = 200;
+    /**
+     * 已处理订单记录的保留时长，用于MQ消息重复投递时去重
+     */
+    private Duration dedupeTtl = Duration.ofDays(7);
+    /**
+     * 一批消息处理失败时的最大尝试次数，包括第一次，用尽后整批转发到失败交换机
+     */
+    private int retryMaxAttempts = 3;
+    /**
+     * 第一次重试前的等待时间，单位毫秒，之后每次翻倍
+     */
+    private long retryInitialInterval = 1000;
+    /**
+     * 重试等待时间的上限，单位毫秒
+     */
+    private long retryMaxInterval = 10000;
+}
@@ -3,7 +3,12 @@ package com.tianji.search.constants;
 public interface SearchErrorInfo {
     String UPDATE_COURSE_STATUS_ERROR = "更新课程状态异常";
     String SAVE_COURSE_ERROR = "新增课程索引异常";
+    String UPDATE_COURSE_SOLD_ERROR = "更新课程销量异常";
     String QUERY_COURSE_ERROR = "查询课程异常";
     String TEACHER_NOT_EXISTS = "教师信息不存在";
     String STAFF_NOT_EXISTS = "员工信息不存在";
+    String INVALID_CURSOR = "分页游标无效";
+    String PAGE_TOO_DEEP = "分页过深，请使用游标分页查询";
+    String REINDEX_RUNNING = "课程索引正在重建中";
+    String REINDEX_FAILED_DOCS = "存在写入失败的课程，放弃切换索引";
 }
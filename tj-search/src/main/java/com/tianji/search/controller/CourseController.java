@@ -1,8 +1,12 @@
 package com.tianji.search.controller;
 
 import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.search.domain.query.CourseCursorQuery;
 import com.tianji.search.domain.query.CoursePageQuery;
+import com.tianji.search.domain.vo.CourseCursorPageVO;
 import com.tianji.search.domain.vo.CourseVO;
+import com.tianji.search.domain.vo.ReindexProgressVO;
+import com.tianji.search.service.ICourseReindexService;
 import com.tianji.search.service.ICourseService;
 import com.tianji.search.service.ISearchService;
 import io.swagger.annotations.Api;
@@ -22,6 +26,7 @@ public class CourseController {
 
     private final ISearchService searchService;
     private final ICourseService courseService;
+    private final ICourseReindexService courseReindexService;
 
     @ApiOperation("用户端课程搜索接口")
     @GetMapping("/portal")
@@ -29,6 +34,18 @@ public class CourseController {
         return searchService.queryCoursesForPortal(query);
     }
 
+    @ApiOperation("用户端课程游标搜索接口，用于深度翻页")
+    @GetMapping("/portal/cursor")
+    public CourseCursorPageVO queryCoursesForPortalByCursor(CourseCursorQuery query){
+        return searchService.queryCoursesForPortalByCursor(query);
+    }
+
+    @ApiOperation("课程名称自动补全接口")
+    @GetMapping("/suggest")
+    public List<String> suggest(@ApiParam("用户输入的前缀") @RequestParam("prefix") String prefix){
+        return searchService.suggest(prefix);
+    }
+
     @ApiIgnore
     @GetMapping("/name")
     public List<Long> queryCoursesIdByName(@RequestParam("keyword") String keyword){
@@ -52,4 +69,16 @@ public class CourseController {
             courseService.handleCourseDeletes(courseIds);
         }
     }
+
+    @ApiOperation("全量重建课程索引，完成后切换course别名")
+    @PostMapping("/admin/reindex")
+    public ReindexProgressVO reindex() {
+        return courseReindexService.startReindex();
+    }
+
+    @ApiOperation("查询重建课程索引的进度")
+    @GetMapping("/admin/reindex")
+    public ReindexProgressVO queryReindexProgress() {
+        return courseReindexService.queryProgress();
+    }
 }
@@ -11,6 +11,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -44,7 +45,7 @@ public class InterestsController {
 
     @ApiOperation("根据二级分类id查询课程TOP10")
     @GetMapping("/{id}/courses")
-    public List<CourseVO> queryCourseByCateId(@PathVariable("id") Long cateLv2Id){
+    public CompletableFuture<List<CourseVO>> queryCourseByCateId(@PathVariable("id") Long cateLv2Id){
         return searchService.queryCourseByCateId(cateLv2Id);
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.tianji.search.controller;
 
 import com.tianji.search.domain.vo.CourseVO;
+import com.tianji.search.domain.vo.RecommendHomeVO;
 import com.tianji.search.service.ISearchService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -10,6 +11,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Api(tags = "课程推荐相关接口")
 @RequiredArgsConstructor
@@ -21,20 +23,26 @@ public class RecommendController {
 
     @ApiOperation("精品好课接口")
     @GetMapping("/best")
-    public List<CourseVO> queryBestTopN(){
+    public CompletableFuture<List<CourseVO>> queryBestTopN(){
         return searchService.queryBestTopN();
     }
 
     @ApiOperation("新课推荐接口")
     @GetMapping("/new")
-    public List<CourseVO> queryNewTopN(){
+    public CompletableFuture<List<CourseVO>> queryNewTopN(){
         return searchService.queryNewTopN();
     }
 
     @ApiOperation("精品公开课接口")
     @GetMapping("/free")
-    public List<CourseVO> queryFreeTopN(){
+    public CompletableFuture<List<CourseVO>> queryFreeTopN(){
         return searchService.queryFreeTopN();
     }
 
+    @ApiOperation("首页推荐接口，一次返回精品好课、新课推荐和精品公开课")
+    @GetMapping("/home")
+    public CompletableFuture<RecommendHomeVO> queryHomeRecommendations(){
+        return searchService.queryHomeRecommendations();
+    }
+
 }
@@ -0,0 +1,56 @@
+package com.tianji.search.domain.dto;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import com.tianji.common.exceptions.BadRequestException;
+import com.tianji.common.utils.JsonUtils;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static com.tianji.search.constants.SearchErrorInfo.INVALID_CURSOR;
+
+/**
+ * 游标分页的游标，记录排序方式、上一页最后一条数据的排序值和point in time的id，
+ * 以URL安全的base64编码后返回给前端
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchCursor {
+    private String sortBy;
+    private Boolean isAsc;
+    private Object[] sortValues;
+    private String pitId;
+
+    public String encode() {
+        JSONObject json = new JSONObject();
+        json.set("s", sortBy);
+        json.set("a", isAsc);
+        json.set("v", new JSONArray(sortValues));
+        json.set("p", pitId);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SearchCursor decode(String cursor) {
+        try {
+            String str = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            JSONObject json = JsonUtils.parseObj(str);
+            JSONArray array = json.getJSONArray("v");
+            Object[] values = new Object[array.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object value = array.get(i);
+                // search_after不支持BigDecimal，评分等小数转为double
+                values[i] = value instanceof BigDecimal ? ((BigDecimal) value).doubleValue() : value;
+            }
+            return new SearchCursor(json.getStr("s"), json.getBool("a"), values, json.getStr("p"));
+        } catch (Exception e) {
+            throw new BadRequestException(INVALID_CURSOR);
+        }
+    }
+}
@@ -31,6 +31,8 @@ public class Course {
     private Integer score;
     /** 老师id */
     private Long teacher;
+    /** 老师名称，写入索引时冗余，用户改名时由消息更新 */
+    private String teacherName;
     /** 章节数量 */
     private Integer sections;
     /** 课程封面 */
@@ -0,0 +1,17 @@
+package com.tianji.search.domain.query;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+@EqualsAndHashCode(callSuper = true)
+@Data
+@ApiModel(description = "课程游标搜索条件，pageNo被忽略，排序方式以第一页为准")
+public class CourseCursorQuery extends CoursePageQuery {
+
+    @ApiModelProperty(value = "上一页返回的游标，查询第一页时不传")
+    private String cursor;
+    @ApiModelProperty(value = "是否使用point in time保证翻页期间数据视图一致，只在第一页生效", example = "false")
+    private Boolean usePit = false;
+}
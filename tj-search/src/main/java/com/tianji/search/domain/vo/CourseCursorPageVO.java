@@ -0,0 +1,22 @@
+package com.tianji.search.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "课程游标分页结果")
+public class CourseCursorPageVO {
+    @ApiModelProperty(value = "总条数，只在第一页返回，超过10000时为下限", example = "10000")
+    private Long total;
+    @ApiModelProperty(value = "下一页的游标，为空说明没有更多数据")
+    private String nextCursor;
+    @ApiModelProperty("当前页数据")
+    private List<CourseVO> list;
+}
@@ -26,6 +26,12 @@ public class CourseVO {
     @ApiModelProperty(value = "课程报名人数（销量）", example = "3920")
     private Integer sold;
 
+    /**
+     * 搜索时只返回VO需要的字段
+     */
+    public static final String[] INCLUDE_FIELDS =
+            {"id", "name", "price", "teacherName", "duration", "coverUrl", "sections", "sold"};
+
     public static final String[] EXCLUDE_FIELDS =
             {"categoryIdLv1", "categoryIdLv2", "categoryIdLv3", "free",
                     "publishTime", "type", "status", "score"};
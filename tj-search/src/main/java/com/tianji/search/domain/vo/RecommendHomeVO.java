@@ -0,0 +1,22 @@
+package com.tianji.search.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "首页推荐课程")
+public class RecommendHomeVO {
+    @ApiModelProperty("精品好课")
+    private List<CourseVO> best;
+    @ApiModelProperty("新课推荐")
+    private List<CourseVO> newest;
+    @ApiModelProperty("精品公开课")
+    private List<CourseVO> free;
+}
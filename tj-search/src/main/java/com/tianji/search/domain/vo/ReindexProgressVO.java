@@ -0,0 +1,32 @@
+package com.tianji.search.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@ApiModel(description = "重建索引进度")
+public class ReindexProgressVO {
+    @ApiModelProperty(value = "新索引名称", example = "course_v2")
+    private String index;
+    @ApiModelProperty(value = "状态，RUNNING：执行中，SUCCESS：成功，FAILED：失败", example = "RUNNING")
+    private String state;
+    @ApiModelProperty(value = "已从课程服务拉取的课程数", example = "1500")
+    private Long fetched;
+    @ApiModelProperty(value = "已写入新索引的课程数", example = "1000")
+    private Long indexed;
+    @ApiModelProperty(value = "写入失败的课程数", example = "0")
+    private Long failed;
+    @ApiModelProperty(value = "最后拉取的课程id")
+    private Long lastId;
+    @ApiModelProperty(value = "平均导入速度，文档数每秒", example = "800")
+    private Long docsPerSecond;
+    @ApiModelProperty("开始时间")
+    private LocalDateTime startTime;
+    @ApiModelProperty("结束时间")
+    private LocalDateTime endTime;
+    @ApiModelProperty("失败原因")
+    private String message;
+}
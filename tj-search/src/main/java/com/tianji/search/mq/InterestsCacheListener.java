@@ -0,0 +1,38 @@
+package com.tianji.search.mq;
+
+import com.tianji.search.service.IInterestsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import static com.tianji.common.constants.MqConstants.Exchange.USER_EXCHANGE;
+import static com.tianji.common.constants.MqConstants.Key.USER_INTERESTS_CHANGE_KEY;
+
+/**
+ * 用户兴趣缓存的失效通知。队列是匿名的临时队列，每个节点都会收到消息，用来清理各自的本地缓存
+ */
+@Slf4j
+@Component
+public class InterestsCacheListener {
+
+    @Autowired
+    private IInterestsService interestsService;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(),
+            exchange = @Exchange(name = USER_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = USER_INTERESTS_CHANGE_KEY
+    ))
+    public void listenInterestsChange(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        log.debug("用户{}的兴趣修改，清理本地兴趣缓存", userId);
+        interestsService.invalidateLocalInterests(userId);
+    }
+}
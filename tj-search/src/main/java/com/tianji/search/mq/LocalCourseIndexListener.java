@@ -0,0 +1,121 @@
+package com.tianji.search.mq;
+
+import com.tianji.api.dto.trade.OrderBasicDTO;
+import com.tianji.api.dto.user.UserDTO;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.StringUtils;
+import com.tianji.search.domain.po.Course;
+import com.tianji.search.repository.impl.LuceneCourseRepository;
+import com.tianji.search.service.ICourseService;
+import com.tianji.search.service.ISearchService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import static com.tianji.common.constants.MqConstants.Exchange.*;
+import static com.tianji.common.constants.MqConstants.Key.*;
+
+/**
+ * 本地课程索引的增量写入。队列是匿名的临时队列，每个节点都会收到消息，写入各自的本地索引。
+ * 写入失败只记录日志，不重试，由定时全量同步修正
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "tj.search.local", name = "enabled", havingValue = "true")
+public class LocalCourseIndexListener {
+
+    @Autowired
+    private LuceneCourseRepository localRepository;
+    @Autowired
+    private ICourseService courseService;
+    @Autowired
+    private ISearchService searchService;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(),
+            exchange = @Exchange(name = COURSE_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = COURSE_UP_KEY
+    ))
+    public void listenCourseUp(Long courseId) {
+        if (courseId == null) {
+            return;
+        }
+        try {
+            Course course = courseService.queryCourseForIndex(courseId);
+            if (course != null) {
+                localRepository.save(course);
+                searchService.refreshRecommendations();
+            }
+        } catch (Exception e) {
+            log.error("课程{}上架，写入本地索引失败", courseId, e);
+        }
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(),
+            exchange = @Exchange(name = COURSE_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = {COURSE_DOWN_KEY, COURSE_EXPIRE_KEY}
+    ))
+    public void listenCourseDelete(Long courseId) {
+        if (courseId == null) {
+            return;
+        }
+        try {
+            localRepository.deleteById(courseId);
+            searchService.refreshRecommendations();
+        } catch (Exception e) {
+            log.error("课程{}下架，删除本地索引失败", courseId, e);
+        }
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(),
+            exchange = @Exchange(name = ORDER_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = ORDER_PAY_KEY
+    ))
+    public void listenOrderPay(OrderBasicDTO order) {
+        incrementSold(order, 1);
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(),
+            exchange = @Exchange(name = ORDER_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = ORDER_REFUND_KEY
+    ))
+    public void listenOrderRefund(OrderBasicDTO order) {
+        incrementSold(order, -1);
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(),
+            exchange = @Exchange(name = USER_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = USER_NAME_CHANGE_KEY
+    ))
+    public void listenUserNameChange(UserDTO user) {
+        if (user == null || user.getId() == null || StringUtils.isBlank(user.getName())) {
+            return;
+        }
+        try {
+            localRepository.updateTeacherName(user.getId(), user.getName());
+        } catch (Exception e) {
+            log.error("用户{}名称修改，更新本地索引失败", user.getId(), e);
+        }
+    }
+
+    private void incrementSold(OrderBasicDTO order, int amount) {
+        if (order == null || CollUtils.isEmpty(order.getCourseIds())) {
+            return;
+        }
+        try {
+            localRepository.incrementSold(order.getCourseIds(), amount);
+        } catch (Exception e) {
+            log.error("订单{}的课程销量写入本地索引失败", order.getOrderId(), e);
+        }
+    }
+}
@@ -12,6 +12,9 @@ import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 import static com.tianji.common.constants.MqConstants.Exchange.ORDER_EXCHANGE;
 import static com.tianji.common.constants.MqConstants.Key.ORDER_PAY_KEY;
 import static com.tianji.common.constants.MqConstants.Key.ORDER_REFUND_KEY;
@@ -27,27 +30,31 @@ public class OrderEventListener {
             value = @Queue(name = "search.order.pay.queue", durable = "true"),
             exchange = @Exchange(name = ORDER_EXCHANGE, type = ExchangeTypes.TOPIC),
             key = ORDER_PAY_KEY
-    ))
-    public void listenOrderPay(OrderBasicDTO order) {
-        if (order == null || order.getUserId() == null || CollUtils.isEmpty(order.getCourseIds())) {
-            log.debug("订单支付，异常消息，信息未空");
-            return;
-        }
-        log.debug("处理订单支付消息：{}", order);
-        courseService.updateCourseSold(order.getCourseIds(), 1);
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenOrderPay(List<OrderBasicDTO> orders) {
+        log.debug("处理订单支付消息{}条", orders.size());
+        courseService.updateCourseSold(filterValid(orders), 1);
     }
 
     @RabbitListener(bindings = @QueueBinding(
             value = @Queue(name = "search.order.refund.queue", durable = "true"),
             exchange = @Exchange(name = ORDER_EXCHANGE, type = ExchangeTypes.TOPIC),
             key = ORDER_REFUND_KEY
-    ))
-    public void listenOrderRefund(OrderBasicDTO order) {
-        if (order == null || order.getUserId() == null || CollUtils.isEmpty(order.getCourseIds())) {
-            log.debug("订单退款，异常消息，信息未空");
-            return;
-        }
-        log.debug("处理订单退款消息：{}", order);
-        courseService.updateCourseSold(order.getCourseIds(), -1);
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenOrderRefund(List<OrderBasicDTO> orders) {
+        log.debug("处理订单退款消息{}条", orders.size());
+        courseService.updateCourseSold(filterValid(orders), -1);
+    }
+
+    private List<OrderBasicDTO> filterValid(List<OrderBasicDTO> orders) {
+        return orders.stream()
+                .filter(order -> {
+                    if (order == null || order.getUserId() == null || CollUtils.isEmpty(order.getCourseIds())) {
+                        log.debug("订单消息异常，信息为空：{}", order);
+                        return false;
+                    }
+                    return true;
+                })
+                .collect(Collectors.toList());
     }
 }
@@ -0,0 +1,38 @@
+package com.tianji.search.mq;
+
+import com.tianji.api.dto.user.UserDTO;
+import com.tianji.common.utils.StringUtils;
+import com.tianji.search.service.ICourseService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import static com.tianji.common.constants.MqConstants.Exchange.USER_EXCHANGE;
+import static com.tianji.common.constants.MqConstants.Key.USER_NAME_CHANGE_KEY;
+
+@Slf4j
+@Component
+public class UserEventListener {
+
+    @Autowired
+    private ICourseService courseService;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(name = "search.user.name.queue", durable = "true"),
+            exchange = @Exchange(name = USER_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = USER_NAME_CHANGE_KEY
+    ))
+    public void listenUserNameChange(UserDTO user) {
+        if (user == null || user.getId() == null || StringUtils.isBlank(user.getName())) {
+            log.debug("用户名称修改，异常消息，信息为空");
+            return;
+        }
+        log.debug("监听到用户{}名称修改为{}", user.getId(), user.getName());
+        courseService.handleTeacherNameChange(user.getId(), user.getName());
+    }
+}
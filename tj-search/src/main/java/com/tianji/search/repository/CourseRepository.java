@@ -3,10 +3,24 @@ package com.tianji.search.repository;
 import com.tianji.search.domain.po.Course;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface CourseRepository{
+    /**
+     * 课程索引的别名，读写都通过别名进行，实际索引为course_v{n}
+     */
     String INDEX_NAME = "course";
+    String INDEX_VERSION_PREFIX = "course_v";
+    /**
+     * 重建索引期间指向新索引的别名，所有节点据此把增量写入同时应用到新索引
+     */
+    String SHADOW_ALIAS = "course_shadow";
+    /**
+     * 新版本索引的mapping和settings，不存在时复制当前索引的mapping
+     */
+    String INDEX_TEMPLATE_LOCATION = "es/course_index.json";
+    String ID = "id";
     String DEFAULT_QUERY_NAME = "name";
     String CATEGORY_ID_LV1 = "categoryIdLv1";
     String CATEGORY_ID_LV2 = "categoryIdLv2";
@@ -17,6 +31,15 @@ public interface CourseRepository{
     String TYPE = "type";
     String UPDATE_TIME = "updateTime";
     String SOLD = "sold";
+    String PRICE = "price";
+    String SCORE = "score";
+    String TEACHER = "teacher";
+    String TEACHER_NAME = "teacherName";
+    /**
+     * 课程名称的自动补全字段，completion类型，权重为写入索引时的销量
+     */
+    String SUGGEST = "suggest";
+    String SUGGEST_MAPPING = "{\"properties\":{\"" + SUGGEST + "\":{\"type\":\"completion\"}}}";
 
     /**
      * <h1>更新sold的脚本</h1>
@@ -31,6 +54,10 @@ public interface CourseRepository{
      */
     String INCREMENT_SOLD_SCRIPT_ID = "increment_sold";
     String INCREMENT_SOLD_SCRIPT_PARAM = "count";
+    /**
+     * 销量脚本更新遇到版本冲突时的重试次数
+     */
+    int SOLD_RETRY_ON_CONFLICT = 3;
 
     void save(Course course);
 
@@ -44,7 +71,56 @@ public interface CourseRepository{
 
     void incrementSold(List<Long> courseIds, int amount);
 
+    /**
+     * 批量累加课程销量
+     * @param deltas key是课程id，value是销量增量
+     * @return 需要重试的增量，不包含索引库中已不存在的课程
+     */
+    Map<Long, Integer> incrementSold(Map<Long, Integer> deltas);
+
     void saveAll(List<Course> list);
 
     void deleteByIds(List<Long> courseIds);
+
+    /**
+     * 修改指定教师所有课程中冗余的教师名称
+     */
+    void updateTeacherName(Long teacherId, String teacherName);
+
+    /**
+     * 查询课程文档中还没有冗余教师名称的教师id，用于补齐历史文档
+     * @param size 最多返回的教师数量
+     */
+    List<Long> queryTeachersWithoutName(int size);
+
+    /**
+     * 创建下一个版本的课程索引，新索引关闭refresh且没有副本，用于全量导入
+     * @return 新索引名称
+     */
+    String createNextIndex();
+
+    /**
+     * 全量导入时批量写入指定索引，只创建不覆盖，已经由影子写入的较新文档保持不变
+     * @return 写入失败的文档数量
+     */
+    int saveAll(String index, List<Course> list);
+
+    /**
+     * 全量导入结束，恢复refresh和副本设置并刷新索引
+     */
+    void completeIndex(String index);
+
+    /**
+     * 原子地把别名切换到指定索引
+     * @return 切换前别名指向的索引
+     */
+    List<String> switchAlias(String index);
+
+    void deleteIndex(String index);
+
+    /**
+     * 设置影子索引，重建索引期间课程的所有增量写入会同时写入影子索引，传null取消。
+     * 影子索引对所有节点生效，方法返回时各节点都已经开始影子写入
+     */
+    void setShadowIndex(String index);
 }
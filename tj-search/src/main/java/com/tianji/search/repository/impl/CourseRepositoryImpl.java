@@ -1,11 +1,19 @@
 package com.tianji.search.repository.impl;
 
+import cn.hutool.json.JSONObject;
 import com.tianji.search.domain.po.Course;
 import com.tianji.search.repository.CourseRepository;
 import com.tianji.common.exceptions.CommonException;
 import com.tianji.common.utils.JsonUtils;
+import com.tianji.common.utils.NumberUtils;
 import com.tianji.common.utils.StringUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
@@ -13,20 +21,44 @@ import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.GetAliasesResponse;
+import org.elasticsearch.client.IndicesClient;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.GetIndexResponse;
+import org.elasticsearch.client.indices.PutMappingRequest;
+import org.elasticsearch.cluster.metadata.AliasMetadata;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.UpdateByQueryRequest;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.script.Script;
 import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
 
+import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.tianji.search.constants.SearchErrorInfo.*;
 
@@ -34,22 +66,49 @@ import static com.tianji.search.constants.SearchErrorInfo.*;
 @Component
 public class CourseRepositoryImpl implements CourseRepository {
   
+    /**
+     * 各节点重新读取影子索引别名的间隔
+     */
+    private static final long SHADOW_REFRESH_MILLIS = 1000;
+
     private final RestHighLevelClient restHighLevelClient;
+    /**
+     * 本节点缓存的影子索引，来自{@link #SHADOW_ALIAS}别名，定期刷新
+     */
+    private volatile String shadowIndex;
+    private volatile long shadowRefreshedAt;
 
     public CourseRepositoryImpl(RestHighLevelClient restHighLevelClient) {
         this.restHighLevelClient = restHighLevelClient;
     }
 
+    /**
+     * 给已有的课程索引添加自动补全字段，已有的课程在下次上架或重建索引时写入补全数据
+     */
+    @PostConstruct
+    public void initSuggestMapping() {
+        try {
+            restHighLevelClient.indices().putMapping(
+                    new PutMappingRequest(INDEX_NAME).source(SUGGEST_MAPPING, XContentType.JSON), RequestOptions.DEFAULT);
+        } catch (Exception e) {
+            log.warn("初始化课程自动补全字段失败：{}", e.getMessage());
+        }
+    }
+
     @Override
     public void save(Course course) {
         IndexRequest request = new IndexRequest(INDEX_NAME)
                 .id(course.getId().toString())
-                .source(JsonUtils.toJsonStr(course), XContentType.JSON);
+                .source(toSource(course), XContentType.JSON);
         try {
             restHighLevelClient.index(request, RequestOptions.DEFAULT);
         } catch (Exception e) {
             throw new CommonException(SAVE_COURSE_ERROR, e);
         }
+        String shadow = shadowIndex();
+        if (shadow != null) {
+            saveAll(shadow, List.of(course), false);
+        }
     }
 
     @Override
@@ -59,6 +118,10 @@ public class CourseRepositoryImpl implements CourseRepository {
         } catch (Exception e) {
             throw new CommonException(SAVE_COURSE_ERROR, e);
         }
+        String shadow = shadowIndex();
+        if (shadow != null) {
+            deleteByIds(shadow, List.of(courseId));
+        }
     }
 
     @Override
@@ -78,8 +141,16 @@ public class CourseRepositoryImpl implements CourseRepository {
 
     @Override
     public void updateById(Long courseId, Object... sources) {
+        updateById(INDEX_NAME, courseId, sources);
+        String shadow = shadowIndex();
+        if (shadow != null) {
+            updateShadowQuietly(() -> updateById(shadow, courseId, sources));
+        }
+    }
+
+    private void updateById(String index, Long courseId, Object... sources) {
         // 1.创建Request
-        UpdateRequest request = new UpdateRequest(INDEX_NAME, courseId.toString());
+        UpdateRequest request = new UpdateRequest(index, courseId.toString());
         // 2.更新字段
         request.doc(sources);
         // 3.发送请求
@@ -92,8 +163,16 @@ public class CourseRepositoryImpl implements CourseRepository {
 
     @Override
     public void increment(Long courseId, String field, int amount) {
+        increment(INDEX_NAME, courseId, field, amount);
+        String shadow = shadowIndex();
+        if (shadow != null) {
+            updateShadowQuietly(() -> increment(shadow, courseId, field, amount));
+        }
+    }
+
+    private void increment(String index, Long courseId, String field, int amount) {
         // 1.创建Request
-        UpdateRequest request = new UpdateRequest(INDEX_NAME, courseId.toString());
+        UpdateRequest request = new UpdateRequest(index, courseId.toString());
         // 2.更新字段
         String code = "ctx._source." + field + " += params.count";
         Map<String, Object> params = new HashMap<>();
@@ -109,45 +188,108 @@ public class CourseRepositoryImpl implements CourseRepository {
 
     @Override
     public void incrementSold(List<Long> courseIds, int amount) {
+        Map<Long, Integer> deltas = new HashMap<>(courseIds.size());
+        for (Long courseId : courseIds) {
+            deltas.merge(courseId, amount, Integer::sum);
+        }
+        incrementSold(deltas);
+    }
+
+    @Override
+    public Map<Long, Integer> incrementSold(Map<Long, Integer> deltas) {
+        Map<Long, Integer> failed = incrementSold(INDEX_NAME, deltas);
+        // 影子索引只应用主索引成功的增量。不是幂等操作，影子索引失败只记录日志，不能让消息重试导致主索引重复累加
+        String shadow = shadowIndex();
+        if (shadow != null) {
+            Map<Long, Integer> applied = new HashMap<>(deltas);
+            applied.keySet().removeAll(failed.keySet());
+            if (!applied.isEmpty()) {
+                updateShadowQuietly(() -> incrementSold(shadow, applied));
+            }
+        }
+        return failed;
+    }
+
+    private Map<Long, Integer> incrementSold(String index, Map<Long, Integer> deltas) {
         // 1.bulk请求
-        BulkRequest bulkRequest = new BulkRequest(INDEX_NAME);
+        BulkRequest bulkRequest = new BulkRequest(index);
 
-        for (Long courseId : courseIds) {
-            // 2.创建Request
-            UpdateRequest request = new UpdateRequest(INDEX_NAME, courseId.toString());
+        deltas.forEach((courseId, amount) -> {
+            // 2.创建Request，版本冲突时由ES重试
+            UpdateRequest request = new UpdateRequest(index, courseId.toString())
+                    .retryOnConflict(SOLD_RETRY_ON_CONFLICT);
             // 3.更新字段
             Map<String, Object> params = new HashMap<>();
             params.put(INCREMENT_SOLD_SCRIPT_PARAM, amount);
             request.script(new Script(ScriptType.STORED, null, INCREMENT_SOLD_SCRIPT_ID, params));
             bulkRequest.add(request);
-        }
+        });
 
         // 4.发送请求
+        BulkResponse bulkResponse;
         try {
-            restHighLevelClient.bulk(bulkRequest, RequestOptions.DEFAULT);
+            bulkResponse = restHighLevelClient.bulk(bulkRequest, RequestOptions.DEFAULT);
         } catch (Exception e) {
             throw new CommonException(UPDATE_COURSE_STATUS_ERROR, e);
         }
+
+        // 5.收集失败的条目，课程已不存在的直接丢弃
+        Map<Long, Integer> failed = new HashMap<>();
+        for (BulkItemResponse itemResponse : bulkResponse.getItems()) {
+            if (!itemResponse.isFailed()) {
+                continue;
+            }
+            if (itemResponse.status() == RestStatus.NOT_FOUND) {
+                log.warn("课程不存在，忽略销量更新，索引:{}, id:{}", index, itemResponse.getId());
+                continue;
+            }
+            log.error("更新销量失败，索引:{}, id:{}, 原因:{}", index, itemResponse.getId(), itemResponse.getFailureMessage());
+            Long courseId = Long.valueOf(itemResponse.getId());
+            failed.put(courseId, deltas.get(courseId));
+        }
+        return failed;
     }
 
     @Override
     public void saveAll(List<Course> list) {
+        saveAll(INDEX_NAME, list, false);
+        String shadow = shadowIndex();
+        if (shadow != null) {
+            saveAll(shadow, list, false);
+        }
+    }
+
+    @Override
+    public int saveAll(String index, List<Course> list) {
+        // 全量导入的数据可能比影子写入的旧，只创建不覆盖
+        return saveAll(index, list, true);
+    }
+
+    private int saveAll(String index, List<Course> list, boolean createOnly) {
         // 1.创建BulkRequest
-        BulkRequest request = new BulkRequest(INDEX_NAME);
+        BulkRequest request = new BulkRequest(index);
         // 2.添加参数
         for (Course course : list) {
-            request.add(new IndexRequest(INDEX_NAME)
+            request.add(new IndexRequest(index)
                     .id(course.getId().toString())
-                    .source(JsonUtils.toJsonStr(course), XContentType.JSON));
+                    .opType(createOnly ? DocWriteRequest.OpType.CREATE : DocWriteRequest.OpType.INDEX)
+                    .source(toSource(course), XContentType.JSON));
         }
         // 3.批处理
         try {
             BulkResponse bulkResponse = restHighLevelClient.bulk(request, RequestOptions.DEFAULT);
+            int failed = 0;
             for (BulkItemResponse itemResponse : bulkResponse.getItems()) {
+                if (createOnly && itemResponse.status() == RestStatus.CONFLICT) {
+                    // 文档已经由影子写入创建，保留较新的数据
+                    continue;
+                }
                 if (itemResponse.status().compareTo(RestStatus.BAD_REQUEST) >= 0) {
+                    failed++;
                     log.error("批处理失败，id:{}, 原因:{}", itemResponse.getId(), itemResponse.getFailureMessage());
                 }
             }
+            return failed;
         } catch (IOException e) {
             throw new CommonException(SAVE_COURSE_ERROR, e);
         }
@@ -155,17 +297,26 @@ public class CourseRepositoryImpl implements CourseRepository {
 
     @Override
     public void deleteByIds(List<Long> courseIds) {
+        deleteByIds(INDEX_NAME, courseIds);
+        String shadow = shadowIndex();
+        if (shadow != null) {
+            deleteByIds(shadow, courseIds);
+        }
+    }
+
+    private void deleteByIds(String index, List<Long> courseIds) {
         // 1.创建BulkRequest
-        BulkRequest request = new BulkRequest(INDEX_NAME);
+        BulkRequest request = new BulkRequest(index);
         // 2.添加参数
         for (Long courseId : courseIds) {
-            request.add(new DeleteRequest(INDEX_NAME, courseId.toString()));
+            request.add(new DeleteRequest(index, courseId.toString()));
         }
         // 3.批处理
         try {
             BulkResponse bulkResponse = restHighLevelClient.bulk(request, RequestOptions.DEFAULT);
             for (BulkItemResponse itemResponse : bulkResponse.getItems()) {
-                if (itemResponse.status().compareTo(RestStatus.BAD_REQUEST) >= 0) {
+                if (itemResponse.status().compareTo(RestStatus.BAD_REQUEST) >= 0
+                        && itemResponse.status() != RestStatus.NOT_FOUND) {
                     log.error("批处理失败，id:{}, 原因:{}", itemResponse.getId(), itemResponse.getFailureMessage());
                 }
             }
@@ -173,4 +324,247 @@ public class CourseRepositoryImpl implements CourseRepository {
             throw new CommonException(SAVE_COURSE_ERROR, e);
         }
     }
+
+    @Override
+    public void updateTeacherName(Long teacherId, String teacherName) {
+        updateTeacherName(INDEX_NAME, teacherId, teacherName);
+        String shadow = shadowIndex();
+        if (shadow != null) {
+            updateTeacherName(shadow, teacherId, teacherName);
+        }
+    }
+
+    private void updateTeacherName(String index, Long teacherId, String teacherName) {
+        // 1.创建Request，只更新该教师的课程，且名称不同的才需要更新
+        UpdateByQueryRequest request = new UpdateByQueryRequest(index);
+        request.setQuery(QueryBuilders.boolQuery()
+                .filter(QueryBuilders.termQuery(TEACHER, teacherId))
+                .mustNot(QueryBuilders.termQuery(TEACHER_NAME + ".keyword", teacherName)));
+        // 2.更新字段
+        Map<String, Object> params = new HashMap<>();
+        params.put("name", teacherName);
+        request.setScript(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG,
+                "ctx._source." + TEACHER_NAME + " = params.name", params));
+        // 3.版本冲突说明文档刚被其它请求更新过，继续处理剩余文档即可
+        request.setConflicts("proceed");
+        // 4.发送请求
+        try {
+            BulkByScrollResponse response = restHighLevelClient.updateByQuery(request, RequestOptions.DEFAULT);
+            log.debug("更新教师{}的名称，索引：{}，更新课程数：{}", teacherId, index, response.getUpdated());
+        } catch (IOException e) {
+            throw new CommonException(UPDATE_COURSE_STATUS_ERROR, e);
+        }
+    }
+
+    @Override
+    public List<Long> queryTeachersWithoutName(int size) {
+        // 1.没有教师名称字段的文档，按教师id聚合
+        SearchRequest request = new SearchRequest(INDEX_NAME);
+        request.source()
+                .size(0)
+                .query(QueryBuilders.boolQuery()
+                        .filter(QueryBuilders.existsQuery(TEACHER))
+                        .mustNot(QueryBuilders.existsQuery(TEACHER_NAME)))
+                .aggregation(AggregationBuilders.terms(TEACHER).field(TEACHER).size(size));
+        // 2.发送请求
+        SearchResponse response;
+        try {
+            response = restHighLevelClient.search(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new CommonException(QUERY_COURSE_ERROR, e);
+        }
+        // 3.解析结果
+        Terms terms = response.getAggregations().get(TEACHER);
+        List<Long> teacherIds = new ArrayList<>(terms.getBuckets().size());
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            teacherIds.add(bucket.getKeyAsNumber().longValue());
+        }
+        return teacherIds;
+    }
+
+    @Override
+    public String createNextIndex() {
+        IndicesClient indices = restHighLevelClient.indices();
+        try {
+            // 1.找到已有的最大版本号
+            int version = 0;
+            GetIndexRequest versionRequest = new GetIndexRequest(INDEX_VERSION_PREFIX + "*")
+                    .indicesOptions(IndicesOptions.lenientExpandOpen());
+            for (String name : indices.get(versionRequest, RequestOptions.DEFAULT).getIndices()) {
+                String suffix = name.substring(INDEX_VERSION_PREFIX.length());
+                if (NumberUtils.isInteger(suffix)) {
+                    version = Math.max(version, Integer.parseInt(suffix));
+                }
+            }
+            String index = INDEX_VERSION_PREFIX + (version + 1);
+
+            // 2.准备mapping，优先使用classpath中的定义，否则复制当前索引
+            CreateIndexRequest request = new CreateIndexRequest(index);
+            Settings.Builder settings = Settings.builder();
+            ClassPathResource template = new ClassPathResource(INDEX_TEMPLATE_LOCATION);
+            if (template.exists()) {
+                try (InputStream in = template.getInputStream()) {
+                    request.source(StreamUtils.copyToString(in, StandardCharsets.UTF_8), XContentType.JSON);
+                }
+                settings.put(request.settings());
+            } else if (indices.exists(new GetIndexRequest(INDEX_NAME), RequestOptions.DEFAULT)) {
+                GetIndexResponse current = indices.get(new GetIndexRequest(INDEX_NAME), RequestOptions.DEFAULT);
+                String currentIndex = current.getIndices()[0];
+                request.mapping(current.getMappings().get(currentIndex).sourceAsMap());
+                // 只复制分词器配置，其它settings由集群默认值决定
+                settings.put(current.getSettings().get(currentIndex).filter(k -> k.startsWith("index.analysis.")));
+            }
+
+            // 3.导入期间关闭refresh，不要副本
+            settings.put("index.refresh_interval", "-1").put("index.number_of_replicas", 0);
+            request.settings(settings);
+            indices.create(request, RequestOptions.DEFAULT);
+            // 4.确保有自动补全字段，已存在时是幂等的
+            indices.putMapping(new PutMappingRequest(index).source(SUGGEST_MAPPING, XContentType.JSON), RequestOptions.DEFAULT);
+            return index;
+        } catch (IOException e) {
+            throw new CommonException(SAVE_COURSE_ERROR, e);
+        }
+    }
+
+    @Override
+    public void completeIndex(String index) {
+        IndicesClient indices = restHighLevelClient.indices();
+        try {
+            // 1.恢复refresh和副本为集群默认值
+            UpdateSettingsRequest request = new UpdateSettingsRequest(index).settings(Settings.builder()
+                    .putNull("index.refresh_interval")
+                    .putNull("index.number_of_replicas"));
+            indices.putSettings(request, RequestOptions.DEFAULT);
+            // 2.刷新，让导入的数据可以被搜索
+            indices.refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new CommonException(SAVE_COURSE_ERROR, e);
+        }
+    }
+
+    @Override
+    public List<String> switchAlias(String index) {
+        IndicesClient indices = restHighLevelClient.indices();
+        try {
+            IndicesAliasesRequest request = new IndicesAliasesRequest();
+            List<String> oldIndices = new ArrayList<>();
+            if (indices.existsAlias(new GetAliasesRequest(INDEX_NAME), RequestOptions.DEFAULT)) {
+                // 1.别名已存在，从旧索引上移除
+                GetAliasesResponse aliases = indices.getAlias(new GetAliasesRequest(INDEX_NAME), RequestOptions.DEFAULT);
+                oldIndices.addAll(aliases.getAliases().keySet());
+                for (String old : oldIndices) {
+                    request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(old).alias(INDEX_NAME));
+                }
+            } else if (indices.exists(new GetIndexRequest(INDEX_NAME), RequestOptions.DEFAULT)) {
+                // 2.第一次切换，course还是普通索引，需要在同一个请求中删除它才能创建同名别名
+                oldIndices.add(INDEX_NAME);
+                request.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(INDEX_NAME));
+            }
+            // 3.别名指向新索引，同时移除新索引上的影子别名，切换后不再需要镜像写入
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(index).alias(INDEX_NAME));
+            if (indices.existsAlias(new GetAliasesRequest(SHADOW_ALIAS).indices(index), RequestOptions.DEFAULT)) {
+                request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(index).alias(SHADOW_ALIAS));
+            }
+            indices.updateAliases(request, RequestOptions.DEFAULT);
+            this.shadowIndex = null;
+            this.shadowRefreshedAt = System.currentTimeMillis();
+            return oldIndices;
+        } catch (IOException e) {
+            throw new CommonException(SAVE_COURSE_ERROR, e);
+        }
+    }
+
+    @Override
+    public void deleteIndex(String index) {
+        try {
+            restHighLevelClient.indices().delete(new DeleteIndexRequest(index), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new CommonException(SAVE_COURSE_ERROR, e);
+        }
+    }
+
+    @Override
+    public void setShadowIndex(String index) {
+        IndicesClient indices = restHighLevelClient.indices();
+        try {
+            // 1.移除旧的影子别名，包括上次重建异常退出时遗留的
+            IndicesAliasesRequest request = new IndicesAliasesRequest();
+            if (indices.existsAlias(new GetAliasesRequest(SHADOW_ALIAS), RequestOptions.DEFAULT)) {
+                GetAliasesResponse aliases = indices.getAlias(new GetAliasesRequest(SHADOW_ALIAS), RequestOptions.DEFAULT);
+                for (String old : aliases.getAliases().keySet()) {
+                    request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(old).alias(SHADOW_ALIAS));
+                }
+            }
+            // 2.别名指向新的影子索引
+            if (index != null) {
+                request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(index).alias(SHADOW_ALIAS));
+            }
+            if (!request.getAliasActions().isEmpty()) {
+                indices.updateAliases(request, RequestOptions.DEFAULT);
+            }
+        } catch (IOException e) {
+            throw new CommonException(SAVE_COURSE_ERROR, e);
+        }
+        this.shadowIndex = index;
+        this.shadowRefreshedAt = System.currentTimeMillis();
+        // 3.等待其它节点刷新别名，之后开始的全量导入不会漏掉任何节点的增量写入
+        if (index != null) {
+            try {
+                Thread.sleep(SHADOW_REFRESH_MILLIS * 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 读取影子索引，超过刷新间隔时从ES的别名重新读取
+     * 影子索引已经是主别名指向的索引时不再镜像写入，否则同一次写入会在主索引上执行两次
+     */
+    private String shadowIndex() {
+        long now = System.currentTimeMillis();
+        if (now - shadowRefreshedAt < SHADOW_REFRESH_MILLIS) {
+            return shadowIndex;
+        }
+        try {
+            GetAliasesResponse aliases = restHighLevelClient.indices()
+                    .getAlias(new GetAliasesRequest(SHADOW_ALIAS, INDEX_NAME), RequestOptions.DEFAULT);
+            String shadow = null;
+            for (Map.Entry<String, Set<AliasMetadata>> e : aliases.getAliases().entrySet()) {
+                Set<String> names = e.getValue().stream().map(AliasMetadata::alias).collect(Collectors.toSet());
+                if (names.contains(SHADOW_ALIAS) && !names.contains(INDEX_NAME)) {
+                    shadow = e.getKey();
+                }
+            }
+            shadowIndex = shadow;
+            shadowRefreshedAt = now;
+        } catch (Exception e) {
+            // 读取失败时沿用上次的结果，下次写入时重试
+            log.warn("读取课程影子索引失败：{}", e.getMessage());
+        }
+        return shadowIndex;
+    }
+
+    private void updateShadowQuietly(Runnable operation) {
+        try {
+            operation.run();
+        } catch (Exception e) {
+            log.error("写入课程影子索引失败", e);
+        }
+    }
+
+    /**
+     * 文档内容，在课程数据之外附加自动补全字段
+     */
+    private String toSource(Course course) {
+        JSONObject json = JsonUtils.parseObj(course);
+        if (StringUtils.isNotBlank(course.getName())) {
+            JSONObject suggest = new JSONObject();
+            suggest.set("input", List.of(course.getName()));
+            suggest.set("weight", Math.max(course.getSold() == null ? 0 : course.getSold(), 0));
+            json.set(SUGGEST, suggest);
+        }
+        return json.toString();
+    }
 }
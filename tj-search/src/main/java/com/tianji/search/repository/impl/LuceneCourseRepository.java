@@ -0,0 +1,457 @@
+package com.tianji.search.repository.impl;
+
+import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.common.exceptions.BizIllegalException;
+import com.tianji.common.exceptions.CommonException;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.JsonUtils;
+import com.tianji.common.utils.StringUtils;
+import com.tianji.search.config.LocalIndexProperties;
+import com.tianji.search.domain.po.Course;
+import com.tianji.search.domain.query.CoursePageQuery;
+import com.tianji.search.repository.CourseRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static com.tianji.search.constants.SearchErrorInfo.*;
+
+/**
+ * <p>基于嵌入式lucene的课程索引</p>
+ * 索引保存在本地目录中，通过MMapDirectory访问。写入后立即对搜索可见，
+ * 定时commit到磁盘作为快照，服务重启后从最近的快照恢复。
+ * 只支持课程搜索需要的关键字、过滤和排序，不支持高亮。
+ * 全量重建通过文档的版本号实现：重建期间写入的文档带新版本号，切换时删除旧版本号的文档，
+ * 重建过程中搜索仍然可以读到旧文档。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "tj.search.local", name = "enabled", havingValue = "true")
+public class LuceneCourseRepository implements CourseRepository {
+
+    /**
+     * 用于按id更新和删除文档的字段
+     */
+    private static final String DOC_ID = "_id";
+    /**
+     * 保存文档原文的字段
+     */
+    private static final String SOURCE = "_source";
+    /**
+     * 文档所属的索引版本，全量重建切换时按版本删除旧文档
+     */
+    private static final String GENERATION = "_gen";
+    private static final String INDEX_PREFIX = "course_local_";
+    private static final Set<String> SORTABLE_FIELDS = Set.of(ID, SOLD, PRICE, SCORE, PUBLISH_TIME);
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final MMapDirectory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    /**
+     * 读-改-写类的更新需要串行执行
+     */
+    private final ReentrantLock updateLock = new ReentrantLock();
+    /**
+     * 当前生效的索引版本
+     */
+    private volatile long generation;
+    /**
+     * 正在重建的索引版本，没有重建时为0
+     */
+    private volatile long buildingGeneration;
+
+    public LuceneCourseRepository(LocalIndexProperties properties) throws IOException {
+        Path path = Paths.get(properties.getPath());
+        Files.createDirectories(path);
+        this.directory = new MMapDirectory(path);
+        IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        this.writer = new IndexWriter(directory, config);
+        this.searcherManager = new SearcherManager(writer, null);
+        this.generation = System.currentTimeMillis();
+        log.info("本地课程索引已打开，目录：{}，文档数：{}", path, writer.getDocStats().numDocs);
+    }
+
+    public int count() {
+        return writer.getDocStats().numDocs;
+    }
+
+    @Override
+    public void save(Course course) {
+        saveAll(List.of(course));
+    }
+
+    @Override
+    public void saveAll(List<Course> list) {
+        try {
+            long gen = writeGeneration();
+            for (Course course : list) {
+                writer.updateDocument(new Term(DOC_ID, course.getId().toString()), toDocument(course, gen));
+            }
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new CommonException(SAVE_COURSE_ERROR, e);
+        }
+    }
+
+    @Override
+    public void deleteById(Long courseId) {
+        deleteByIds(List.of(courseId));
+    }
+
+    @Override
+    public void deleteByIds(List<Long> courseIds) {
+        try {
+            Term[] terms = courseIds.stream().map(id -> new Term(DOC_ID, id.toString())).toArray(Term[]::new);
+            writer.deleteDocuments(terms);
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new CommonException(SAVE_COURSE_ERROR, e);
+        }
+    }
+
+    @Override
+    public Optional<Course> findById(Long courseId) {
+        List<Course> list = searchList(new TermQuery(new Term(DOC_ID, courseId.toString())), 1, null);
+        return list.isEmpty() ? Optional.empty() : Optional.of(list.get(0));
+    }
+
+    @Override
+    public void updateById(Long courseId, Object... sources) {
+        // 参数和ES的UpdateRequest.doc一致，是成对出现的字段名和值
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i + 1 < sources.length; i += 2) {
+            fields.put(String.valueOf(sources[i]), sources[i + 1]);
+        }
+        update(new TermQuery(new Term(DOC_ID, courseId.toString())), 1, source -> source.putAll(fields));
+    }
+
+    @Override
+    public void increment(Long courseId, String field, int amount) {
+        update(new TermQuery(new Term(DOC_ID, courseId.toString())), 1,
+                source -> source.put(field, toLong(source.get(field)) + amount));
+    }
+
+    @Override
+    public void incrementSold(List<Long> courseIds, int amount) {
+        for (Long courseId : courseIds) {
+            increment(courseId, SOLD, amount);
+        }
+    }
+
+    @Override
+    public Map<Long, Integer> incrementSold(Map<Long, Integer> deltas) {
+        deltas.forEach((courseId, amount) -> increment(courseId, SOLD, amount));
+        return CollUtils.emptyMap();
+    }
+
+    @Override
+    public void updateTeacherName(Long teacherId, String teacherName) {
+        update(LongPoint.newExactQuery(TEACHER, teacherId), Integer.MAX_VALUE,
+                source -> source.put(TEACHER_NAME, teacherName));
+    }
+
+    @Override
+    public List<Long> queryTeachersWithoutName(int size) {
+        // 本地索引定时从课程服务全量同步，同步时会填充教师名称，不需要单独补齐
+        return CollUtils.emptyList();
+    }
+
+    @Override
+    public synchronized String createNextIndex() {
+        if (buildingGeneration != 0) {
+            throw new BizIllegalException(REINDEX_RUNNING);
+        }
+        // 版本号单调递增，重建期间的增量写入也使用新版本号
+        buildingGeneration = Math.max(System.currentTimeMillis(), generation + 1);
+        return INDEX_PREFIX + buildingGeneration;
+    }
+
+    @Override
+    public int saveAll(String index, List<Course> list) {
+        if (!index.equals(INDEX_PREFIX + buildingGeneration)) {
+            throw new CommonException(SAVE_COURSE_ERROR);
+        }
+        saveAll(list);
+        return 0;
+    }
+
+    @Override
+    public void completeIndex(String index) {
+        snapshot();
+    }
+
+    @Override
+    public synchronized List<String> switchAlias(String index) {
+        long gen = buildingGeneration;
+        if (gen == 0 || !index.equals(INDEX_PREFIX + gen)) {
+            throw new CommonException(SAVE_COURSE_ERROR);
+        }
+        String old = INDEX_PREFIX + generation;
+        try {
+            // 重建没有写入的文档就是已经不存在的课程
+            writer.deleteDocuments(LongPoint.newRangeQuery(GENERATION, Long.MIN_VALUE, gen - 1));
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new CommonException(SAVE_COURSE_ERROR, e);
+        }
+        generation = gen;
+        buildingGeneration = 0;
+        snapshot();
+        return List.of(old);
+    }
+
+    @Override
+    public synchronized void deleteIndex(String index) {
+        // 旧版本的文档在切换时已经删除。放弃重建时，已写入的新版本文档都是有效数据，直接保留
+        if (buildingGeneration != 0 && index.equals(INDEX_PREFIX + buildingGeneration)) {
+            buildingGeneration = 0;
+        }
+    }
+
+    @Override
+    public void setShadowIndex(String index) {
+        // 本地索引只有一个版本，不需要影子写入
+    }
+
+    /**
+     * 用户端课程搜索，条件和ES搜索一致，不做高亮
+     */
+    public PageDTO<Course> search(CoursePageQuery query) {
+        // 1.构建查询条件
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        Query keywordQuery = StringUtils.isBlank(query.getKeyword())
+                ? null : new QueryBuilder(analyzer).createPhraseQuery(DEFAULT_QUERY_NAME, query.getKeyword());
+        builder.add(keywordQuery == null ? new MatchAllDocsQuery() : keywordQuery, BooleanClause.Occur.MUST);
+        addFilter(builder, CATEGORY_ID_LV1, query.getCategoryIdLv1());
+        addFilter(builder, CATEGORY_ID_LV2, query.getCategoryIdLv2());
+        addFilter(builder, CATEGORY_ID_LV3, query.getCategoryIdLv3());
+        addFilter(builder, TYPE, query.getType());
+        if (query.getFree() != null) {
+            builder.add(new TermQuery(new Term(FREE, query.getFree().toString())), BooleanClause.Occur.FILTER);
+        }
+        Query q = builder.build();
+        // 2.分页查询
+        int pageSize = query.getPageSize();
+        List<Course> list = searchList(q, query.from() + pageSize, toSort(query.getSortBy(), query.getIsAsc()));
+        list = list.size() <= query.from() ? CollUtils.emptyList() : list.subList(query.from(), list.size());
+        // 3.总条数
+        long total = count(q);
+        return new PageDTO<>(total, (total + pageSize - 1) / pageSize, list);
+    }
+
+    /**
+     * 按二级分类和是否免费查询排名靠前的课程
+     */
+    public List<Course> queryTopN(List<Long> categoryIds, Boolean isFree, String sortBy, boolean isAsc, int n) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        if (isFree != null) {
+            builder.add(new TermQuery(new Term(FREE, isFree.toString())), BooleanClause.Occur.FILTER);
+        }
+        if (categoryIds != null) {
+            long[] ids = categoryIds.stream().mapToLong(Long::longValue).toArray();
+            builder.add(LongPoint.newSetQuery(CATEGORY_ID_LV2, ids), BooleanClause.Occur.FILTER);
+        }
+        return searchList(builder.build(), n, toSort(sortBy, isAsc));
+    }
+
+    public List<Long> queryIdsByName(String keyword) {
+        Query query = new QueryBuilder(analyzer).createPhraseQuery(DEFAULT_QUERY_NAME, keyword);
+        if (query == null) {
+            return CollUtils.emptyList();
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Course course : searchList(query, 10, null)) {
+            ids.add(course.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * 课程名称前缀补全，按销量降序
+     */
+    public List<String> suggest(String prefix, int size) {
+        Query query = new PrefixQuery(new Term(SUGGEST, prefix.toLowerCase()));
+        Sort sort = new Sort(new SortField(SOLD, SortField.Type.LONG, true));
+        List<String> names = new ArrayList<>(size);
+        for (Course course : searchList(query, size, sort)) {
+            names.add(course.getName());
+        }
+        return names;
+    }
+
+    /**
+     * 把内存中的修改提交到磁盘，作为最新的快照
+     */
+    @Scheduled(fixedDelayString = "${tj.search.local.snapshot-interval:60000}")
+    public void snapshot() {
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+                log.debug("本地课程索引快照完成，文档数：{}", count());
+            }
+        } catch (IOException e) {
+            log.error("本地课程索引快照失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        snapshot();
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    private void update(Query query, int max, Consumer<Map<String, Object>> updater) {
+        updateLock.lock();
+        try {
+            // 1.保证能读到最新写入的数据
+            searcherManager.maybeRefreshBlocking();
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                // 2.读出原文，修改后整体替换
+                for (ScoreDoc scoreDoc : searcher.search(query, max).scoreDocs) {
+                    Document doc = searcher.doc(scoreDoc.doc);
+                    Map<String, Object> source = JsonUtils.parseObj(doc.get(SOURCE));
+                    updater.accept(source);
+                    Course course = JsonUtils.toBean(JsonUtils.toJsonStr(source), Course.class);
+                    // 局部更新保留文档原来的版本号
+                    IndexableField gen = doc.getField(GENERATION);
+                    long docGeneration = gen == null ? writeGeneration() : gen.numericValue().longValue();
+                    writer.updateDocument(new Term(DOC_ID, course.getId().toString()), toDocument(course, docGeneration));
+                }
+            } finally {
+                searcherManager.release(searcher);
+            }
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new CommonException(UPDATE_COURSE_STATUS_ERROR, e);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private List<Course> searchList(Query query, int n, Sort sort) {
+        if (n <= 0) {
+            return CollUtils.emptyList();
+        }
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs topDocs = sort == null ? searcher.search(query, n) : searcher.search(query, n, sort);
+                List<Course> list = new ArrayList<>(topDocs.scoreDocs.length);
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    list.add(JsonUtils.toBean(searcher.doc(scoreDoc.doc).get(SOURCE), Course.class));
+                }
+                return list;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new CommonException(QUERY_COURSE_ERROR, e);
+        }
+    }
+
+    private long count(Query query) {
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                return searcher.count(query);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new CommonException(QUERY_COURSE_ERROR, e);
+        }
+    }
+
+    private Sort toSort(String sortBy, Boolean isAsc) {
+        if (StringUtils.isBlank(sortBy) || !SORTABLE_FIELDS.contains(sortBy)) {
+            // 按相关度排序
+            return null;
+        }
+        boolean reverse = !Boolean.TRUE.equals(isAsc);
+        return new Sort(new SortField(sortBy, SortField.Type.LONG, reverse), new SortField(ID, SortField.Type.LONG));
+    }
+
+    /**
+     * 新写入的文档使用的版本号，重建期间使用新版本号
+     */
+    private long writeGeneration() {
+        long building = buildingGeneration;
+        return building != 0 ? building : generation;
+    }
+
+    private Document toDocument(Course course, long gen) {
+        Document doc = new Document();
+        doc.add(new StringField(DOC_ID, course.getId().toString(), Field.Store.NO));
+        doc.add(new LongPoint(GENERATION, gen));
+        doc.add(new StoredField(GENERATION, gen));
+        doc.add(new StoredField(SOURCE, JsonUtils.toJsonStr(course)));
+        if (course.getName() != null) {
+            doc.add(new TextField(DEFAULT_QUERY_NAME, course.getName(), Field.Store.NO));
+            doc.add(new StringField(SUGGEST, course.getName().toLowerCase(), Field.Store.NO));
+        }
+        if (course.getFree() != null) {
+            doc.add(new StringField(FREE, course.getFree().toString(), Field.Store.NO));
+        }
+        addLong(doc, ID, course.getId());
+        addLong(doc, CATEGORY_ID_LV1, course.getCategoryIdLv1());
+        addLong(doc, CATEGORY_ID_LV2, course.getCategoryIdLv2());
+        addLong(doc, CATEGORY_ID_LV3, course.getCategoryIdLv3());
+        addLong(doc, TYPE, course.getType());
+        addLong(doc, TEACHER, course.getTeacher());
+        addLong(doc, SOLD, course.getSold());
+        addLong(doc, PRICE, course.getPrice());
+        addLong(doc, SCORE, course.getScore());
+        if (course.getPublishTime() != null) {
+            addLong(doc, PUBLISH_TIME, course.getPublishTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        return doc;
+    }
+
+    /**
+     * 数值字段同时写入point和doc values，分别用于过滤和排序
+     */
+    private static void addLong(Document doc, String field, Number value) {
+        if (value == null) {
+            return;
+        }
+        doc.add(new LongPoint(field, value.longValue()));
+        doc.add(new NumericDocValuesField(field, value.longValue()));
+    }
+
+    private static void addFilter(BooleanQuery.Builder builder, String field, Number value) {
+        if (value != null) {
+            builder.add(LongPoint.newExactQuery(field, value.longValue()), BooleanClause.Occur.FILTER);
+        }
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+}
@@ -0,0 +1,154 @@
+package com.tianji.search.repository.impl;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.search.config.LocalIndexProperties;
+import com.tianji.search.domain.po.Course;
+import com.tianji.search.repository.CourseRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * <p>课程索引的路由</p>
+ * 这里的写操作只作用于ES，由持久队列的消费者调用，多个节点竞争消费。
+ * 本地索引是每个节点独立的副本，由{@link com.tianji.search.mq.LocalCourseIndexListener}通过匿名队列
+ * 在每个节点上各自写入，并定时全量同步，所以这里不再写本地索引；以本地索引为主时写操作直接忽略。
+ * 查询在ES失败时降级到本地索引，全量重建交给主索引执行。
+ */
+@Slf4j
+@Primary
+@Component
+public class RoutingCourseRepository implements CourseRepository {
+
+    private final CourseRepositoryImpl remote;
+    private final LuceneCourseRepository local;
+    private final boolean localPrimary;
+
+    public RoutingCourseRepository(CourseRepositoryImpl remote,
+                                   ObjectProvider<LuceneCourseRepository> localProvider,
+                                   LocalIndexProperties properties) {
+        this.remote = remote;
+        this.local = localProvider.getIfAvailable();
+        this.localPrimary = local != null && properties.isPrimary();
+    }
+
+    @Override
+    public void save(Course course) {
+        write(r -> r.save(course));
+    }
+
+    @Override
+    public void deleteById(Long courseId) {
+        write(r -> r.deleteById(courseId));
+    }
+
+    @Override
+    public Optional<Course> findById(Long courseId) {
+        if (localPrimary) {
+            return local.findById(courseId);
+        }
+        try {
+            return remote.findById(courseId);
+        } catch (RuntimeException e) {
+            if (local == null) {
+                throw e;
+            }
+            log.warn("ES查询课程{}失败，使用本地索引", courseId, e);
+            return local.findById(courseId);
+        }
+    }
+
+    @Override
+    public void updateById(Long courseId, Object... docs) {
+        write(r -> r.updateById(courseId, docs));
+    }
+
+    @Override
+    public void increment(Long courseId, String field, int amount) {
+        write(r -> r.increment(courseId, field, amount));
+    }
+
+    @Override
+    public void incrementSold(List<Long> courseIds, int amount) {
+        Map<Long, Integer> deltas = new HashMap<>(courseIds.size());
+        for (Long courseId : courseIds) {
+            deltas.merge(courseId, amount, Integer::sum);
+        }
+        incrementSold(deltas);
+    }
+
+    @Override
+    public Map<Long, Integer> incrementSold(Map<Long, Integer> deltas) {
+        if (localPrimary) {
+            return CollUtils.emptyMap();
+        }
+        return remote.incrementSold(deltas);
+    }
+
+    @Override
+    public void saveAll(List<Course> list) {
+        write(r -> r.saveAll(list));
+    }
+
+    @Override
+    public void deleteByIds(List<Long> courseIds) {
+        write(r -> r.deleteByIds(courseIds));
+    }
+
+    @Override
+    public void updateTeacherName(Long teacherId, String teacherName) {
+        write(r -> r.updateTeacherName(teacherId, teacherName));
+    }
+
+    @Override
+    public List<Long> queryTeachersWithoutName(int size) {
+        return primary().queryTeachersWithoutName(size);
+    }
+
+    @Override
+    public String createNextIndex() {
+        return primary().createNextIndex();
+    }
+
+    @Override
+    public int saveAll(String index, List<Course> list) {
+        return primary().saveAll(index, list);
+    }
+
+    @Override
+    public void completeIndex(String index) {
+        primary().completeIndex(index);
+    }
+
+    @Override
+    public List<String> switchAlias(String index) {
+        return primary().switchAlias(index);
+    }
+
+    @Override
+    public void deleteIndex(String index) {
+        primary().deleteIndex(index);
+    }
+
+    @Override
+    public void setShadowIndex(String index) {
+        primary().setShadowIndex(index);
+    }
+
+    private CourseRepository primary() {
+        return localPrimary ? local : remote;
+    }
+
+    private void write(Consumer<CourseRepository> operation) {
+        if (!localPrimary) {
+            operation.accept(remote);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.tianji.search.service;
+
+import com.tianji.search.domain.vo.ReindexProgressVO;
+
+public interface ICourseReindexService {
+
+    /**
+     * 异步全量重建课程索引，导入完成后把course别名切换到新索引
+     */
+    ReindexProgressVO startReindex();
+
+    ReindexProgressVO queryProgress();
+}
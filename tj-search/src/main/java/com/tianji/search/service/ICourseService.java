@@ -1,5 +1,8 @@
 package com.tianji.search.service;
 
+import com.tianji.api.dto.trade.OrderBasicDTO;
+import com.tianji.search.domain.po.Course;
+
 import java.util.List;
 
 public interface ICourseService {
@@ -8,7 +11,27 @@ public interface ICourseService {
 
     void handleCourseUp(Long courseId);
 
-    void updateCourseSold(List<Long> courseId, int amount);
+    void updateCourseSold(List<OrderBasicDTO> orders, int amount);
 
     void handleCourseDeletes(List<Long> courseIds);
+
+    /**
+     * 查询并填充课程的教师名称，写入索引库之前调用
+     */
+    void fillTeacherNames(List<Course> courses);
+
+    /**
+     * 按id游标从课程服务分批查询已上架课程，并转换为索引库文档
+     * @param lastId 上一批最后一个课程id，第一批传0
+     * @param size 每批数量
+     */
+    List<Course> queryCoursesForIndex(Long lastId, int size);
+
+    /**
+     * 从课程服务查询单个已上架课程，并转换为索引库文档
+     * @return 课程不存在时返回null
+     */
+    Course queryCourseForIndex(Long courseId);
+
+    void handleTeacherNameChange(Long teacherId, String teacherName);
 }
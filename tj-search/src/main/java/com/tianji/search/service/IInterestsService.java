@@ -21,4 +21,10 @@ public interface IInterestsService extends IService<Interests> {
     List<CategoryBasicDTO> queryMyInterests();
 
     List<Long> queryMyInterestsIds();
+
+    /**
+     * 清理本节点缓存的用户兴趣，收到其它节点的兴趣修改广播时调用
+     * @param userId 用户id
+     */
+    void invalidateLocalInterests(Long userId);
 }
@@ -1,22 +1,46 @@
 package com.tianji.search.service;
 
 import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.search.domain.query.CourseCursorQuery;
 import com.tianji.search.domain.query.CoursePageQuery;
+import com.tianji.search.domain.vo.CourseCursorPageVO;
 import com.tianji.search.domain.vo.CourseVO;
+import com.tianji.search.domain.vo.RecommendHomeVO;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface ISearchService {
 
-    List<CourseVO> queryCourseByCateId(Long cateLv2Id);
+    CompletableFuture<List<CourseVO>> queryCourseByCateId(Long cateLv2Id);
 
-    List<CourseVO> queryBestTopN();
+    CompletableFuture<List<CourseVO>> queryBestTopN();
 
-    List<CourseVO> queryNewTopN();
+    CompletableFuture<List<CourseVO>> queryNewTopN();
 
-    List<CourseVO> queryFreeTopN();
+    CompletableFuture<List<CourseVO>> queryFreeTopN();
+
+    /**
+     * 首页的精品好课、新课推荐、精品公开课，缓存未命中的部分合并为一次_msearch查询
+     */
+    CompletableFuture<RecommendHomeVO> queryHomeRecommendations();
 
     PageDTO<CourseVO> queryCoursesForPortal(CoursePageQuery query);
 
+    /**
+     * 基于search_after的游标分页，适合深度翻页
+     */
+    CourseCursorPageVO queryCoursesForPortalByCursor(CourseCursorQuery query);
+
     List<Long> queryCoursesIdByName(String keyword);
+
+    /**
+     * 课程名称前缀自动补全
+     */
+    List<String> suggest(String prefix);
+
+    /**
+     * 课程上下架或销量变化后调用，推荐课程缓存会在后台异步刷新
+     */
+    void refreshRecommendations();
 }
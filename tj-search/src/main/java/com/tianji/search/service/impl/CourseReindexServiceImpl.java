@@ -0,0 +1,216 @@
+package com.tianji.search.service.impl;
+
+import com.tianji.common.exceptions.BizIllegalException;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.search.config.ReindexProperties;
+import com.tianji.search.domain.po.Course;
+import com.tianji.search.domain.vo.ReindexProgressVO;
+import com.tianji.search.repository.CourseRepository;
+import com.tianji.search.service.ICourseReindexService;
+import com.tianji.search.service.ICourseService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.tianji.search.constants.SearchErrorInfo.REINDEX_FAILED_DOCS;
+import static com.tianji.search.constants.SearchErrorInfo.REINDEX_RUNNING;
+
+/**
+ * <p>课程索引全量重建</p>
+ * 1. 创建新版本索引course_v{n}，关闭refresh和副本，同时开启影子写入，重建期间的上下架事件也会写入新索引
+ * 2. 按id游标从课程服务分批拉取已上架课程，交给bulk线程池并行写入，可以限速
+ * 3. 全部写入成功后恢复索引设置，原子地把course别名切换到新索引，同时移除影子别名
+ * 同一时间整个集群只允许一个重建任务，由分布式锁保证
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CourseReindexServiceImpl implements ICourseReindexService {
+
+    private final CourseRepository courseRepository;
+    private final ICourseService courseService;
+    private final ReindexProperties properties;
+    private final Executor reindexExecutor;
+    private final RedissonClient redissonClient;
+
+    /**
+     * 全量重建的分布式锁，保证整个集群同一时间只有一个重建任务
+     */
+    private static final String REINDEX_LOCK = "search:course:reindex:lock";
+
+    private volatile Progress progress;
+
+    @Override
+    public ReindexProgressVO startReindex() {
+        // 1.在重建线程中获取分布式锁，锁与持有线程绑定，由看门狗自动续期，重建结束后在同一线程释放
+        Progress p = new Progress();
+        CompletableFuture<Boolean> acquired = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            RLock lock = redissonClient.getLock(REINDEX_LOCK);
+            try {
+                if (!lock.tryLock()) {
+                    acquired.complete(false);
+                    return;
+                }
+            } catch (RuntimeException e) {
+                acquired.completeExceptionally(e);
+                return;
+            }
+            try {
+                progress = p;
+                acquired.complete(true);
+                reindex(p);
+            } finally {
+                lock.unlock();
+            }
+        }, "course-reindex");
+        thread.setDaemon(true);
+        thread.start();
+        // 2.其它节点或本节点正在重建时直接失败
+        if (!acquired.join()) {
+            throw new BizIllegalException(REINDEX_RUNNING);
+        }
+        return p.toVO();
+    }
+
+    @Override
+    public ReindexProgressVO queryProgress() {
+        Progress p = progress;
+        return p == null ? null : p.toVO();
+    }
+
+    private void reindex(Progress p) {
+        String index = null;
+        boolean switched = false;
+        try {
+            // 1.创建新版本索引，开启影子写入
+            index = courseRepository.createNextIndex();
+            p.index = index;
+            courseRepository.setShadowIndex(index);
+            log.info("开始重建课程索引，新索引：{}", index);
+
+            // 2.按id游标分批拉取，并行bulk写入
+            String target = index;
+            int batchSize = properties.getBatchSize();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            long lastId = 0;
+            while (true) {
+                List<Course> courses = courseService.queryCoursesForIndex(lastId, batchSize);
+                if (CollUtils.isEmpty(courses)) {
+                    break;
+                }
+                lastId = courses.get(courses.size() - 1).getId();
+                futures.add(CompletableFuture.runAsync(() -> {
+                    int failed = courseRepository.saveAll(target, courses);
+                    p.failed.addAndGet(failed);
+                    p.indexed.addAndGet(courses.size() - failed);
+                }, reindexExecutor));
+                p.lastId = lastId;
+                long fetched = p.fetched.addAndGet(courses.size());
+                log.info("重建课程索引进度，已拉取：{}，已写入：{}，失败：{}", fetched, p.indexed.get(), p.failed.get());
+                if (courses.size() < batchSize) {
+                    break;
+                }
+                futures.removeIf(CompletableFuture::isDone);
+                throttle(p.startMillis, fetched);
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            if (p.failed.get() > 0) {
+                throw new BizIllegalException(REINDEX_FAILED_DOCS);
+            }
+
+            // 3.恢复索引设置，切换别名，影子别名在同一个请求中移除，避免增量写入重复写到新的主索引
+            courseRepository.completeIndex(index);
+            List<String> oldIndices = courseRepository.switchAlias(index);
+            switched = true;
+            log.info("课程索引重建完成，别名已从{}切换到{}，共导入{}门课程", oldIndices, index, p.indexed.get());
+
+            // 4.按需删除旧索引，第一次切换时旧的course索引已经随别名切换删除
+            if (properties.isDeleteOldIndex()) {
+                for (String old : oldIndices) {
+                    if (!CourseRepository.INDEX_NAME.equals(old)) {
+                        courseRepository.deleteIndex(old);
+                    }
+                }
+            }
+            p.state = State.SUCCESS;
+        } catch (Exception e) {
+            log.error("重建课程索引失败，新索引：{}", index, e);
+            p.state = State.FAILED;
+            p.message = e.getMessage();
+            if (index != null && !switched) {
+                deleteQuietly(index);
+            }
+        } finally {
+            courseRepository.setShadowIndex(null);
+            p.endTime = LocalDateTime.now();
+        }
+    }
+
+    /**
+     * 按每秒最大文档数限速，拉取速度超过限制时等待
+     */
+    private void throttle(long startMillis, long fetched) throws InterruptedException {
+        int maxDocsPerSecond = properties.getMaxDocsPerSecond();
+        if (maxDocsPerSecond <= 0) {
+            return;
+        }
+        long expected = fetched * 1000 / maxDocsPerSecond;
+        long elapsed = System.currentTimeMillis() - startMillis;
+        if (expected > elapsed) {
+            Thread.sleep(expected - elapsed);
+        }
+    }
+
+    private void deleteQuietly(String index) {
+        try {
+            courseRepository.deleteIndex(index);
+        } catch (Exception e) {
+            log.error("删除未完成的课程索引{}失败", index, e);
+        }
+    }
+
+    private enum State {
+        RUNNING, SUCCESS, FAILED
+    }
+
+    private static class Progress {
+        private final long startMillis = System.currentTimeMillis();
+        private final LocalDateTime startTime = LocalDateTime.now();
+        private final AtomicLong fetched = new AtomicLong();
+        private final AtomicLong indexed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile String index;
+        private volatile long lastId;
+        private volatile State state = State.RUNNING;
+        private volatile LocalDateTime endTime;
+        private volatile String message;
+
+        private ReindexProgressVO toVO() {
+            ReindexProgressVO vo = new ReindexProgressVO();
+            vo.setIndex(index);
+            vo.setState(state.name());
+            vo.setFetched(fetched.get());
+            vo.setIndexed(indexed.get());
+            vo.setFailed(failed.get());
+            vo.setLastId(lastId);
+            LocalDateTime end = endTime == null ? LocalDateTime.now() : endTime;
+            long seconds = Math.max(Duration.between(startTime, end).getSeconds(), 1);
+            vo.setDocsPerSecond(indexed.get() / seconds);
+            vo.setStartTime(startTime);
+            vo.setEndTime(endTime);
+            vo.setMessage(message);
+            return vo;
+        }
+    }
+}
@@ -1,53 +1,172 @@
 package com.tianji.search.service.impl;
 
 import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.course.CourseSearchDTO;
+import com.tianji.api.dto.trade.OrderBasicDTO;
+import com.tianji.api.dto.user.UserDTO;
 import com.tianji.common.utils.BeanUtils;
+import com.tianji.common.utils.CollUtils;
 import com.tianji.search.domain.po.Course;
 import com.tianji.search.repository.CourseRepository;
 import com.tianji.search.service.ICourseService;
+import com.tianji.search.service.ISearchService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class CourseServiceImpl implements ICourseService {
 
+    /**
+     * 每批补齐教师名称的教师数量
+     */
+    private static final int TEACHER_BACKFILL_BATCH_SIZE = 100;
+
     @Resource
     private CourseRepository courseRepository;
     @Resource
     private CourseClient courseClient;
+    @Resource
+    private UserClient userClient;
+    @Resource
+    private ISearchService searchService;
+    @Resource
+    private CourseSoldIndexer courseSoldIndexer;
 
     @Override
     public void handleCourseDelete(Long courseId) {
         // 1.直接删除
         courseRepository.deleteById(courseId);
+        // 2.刷新推荐课程
+        searchService.refreshRecommendations();
     }
 
     @Override
     public void handleCourseUp(Long courseId) {
         // 1.根据id查询课程信息
-        CourseSearchDTO courseSearchDTO = courseClient.getSearchInfo(courseId);
-        if (courseSearchDTO == null) {
+        Course course = queryCourseForIndex(courseId);
+        if (course == null) {
             return;
         }
-        // 2.数据转换
-        Course course = BeanUtils.toBean(courseSearchDTO, Course.class);
-        course.setType(courseSearchDTO.getCourseType());
-        // 3.写入索引库
+        // 2.写入索引库
         courseRepository.save(course);
+        // 3.刷新推荐课程
+        searchService.refreshRecommendations();
 
     }
 
     @Override
-    public void updateCourseSold(List<Long> courseIds, int amount) {
-        courseRepository.incrementSold(courseIds, amount);
+    public void updateCourseSold(List<OrderBasicDTO> orders, int amount) {
+        // 一批订单的销量变化合并后由CourseSoldIndexer一次写入
+        courseSoldIndexer.accept(orders, amount);
     }
 
     @Override
     public void handleCourseDeletes(List<Long> courseIds) {
         // 1.直接删除
         courseRepository.deleteByIds(courseIds);
+        // 2.刷新推荐课程
+        searchService.refreshRecommendations();
+    }
+
+    @Override
+    public void fillTeacherNames(List<Course> courses) {
+        // 1.获取教师id
+        Set<Long> teacherIds = courses.stream()
+                .map(Course::getTeacher)
+                .filter(id -> id != null && id != 0L)
+                .collect(Collectors.toSet());
+        if (teacherIds.isEmpty()) {
+            return;
+        }
+        // 2.查询教师
+        List<UserDTO> teachers = userClient.queryUserByIds(teacherIds);
+        Map<Long, String> teacherMap = CollUtils.isEmpty(teachers) ? CollUtils.emptyMap() : teachers.stream()
+                .filter(t -> t.getName() != null)
+                .collect(Collectors.toMap(UserDTO::getId, UserDTO::getName, (a, b) -> a));
+        if (teacherMap.size() < teacherIds.size()) {
+            log.warn("部分教师信息不存在，教师id：{}", teacherIds);
+        }
+        // 3.填充名称
+        for (Course course : courses) {
+            course.setTeacherName(teacherMap.get(course.getTeacher()));
+        }
+    }
+
+    @Override
+    public List<Course> queryCoursesForIndex(Long lastId, int size) {
+        // 1.分批查询
+        List<CourseSearchDTO> batch = courseClient.querySearchInfoAfter(lastId, size);
+        if (CollUtils.isEmpty(batch)) {
+            return CollUtils.emptyList();
+        }
+        // 2.数据转换
+        List<Course> courses = new ArrayList<>(batch.size());
+        for (CourseSearchDTO dto : batch) {
+            Course course = BeanUtils.toBean(dto, Course.class);
+            course.setType(dto.getCourseType());
+            courses.add(course);
+        }
+        // 3.冗余教师名称
+        fillTeacherNames(courses);
+        return courses;
+    }
+
+    @Override
+    public Course queryCourseForIndex(Long courseId) {
+        // 1.根据id查询课程信息
+        CourseSearchDTO courseSearchDTO = courseClient.getSearchInfo(courseId);
+        if (courseSearchDTO == null) {
+            return null;
+        }
+        // 2.数据转换
+        Course course = BeanUtils.toBean(courseSearchDTO, Course.class);
+        course.setType(courseSearchDTO.getCourseType());
+        // 3.冗余教师名称，搜索时不用再查询用户服务
+        fillTeacherNames(CollUtils.singletonList(course));
+        return course;
+    }
+
+    @Override
+    public void handleTeacherNameChange(Long teacherId, String teacherName) {
+        courseRepository.updateTeacherName(teacherId, teacherName);
+    }
+
+    /**
+     * 补齐历史课程文档中缺少的教师名称。教师名称是后加入索引的字段，旧文档在重新上架或重建索引之前都没有这个字段，
+     * 这里按教师分批补齐，没有缺失时只有一次聚合查询
+     */
+    @Scheduled(initialDelay = 60000, fixedDelay = 3600000)
+    public void backfillTeacherNames() {
+        Set<Long> handled = new HashSet<>();
+        while (true) {
+            // 1.查询还没有教师名称的教师
+            List<Long> teacherIds = courseRepository.queryTeachersWithoutName(TEACHER_BACKFILL_BATCH_SIZE);
+            teacherIds.removeAll(handled);
+            if (teacherIds.isEmpty()) {
+                break;
+            }
+            handled.addAll(teacherIds);
+            // 2.查询教师名称，教师不存在时写入空字符串，搜索结果显示为匿名，也不会再被查出来
+            List<UserDTO> teachers = userClient.queryUserByIds(teacherIds);
+            Map<Long, String> teacherMap = CollUtils.isEmpty(teachers) ? CollUtils.emptyMap() : teachers.stream()
+                    .filter(t -> t.getName() != null)
+                    .collect(Collectors.toMap(UserDTO::getId, UserDTO::getName, (a, b) -> a));
+            // 3.逐个教师更新
+            for (Long teacherId : teacherIds) {
+                courseRepository.updateTeacherName(teacherId, teacherMap.getOrDefault(teacherId, ""));
+            }
+            log.info("补齐课程文档的教师名称，本批教师数：{}", teacherIds.size());
+        }
     }
 }
@@ -0,0 +1,107 @@
+package com.tianji.search.service.impl;
+
+import com.tianji.api.dto.trade.OrderBasicDTO;
+import com.tianji.common.exceptions.CommonException;
+import com.tianji.search.config.SoldIndexerProperties;
+import com.tianji.search.repository.CourseRepository;
+import com.tianji.search.service.ISearchService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+import static com.tianji.search.constants.SearchErrorInfo.UPDATE_COURSE_SOLD_ERROR;
+
+/**
+ * <p>课程销量的合并写入器</p>
+ * 订单消息由批量监听器攒成一批，整批的销量增量按课程合并为一次bulk请求写入索引库，
+ * 避免热门课程在短时间内产生大量脚本更新导致的版本冲突和频繁refresh。
+ * 增量写入成功后才在redis中记录已处理的订单和课程，写入失败时抛出异常让整批消息重新投递，
+ * 重新投递时已经写入的订单和课程会被过滤，不会被重复累加。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CourseSoldIndexer {
+
+    private static final String ORDER_LOG_KEY_PREFIX = "search:sold:order:";
+
+    private final CourseRepository courseRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final SoldIndexerProperties properties;
+    private final ISearchService searchService;
+
+    /**
+     * 写入一批订单的销量变化
+     * @param orders 订单，订单id为空时不做去重
+     * @param amount 销量增量，支付为1，退款为-1
+     */
+    public void accept(List<OrderBasicDTO> orders, int amount) {
+        // 1.按订单和课程去重，过滤已经写入过的记录
+        Map<String, Long> todo = new LinkedHashMap<>();
+        Map<Long, Integer> deltas = new HashMap<>();
+        String suffix = amount > 0 ? ":pay" : ":refund";
+        for (OrderBasicDTO order : orders) {
+            for (Long courseId : order.getCourseIds()) {
+                if (order.getOrderId() == null) {
+                    deltas.merge(courseId, amount, Integer::sum);
+                    continue;
+                }
+                todo.put(ORDER_LOG_KEY_PREFIX + order.getOrderId() + ":" + courseId + suffix, courseId);
+            }
+        }
+        if (!todo.isEmpty()) {
+            List<String> keys = new ArrayList<>(todo.keySet());
+            List<String> logs = redisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; logs != null && i < keys.size(); i++) {
+                if (logs.get(i) != null) {
+                    todo.remove(keys.get(i));
+                }
+            }
+        }
+        // 2.按课程合并增量
+        todo.values().forEach(courseId -> deltas.merge(courseId, amount, Integer::sum));
+        deltas.values().removeIf(delta -> delta == 0);
+        if (deltas.isEmpty()) {
+            log.debug("订单的销量变化都已处理过，忽略重复消息");
+            return;
+        }
+        // 3.一次bulk写入，整体失败时直接抛出异常，整批消息重试
+        Map<Long, Integer> failed = courseRepository.incrementSold(deltas);
+        // 4.记录写入成功的订单和课程，之后消息才会确认
+        List<String> doneKeys = new ArrayList<>(todo.size());
+        todo.forEach((key, courseId) -> {
+            if (!failed.containsKey(courseId)) {
+                doneKeys.add(key);
+            }
+        });
+        markDone(doneKeys);
+        // 5.销量变化会影响推荐课程的排序
+        if (failed.size() < deltas.size()) {
+            searchService.refreshRecommendations();
+        }
+        // 6.部分课程写入失败，整批消息重试，已经写入的课程会被第1步过滤
+        if (!failed.isEmpty()) {
+            log.error("批量更新课程销量部分失败，等待整批重试，失败课程：{}", failed.keySet());
+            throw new CommonException(UPDATE_COURSE_SOLD_ERROR);
+        }
+    }
+
+    private void markDone(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        long ttl = properties.getDedupeTtl().getSeconds();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection src = (StringRedisConnection) connection;
+            for (String key : keys) {
+                src.setEx(key, ttl, "1");
+            }
+            return null;
+        });
+    }
+}
@@ -1,21 +1,28 @@
 package com.tianji.search.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.tianji.api.cache.CategoryCache;
 import com.tianji.api.dto.course.CategoryBasicDTO;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.StringUtils;
 import com.tianji.common.utils.UserContext;
 import com.tianji.search.domain.po.Interests;
 import com.tianji.search.mapper.InterestsMapper;
 import com.tianji.search.service.IInterestsService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static com.tianji.common.constants.MqConstants.Exchange.USER_EXCHANGE;
+import static com.tianji.common.constants.MqConstants.Key.USER_INTERESTS_CHANGE_KEY;
+
 /**
  * <p>
  * 用户兴趣表，保存感兴趣的二级分类id 服务实现类
@@ -24,12 +31,19 @@ import java.util.stream.Collectors;
  * @author 虎哥
  * @since 2022-07-21
  */
+@Slf4j
 @Service
 public class InterestsServiceImpl extends ServiceImpl<InterestsMapper, Interests> implements IInterestsService {
 
     @Autowired
     private CategoryCache categoryCache;
 
+    @Autowired
+    private Cache<Long, List<Long>> interestsCache;
+
+    @Autowired
+    private RabbitMqHelper rabbitMqHelper;
+
     @Override
     public void saveInterests(List<Long> interestedIds) {
         // 1.获取当前用户
@@ -38,6 +52,7 @@ public class InterestsServiceImpl extends ServiceImpl<InterestsMapper, Interests
         if(StringUtils.isBlank(ids)){
             // 说明没有兴趣爱好，直接删除
             removeById(userId);
+            invalidateInterests(userId);
             return;
         }
         // 2.封装数据
@@ -46,6 +61,24 @@ public class InterestsServiceImpl extends ServiceImpl<InterestsMapper, Interests
         interests.setInterests(CollUtils.join(interestedIds, ","));
         // 3.保存
         saveOrUpdate(interests);
+        invalidateInterests(userId);
+    }
+
+    /**
+     * 清理本节点的兴趣缓存，并广播给其它节点清理，广播失败时其它节点最多延迟缓存有效期生效
+     */
+    private void invalidateInterests(Long userId) {
+        interestsCache.invalidate(userId);
+        try {
+            rabbitMqHelper.send(USER_EXCHANGE, USER_INTERESTS_CHANGE_KEY, userId);
+        } catch (Exception e) {
+            log.error("广播用户{}的兴趣修改消息失败", userId, e);
+        }
+    }
+
+    @Override
+    public void invalidateLocalInterests(Long userId) {
+        interestsCache.invalidate(userId);
     }
 
     @Override
@@ -60,21 +93,30 @@ public class InterestsServiceImpl extends ServiceImpl<InterestsMapper, Interests
     public List<Long> queryMyInterestsIds() {
         // 1.获取当前用户
         Long userId = UserContext.getUser();
-        // 2.查询兴趣爱好
+        if (userId == null) {
+            return CollUtils.emptyList();
+        }
+        // 2.先查本地缓存，未命中再查数据库
+        return interestsCache.get(userId, this::loadInterestsIds);
+    }
+
+    private List<Long> loadInterestsIds(Long userId) {
+        // 1.查询兴趣爱好
         Interests interests = getById(userId);
         if (interests == null || StringUtils.isBlank(interests.getInterests())) {
             return CollUtils.emptyList();
         }
-        // 3.获取分类信息
+        // 2.获取分类信息
         String[] ids = interests.getInterests().split(",");
         if (ids.length == 0) {
             return CollUtils.emptyList();
         }
         try {
-            // 4.转换并返回
-            return Arrays.stream(ids).map(Long::valueOf).collect(Collectors.toList());
+            // 3.转换并返回
+            return Collections.unmodifiableList(
+                    Arrays.stream(ids).map(Long::valueOf).collect(Collectors.toList()));
         } catch (Exception e) {
-            // 5.数据转换异常，返回空
+            // 4.数据转换异常，返回空
             return CollUtils.emptyList();
         }
     }
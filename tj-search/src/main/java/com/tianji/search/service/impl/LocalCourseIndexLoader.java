@@ -0,0 +1,77 @@
+package com.tianji.search.service.impl;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.search.config.ReindexProperties;
+import com.tianji.search.domain.po.Course;
+import com.tianji.search.repository.impl.LuceneCourseRepository;
+import com.tianji.search.service.ICourseService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * <p>本地索引的全量同步</p>
+ * 本地索引为空时（第一次启用或快照目录丢失），启动后立即从课程服务全量加载已上架课程；
+ * 之后按固定间隔全量同步，修正各节点本地索引因消息丢失或重复产生的偏差，并删除已经不存在的课程
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "tj.search.local", name = "enabled", havingValue = "true")
+public class LocalCourseIndexLoader {
+
+    private final LuceneCourseRepository localRepository;
+    private final ICourseService courseService;
+    private final ReindexProperties reindexProperties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIfEmpty() {
+        if (localRepository.count() > 0) {
+            return;
+        }
+        Thread thread = new Thread(this::resync, "local-course-index-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Scheduled(initialDelayString = "${tj.search.local.resync-interval:3600000}",
+            fixedDelayString = "${tj.search.local.resync-interval:3600000}")
+    public void resync() {
+        log.info("开始从课程服务全量同步本地课程索引");
+        String index = null;
+        try {
+            // 1.创建新版本，同步期间的课程事件也写入新版本
+            index = localRepository.createNextIndex();
+            // 2.按id游标分批拉取写入
+            int batchSize = reindexProperties.getBatchSize();
+            long lastId = 0;
+            long total = 0;
+            while (true) {
+                List<Course> courses = courseService.queryCoursesForIndex(lastId, batchSize);
+                if (CollUtils.isEmpty(courses)) {
+                    break;
+                }
+                localRepository.saveAll(index, courses);
+                total += courses.size();
+                lastId = courses.get(courses.size() - 1).getId();
+                if (courses.size() < batchSize) {
+                    break;
+                }
+            }
+            // 3.删除旧版本的文档
+            localRepository.switchAlias(index);
+            log.info("本地课程索引同步完成，共{}门课程", total);
+        } catch (Exception e) {
+            log.error("本地课程索引同步失败，将继续通过课程事件增量写入", e);
+            if (index != null) {
+                localRepository.deleteIndex(index);
+            }
+        }
+    }
+}
@@ -1,109 +1,310 @@
 package com.tianji.search.service.impl;
 
 import com.tianji.api.cache.CategoryCache;
-import com.tianji.api.client.user.UserClient;
-import com.tianji.api.dto.user.UserDTO;
-import com.tianji.common.constants.ErrorInfo;
 import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.CommonException;
 import com.tianji.common.utils.*;
+import com.tianji.search.config.EsQueryProperties;
 import com.tianji.search.config.InterestsProperties;
+import com.tianji.search.config.LocalIndexProperties;
 import com.tianji.search.constants.SearchErrorInfo;
+import com.tianji.search.domain.dto.SearchCursor;
 import com.tianji.search.domain.po.Course;
+import com.tianji.search.domain.query.CourseCursorQuery;
 import com.tianji.search.domain.query.CoursePageQuery;
+import com.tianji.search.domain.vo.CourseCursorPageVO;
 import com.tianji.search.domain.vo.CourseVO;
+import com.tianji.search.domain.vo.RecommendHomeVO;
 import com.tianji.search.repository.CourseRepository;
+import com.tianji.search.repository.impl.LuceneCourseRepository;
 import com.tianji.search.service.IInterestsService;
 import com.tianji.search.service.ISearchService;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.RangeQueryBuilder;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.suggest.SuggestBuilder;
+import org.elasticsearch.search.suggest.SuggestBuilders;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
 import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.tianji.search.repository.CourseRepository.PUBLISH_TIME;
 
+@Slf4j
 @Service
 public class SearchServiceImpl implements ISearchService {
 
+    /**
+     * ES默认的index.max_result_window，from/size分页和总条数统计的上限
+     */
+    private static final int MAX_RESULT_WINDOW = 10000;
+    private static final TimeValue PIT_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+    private static final String SUGGEST_NAME = "course-suggest";
+    private static final int SUGGEST_SIZE = 10;
+    private static final int SUGGEST_MAX_PREFIX_LENGTH = 20;
+
+    /**
+     * 课程没有老师名称时展示的默认值，推荐和门户列表保持一致
+     */
+    private static final String DEFAULT_TEACHER_NAME = "匿名";
+
+    /**
+     * 自动补全的本地缓存，容量有限，淘汰策略会优先保留热门前缀
+     */
+    private final Cache<String, List<String>> suggestCache = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofSeconds(30))
+            .build();
+
     @Autowired
     private RestHighLevelClient restClient;
 
     @Autowired
     private IInterestsService interestsService;
 
-    @Autowired
-    private UserClient userClient;
-
     @Autowired
     private CategoryCache categoryCache;
 
     @Autowired
     private InterestsProperties interestsProperties;
 
+    @Autowired
+    private Executor recommendRefreshExecutor;
+
+    @Autowired
+    private Executor searchFallbackExecutor;
+
+    @Autowired
+    private ObjectProvider<LuceneCourseRepository> localRepositoryProvider;
+
+    @Autowired
+    private LocalIndexProperties localIndexProperties;
+
+    @Autowired
+    private EsQueryProperties esQueryProperties;
+
+    /**
+     * ES请求参数，连接和读取超时与查询的截止时间一致
+     */
+    private RequestOptions requestOptions;
+
+    /**
+     * 推荐课程缓存，结果只和兴趣集合、是否免费、排序字段有关，组合数量很少
+     */
+    private AsyncLoadingCache<SlateKey, List<CourseVO>> slateCache;
+    private final AtomicBoolean slateDirty = new AtomicBoolean(false);
+
+    @PostConstruct
+    public void init() {
+        // 1.ES请求参数
+        int timeout = (int) esQueryProperties.getTimeout().toMillis();
+        requestOptions = RequestOptions.DEFAULT.toBuilder()
+                .setRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(timeout)
+                        .setSocketTimeout(timeout)
+                        .build())
+                .build();
+        // 2.推荐课程缓存，未命中时异步查询ES，不占用请求线程
+        slateCache = Caffeine.newBuilder()
+                .maximumSize(interestsProperties.getSlateMaxSize())
+                .refreshAfterWrite(interestsProperties.getSlateRefreshAfter())
+                .expireAfterAccess(Duration.ofMinutes(30))
+                .executor(recommendRefreshExecutor)
+                .buildAsync((key, executor) -> queryTopNByCategoryIdLv2sAndFreeAsync(
+                        key.getCategoryIds(), key.getFree(), key.getSortBy(), false, interestsProperties.getTopNumber())
+                        .thenApply(Collections::unmodifiableList));
+    }
+
     @Override
-    public List<CourseVO> queryCourseByCateId(Long cateLv2Id) {
-        return queryTopNByCategoryIdLv2sAndFree(
+    public void refreshRecommendations() {
+        slateDirty.set(true);
+    }
+
+    /**
+     * 有课程变化时，在后台刷新所有推荐课程缓存，刷新期间仍然返回旧数据
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void refreshDirtySlates() {
+        if (!slateDirty.compareAndSet(true, false)) {
+            return;
+        }
+        for (SlateKey key : slateCache.synchronous().asMap().keySet()) {
+            slateCache.synchronous().refresh(key);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<CourseVO>> queryCourseByCateId(Long cateLv2Id) {
+        return queryTopNByCategoryIdLv2sAndFreeAsync(
                 CollUtils.singletonList(cateLv2Id), null, PUBLISH_TIME, false, 10);
     }
 
     @Override
-    public List<CourseVO> queryBestTopN() {
-        // 1.获取当前用户
+    public CompletableFuture<List<CourseVO>> queryBestTopN() {
         return queryTopNCourseOnMarketByFree(false, CourseRepository.SOLD);
     }
 
     @Override
-    public List<CourseVO> queryNewTopN() {
+    public CompletableFuture<List<CourseVO>> queryNewTopN() {
         return queryTopNCourseOnMarketByFree(false, PUBLISH_TIME);
     }
 
     @Override
-    public List<CourseVO> queryFreeTopN() {
+    public CompletableFuture<List<CourseVO>> queryFreeTopN() {
         return queryTopNCourseOnMarketByFree(true, CourseRepository.SOLD);
     }
 
-    private List<CourseVO> queryTopNCourseOnMarketByFree(boolean isFree, String sortBy) {
+    @Override
+    public CompletableFuture<RecommendHomeVO> queryHomeRecommendations() {
+        // 1.获取用户兴趣
+        List<Long> categoryIds = queryMyInterestsIds();
+        SlateKey best = SlateKey.of(categoryIds, false, CourseRepository.SOLD);
+        SlateKey newest = SlateKey.of(categoryIds, false, PUBLISH_TIME);
+        SlateKey free = SlateKey.of(categoryIds, true, CourseRepository.SOLD);
+        // 2.从缓存获取，未命中的推荐合并为一次_msearch查询
+        return slateCache.getAll(List.of(best, newest, free), (keys, executor) -> loadSlatesAsync(keys))
+                .thenApply(map -> new RecommendHomeVO(map.get(best), map.get(newest), map.get(free)));
+    }
+
+    private CompletableFuture<List<CourseVO>> queryTopNCourseOnMarketByFree(boolean isFree, String sortBy) {
+        // 1.获取用户兴趣
+        List<Long> categoryIds = queryMyInterestsIds();
+        // 2.从缓存获取推荐课程
+        return slateCache.get(SlateKey.of(categoryIds, isFree, sortBy));
+    }
+
+    private List<Long> queryMyInterestsIds() {
         // 1.获取当前用户
         Long id = UserContext.getUser();
-        // 2.查询课程
-        List<CourseVO> courses = null;
-        if (id == null) {
-            // 3.未登录，直接查询报名人数最多的
-            courses = queryTopNByCategoryIdLv2sAndFree(
-                    null, isFree, sortBy, false, interestsProperties.getTopNumber());
-        } else {
-            // 4.已登录，根据兴趣爱好查询
-            List<Long> categoryIds = interestsService.queryMyInterestsIds();
+        // 2.已登录，获取兴趣爱好。未登录或没有兴趣爱好，则查询全部课程
+        return id == null ? null : interestsService.queryMyInterestsIds();
+    }
+
+    private CompletableFuture<Map<SlateKey, List<CourseVO>>> loadSlatesAsync(Iterable<? extends SlateKey> keys) {
+        List<SlateKey> slateKeys = new ArrayList<>();
+        keys.forEach(slateKeys::add);
+        int n = interestsProperties.getTopNumber();
+        // 1.查询课程，ES不可用时使用本地索引
+        return searchWithFallbackAsync(
+                () -> multiQueryTopNFromEs(slateKeys, n),
+                local -> slateKeys.stream()
+                        .map(k -> local.queryTopN(k.getCategoryIds(), k.getFree(), k.getSortBy(), false, n))
+                        .collect(Collectors.toList()))
+                // 2.转换VO，结果与key的顺序一致
+                .thenApply(results -> {
+                    Map<SlateKey, List<CourseVO>> map = new HashMap<>(slateKeys.size());
+                    for (int i = 0; i < slateKeys.size(); i++) {
+                        map.put(slateKeys.get(i), Collections.unmodifiableList(toRecommendVOs(results.get(i))));
+                    }
+                    return map;
+                });
+    }
+
+    @Value
+    private static class SlateKey {
+        /**
+         * 排序去重后的兴趣分类id，没有兴趣时为null
+         */
+        List<Long> categoryIds;
+        Boolean free;
+        String sortBy;
+
+        static SlateKey of(List<Long> categoryIds, Boolean free, String sortBy) {
             if (CollUtils.isEmpty(categoryIds)) {
-                // 4.1.没有兴趣爱好，直接查询报名人数最多的
-                courses = queryTopNByCategoryIdLv2sAndFree(
-                        null, isFree, sortBy, false, interestsProperties.getTopNumber());
-            } else {
-                // 4.2.有爱好.查询爱好课程中报名人数最多的
-                courses = queryTopNByCategoryIdLv2sAndFree(
-                        categoryIds, isFree, sortBy, false, interestsProperties.getTopNumber());
+                return new SlateKey(null, free, sortBy);
             }
+            List<Long> ids = categoryIds.stream().distinct().sorted().collect(Collectors.toList());
+            return new SlateKey(Collections.unmodifiableList(ids), free, sortBy);
+        }
+    }
+
+    private CompletableFuture<List<CourseVO>> queryTopNByCategoryIdLv2sAndFreeAsync(
+            List<Long> categoryIds, Boolean isFree, String sortBy, boolean isASC, int n) {
+        // 1.查询课程，ES不可用时使用本地索引
+        return searchWithFallbackAsync(
+                () -> searchAsync(buildTopNRequest(categoryIds, isFree, sortBy, isASC, n)).thenApply(this::parseCourses),
+                local -> local.queryTopN(categoryIds, isFree, sortBy, isASC, n))
+                // 2.转换VO
+                .thenApply(this::toRecommendVOs);
+    }
+
+    private List<CourseVO> toRecommendVOs(List<Course> list) {
+        // 转换VO，教师名称已冗余在索引库中
+        List<CourseVO> courses = new ArrayList<>(list.size());
+        for (Course course : list) {
+            CourseVO vo = BeanUtils.toBean(course, CourseVO.class);
+            vo.setTeacher(StringUtils.isBlank(course.getTeacherName()) ? DEFAULT_TEACHER_NAME : course.getTeacherName());
+            courses.add(vo);
         }
         return courses;
     }
 
-    private List<CourseVO> queryTopNByCategoryIdLv2sAndFree(
+    /**
+     * 多个TopN查询合并为一次_msearch请求，返回结果与key的顺序一致
+     */
+    private CompletableFuture<List<List<Course>>> multiQueryTopNFromEs(List<SlateKey> keys, int n) {
+        // 1.准备Request
+        MultiSearchRequest request = new MultiSearchRequest();
+        for (SlateKey key : keys) {
+            request.add(buildTopNRequest(key.getCategoryIds(), key.getFree(), key.getSortBy(), false, n));
+        }
+        // 2.发送请求并解析，任意一个查询失败都按整体失败处理
+        return multiSearchAsync(request).thenApply(response -> {
+            List<List<Course>> results = new ArrayList<>(keys.size());
+            for (MultiSearchResponse.Item item : response.getResponses()) {
+                if (item.isFailure()) {
+                    throw new CommonException(SearchErrorInfo.QUERY_COURSE_ERROR, item.getFailure());
+                }
+                results.add(parseCourses(item.getResponse()));
+            }
+            return results;
+        });
+    }
+
+    private SearchRequest buildTopNRequest(
             List<Long> categoryIds, Boolean isFree, String sortBy, boolean isASC, int n) {
         // 1.准备Request
         SearchRequest request = new SearchRequest(CourseRepository.INDEX_NAME);
@@ -125,73 +326,277 @@ public class SearchServiceImpl implements ISearchService {
         }
         // 1.3.TopN
         request.source().size(n).sort(sortBy, isASC ? SortOrder.ASC : SortOrder.DESC);
-        // 2.发送请求
-        SearchResponse response = null;
-        try {
-            response = restClient.search(request, RequestOptions.DEFAULT);
-        } catch (IOException e) {
-            throw new CommonException(SearchErrorInfo.QUERY_COURSE_ERROR, e);
-        }
-        // 3.解析
+        return request;
+    }
+
+    private List<Course> parseCourses(SearchResponse response) {
         SearchHits searchHits = response.getHits();
         SearchHit[] hits = searchHits.getHits();
         if (hits == null || hits.length == 0) {
             return CollUtils.emptyList();
         }
-        List<CourseVO> courses = new ArrayList<>(hits.length);
-        Set<Long> teacherIds = new HashSet<>(hits.length);
+        List<Course> courses = new ArrayList<>(hits.length);
         for (SearchHit hit : hits) {
-            // 3.1.数据转换
-            CourseVO vo = JsonUtils.toBean(hit.getSourceAsString(), CourseVO.class);
-            // 3.2.获取分类id
-            teacherIds.add(Long.valueOf(vo.getTeacher()));
-            // 3.3.保存
-            courses.add(vo);
-        }
-        teacherIds.remove(0L);
-        if (teacherIds.size() == 0) {
-            return courses;
-        }
-        // 4.查询教师
-        List<UserDTO> teachers = userClient.queryUserByIds(teacherIds);
-        AssertUtils.isNotEmpty(teachers, SearchErrorInfo.TEACHER_NOT_EXISTS);
-        Map<String, String> tMap = teachers.stream()
-                .collect(Collectors.toMap(t -> t.getId().toString(), UserDTO::getName));
-        for (CourseVO c : courses) {
-            c.setTeacher(tMap.getOrDefault(c.getTeacher(), "匿名"));
+            courses.add(JsonUtils.toBean(hit.getSourceAsString(), Course.class));
         }
         return courses;
     }
 
     @Override
     public PageDTO<CourseVO> queryCoursesForPortal(CoursePageQuery query) {
-        // 1.搜索数据
-        SearchResponse response = searchForResponse(query, CourseVO.EXCLUDE_FIELDS);
-        // 2.解析响应
-        PageDTO<Course> result = handleSearchResponse(response, query.getPageSize());
+        // 0.from/size分页的代价随页码增长，深度翻页需要使用游标分页
+        if (query.from() + query.getPageSize() > MAX_RESULT_WINDOW) {
+            throw new BadRequestException(SearchErrorInfo.PAGE_TOO_DEEP);
+        }
+        // 1.搜索数据并解析响应，ES不可用时使用本地索引
+        PageDTO<Course> result = searchWithFallback(
+                () -> handleSearchResponse(searchForResponse(query, CourseVO.INCLUDE_FIELDS), query.getPageSize()),
+                local -> local.search(query));
         // 3.处理VO
         List<Course> list = result.getList();
         if (CollUtils.isEmpty(list)) {
             return PageDTO.empty(result.getTotal(), result.getPages());
         }
-        // 3.1.查询教师信息
-        List<Long> teacherIds = list.stream().map(Course::getTeacher).collect(Collectors.toList());
-        List<UserDTO> teachers = userClient.queryUserByIds(teacherIds);
-        AssertUtils.isNotEmpty(teachers, SearchErrorInfo.TEACHER_NOT_EXISTS);
-        Map<Long, String> teacherMap = teachers.stream()
-                .collect(Collectors.toMap(UserDTO::getId, UserDTO::getName));
-        // 3.2.转换VO
+        return new PageDTO<>(result.getTotal(), result.getPages(), toPortalVOs(list));
+    }
+
+    @Override
+    public CourseCursorPageVO queryCoursesForPortalByCursor(CourseCursorQuery query) {
+        // 1.解析游标，第一页没有游标，之后的排序方式以游标为准
+        SearchCursor cursor = StringUtils.isBlank(query.getCursor()) ? null : SearchCursor.decode(query.getCursor());
+        boolean firstPage = cursor == null;
+        String sortBy = firstPage ? query.getSortBy() : cursor.getSortBy();
+        boolean isAsc = firstPage ? Boolean.TRUE.equals(query.getIsAsc()) : Boolean.TRUE.equals(cursor.getIsAsc());
+        String pitId = firstPage
+                ? (Boolean.TRUE.equals(query.getUsePit()) ? openPointInTime() : null)
+                : cursor.getPitId();
+        int size = query.getPageSize();
+
+        // 2.创建Request，使用point in time时不能指定索引
+        SearchRequest request = pitId == null ? new SearchRequest(CourseRepository.INDEX_NAME) : new SearchRequest();
+        buildBasicQuery(request, query);
+        // 2.1.排序，最后按id排序，保证排序值相同的数据顺序稳定
+        if (StringUtils.isNotBlank(sortBy)) {
+            request.source().sort(sortBy, isAsc ? SortOrder.ASC : SortOrder.DESC);
+        } else {
+            request.source().sort(SortBuilders.scoreSort());
+        }
+        request.source().sort(CourseRepository.ID, SortOrder.ASC);
+        // 2.2.从上一页最后一条数据之后开始查询
+        request.source().size(size);
+        if (!firstPage) {
+            request.source().searchAfter(cursor.getSortValues());
+        }
+        // 2.3.总条数只在第一页统计
+        if (firstPage) {
+            request.source().trackTotalHitsUpTo(MAX_RESULT_WINDOW);
+        } else {
+            request.source().trackTotalHits(false);
+        }
+        // 2.4.高亮
+        if (StringUtils.isNotBlank(query.getKeyword())) {
+            request.source().highlighter(new HighlightBuilder().field(CourseRepository.DEFAULT_QUERY_NAME));
+        }
+        // 2.5.只返回VO需要的字段
+        request.source().fetchSource(CourseVO.INCLUDE_FIELDS, null);
+        // 2.6.point in time
+        if (pitId != null) {
+            request.source().pointInTimeBuilder(new PointInTimeBuilder(pitId).setKeepAlive(PIT_KEEP_ALIVE));
+        }
+
+        // 3.发送请求
+        SearchResponse response = search(request);
+
+        // 4.解析
+        SearchHit[] hits = response.getHits().getHits();
+        List<Course> list = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            list.add(toCourse(hit));
+        }
+        // 5.生成下一页游标，没有更多数据时释放point in time
+        String latestPitId = response.pointInTimeId() != null ? response.pointInTimeId() : pitId;
+        String nextCursor = null;
+        if (hits.length == size) {
+            Object[] sortValues = hits[hits.length - 1].getSortValues();
+            nextCursor = new SearchCursor(sortBy, isAsc, sortValues, latestPitId).encode();
+        } else if (latestPitId != null) {
+            closePointInTime(latestPitId);
+        }
+        Long total = firstPage && response.getHits().getTotalHits() != null
+                ? response.getHits().getTotalHits().value : null;
+        return new CourseCursorPageVO(total, nextCursor, toPortalVOs(list));
+    }
+
+    private List<CourseVO> toPortalVOs(List<Course> list) {
+        // 转换VO，教师名称已冗余在索引库中
         List<CourseVO> vos = new ArrayList<>(list.size());
         for (Course c : list) {
             CourseVO vo = BeanUtils.toBean(c, CourseVO.class);
-            vo.setTeacher(teacherMap.getOrDefault(c.getTeacher(), "未知"));
+            vo.setTeacher(StringUtils.isBlank(c.getTeacherName()) ? DEFAULT_TEACHER_NAME : c.getTeacherName());
             vos.add(vo);
         }
-        return new PageDTO<>(result.getTotal(), result.getPages(), vos);
+        return vos;
+    }
+
+    private String openPointInTime() {
+        OpenPointInTimeRequest request = new OpenPointInTimeRequest(CourseRepository.INDEX_NAME).keepAlive(PIT_KEEP_ALIVE);
+        try {
+            return restClient.openPointInTime(request, requestOptions).getPointInTimeId();
+        } catch (IOException e) {
+            throw new CommonException(SearchErrorInfo.QUERY_COURSE_ERROR, e);
+        }
+    }
+
+    private void closePointInTime(String pitId) {
+        try {
+            restClient.closePointInTime(new ClosePointInTimeRequest(pitId), requestOptions);
+        } catch (Exception e) {
+            // 关闭失败也会在keepAlive到期后自动释放
+            log.warn("关闭point in time失败", e);
+        }
     }
 
     @Override
     public List<Long> queryCoursesIdByName(String keyword) {
+        return searchWithFallback(() -> queryCoursesIdByNameFromEs(keyword), local -> local.queryIdsByName(keyword));
+    }
+
+    @Override
+    public List<String> suggest(String prefix) {
+        // 1.规范化前缀，忽略大小写和首尾空格
+        if (StringUtils.isBlank(prefix)) {
+            return CollUtils.emptyList();
+        }
+        String key = prefix.trim().toLowerCase();
+        if (key.length() > SUGGEST_MAX_PREFIX_LENGTH) {
+            key = key.substring(0, SUGGEST_MAX_PREFIX_LENGTH);
+        }
+        // 2.先查本地缓存
+        String normalized = key;
+        return suggestCache.get(normalized, k -> Collections.unmodifiableList(searchWithFallback(
+                () -> suggestFromEs(normalized), local -> local.suggest(normalized, SUGGEST_SIZE))));
+    }
+
+    private List<String> suggestFromEs(String prefix) {
+        // 1.创建Request，只需要补全的文本，不需要文档内容
+        SearchRequest request = new SearchRequest(CourseRepository.INDEX_NAME);
+        request.source()
+                .suggest(new SuggestBuilder().addSuggestion(SUGGEST_NAME,
+                        SuggestBuilders.completionSuggestion(CourseRepository.SUGGEST)
+                                .prefix(prefix)
+                                .skipDuplicates(true)
+                                .size(SUGGEST_SIZE)))
+                .fetchSource(false);
+        // 2.查询
+        SearchResponse response = search(request);
+        // 3.解析
+        if (response.getSuggest() == null) {
+            return CollUtils.emptyList();
+        }
+        CompletionSuggestion suggestion = response.getSuggest().getSuggestion(SUGGEST_NAME);
+        if (suggestion == null) {
+            return CollUtils.emptyList();
+        }
+        return suggestion.getOptions().stream()
+                .map(option -> option.getText().string())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 以本地索引为主时直接查询本地索引，否则查询ES，ES查询失败且启用了本地索引时降级到本地索引
+     */
+    private <T> T searchWithFallback(Supplier<T> remote, Function<LuceneCourseRepository, T> local) {
+        LuceneCourseRepository localRepository = localRepositoryProvider.getIfAvailable();
+        if (localRepository != null && localIndexProperties.isPrimary()) {
+            return local.apply(localRepository);
+        }
+        try {
+            return remote.get();
+        } catch (BadRequestException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (localRepository == null) {
+                throw e;
+            }
+            log.warn("ES搜索失败，使用本地索引", e);
+            return local.apply(localRepository);
+        }
+    }
+
+    /**
+     * searchWithFallback的异步版本，ES查询失败或超时且启用了本地索引时降级到本地索引
+     */
+    private <T> CompletableFuture<T> searchWithFallbackAsync(
+            Supplier<CompletableFuture<T>> remote, Function<LuceneCourseRepository, T> local) {
+        LuceneCourseRepository localRepository = localRepositoryProvider.getIfAvailable();
+        if (localRepository != null && localIndexProperties.isPrimary()) {
+            return CompletableFuture.completedFuture(local.apply(localRepository));
+        }
+        CompletableFuture<T> future;
+        try {
+            future = remote.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        if (localRepository == null) {
+            return future;
+        }
+        // 本地查询会阻塞，不能在ES客户端的IO线程上执行
+        return future.handleAsync((result, e) -> {
+            if (e == null) {
+                return result;
+            }
+            log.warn("ES搜索失败，使用本地索引", e);
+            return local.apply(localRepository);
+        }, searchFallbackExecutor);
+    }
+
+    /**
+     * 异步查询ES，超过截止时间仍未返回时取消请求
+     */
+    private CompletableFuture<SearchResponse> searchAsync(SearchRequest request) {
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        Cancellable cancellable = restClient.searchAsync(request, requestOptions,
+                ActionListener.wrap(future::complete, future::completeExceptionally));
+        return withDeadline(future, cancellable);
+    }
+
+    private CompletableFuture<MultiSearchResponse> multiSearchAsync(MultiSearchRequest request) {
+        CompletableFuture<MultiSearchResponse> future = new CompletableFuture<>();
+        Cancellable cancellable = restClient.msearchAsync(request, requestOptions,
+                ActionListener.wrap(future::complete, future::completeExceptionally));
+        return withDeadline(future, cancellable);
+    }
+
+    private <T> CompletableFuture<T> withDeadline(CompletableFuture<T> future, Cancellable cancellable) {
+        future.orTimeout(esQueryProperties.getTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((r, e) -> {
+                    if (e instanceof TimeoutException) {
+                        cancellable.cancel();
+                    }
+                });
+        return future;
+    }
+
+    /**
+     * 同步查询ES，等待时间不超过截止时间，供分页等同步接口使用
+     */
+    private SearchResponse search(SearchRequest request) {
+        return await(searchAsync(request));
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CommonException) {
+                throw (CommonException) e.getCause();
+            }
+            throw new CommonException(SearchErrorInfo.QUERY_COURSE_ERROR, e.getCause());
+        }
+    }
+
+    private List<Long> queryCoursesIdByNameFromEs(String keyword) {
         // 1.创建Request
         SearchRequest request = new SearchRequest(CourseRepository.INDEX_NAME);
         // 2.构建DSL
@@ -199,12 +604,7 @@ public class SearchServiceImpl implements ISearchService {
                 .query(QueryBuilders.matchPhraseQuery(CourseRepository.DEFAULT_QUERY_NAME, keyword))
                 .fetchSource(new String[]{"id"}, null);
         // 3.查询
-        SearchResponse response;
-        try {
-            response = restClient.search(request, RequestOptions.DEFAULT);
-        } catch (IOException e) {
-            throw new CommonException(SearchErrorInfo.QUERY_COURSE_ERROR, e);
-        }
+        SearchResponse response = search(request);
         // 4.解析
         SearchHits searchHits = response.getHits();
         // 4.1.获取hits
@@ -220,7 +620,7 @@ public class SearchServiceImpl implements ISearchService {
     }
 
 
-    private SearchResponse searchForResponse(CoursePageQuery query, String[] excludeFields) {
+    private SearchResponse searchForResponse(CoursePageQuery query, String[] includeFields) {
         // 1.创建Request
         SearchRequest request = new SearchRequest(CourseRepository.INDEX_NAME);
         // 2.构建DSL
@@ -233,18 +633,14 @@ public class SearchServiceImpl implements ISearchService {
         }
         // 2.3.分页
         request.source().from(query.from()).size(query.getPageSize());
-        // 2.4.高亮
-        request.source().highlighter(new HighlightBuilder().field(CourseRepository.DEFAULT_QUERY_NAME));
-        // 2.5.source处理
-        request.source().fetchSource(null, excludeFields);
-        // 3.发送请求
-        SearchResponse response = null;
-        try {
-            response = restClient.search(request, RequestOptions.DEFAULT);
-        } catch (IOException e) {
-            throw new CommonException(ErrorInfo.Msg.SERVER_INTER_ERROR, e);
+        // 2.4.高亮，没有关键字时不需要
+        if (StringUtils.isNotBlank(query.getKeyword())) {
+            request.source().highlighter(new HighlightBuilder().field(CourseRepository.DEFAULT_QUERY_NAME));
         }
-        return response;
+        // 2.5.source处理，只返回需要的字段
+        request.source().fetchSource(includeFields, null);
+        // 3.发送请求
+        return search(request);
     }
 
     private void buildBasicQuery(SearchRequest request, CoursePageQuery query) {
@@ -303,22 +699,28 @@ public class SearchServiceImpl implements ISearchService {
         // 4.遍历
         List<Course> list = new ArrayList<>(hits.length);
         for (SearchHit hit : hits) {
-            // 5.获取某一条source
-            String jsonSource = hit.getSourceAsString();
-            // 6.反序列化
-            Course course = JsonUtils.toBean(jsonSource, Course.class);
-            // 7.处理高亮
-            Map<String, HighlightField> highlightFields = hit.getHighlightFields();
-            if (CollUtils.isNotEmpty(highlightFields)) {
-                // 7.1.获取高亮结果
-                HighlightField field = highlightFields.get(CourseRepository.DEFAULT_QUERY_NAME);
+            list.add(toCourse(hit));
+        }
+        return new PageDTO<>(total, totalPages, list);
+    }
+
+    private Course toCourse(SearchHit hit) {
+        // 1.获取某一条source
+        String jsonSource = hit.getSourceAsString();
+        // 2.反序列化
+        Course course = JsonUtils.toBean(jsonSource, Course.class);
+        // 3.处理高亮
+        Map<String, HighlightField> highlightFields = hit.getHighlightFields();
+        if (CollUtils.isNotEmpty(highlightFields)) {
+            // 3.1.获取高亮结果
+            HighlightField field = highlightFields.get(CourseRepository.DEFAULT_QUERY_NAME);
+            if (field != null) {
                 Object[] fragments = field.getFragments();
                 String value = StringUtils.join(fragments);
-                // 7.2.覆盖非高亮结果
+                // 3.2.覆盖非高亮结果
                 course.setName(value);
             }
-            list.add(course);
         }
-        return new PageDTO<>(total, totalPages, list);
+        return course;
     }
 }
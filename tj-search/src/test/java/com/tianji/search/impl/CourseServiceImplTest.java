@@ -34,7 +34,7 @@ class CourseServiceImplTest {
 
     @Test
     void testTop5Best() {
-        List<CourseVO> courseVOS = searchService.queryBestTopN();
+        List<CourseVO> courseVOS = searchService.queryBestTopN().join();
         for (CourseVO courseVO : courseVOS) {
             System.out.println("courseVO = " + courseVO);
         }
@@ -42,7 +42,7 @@ class CourseServiceImplTest {
 
     @Test
     void testTop5New() {
-        List<CourseVO> courseVOS = searchService.queryNewTopN();
+        List<CourseVO> courseVOS = searchService.queryNewTopN().join();
         for (CourseVO courseVO : courseVOS) {
             System.out.println("courseVO = " + courseVO);
         }
@@ -50,7 +50,7 @@ class CourseServiceImplTest {
 
     @Test
     void testTop5Free() {
-        List<CourseVO> courseVOS = searchService.queryFreeTopN();
+        List<CourseVO> courseVOS = searchService.queryFreeTopN().join();
         for (CourseVO courseVO : courseVOS) {
             System.out.println("courseVO = " + courseVO);
         }
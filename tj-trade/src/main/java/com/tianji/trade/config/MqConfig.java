@@ -0,0 +1,32 @@
+package com.tianji.trade.config;
+
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MqConfig {
+
+    /**
+     * 批量消费的监听容器工厂，攒够一批或者等待超时后，一次性把整批消息交给监听器
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory){
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        // 1. 开启批量消费
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        // 2. 每批最多消息数量
+        factory.setBatchSize(100);
+        factory.setPrefetchCount(200);
+        // 3. 不足一批时的最长等待时间，下单后用户会轮询订单状态，等待时间不宜过长
+        factory.setReceiveTimeout(200L);
+        // 4. 批量消费不使用有状态的重试，失败时由监听器逐条处理
+        factory.setAdviceChain();
+        return factory;
+    }
+}
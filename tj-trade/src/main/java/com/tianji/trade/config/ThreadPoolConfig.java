@@ -25,4 +25,24 @@ public class ThreadPoolConfig {
         refundExecutor.initialize();
         return refundExecutor;
     }
+
+    @Bean
+    public ThreadPoolTaskExecutor refundDispatchExecutor(TradeProperties tradeProperties){
+        TradeProperties.RefundDispatchProperties config = tradeProperties.getRefundDispatch();
+        // 在途请求数由各渠道的信号量控制，线程数取所有渠道在途数之和，拿到在途名额的请求不需要排队等待线程
+        int poolSize = config.getMaxConcurrency() * config.getChannelCount();
+        ThreadPoolTaskExecutor dispatchExecutor = new ThreadPoolTaskExecutor();
+        //配置核心线程数
+        dispatchExecutor.setCorePoolSize(poolSize);
+        //配置最大线程数
+        dispatchExecutor.setMaxPoolSize(poolSize);
+        //配置队列大小
+        dispatchExecutor.setQueueCapacity(1000);
+        //配置线程池中的线程的名称前缀
+        dispatchExecutor.setThreadNamePrefix("refund-dispatch-");
+        // 由调用者线程执行
+        dispatchExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        dispatchExecutor.initialize();
+        return dispatchExecutor;
+    }
 }
@@ -4,6 +4,10 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "tj.trade")
@@ -16,4 +20,44 @@ public class TradeProperties {
      * 订单支付的最大等待时间，单位分钟
      */
     private int payOrderTTLMinutes = 30;
+    /**
+     * 退款申请的发送配置
+     */
+    private RefundDispatchProperties refundDispatch = new RefundDispatchProperties();
+
+    /**
+     * 速率和在途数都是整个集群的总量，每个分片按分片总数平分，分到的在途数最少为1
+     */
+    @Data
+    public static class RefundDispatchProperties {
+        /**
+         * 每个支付渠道初始的每秒退款请求数
+         */
+        private int initRate = 10;
+        /**
+         * 每个支付渠道最大的每秒退款请求数，请求成功时逐步提升到该值
+         */
+        private int maxRate = 50;
+        /**
+         * 每个支付渠道同时在途的退款请求数
+         */
+        private int maxConcurrency = 4;
+        /**
+         * 支付渠道的数量，发送线程池的大小为 maxConcurrency * channelCount
+         */
+        private int channelCount = 4;
+        /**
+         * 渠道出错后首次暂停的时间，单位毫秒，连续出错时翻倍
+         */
+        private long baseBackoffMillis = 1000;
+        /**
+         * 渠道出错后最长暂停的时间，单位毫秒
+         */
+        private long maxBackoffMillis = 60000;
+        /**
+         * 支付渠道限流或繁忙时返回的错误码，退款申请不记为失败，等下次任务重发
+         */
+        private Set<String> throttleCodes = new HashSet<>(
+                Arrays.asList("FREQUENCY_LIMITED", "SYSTEM_ERROR", "ACQ.SYSTEM_ERROR"));
+    }
 }
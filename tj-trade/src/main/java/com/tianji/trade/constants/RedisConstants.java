@@ -0,0 +1,76 @@
+package com.tianji.trade.constants;
+
+public interface RedisConstants {
+    /**
+     * 用户购物车，hash结构，field为课程id，value为购物车条目json，后缀为用户id
+     */
+    String CART_KEY_PREFIX = "trade:cart:";
+    /**
+     * 购物车已从数据库加载的标记字段，避免空购物车反复查询数据库
+     */
+    String CART_LOADED_FIELD = "0";
+    /**
+     * 购物车有效期，单位天，每次加购或查看时续期
+     */
+    long CART_TTL_DAYS = 30;
+
+    /**
+     * 下单受理状态，hash结构，字段有userId、status、payAmount、reason，后缀为订单id
+     */
+    String ORDER_INTAKE_KEY_PREFIX = "trade:order:intake:";
+    /**
+     * 下单受理状态的有效期，单位秒，订单落库后仍保留一段时间，用于重复提交时返回结果
+     */
+    long ORDER_INTAKE_TTL_SECONDS = 24 * 60 * 60;
+    /**
+     * 确认订单时计算的优惠方案快照，后缀为用户id:订单id
+     */
+    String ORDER_DISCOUNT_KEY_PREFIX = "trade:order:discount:";
+    /**
+     * 用户对优惠券的预占标记，value为占用该券的订单id，后缀为{用户id}:优惠券id
+     * 用户id作为hash tag，同一个用户的预占key都在同一个slot，可以在一个脚本中操作
+     */
+    String COUPON_RESERVE_KEY_PREFIX = "trade:coupon:reserve:";
+    /**
+     * 订单预占的优惠券id集合，后缀为{用户id}:订单id
+     */
+    String ORDER_COUPONS_KEY_PREFIX = "trade:order:coupons:";
+    /**
+     * 订单支付成功后预占标记的保留时长，单位秒，覆盖促销服务核销优惠券的延迟
+     */
+    long COUPON_USED_RETAIN_SECONDS = 60 * 60;
+
+    /**
+     * 支付状态查询时间轮的所有key使用相同的hash tag，集群模式下在同一个slot，多key脚本才能执行
+     */
+    String PAY_WHEEL_HASH_TAG = "{trade:pay:wheel}";
+    /**
+     * 支付状态查询时间轮，秒级槽位，zset结构，member为订单id:查询次数，score为到期时间毫秒值，后缀为秒
+     */
+    String PAY_WHEEL_SECOND_PREFIX = PAY_WHEEL_HASH_TAG + ":s:";
+    /**
+     * 支付状态查询时间轮，分钟级槽位，到期前一分钟降级到秒级槽位，后缀为分钟
+     */
+    String PAY_WHEEL_MINUTE_PREFIX = PAY_WHEEL_HASH_TAG + ":m:";
+    /**
+     * 非空的秒级槽位索引，zset结构，member和score都是槽位的秒值
+     */
+    String PAY_WHEEL_SECOND_SLOTS = PAY_WHEEL_HASH_TAG + ":slots:s";
+    /**
+     * 非空的分钟级槽位索引，zset结构，member和score都是槽位的分钟值
+     */
+    String PAY_WHEEL_MINUTE_SLOTS = PAY_WHEEL_HASH_TAG + ":slots:m";
+    /**
+     * 已取出但未处理完的任务，score为租约到期时间毫秒值，节点宕机后由其它节点重新放回时间轮
+     */
+    String PAY_WHEEL_INFLIGHT_KEY = PAY_WHEEL_HASH_TAG + ":inflight";
+
+    /**
+     * 下单受理状态
+     */
+    interface IntakeStatus {
+        String PENDING = "0";
+        String CREATED = "1";
+        String FAILED = "2";
+    }
+}
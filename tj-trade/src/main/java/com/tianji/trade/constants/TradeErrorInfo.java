@@ -10,6 +10,8 @@ public interface TradeErrorInfo {
 
     String PLACE_ORDER_FAILED = "下单失败";
     String ORDER_NOT_EXISTS = "订单不存在";
+    String COUPON_NOT_AVAILABLE = "优惠券不可用";
+    String COUPON_ALREADY_RESERVED = "优惠券已被其它订单使用";
     String ORDER_ALREADY_FINISH = "订单已经支付或退款";
     String ORDER_OVER_TIME = "订单已经超时";
     String ORDER_CANNOT_REFUND = "订单未支付或已关闭";
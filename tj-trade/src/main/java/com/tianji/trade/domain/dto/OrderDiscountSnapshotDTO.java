@@ -0,0 +1,25 @@
+package com.tianji.trade.domain.dto;
+
+import com.tianji.api.dto.promotion.CouponDiscountDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 确认订单时计算的优惠方案快照，下单时直接校验，无需再次远程计算
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderDiscountSnapshotDTO {
+    /**
+     * 计算优惠时的课程id
+     */
+    private List<Long> courseIds;
+    /**
+     * 可用的优惠方案
+     */
+    private List<CouponDiscountDTO> discounts;
+}
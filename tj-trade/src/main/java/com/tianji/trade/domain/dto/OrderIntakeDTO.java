@@ -0,0 +1,30 @@
+package com.tianji.trade.domain.dto;
+
+import com.tianji.trade.domain.po.Order;
+import com.tianji.trade.domain.po.OrderDetail;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 下单受理后投递到MQ的订单数据，由消费者批量写入数据库
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderIntakeDTO {
+    /**
+     * 订单
+     */
+    private Order order;
+    /**
+     * 订单明细
+     */
+    private List<OrderDetail> details;
+    /**
+     * 订单预占的优惠券id，落库失败时需要释放
+     */
+    private List<Long> couponIds;
+}
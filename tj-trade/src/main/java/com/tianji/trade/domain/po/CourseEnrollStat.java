@@ -0,0 +1,55 @@
+package com.tianji.trade.domain.po;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 课程报名统计，随订单明细状态变化增量维护
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("course_enroll_stat")
+public class CourseEnrollStat implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 课程id
+     */
+    @TableId(value = "course_id", type = IdType.INPUT)
+    private Long courseId;
+
+    /**
+     * 报名人数，包括已支付、已完成、免费报名
+     */
+    private Integer enrollNum;
+
+    /**
+     * 退款人数
+     */
+    private Integer refundNum;
+
+    /**
+     * 销售额，包括已退款的订单
+     */
+    private Integer realPayAmount;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+
+    public static CourseEnrollStat empty(Long courseId) {
+        return new CourseEnrollStat().setCourseId(courseId).setEnrollNum(0).setRefundNum(0).setRealPayAmount(0);
+    }
+}
@@ -73,6 +73,11 @@ public class Order implements Serializable {
      */
     private Long couponId;
 
+    /**
+     * 订单使用的全部优惠券id，逗号分隔
+     */
+    private String couponIds;
+
     /**
      * 创建订单时间
      */
@@ -0,0 +1,41 @@
+package com.tianji.trade.domain.po;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 学员报名统计，随订单明细状态变化增量维护
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("student_enroll_stat")
+public class StudentEnrollStat implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 学员id
+     */
+    @TableId(value = "user_id", type = IdType.INPUT)
+    private Long userId;
+
+    /**
+     * 报名课程数，包括已支付、已完成、免费报名
+     */
+    private Integer enrollNum;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
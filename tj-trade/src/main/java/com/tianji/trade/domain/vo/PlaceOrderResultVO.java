@@ -19,5 +19,9 @@ public class PlaceOrderResultVO {
     private LocalDateTime payOutTime;
     @ApiModelProperty("订单状态，1：待支付，2：已支付，3：已关闭，4：已完成，5：已报名, 6:申请退款")
     private Integer status;
+    @ApiModelProperty("订单是否还在排队写入，为true时需要稍后再查询订单状态")
+    private Boolean processing;
+    @ApiModelProperty("下单失败的原因，为空代表没有失败")
+    private String failedReason;
 }
 
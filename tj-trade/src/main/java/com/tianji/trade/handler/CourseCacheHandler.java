@@ -0,0 +1,34 @@
+package com.tianji.trade.handler;
+
+import com.tianji.api.cache.CourseCache;
+import com.tianji.common.constants.MqConstants;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 课程上下架时清理本地课程缓存，队列是匿名的临时队列，每个节点都会收到消息
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CourseCacheHandler {
+
+    private final CourseCache courseCache;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(),
+            exchange = @Exchange(name = MqConstants.Exchange.COURSE_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = {MqConstants.Key.COURSE_UP_KEY, MqConstants.Key.COURSE_DOWN_KEY,
+                    MqConstants.Key.COURSE_EXPIRE_KEY, MqConstants.Key.COURSE_DELETE_KEY}
+    ))
+    public void listenCourseChange(Long courseId){
+        log.debug("课程{}变更，清理本地课程缓存", courseId);
+        courseCache.invalidate(courseId);
+    }
+}
@@ -0,0 +1,50 @@
+package com.tianji.trade.handler;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.trade.mapper.OrderDetailMapper;
+import com.tianji.trade.service.IEnrollStatService;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EnrollStatJobHandler {
+
+    private final OrderDetailMapper detailMapper;
+    private final IEnrollStatService enrollStatService;
+
+    @XxlJob("enrollStatReconcileJob")
+    public void reconcileEnrollStats() {
+        // 1.按课程id游标分批对账，每批一个小事务
+        int size = 500;
+        long lastId = 0;
+        int courseNum = 0;
+        while (true) {
+            List<Long> courseIds = detailMapper.queryCourseIdsAfter(lastId, size);
+            if (CollUtils.isEmpty(courseIds)) {
+                break;
+            }
+            enrollStatService.reconcileCourseStats(courseIds);
+            courseNum += courseIds.size();
+            lastId = courseIds.get(courseIds.size() - 1);
+        }
+        // 2.按学员id游标分批对账
+        lastId = 0;
+        int userNum = 0;
+        while (true) {
+            List<Long> userIds = detailMapper.queryUserIdsAfter(lastId, size);
+            if (CollUtils.isEmpty(userIds)) {
+                break;
+            }
+            enrollStatService.reconcileStudentStats(userIds);
+            userNum += userIds.size();
+            lastId = userIds.get(userIds.size() - 1);
+        }
+        log.info("报名统计对账完成，课程数：{}，学员数：{}", courseNum, userNum);
+    }
+}
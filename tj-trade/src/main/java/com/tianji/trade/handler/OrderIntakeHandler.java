@@ -0,0 +1,70 @@
+package com.tianji.trade.handler;
+
+import com.tianji.common.constants.MqConstants;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.trade.domain.dto.OrderIntakeDTO;
+import com.tianji.trade.service.IOrderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+
+import java.util.List;
+
+/**
+ * 下单受理消息的消费者，把一批订单一次性写入数据库
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderIntakeHandler {
+
+    private final IOrderService orderService;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(name = "trade.order.intake.queue", durable = "true"),
+            exchange = @Exchange(name = MqConstants.Exchange.ORDER_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = MqConstants.Key.ORDER_INTAKE_KEY
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenOrderIntake(List<OrderIntakeDTO> intakes){
+        if (CollUtils.isEmpty(intakes)) {
+            return;
+        }
+        log.debug("收到下单受理消息{}条", intakes.size());
+        try {
+            // 1.整批写入
+            orderService.saveIntakeOrders(intakes);
+        } catch (TransientDataAccessException | DataAccessResourceFailureException | TransactionException e) {
+            // 2.数据库暂时不可用，整批消息重新入队，已经写入的订单会被幂等过滤
+            log.error("批量写入订单失败，数据库暂时不可用，整批消息重新入队", e);
+            throw e;
+        } catch (Exception e) {
+            // 3.整批失败，逐条写入，避免个别订单拖垮整批
+            log.error("批量写入订单失败，改为逐条写入", e);
+            for (OrderIntakeDTO intake : intakes) {
+                saveOne(intake);
+            }
+        }
+    }
+
+    private void saveOne(OrderIntakeDTO intake) {
+        try {
+            orderService.saveIntakeOrders(CollUtils.singletonList(intake));
+        } catch (TransientDataAccessException | DataAccessResourceFailureException | TransactionException e) {
+            // 1.暂时性异常，抛出后整批消息重新入队，不能把订单标记为失败
+            log.error("订单{}写入失败，数据库暂时不可用，整批消息重新入队", intake.getOrder().getId(), e);
+            throw e;
+        } catch (Exception e) {
+            // 2.订单数据本身有问题，重试也不会成功，标记下单失败
+            log.error("订单{}写入失败", intake.getOrder().getId(), e);
+            orderService.handleIntakeFailed(intake);
+        }
+    }
+}
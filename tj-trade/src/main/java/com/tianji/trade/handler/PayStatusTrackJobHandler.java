@@ -0,0 +1,34 @@
+package com.tianji.trade.handler;
+
+import com.tianji.trade.service.IPayStatusTrackService;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PayStatusTrackJobHandler {
+
+    private final IPayStatusTrackService payStatusTrackService;
+
+    /**
+     * 每秒执行一次，拉取时间轮中到期的订单批量查询支付状态
+     */
+    @XxlJob("payStatusTrackJob")
+    public void trackPayStatus() {
+        int total = 0;
+        // 积压时一次拉不完，循环拉取直到没有到期的订单
+        while (true) {
+            int count = payStatusTrackService.pollDueOrders();
+            if (count == 0) {
+                break;
+            }
+            total += count;
+        }
+        if (total > 0) {
+            log.debug("本次查询支付状态的订单数量：{}", total);
+        }
+    }
+}
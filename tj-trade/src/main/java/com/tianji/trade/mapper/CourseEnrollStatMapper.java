@@ -0,0 +1,49 @@
+package com.tianji.trade.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.trade.domain.po.CourseEnrollStat;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 课程报名统计 Mapper 接口
+ * </p>
+ */
+public interface CourseEnrollStatMapper extends BaseMapper<CourseEnrollStat> {
+
+    /**
+     * 按增量累加统计值，统计记录不存在时插入
+     */
+    @Insert("<script>insert into course_enroll_stat (course_id, enroll_num, refund_num, real_pay_amount) values " +
+            "<foreach collection='stats' item='s' separator=','>(#{s.courseId}, #{s.enrollNum}, #{s.refundNum}, #{s.realPayAmount})</foreach> " +
+            "on duplicate key update enroll_num = enroll_num + values(enroll_num), refund_num = refund_num + values(refund_num), " +
+            "real_pay_amount = real_pay_amount + values(real_pay_amount)</script>")
+    int incrStats(@Param("stats") List<CourseEnrollStat> deltas);
+
+    /**
+     * 补齐还不存在的统计记录，已存在的记录不变
+     */
+    @Insert("<script>insert ignore into course_enroll_stat (course_id, enroll_num, refund_num, real_pay_amount) values " +
+            "<foreach collection='stats' item='s' separator=','>(#{s.courseId}, #{s.enrollNum}, #{s.refundNum}, #{s.realPayAmount})</foreach></script>")
+    int insertIgnore(@Param("stats") List<CourseEnrollStat> stats);
+
+    /**
+     * 用对账结果覆盖统计值
+     */
+    @Insert("<script>insert into course_enroll_stat (course_id, enroll_num, refund_num, real_pay_amount) values " +
+            "<foreach collection='stats' item='s' separator=','>(#{s.courseId}, #{s.enrollNum}, #{s.refundNum}, #{s.realPayAmount})</foreach> " +
+            "on duplicate key update enroll_num = values(enroll_num), refund_num = values(refund_num), " +
+            "real_pay_amount = values(real_pay_amount)</script>")
+    int overwriteStats(@Param("stats") List<CourseEnrollStat> stats);
+
+    /**
+     * 锁定统计记录，对账期间阻塞增量更新
+     */
+    @Select("<script>select course_id from course_enroll_stat where course_id in " +
+            "<foreach collection='courseIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> for update</script>")
+    List<Long> lockByCourseIds(@Param("courseIds") List<Long> courseIds);
+}
@@ -3,6 +3,7 @@ package com.tianji.trade.mapper;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.tianji.api.dto.IdAndNumDTO;
+import com.tianji.trade.domain.po.CourseEnrollStat;
 import com.tianji.trade.domain.po.OrderDetail;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
@@ -28,4 +29,22 @@ public interface OrderDetailMapper extends BaseMapper<OrderDetail> {
 
     @Select("SELECT SUM(real_pay_amount) FROM order_detail WHERE course_id = #{courseId}")
     int countRealPayAmountByCourseId(Long courseId);
+
+    /**
+     * 从订单明细汇总课程的报名人数、退款人数和销售额，用于统计对账
+     */
+    @Select("<script>SELECT course_id AS courseId, " +
+            "SUM(CASE WHEN status IN (2, 4, 5) THEN 1 ELSE 0 END) AS enrollNum, " +
+            "SUM(CASE WHEN status = 6 THEN 1 ELSE 0 END) AS refundNum, " +
+            "SUM(CASE WHEN status IN (2, 4, 5, 6) THEN real_pay_amount ELSE 0 END) AS realPayAmount " +
+            "FROM order_detail WHERE course_id IN " +
+            "<foreach collection='courseIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "GROUP BY course_id</script>")
+    List<CourseEnrollStat> aggregateCourseStats(@Param("courseIds") List<Long> courseIds);
+
+    @Select("SELECT DISTINCT course_id FROM order_detail WHERE course_id > #{lastId} ORDER BY course_id LIMIT #{size}")
+    List<Long> queryCourseIdsAfter(@Param("lastId") Long lastId, @Param("size") int size);
+
+    @Select("SELECT DISTINCT user_id FROM order_detail WHERE user_id > #{lastId} ORDER BY user_id LIMIT #{size}")
+    List<Long> queryUserIdsAfter(@Param("lastId") Long lastId, @Param("size") int size);
 }
@@ -2,6 +2,7 @@ package com.tianji.trade.mapper;
 
 import com.tianji.trade.domain.po.RefundApply;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
 import java.util.List;
@@ -20,4 +21,11 @@ public interface RefundApplyMapper extends BaseMapper<RefundApply> {
     Long nextRefundApplyToApprove();
 
     List<RefundApply> queryByDetailId(Long detailId);
+
+    @Select("SELECT id, order_detail_id, order_id, user_id, refund_amount, status, approver FROM refund_apply " +
+            "WHERE status = #{status} AND id > #{lastId} AND MOD(CRC32(id), #{shardTotal}) = #{shardIndex} " +
+            "ORDER BY id LIMIT #{limit}")
+    List<RefundApply> queryByStatusAfter(@Param("status") int status, @Param("shardIndex") int shardIndex,
+                                         @Param("shardTotal") int shardTotal, @Param("lastId") long lastId,
+                                         @Param("limit") int limit);
 }
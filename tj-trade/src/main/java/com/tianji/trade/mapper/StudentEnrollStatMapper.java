@@ -0,0 +1,47 @@
+package com.tianji.trade.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.trade.domain.po.StudentEnrollStat;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 学员报名统计 Mapper 接口
+ * </p>
+ */
+public interface StudentEnrollStatMapper extends BaseMapper<StudentEnrollStat> {
+
+    /**
+     * 按增量累加统计值，统计记录不存在时插入
+     */
+    @Insert("<script>insert into student_enroll_stat (user_id, enroll_num) values " +
+            "<foreach collection='stats' item='s' separator=','>(#{s.userId}, #{s.enrollNum})</foreach> " +
+            "on duplicate key update enroll_num = enroll_num + values(enroll_num)</script>")
+    int incrStats(@Param("stats") List<StudentEnrollStat> deltas);
+
+    /**
+     * 补齐还不存在的统计记录，已存在的记录不变
+     */
+    @Insert("<script>insert ignore into student_enroll_stat (user_id, enroll_num) values " +
+            "<foreach collection='stats' item='s' separator=','>(#{s.userId}, #{s.enrollNum})</foreach></script>")
+    int insertIgnore(@Param("stats") List<StudentEnrollStat> stats);
+
+    /**
+     * 用对账结果覆盖统计值
+     */
+    @Insert("<script>insert into student_enroll_stat (user_id, enroll_num) values " +
+            "<foreach collection='stats' item='s' separator=','>(#{s.userId}, #{s.enrollNum})</foreach> " +
+            "on duplicate key update enroll_num = values(enroll_num)</script>")
+    int overwriteStats(@Param("stats") List<StudentEnrollStat> stats);
+
+    /**
+     * 锁定统计记录，对账期间阻塞增量更新
+     */
+    @Select("<script>select user_id from student_enroll_stat where user_id in " +
+            "<foreach collection='userIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> for update</script>")
+    List<Long> lockByUserIds(@Param("userIds") List<Long> userIds);
+}
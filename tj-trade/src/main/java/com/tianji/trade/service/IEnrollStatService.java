@@ -0,0 +1,45 @@
+package com.tianji.trade.service;
+
+import com.tianji.api.dto.course.CoursePurchaseInfoDTO;
+import com.tianji.trade.domain.po.OrderDetail;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * 报名统计 服务类，统计值与订单明细状态在同一个事务中增量维护
+ * </p>
+ */
+public interface IEnrollStatService {
+
+    /**
+     * 报名成功，包括付费订单支付成功和免费报名
+     * @param details 新报名成功的订单明细
+     */
+    void incrEnroll(List<OrderDetail> details);
+
+    /**
+     * 报名的订单明细申请退款
+     * @param detail 订单明细
+     */
+    void incrRefund(OrderDetail detail);
+
+    Map<Long, Integer> countEnrollNumOfCourse(List<Long> courseIds);
+
+    Map<Long, Integer> countEnrollCourseOfStudent(List<Long> studentIds);
+
+    CoursePurchaseInfoDTO getPurchaseInfoOfCourse(Long courseId);
+
+    /**
+     * 以订单明细为准，修正一批课程的统计值
+     * @param courseIds 课程id
+     */
+    void reconcileCourseStats(List<Long> courseIds);
+
+    /**
+     * 以订单明细为准，修正一批学员的统计值
+     * @param userIds 学员id
+     */
+    void reconcileStudentStats(List<Long> userIds);
+}
@@ -2,6 +2,7 @@ package com.tianji.trade.service;
 
 import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.pay.sdk.dto.PayResultDTO;
+import com.tianji.trade.domain.dto.OrderIntakeDTO;
 import com.tianji.trade.domain.dto.PlaceOrderDTO;
 import com.tianji.trade.domain.po.Order;
 import com.baomidou.mybatisplus.extension.service.IService;
@@ -30,6 +31,10 @@ public interface IOrderService extends IService<Order> {
     @Transactional
     void saveOrderAndDetails(Order order, List<OrderDetail> orderDetails);
 
+    void saveIntakeOrders(List<OrderIntakeDTO> intakes);
+
+    void handleIntakeFailed(OrderIntakeDTO intake);
+
     void cancelOrder(Long orderId);
 
     void deleteOrder(Long id);
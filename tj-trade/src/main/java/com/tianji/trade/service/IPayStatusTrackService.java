@@ -0,0 +1,21 @@
+package com.tianji.trade.service;
+
+/**
+ * 支付状态追踪，基于redis时间轮定时批量查询未支付订单的支付状态
+ */
+public interface IPayStatusTrackService {
+
+    /**
+     * 开始追踪订单的支付状态，按3秒、5秒、15秒、30秒、60秒、2分钟的间隔依次查询
+     *
+     * @param orderId 订单id
+     */
+    void track(Long orderId);
+
+    /**
+     * 拉取已到期的订单，批量查询支付状态
+     *
+     * @return 本次查询的订单数量
+     */
+    int pollDueOrders();
+}
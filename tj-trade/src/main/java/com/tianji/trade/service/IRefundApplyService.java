@@ -41,9 +41,7 @@ public interface IRefundApplyService extends IService<RefundApply> {
 
     void handleRefundResult(RefundResultDTO refundResult);
 
-    List<RefundApply> queryApplyToSend(int page, int size);
+    List<RefundApply> queryApplyToSend(int shardIndex, int shardTotal, long lastId, int size);
 
-    void sendRefundRequest(RefundApply refundApply);
-
-    boolean checkRefundStatus(RefundApply refundApply);
+    RefundResultDTO sendRefundRequest(RefundApply refundApply);
 }
@@ -0,0 +1,17 @@
+package com.tianji.trade.service;
+
+/**
+ * 退款申请发送服务，把审批通过的退款申请按支付渠道限流后发送到支付中心
+ */
+public interface IRefundDispatchService {
+
+    /**
+     * 发送一个分片内所有审批通过的退款申请
+     *
+     * @param shardIndex 分片序号，从0开始
+     * @param shardTotal 分片总数
+     * @param size 每批查询的退款申请数量
+     * @return 本次发送的退款申请数量
+     */
+    int dispatchShard(int shardIndex, int shardTotal, int size);
+}
@@ -3,29 +3,28 @@ package com.tianji.trade.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.tianji.api.client.course.CourseClient;
-import com.tianji.api.dto.course.CourseFullInfoDTO;
+import com.tianji.api.cache.CourseCache;
 import com.tianji.api.dto.course.CourseSimpleInfoDTO;
+import com.tianji.common.constants.ErrorInfo;
 import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.BizIllegalException;
-import com.tianji.common.utils.BeanUtils;
-import com.tianji.common.utils.CollUtils;
-import com.tianji.common.utils.StringUtils;
-import com.tianji.common.utils.UserContext;
+import com.tianji.common.utils.*;
 import com.tianji.trade.config.TradeProperties;
+import com.tianji.trade.constants.RedisConstants;
 import com.tianji.trade.domain.po.Cart;
 import com.tianji.trade.domain.vo.CartVO;
 import com.tianji.trade.mapper.CartMapper;
 import com.tianji.trade.service.ICartService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.tianji.trade.constants.TradeErrorInfo.*;
@@ -43,59 +42,112 @@ import static com.tianji.trade.constants.TradeErrorInfo.*;
 @RequiredArgsConstructor
 public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements ICartService {
 
-    private final CourseClient courseClient;
+    private final CourseCache courseCache;
     private final TradeProperties tradeProperties;
+    private final StringRedisTemplate redisTemplate;
+
+    private static final RedisScript<Long> ADD_CART_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/cart_add.lua"), Long.class);
 
     @Override
     public void addCourse2Cart(Long courseId) {
         Long userId = UserContext.getUser();
         log.debug("加入购物车请求：用户：{}，课程：{}", userId, courseId);
-        // 1.查询该课程是否已经在购物车
-        if (checkCourseExists(courseId, userId)) {
-            return;
-        }
-        // 2.查询购物车中课程是否超出上限
-        checkCartsFull(userId);
+        // 1.根据id查询课程信息，走本地课程缓存
+        CourseSimpleInfoDTO courseInfo = courseCache.getCourse(courseId);
 
-        // 3.根据id查询课程信息
-        CourseFullInfoDTO courseInfo = courseClient.getCourseInfoById(courseId, false, false);
-
-        // 4.判断是否为空
+        // 2.判断是否为空
         if (courseInfo == null) {
             throw new BadRequestException(COURSE_NOT_EXISTS);
         }
 
-        // 5.判断是否过期
+        // 3.判断是否过期
         if (courseInfo.getPurchaseEndTime().isBefore(LocalDateTime.now())) {
             // 已经过期，无法购买
             throw new BadRequestException(COURSE_EXPIRED);
         }
-        // 5.写入购物车
+        // 4.组装购物车条目
         Cart cart = new Cart();
         cart.setId(IdWorker.getId()); //购物车中的id
         cart.setCourseId(courseId); //课程id
         cart.setCourseName(courseInfo.getName());
-        cart.setUserId(UserContext.getUser());
+        cart.setUserId(userId);
         cart.setCoverUrl(courseInfo.getCoverUrl());
         cart.setPrice(courseInfo.getPrice());
-        save(cart);
-        log.debug("加入购物车成功！用户：{}，课程：{}", userId, courseId);
-    }
+        cart.setCreateTime(LocalDateTime.now());
 
-    private void checkCartsFull(Long userId) {
-        int count = lambdaQuery().eq(Cart::getUserId, userId).count();
-        if (count >= tradeProperties.getMaxCourseAmount()) {
+        // 5.写入购物车，是否已存在、是否超出上限的判断与写入在一个脚本中原子完成
+        String key = RedisConstants.CART_KEY_PREFIX + userId;
+        Long result = executeAddScript(key, cart);
+        if (result != null && result == -2) {
+            // 5.1.购物车未加载或刚好过期，从数据库加载后重试一次
+            loadCartsIfAbsent(userId);
+            result = executeAddScript(key, cart);
+        }
+        if (result == null || result == 0) {
+            // 课程已经在购物车
+            return;
+        }
+        if (result == -1) {
             throw new BizIllegalException(
                     StringUtils.format(CARTS_FULL, tradeProperties.getMaxCourseAmount()));
         }
+        if (result != 1) {
+            throw new BizIllegalException(ErrorInfo.Msg.SERVER_INTER_ERROR);
+        }
+        // 6.同步写入购物车表，Redis过期后从购物车表重新加载，因此写库失败时要撤销Redis中的条目
+        String field = courseId.toString();
+        try {
+            save(cart);
+        } catch (RuntimeException e) {
+            redisTemplate.opsForHash().delete(key, field);
+            throw e;
+        }
+        // 7.写库期间条目被并发删除时，删除刚写入的数据，保证购物车表与Redis一致
+        if (!BooleanUtils.isTrue(redisTemplate.opsForHash().hasKey(key, field))) {
+            removeById(cart.getId());
+        }
+        log.debug("加入购物车成功！用户：{}，课程：{}", userId, courseId);
     }
 
-    private boolean checkCourseExists(Long courseId, Long userId) {
-        int count = lambdaQuery()
-                .eq(Cart::getUserId, userId)
-                .eq(Cart::getCourseId, courseId)
-                .count();
-        return count > 0;
+    private Long executeAddScript(String key, Cart cart) {
+        return redisTemplate.execute(ADD_CART_SCRIPT, Collections.singletonList(key),
+                cart.getCourseId().toString(),
+                JsonUtils.toJsonStr(cart),
+                String.valueOf(tradeProperties.getMaxCourseAmount()),
+                String.valueOf(TimeUnit.DAYS.toSeconds(RedisConstants.CART_TTL_DAYS)));
+    }
+
+    /**
+     * 购物车不在Redis中时，从购物车表加载，并写入已加载标记
+     */
+    private void loadCartsIfAbsent(Long userId) {
+        String key = RedisConstants.CART_KEY_PREFIX + userId;
+        if (BooleanUtils.isTrue(redisTemplate.hasKey(key))) {
+            return;
+        }
+        List<Cart> carts = lambdaQuery().eq(Cart::getUserId, userId).list();
+        Map<String, String> entries = new HashMap<>(carts.size() + 1);
+        entries.put(RedisConstants.CART_LOADED_FIELD, "");
+        for (Cart cart : carts) {
+            entries.put(cart.getCourseId().toString(), JsonUtils.toJsonStr(cart));
+        }
+        redisTemplate.opsForHash().putAll(key, entries);
+        redisTemplate.expire(key, RedisConstants.CART_TTL_DAYS, TimeUnit.DAYS);
+    }
+
+    private List<Cart> queryCartsFromCache(Long userId) {
+        loadCartsIfAbsent(userId);
+        String key = RedisConstants.CART_KEY_PREFIX + userId;
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(key);
+        List<Cart> carts = new ArrayList<>(entries.size());
+        for (Map.Entry<Object, Object> e : entries.entrySet()) {
+            if (RedisConstants.CART_LOADED_FIELD.equals(e.getKey())) {
+                continue;
+            }
+            carts.add(JsonUtils.toBean(e.getValue().toString(), Cart.class));
+        }
+        return carts;
     }
 
     @Override
@@ -103,15 +155,14 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
         // 1.获取用户
         Long userId = UserContext.getUser();
         // 2.查询我的购物车
-        List<Cart> carts = lambdaQuery().eq(Cart::getUserId, userId).list();
+        List<Cart> carts = queryCartsFromCache(userId);
         if (CollUtils.isEmpty(carts)) {
             return CollUtils.emptyList();
         }
-        // 3.查询购物车中的课程
+        redisTemplate.expire(RedisConstants.CART_KEY_PREFIX + userId, RedisConstants.CART_TTL_DAYS, TimeUnit.DAYS);
+        // 3.查询购物车中的课程，走本地课程缓存
         List<Long> courseIds = carts.stream().map(Cart::getCourseId).collect(Collectors.toList());
-        List<CourseSimpleInfoDTO> courseSimpleInfos = courseClient.getSimpleInfoList(courseIds);
-        Map<Long, CourseSimpleInfoDTO> map = courseSimpleInfos.stream()
-                .collect(Collectors.toMap(CourseSimpleInfoDTO::getId, c -> c));
+        Map<Long, CourseSimpleInfoDTO> map = courseCache.getCourseMap(courseIds);
         // 4.组织 vo
         List<CartVO> list = new ArrayList<>(carts.size());
         for (Cart cart : carts) {
@@ -120,6 +171,12 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
             list.add(vo);
             // 4.2.获取新的课程信息
             CourseSimpleInfoDTO info = map.get(cart.getCourseId());
+            if (info == null) {
+                // 课程已不存在，按过期处理
+                vo.setNowPrice(cart.getPrice());
+                vo.setExpired(true);
+                continue;
+            }
             vo.setNowPrice(info.getPrice());
             vo.setExpired(info.getPurchaseEndTime().isBefore(LocalDateTime.now()));
             vo.setCourseValidDate(info.getPurchaseEndTime());
@@ -133,22 +190,31 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
 
     @Override
     public void deleteCartById(Long id) {
-        // 1.获取用户
-        Long userId = UserContext.getUser();
-        // 2.删除
-        remove(new LambdaQueryWrapper<Cart>()
-                .eq(Cart::getId, id)
-                .eq(Cart::getUserId, userId)
-        );
+        deleteCartByIds(CollUtils.singletonList(id));
     }
 
     @Override
     public void deleteCartByIds(List<Long> ids) {
+        // 1.获取用户
         Long userId = UserContext.getUser();
+        if (CollUtils.isEmpty(ids)) {
+            return;
+        }
+        // 2.找到购物车条目对应的课程，购物车中的课程很少，直接遍历
+        Set<Long> idSet = new HashSet<>(ids);
+        Object[] courseIds = queryCartsFromCache(userId).stream()
+                .filter(c -> idSet.contains(c.getId()))
+                .map(c -> c.getCourseId().toString())
+                .toArray();
+        // 3.先删除购物车表，失败时缓存保持不变
         remove(new LambdaQueryWrapper<Cart>()
                 .eq(Cart::getUserId, userId)
                 .in(Cart::getId, ids)
         );
+        // 4.删除缓存
+        if (courseIds.length > 0) {
+            redisTemplate.opsForHash().delete(RedisConstants.CART_KEY_PREFIX + userId, courseIds);
+        }
     }
 
     @Override
@@ -158,10 +224,13 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
             if(CollUtils.isEmpty(courseIds) || userId == null){
                 return;
             }
+            // 先删除购物车表，再删除缓存
             remove(new LambdaQueryWrapper<Cart>()
                     .eq(Cart::getUserId, userId)
                     .in(Cart::getCourseId, courseIds)
             );
+            redisTemplate.opsForHash().delete(RedisConstants.CART_KEY_PREFIX + userId,
+                    courseIds.stream().map(String::valueOf).toArray());
         } catch (Exception e) {
             log.error("从购物车删除用户已购买的课程发生异常，用户id：{}，课程id：{}", userId, courseIds, e);
         }
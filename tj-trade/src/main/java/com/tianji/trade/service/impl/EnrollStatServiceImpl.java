@@ -0,0 +1,260 @@
+package com.tianji.trade.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.api.dto.IdAndNumDTO;
+import com.tianji.api.dto.course.CoursePurchaseInfoDTO;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.TransactionUtils;
+import com.tianji.trade.domain.po.CourseEnrollStat;
+import com.tianji.trade.domain.po.OrderDetail;
+import com.tianji.trade.domain.po.StudentEnrollStat;
+import com.tianji.trade.mapper.CourseEnrollStatMapper;
+import com.tianji.trade.mapper.OrderDetailMapper;
+import com.tianji.trade.mapper.StudentEnrollStatMapper;
+import com.tianji.trade.service.IEnrollStatService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.tianji.trade.constants.OrderStatus.*;
+
+/**
+ * <p>
+ * 报名统计 服务实现类
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+public class EnrollStatServiceImpl implements IEnrollStatService {
+
+    private final CourseEnrollStatMapper courseStatMapper;
+
+    private final StudentEnrollStatMapper studentStatMapper;
+
+    private final OrderDetailMapper detailMapper;
+
+    // 统计值允许短暂延迟，本地只缓存几秒，本节点的变更在事务提交后立即失效
+    private final Cache<Long, CourseEnrollStat> courseStatCache = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(10))
+            .maximumSize(100_000)
+            .build();
+
+    private final Cache<Long, Integer> studentStatCache = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(10))
+            .maximumSize(100_000)
+            .build();
+
+    @Override
+    public void incrEnroll(List<OrderDetail> details) {
+        if (CollUtils.isEmpty(details)) {
+            return;
+        }
+        // 1.按课程累加报名人数和销售额
+        Map<Long, CourseEnrollStat> courseDeltas = new HashMap<>(details.size());
+        // 2.按学员累加报名课程数
+        Map<Long, StudentEnrollStat> studentDeltas = new HashMap<>(details.size());
+        for (OrderDetail detail : details) {
+            CourseEnrollStat c = courseDeltas.computeIfAbsent(detail.getCourseId(), CourseEnrollStat::empty);
+            c.setEnrollNum(c.getEnrollNum() + 1);
+            c.setRealPayAmount(c.getRealPayAmount() + detail.getRealPayAmount());
+            StudentEnrollStat s = studentDeltas.computeIfAbsent(detail.getUserId(),
+                    id -> new StudentEnrollStat().setUserId(id).setEnrollNum(0));
+            s.setEnrollNum(s.getEnrollNum() + 1);
+        }
+        // 3.写入统计表，与订单明细在同一个事务中
+        incrStats(courseDeltas.values(), studentDeltas.values());
+    }
+
+    @Override
+    public void incrRefund(OrderDetail detail) {
+        CourseEnrollStat c = CourseEnrollStat.empty(detail.getCourseId()).setEnrollNum(-1).setRefundNum(1);
+        StudentEnrollStat s = new StudentEnrollStat().setUserId(detail.getUserId()).setEnrollNum(-1);
+        incrStats(CollUtils.singletonList(c), CollUtils.singletonList(s));
+    }
+
+    private void incrStats(Collection<CourseEnrollStat> courseDeltas, Collection<StudentEnrollStat> studentDeltas) {
+        // 1.统计记录不存在时（统计表上线前的历史数据），先从订单明细补齐初始值，再累加增量
+        backfillCourseStats(courseDeltas);
+        backfillStudentStats(studentDeltas);
+        // 2.累加增量
+        courseStatMapper.incrStats(new ArrayList<>(courseDeltas));
+        studentStatMapper.incrStats(new ArrayList<>(studentDeltas));
+        // 3.事务提交后失效本地缓存
+        Set<Long> courseIds = courseDeltas.stream().map(CourseEnrollStat::getCourseId).collect(Collectors.toSet());
+        Set<Long> userIds = studentDeltas.stream().map(StudentEnrollStat::getUserId).collect(Collectors.toSet());
+        evictAfterCommit(courseIds, userIds);
+    }
+
+    private void backfillCourseStats(Collection<CourseEnrollStat> deltas) {
+        // 1.找出没有统计记录的课程
+        Map<Long, CourseEnrollStat> deltaMap = deltas.stream()
+                .collect(Collectors.toMap(CourseEnrollStat::getCourseId, Function.identity()));
+        Set<Long> missing = new HashSet<>(deltaMap.keySet());
+        courseStatMapper.selectBatchIds(missing).forEach(stat -> missing.remove(stat.getCourseId()));
+        if (missing.isEmpty()) {
+            return;
+        }
+        // 2.订单明细已经在本事务中更新，汇总值包含本次增量，初始值要减掉增量
+        Map<Long, CourseEnrollStat> aggregates = aggregateCourseStats(missing);
+        List<CourseEnrollStat> seeds = new ArrayList<>(missing.size());
+        for (Long courseId : missing) {
+            CourseEnrollStat total = aggregates.get(courseId);
+            CourseEnrollStat delta = deltaMap.get(courseId);
+            seeds.add(CourseEnrollStat.empty(courseId)
+                    .setEnrollNum(total.getEnrollNum() - delta.getEnrollNum())
+                    .setRefundNum(total.getRefundNum() - delta.getRefundNum())
+                    .setRealPayAmount(total.getRealPayAmount() - delta.getRealPayAmount()));
+        }
+        // 3.并发补齐时初始值相同，只有一条生效
+        courseStatMapper.insertIgnore(seeds);
+    }
+
+    private void backfillStudentStats(Collection<StudentEnrollStat> deltas) {
+        // 1.找出没有统计记录的学员
+        Map<Long, Integer> deltaMap = deltas.stream()
+                .collect(Collectors.toMap(StudentEnrollStat::getUserId, StudentEnrollStat::getEnrollNum));
+        Set<Long> missing = new HashSet<>(deltaMap.keySet());
+        studentStatMapper.selectBatchIds(missing).forEach(stat -> missing.remove(stat.getUserId()));
+        if (missing.isEmpty()) {
+            return;
+        }
+        // 2.汇总值包含本次增量，初始值要减掉增量
+        Map<Long, Integer> totals = aggregateStudentStats(missing);
+        List<StudentEnrollStat> seeds = missing.stream()
+                .map(id -> new StudentEnrollStat().setUserId(id).setEnrollNum(totals.get(id) - deltaMap.get(id)))
+                .collect(Collectors.toList());
+        // 3.并发补齐时初始值相同，只有一条生效
+        studentStatMapper.insertIgnore(seeds);
+    }
+
+    private void evictAfterCommit(Set<Long> courseIds, Set<Long> userIds) {
+        TransactionUtils.afterCommit(() -> {
+            courseStatCache.invalidateAll(courseIds);
+            studentStatCache.invalidateAll(userIds);
+        });
+    }
+
+    @Override
+    public Map<Long, Integer> countEnrollNumOfCourse(List<Long> courseIds) {
+        if (CollUtils.isEmpty(courseIds)) {
+            return new HashMap<>();
+        }
+        Map<Long, CourseEnrollStat> stats = courseStatCache.getAll(courseIds, this::loadCourseStats);
+        Map<Long, Integer> result = new HashMap<>(stats.size());
+        stats.forEach((id, stat) -> result.put(id, stat.getEnrollNum()));
+        return result;
+    }
+
+    @Override
+    public Map<Long, Integer> countEnrollCourseOfStudent(List<Long> studentIds) {
+        if (CollUtils.isEmpty(studentIds)) {
+            return new HashMap<>();
+        }
+        return new HashMap<>(studentStatCache.getAll(studentIds, this::loadStudentStats));
+    }
+
+    @Override
+    public CoursePurchaseInfoDTO getPurchaseInfoOfCourse(Long courseId) {
+        CourseEnrollStat stat = courseStatCache.getAll(CollUtils.singletonList(courseId), this::loadCourseStats)
+                .get(courseId);
+        return new CoursePurchaseInfoDTO(stat.getEnrollNum(), stat.getRefundNum(), stat.getRealPayAmount());
+    }
+
+    private Map<Long, CourseEnrollStat> loadCourseStats(Set<? extends Long> courseIds) {
+        Map<Long, CourseEnrollStat> map = courseStatMapper.selectBatchIds(courseIds).stream()
+                .collect(Collectors.toMap(CourseEnrollStat::getCourseId, Function.identity()));
+        // 没有统计记录的课程从订单明细汇总，并补齐统计记录，之后的增量在此基础上累加
+        Set<Long> missing = new HashSet<>(courseIds);
+        missing.removeAll(map.keySet());
+        if (!missing.isEmpty()) {
+            Map<Long, CourseEnrollStat> aggregates = aggregateCourseStats(missing);
+            courseStatMapper.insertIgnore(new ArrayList<>(aggregates.values()));
+            map.putAll(aggregates);
+        }
+        return map;
+    }
+
+    private Map<Long, Integer> loadStudentStats(Set<? extends Long> userIds) {
+        Map<Long, Integer> map = studentStatMapper.selectBatchIds(userIds).stream()
+                .collect(Collectors.toMap(StudentEnrollStat::getUserId, StudentEnrollStat::getEnrollNum));
+        // 没有统计记录的学员从订单明细汇总，并补齐统计记录
+        Set<Long> missing = new HashSet<>(userIds);
+        missing.removeAll(map.keySet());
+        if (!missing.isEmpty()) {
+            Map<Long, Integer> totals = aggregateStudentStats(missing);
+            studentStatMapper.insertIgnore(totals.entrySet().stream()
+                    .map(e -> new StudentEnrollStat().setUserId(e.getKey()).setEnrollNum(e.getValue()))
+                    .collect(Collectors.toList()));
+            map.putAll(totals);
+        }
+        return map;
+    }
+
+    /**
+     * 从订单明细汇总课程统计值，没有订单明细的课程为0
+     */
+    private Map<Long, CourseEnrollStat> aggregateCourseStats(Collection<Long> courseIds) {
+        Map<Long, CourseEnrollStat> stats = detailMapper.aggregateCourseStats(new ArrayList<>(courseIds)).stream()
+                .collect(Collectors.toMap(CourseEnrollStat::getCourseId, Function.identity()));
+        for (Long courseId : courseIds) {
+            stats.computeIfAbsent(courseId, CourseEnrollStat::empty);
+        }
+        return stats;
+    }
+
+    /**
+     * 从订单明细汇总学员报名课程数，没有订单明细的学员为0
+     */
+    private Map<Long, Integer> aggregateStudentStats(Collection<Long> userIds) {
+        QueryWrapper<OrderDetail> wrapper = new QueryWrapper<>();
+        wrapper.lambda()
+                .in(OrderDetail::getUserId, userIds)
+                .in(OrderDetail::getStatus, PAYED.getValue(), FINISHED.getValue(), ENROLLED.getValue());
+        Map<Long, Integer> nums = IdAndNumDTO.toMap(detailMapper.countEnrollCourseOfStudent(wrapper));
+        Map<Long, Integer> result = new HashMap<>(userIds.size());
+        for (Long userId : userIds) {
+            result.put(userId, nums.getOrDefault(userId, 0));
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional
+    public void reconcileCourseStats(List<Long> courseIds) {
+        if (CollUtils.isEmpty(courseIds)) {
+            return;
+        }
+        // 1.先锁定统计记录，正在提交的增量更新会等对账结束后再累加，不会被覆盖掉
+        courseStatMapper.lockByCourseIds(courseIds);
+        // 2.从订单明细汇总
+        Map<Long, CourseEnrollStat> stats = aggregateCourseStats(courseIds);
+        // 3.覆盖统计值
+        courseStatMapper.overwriteStats(new ArrayList<>(stats.values()));
+        evictAfterCommit(stats.keySet(), Collections.emptySet());
+    }
+
+    @Override
+    @Transactional
+    public void reconcileStudentStats(List<Long> userIds) {
+        if (CollUtils.isEmpty(userIds)) {
+            return;
+        }
+        // 1.先锁定统计记录，正在提交的增量更新会等对账结束后再累加，不会被覆盖掉
+        studentStatMapper.lockByUserIds(userIds);
+        // 2.从订单明细汇总
+        Map<Long, Integer> nums = aggregateStudentStats(userIds);
+        // 3.覆盖统计值
+        List<StudentEnrollStat> stats = userIds.stream()
+                .map(id -> new StudentEnrollStat().setUserId(id).setEnrollNum(nums.getOrDefault(id, 0)))
+                .collect(Collectors.toList());
+        studentStatMapper.overwriteStats(stats);
+        evictAfterCommit(Collections.emptySet(), new HashSet<>(userIds));
+    }
+}
@@ -1,12 +1,10 @@
 package com.tianji.trade.service.impl;
 
 import cn.hutool.db.DbRuntimeException;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.api.cache.RoleCache;
 import com.tianji.api.client.user.UserClient;
-import com.tianji.api.dto.IdAndNumDTO;
 import com.tianji.api.dto.course.CoursePurchaseInfoDTO;
 import com.tianji.api.dto.user.UserDTO;
 import com.tianji.common.constants.ErrorInfo;
@@ -28,6 +26,7 @@ import com.tianji.trade.domain.vo.OrderProgressNodeVO;
 import com.tianji.trade.mapper.OrderDetailMapper;
 import com.tianji.trade.mapper.OrderMapper;
 import com.tianji.trade.mapper.RefundApplyMapper;
+import com.tianji.trade.service.IEnrollStatService;
 import com.tianji.trade.service.IOrderDetailService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -62,6 +61,8 @@ public class OrderDetailServiceImpl extends ServiceImpl<OrderDetailMapper, Order
 
     private final RoleCache roleCache;
 
+    private final IEnrollStatService enrollStatService;
+
     @Override
     @Transactional
     public void updateStatusByOrderId(Long orderId, Integer status) {
@@ -250,12 +251,23 @@ public class OrderDetailServiceImpl extends ServiceImpl<OrderDetailMapper, Order
     @Override
     public void markDetailSuccessByOrderId(Long id, String payChannel, LocalDateTime successTime) {
         List<OrderDetail> details = queryByOrderId(id);
+        List<OrderDetail> newEnrolled = new ArrayList<>(details.size());
         for (OrderDetail detail : details) {
+            // 只有待支付和已关闭的条目变为已支付，已报名或已退款的条目不能被重复的支付通知改回，也不能重复计数
+            if (!NO_PAY.equalsValue(detail.getStatus()) && !CLOSED.equalsValue(detail.getStatus())) {
+                continue;
+            }
             detail.setStatus(PAYED.getValue());
             detail.setPayChannel(payChannel);
             detail.setCourseExpireTime(successTime.plusMinutes(detail.getValidDuration()));
+            newEnrolled.add(detail);
+        }
+        if (newEnrolled.isEmpty()) {
+            return;
         }
-        updateBatchById(details);
+        updateBatchById(newEnrolled);
+        // 在同一个事务中累加报名统计
+        enrollStatService.incrEnroll(newEnrolled);
     }
 
     @Override
@@ -295,48 +307,16 @@ public class OrderDetailServiceImpl extends ServiceImpl<OrderDetailMapper, Order
 
     @Override
     public Map<Long, Integer> countEnrollNumOfCourse(List<Long> courseIdList) {
-        // 1.条件构造
-        QueryWrapper<OrderDetail> wrapper = new QueryWrapper<>();
-        wrapper.lambda()
-                .in(OrderDetail::getCourseId, courseIdList)
-                .in(OrderDetail::getStatus, PAYED.getValue(), FINISHED.getValue(), ENROLLED.getValue());
-
-        // 2.统计
-        List<IdAndNumDTO> list = baseMapper.countEnrollNumOfCourse(wrapper);
-
-        // 3.转换返回
-        return IdAndNumDTO.toMap(list);
+        return enrollStatService.countEnrollNumOfCourse(courseIdList);
     }
 
     @Override
     public Map<Long, Integer> countEnrollCourseOfStudent(List<Long> studentIds) {
-        // 1.条件构造
-        QueryWrapper<OrderDetail> wrapper = new QueryWrapper<>();
-        wrapper.lambda()
-                .in(OrderDetail::getUserId, studentIds)
-                .in(OrderDetail::getStatus, PAYED.getValue(), FINISHED.getValue(), ENROLLED.getValue());
-        // 2.统计
-        List<IdAndNumDTO> list = baseMapper.countEnrollCourseOfStudent(wrapper);
-
-        // 3.转换返回
-        return IdAndNumDTO.toMap(list);
+        return enrollStatService.countEnrollCourseOfStudent(studentIds);
     }
 
     @Override
     public CoursePurchaseInfoDTO getPurchaseInfoOfCourse(Long courseId) {
-        // 1.统计报名人数
-        Integer enrollNum = lambdaQuery()
-                .eq(OrderDetail::getCourseId, courseId)
-                .in(OrderDetail::getStatus, PAYED.getValue(), FINISHED.getValue(), ENROLLED.getValue())
-                .count();
-        // 2.统计退款人数
-        Integer refundNum = lambdaQuery()
-                .eq(OrderDetail::getCourseId, courseId)
-                .eq(OrderDetail::getStatus, REFUNDED.getValue())
-                .count();
-        // 3.统计销售额
-        int realPayAmount = baseMapper.countRealPayAmountByCourseId(courseId);
-
-        return new CoursePurchaseInfoDTO(enrollNum, refundNum, realPayAmount);
+        return enrollStatService.getPurchaseInfoOfCourse(courseId);
     }
 }
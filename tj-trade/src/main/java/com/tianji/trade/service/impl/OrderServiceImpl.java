@@ -1,13 +1,15 @@
 package com.tianji.trade.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.cache.CourseCache;
 import com.tianji.api.client.promotion.PromotionClient;
 import com.tianji.api.constants.CourseStatus;
 import com.tianji.api.dto.course.CourseSimpleInfoDTO;
 import com.tianji.api.dto.promotion.CouponDiscountDTO;
+import com.tianji.api.dto.promotion.CouponUseDTO;
 import com.tianji.api.dto.promotion.OrderCourseDTO;
 import com.tianji.api.dto.trade.OrderBasicDTO;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
@@ -18,12 +20,18 @@ import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.exceptions.DbException;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.JsonUtils;
+import com.tianji.common.utils.StringUtils;
+import com.tianji.common.utils.TransactionUtils;
 import com.tianji.common.utils.UserContext;
 import com.tianji.pay.sdk.dto.PayResultDTO;
 import com.tianji.trade.config.TradeProperties;
 import com.tianji.trade.constants.OrderStatus;
+import com.tianji.trade.constants.RedisConstants;
 import com.tianji.trade.constants.RefundStatus;
 import com.tianji.trade.constants.TradeErrorInfo;
+import com.tianji.trade.domain.dto.OrderDiscountSnapshotDTO;
+import com.tianji.trade.domain.dto.OrderIntakeDTO;
 import com.tianji.trade.domain.dto.PlaceOrderDTO;
 import com.tianji.trade.domain.po.Order;
 import com.tianji.trade.domain.po.OrderDetail;
@@ -31,16 +39,20 @@ import com.tianji.trade.domain.query.OrderPageQuery;
 import com.tianji.trade.domain.vo.*;
 import com.tianji.trade.mapper.OrderMapper;
 import com.tianji.trade.service.ICartService;
+import com.tianji.trade.service.IEnrollStatService;
 import com.tianji.trade.service.IOrderDetailService;
 import com.tianji.trade.service.IOrderService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.tianji.common.constants.ErrorInfo.Msg.OPERATE_FAILED;
@@ -59,63 +71,225 @@ import static com.tianji.trade.constants.TradeErrorInfo.ORDER_NOT_EXISTS;
 @RequiredArgsConstructor
 public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements IOrderService {
 
-    private final CourseClient courseClient;
+    private final CourseCache courseCache;
     private final IOrderDetailService detailService;
     private final ICartService cartService;
     private final TradeProperties tradeProperties;
     private final RabbitMqHelper rabbitMqHelper;
     private final PromotionClient promotionClient;
+    private final IEnrollStatService enrollStatService;
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 等待broker确认消息的最长时间
+     */
+    private static final Duration CONFIRM_TIMEOUT = Duration.ofSeconds(3);
+    private static final RedisScript<Long> ORDER_INTAKE_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/order_intake.lua"), Long.class);
+    private static final RedisScript<Long> COUPON_RESERVE_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/coupon_reserve.lua"), Long.class);
+    private static final RedisScript<Long> COUPON_RELEASE_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/coupon_release.lua"), Long.class);
 
 
     @Override
-    @Transactional
     public PlaceOrderResultVO placeOrder(PlaceOrderDTO placeOrderDTO) {
         Long userId = UserContext.getUser();
+        Long orderId = placeOrderDTO.getOrderId();
         // 1.查询课程费用信息，如果不可购买，这里直接报错
         List<CourseSimpleInfoDTO> courseInfos = getOnShelfCourse(placeOrderDTO.getCourseIds());
-        // 2.封装订单信息
-        Order order = new Order();
-        // 2.1.计算订单金额
-        Integer totalAmount = courseInfos.stream()
-                .map(CourseSimpleInfoDTO::getPrice).reduce(Integer::sum).orElse(0);
-        // TODO 2.2.计算优惠金额
-        Integer discountAmount = 0;
-        Integer realAmount = totalAmount - discountAmount;
-        // 2.3.封装其它信息
-        order.setUserId(userId);
-        order.setTotalAmount(totalAmount);
-        order.setDiscountAmount(discountAmount);
-        order.setRealAmount(realAmount);
-        order.setStatus(OrderStatus.NO_PAY.getValue());
-        order.setMessage(OrderStatus.NO_PAY.getProgressName());
-        // 2.4.订单id
-        Long orderId = placeOrderDTO.getOrderId();
-        order.setId(orderId);
+        // 2.计算订单金额
+        int totalAmount = courseInfos.stream().mapToInt(CourseSimpleInfoDTO::getPrice).sum();
+        List<Long> couponIds = CollUtils.isEmpty(placeOrderDTO.getCouponIds()) ?
+                CollUtils.emptyList() : placeOrderDTO.getCouponIds().stream().distinct().collect(Collectors.toList());
+        int discountAmount = calculateDiscount(userId, orderId, courseInfos, couponIds);
+        int realAmount = totalAmount - discountAmount;
+
+        // 3.受理订单，同一个订单id只受理一次，重复提交直接返回受理结果
+        String intakeKey = RedisConstants.ORDER_INTAKE_KEY_PREFIX + orderId;
+        Long accepted = redisTemplate.execute(ORDER_INTAKE_SCRIPT, Collections.singletonList(intakeKey),
+                userId.toString(), String.valueOf(realAmount), String.valueOf(RedisConstants.ORDER_INTAKE_TTL_SECONDS));
+        if (accepted == null || accepted == 0) {
+            return queryOrderStatus(orderId);
+        }
 
-        // 3.封装订单详情
-        List<OrderDetail> orderDetails = new ArrayList<>(courseInfos.size());
-        for (CourseSimpleInfoDTO courseInfo : courseInfos) {
-            orderDetails.add(packageOrderDetail(courseInfo, order));
+        boolean reserved = false;
+        try {
+            // 4.预占优惠券，同一张券不能被两个未完成的订单同时使用
+            if (!couponIds.isEmpty()) {
+                reserveCoupons(userId, orderId, couponIds);
+                reserved = true;
+            }
+            // 5.封装订单信息
+            Order order = new Order();
+            order.setId(orderId);
+            order.setUserId(userId);
+            order.setTotalAmount(totalAmount);
+            order.setDiscountAmount(discountAmount);
+            order.setRealAmount(realAmount);
+            order.setStatus(OrderStatus.NO_PAY.getValue());
+            order.setMessage(OrderStatus.NO_PAY.getProgressName());
+            if (!couponIds.isEmpty()) {
+                order.setCouponId(couponIds.get(0));
+                order.setCouponIds(CollUtils.join(couponIds, ","));
+            }
+            // 5.1.下单时间以受理时间为准，保证支付超时时间与返回给用户的一致
+            order.setCreateTime(LocalDateTime.now());
+
+            // 6.封装订单详情，按金额比例分摊优惠
+            List<OrderDetail> orderDetails = new ArrayList<>(courseInfos.size());
+            for (CourseSimpleInfoDTO courseInfo : courseInfos) {
+                orderDetails.add(packageOrderDetail(courseInfo, order));
+            }
+            shareDiscount(orderDetails, totalAmount, discountAmount);
+
+            // 7.投递到MQ，由消费者批量写入数据库并删除购物车，等待broker确认，未确认时按受理失败处理
+            rabbitMqHelper.sendAndConfirm(
+                    MqConstants.Exchange.ORDER_EXCHANGE,
+                    MqConstants.Key.ORDER_INTAKE_KEY,
+                    new OrderIntakeDTO(order, orderDetails, couponIds),
+                    CONFIRM_TIMEOUT);
+
+            // 8.构建下单结果
+            return PlaceOrderResultVO.builder()
+                    .orderId(orderId)
+                    .payAmount(realAmount)
+                    .status(order.getStatus())
+                    .processing(true)
+                    .payOutTime(order.getCreateTime().plusMinutes(tradeProperties.getPayOrderTTLMinutes()))
+                    .build();
+        } catch (RuntimeException e) {
+            // 9.受理失败，释放优惠券和受理标记，允许用户重新提交
+            if (reserved) {
+                releaseCoupons(userId, orderId);
+            }
+            redisTemplate.delete(intakeKey);
+            throw e;
         }
+    }
 
-        // 4.写入数据库
-        saveOrderAndDetails(order, orderDetails);
+    /**
+     * 校验用户选择的优惠券组合，优先使用确认订单时缓存的优惠方案，缓存失效或课程有变化时才远程计算
+     */
+    private int calculateDiscount(Long userId, Long orderId, List<CourseSimpleInfoDTO> courseInfos, List<Long> couponIds) {
+        if (couponIds.isEmpty()) {
+            return 0;
+        }
+        // 1.查询确认订单时的优惠方案快照
+        List<CouponDiscountDTO> solutions = null;
+        Set<Long> courseIds = courseInfos.stream().map(CourseSimpleInfoDTO::getId).collect(Collectors.toSet());
+        String json = redisTemplate.opsForValue().get(RedisConstants.ORDER_DISCOUNT_KEY_PREFIX + userId + ":" + orderId);
+        if (json != null) {
+            OrderDiscountSnapshotDTO snapshot = JsonUtils.toBean(json, OrderDiscountSnapshotDTO.class);
+            if (courseIds.equals(new HashSet<>(snapshot.getCourseIds()))) {
+                solutions = snapshot.getDiscounts();
+            }
+        }
+        // 2.快照不可用，重新计算
+        if (solutions == null) {
+            solutions = promotionClient.findDiscountSolution(toOrderCourses(courseInfos));
+        }
+        // 3.找到与用户选择完全一致的方案
+        Set<Long> target = new HashSet<>(couponIds);
+        return CollUtils.emptyIfNull(solutions).stream()
+                .filter(s -> s.getIds() != null && target.equals(new HashSet<>(s.getIds())))
+                .findFirst()
+                .map(CouponDiscountDTO::getDiscountAmount)
+                .orElseThrow(() -> new BizIllegalException(TradeErrorInfo.COUPON_NOT_AVAILABLE));
+    }
 
-        // 5.删除购物车数据
-        cartService.deleteCartByUserAndCourseIds(userId, placeOrderDTO.getCourseIds());
+    /**
+     * 按课程价格比例把订单优惠分摊到每个明细，除不尽的部分由最后一个明细承担
+     */
+    private void shareDiscount(List<OrderDetail> details, int totalAmount, int discountAmount) {
+        int remain = discountAmount;
+        for (int i = 0; i < details.size(); i++) {
+            OrderDetail detail = details.get(i);
+            int amount;
+            if (i == details.size() - 1) {
+                amount = Math.min(remain, detail.getPrice());
+            } else {
+                amount = totalAmount == 0 ? 0 : (int) ((long) discountAmount * detail.getPrice() / totalAmount);
+            }
+            detail.setDiscountAmount(amount);
+            detail.setRealPayAmount(detail.getPrice() - amount);
+            remain -= amount;
+        }
+    }
 
-        // 6.构建下单结果
-        return PlaceOrderResultVO.builder()
-                .orderId(orderId)
-                .payAmount(realAmount)
-                .status(order.getStatus())
-                .payOutTime(LocalDateTime.now().plusMinutes(tradeProperties.getPayOrderTTLMinutes()))
-                .build();
+    private void reserveCoupons(Long userId, Long orderId, List<Long> couponIds) {
+        List<String> keys = new ArrayList<>(couponIds.size() + 1);
+        List<String> args = new ArrayList<>(couponIds.size() + 2);
+        keys.add(orderCouponsKey(userId, orderId));
+        args.add(orderId.toString());
+        // 预占时间比支付超时时间略长，订单超时未支付时自动释放
+        args.add(String.valueOf((tradeProperties.getPayOrderTTLMinutes() + 5) * 60));
+        for (Long couponId : couponIds) {
+            keys.add(couponReserveKey(userId, couponId));
+            args.add(couponId.toString());
+        }
+        Long result = redisTemplate.execute(COUPON_RESERVE_SCRIPT, keys, args.toArray());
+        if (result == null || result == 0) {
+            throw new BizIllegalException(TradeErrorInfo.COUPON_ALREADY_RESERVED);
+        }
+    }
+
+    private void releaseCoupons(Long userId, Long orderId) {
+        List<String> keys = queryReservedCouponKeys(userId, orderId);
+        if (keys.size() == 1) {
+            return;
+        }
+        redisTemplate.execute(COUPON_RELEASE_SCRIPT, keys, orderId.toString());
+    }
+
+    /**
+     * 订单支付成功，优惠券由促销服务核销，预占标记再保留一段时间，覆盖核销消息的处理延迟
+     */
+    private void confirmCoupons(Long userId, Long orderId) {
+        for (String key : queryReservedCouponKeys(userId, orderId)) {
+            redisTemplate.expire(key, Duration.ofSeconds(RedisConstants.COUPON_USED_RETAIN_SECONDS));
+        }
+    }
+
+    private List<String> queryReservedCouponKeys(Long userId, Long orderId) {
+        String orderCouponsKey = orderCouponsKey(userId, orderId);
+        Set<String> couponIds = redisTemplate.opsForSet().members(orderCouponsKey);
+        List<String> keys = new ArrayList<>();
+        keys.add(orderCouponsKey);
+        if (couponIds != null) {
+            for (String couponId : couponIds) {
+                keys.add(couponReserveKey(userId, Long.valueOf(couponId)));
+            }
+        }
+        return keys;
+    }
+
+    private String couponReserveKey(Long userId, Long couponId) {
+        return RedisConstants.COUPON_RESERVE_KEY_PREFIX + "{" + userId + "}:" + couponId;
+    }
+
+    private String orderCouponsKey(Long userId, Long orderId) {
+        return RedisConstants.ORDER_COUPONS_KEY_PREFIX + "{" + userId + "}:" + orderId;
+    }
+
+    private List<OrderCourseDTO> toOrderCourses(List<CourseSimpleInfoDTO> courseInfos) {
+        List<OrderCourseDTO> dtos = new ArrayList<>(courseInfos.size());
+        for (CourseSimpleInfoDTO courseInfo : courseInfos) {
+            OrderCourseDTO dto = new OrderCourseDTO();
+            dto.setId(courseInfo.getId());
+            dto.setCateId(courseInfo.getThirdCateId()); // 三级分类id
+            dto.setPrice(courseInfo.getPrice());
+            dtos.add(dto);
+        }
+        return dtos;
     }
 
     private List<CourseSimpleInfoDTO> getOnShelfCourse(List<Long> courseIds) {
-        // 1.查询课程
-        List<CourseSimpleInfoDTO> courseInfos = courseClient.getSimpleInfoList(courseIds);
+        // 1.查询课程，优先读本地缓存
+        List<CourseSimpleInfoDTO> courseInfos = courseCache.queryCourseByIds(courseIds);
+        if (courseInfos.size() != new HashSet<>(courseIds).size()) {
+            throw new BizIllegalException(TradeErrorInfo.COURSE_NOT_EXISTS);
+        }
         LocalDateTime now = LocalDateTime.now();
         // 2.判断状态
         for (CourseSimpleInfoDTO courseInfo : courseInfos) {
@@ -167,6 +341,8 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
 
         // 4.写入数据库
         saveOrderAndDetails(order, CollUtils.singletonList(detail));
+        // 4.1.累加报名统计
+        enrollStatService.incrEnroll(CollUtils.singletonList(detail));
 
         // 5.发送MQ消息，通知报名成功
         rabbitMqHelper.send(
@@ -189,8 +365,8 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
 
     @Override
     public OrderConfirmVO prePlaceOrder(List<Long> courseIds) {
-        // 1. 查询课程信息
-        List<CourseSimpleInfoDTO> courseInfos = courseClient.getSimpleInfoList(courseIds);
+        // 1. 查询课程信息，优先读本地缓存
+        List<CourseSimpleInfoDTO> courseInfos = courseCache.queryCourseByIds(courseIds);
         if (CollUtils.isEmpty(courseInfos)) {
             throw new BizIllegalException(TradeErrorInfo.COURSE_NOT_EXISTS);
         }
@@ -201,23 +377,21 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
 
 
         // 3. 计算折扣，通过feign远程调用促销服务，拿当前订单的可用折扣方案
-        // int discountAmount = 0;
-        List<OrderCourseDTO> dtos = new ArrayList<>();
-        for (CourseSimpleInfoDTO courseInfo : courseInfos) {
-            OrderCourseDTO dto = new OrderCourseDTO();
-            dto.setId(courseInfo.getId());
-            dto.setCateId(courseInfo.getThirdCateId()); // 三级分类id
-            dto.setPrice(courseInfo.getPrice());
-            dtos.add(dto);
-        }
-        List<CouponDiscountDTO> solutions = promotionClient.findDiscountSolution(dtos);
-
+        List<CouponDiscountDTO> solutions = promotionClient.findDiscountSolution(toOrderCourses(courseInfos));
 
 
         // 4. 生成订单id
         long orderId = IdWorker.getId();
 
 
+        // 4.1. 缓存优惠方案快照，下单时直接校验用户选择的方案
+        List<Long> cIds = courseInfos.stream().map(CourseSimpleInfoDTO::getId).collect(Collectors.toList());
+        redisTemplate.opsForValue().set(
+                RedisConstants.ORDER_DISCOUNT_KEY_PREFIX + UserContext.getUser() + ":" + orderId,
+                JsonUtils.toJsonStr(new OrderDiscountSnapshotDTO(cIds, solutions)),
+                Duration.ofMinutes(tradeProperties.getPayOrderTTLMinutes()));
+
+
         // 5. 组织返回
         OrderConfirmVO vo = new OrderConfirmVO();
         vo.setOrderId(orderId);
@@ -238,7 +412,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         detail.setCoverUrl(courseInfo.getCoverUrl());
         detail.setName(courseInfo.getName());
         detail.setValidDuration(courseInfo.getValidDuration());
-        detail.setDiscountAmount(0);// TODO 计算优惠金额
+        detail.setDiscountAmount(0);// 有优惠时下单再按比例分摊
         detail.setRealPayAmount(courseInfo.getPrice() - detail.getDiscountAmount());
         return detail;
     }
@@ -262,6 +436,53 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         }
     }
 
+    @Override
+    @Transactional
+    public void saveIntakeOrders(List<OrderIntakeDTO> intakes) {
+        // 1.过滤已经写入的订单，MQ重复投递时保证幂等
+        Map<Long, OrderIntakeDTO> intakeMap = intakes.stream().collect(
+                Collectors.toMap(i -> i.getOrder().getId(), Function.identity(), (a, b) -> a, LinkedHashMap::new));
+        List<Order> exists = lambdaQuery().select(Order::getId).in(Order::getId, intakeMap.keySet()).list();
+        for (Order exist : exists) {
+            intakeMap.remove(exist.getId());
+        }
+        // 2.批量写入订单和订单明细
+        if (!intakeMap.isEmpty()) {
+            List<Order> orders = new ArrayList<>(intakeMap.size());
+            List<OrderDetail> details = new ArrayList<>();
+            for (OrderIntakeDTO intake : intakeMap.values()) {
+                orders.add(intake.getOrder());
+                details.addAll(intake.getDetails());
+            }
+            if (!saveBatch(orders) || !detailService.saveBatch(details)) {
+                throw new DbException(TradeErrorInfo.PLACE_ORDER_FAILED);
+            }
+        }
+        // 3.事务提交后更新受理状态，删除购物车
+        TransactionUtils.afterCommit(() -> {
+            for (OrderIntakeDTO intake : intakes) {
+                Order order = intake.getOrder();
+                redisTemplate.opsForHash().put(RedisConstants.ORDER_INTAKE_KEY_PREFIX + order.getId(),
+                        "status", RedisConstants.IntakeStatus.CREATED);
+                List<Long> courseIds = intake.getDetails().stream()
+                        .map(OrderDetail::getCourseId).collect(Collectors.toList());
+                cartService.deleteCartByUserAndCourseIds(order.getUserId(), courseIds);
+            }
+        });
+    }
+
+    @Override
+    public void handleIntakeFailed(OrderIntakeDTO intake) {
+        Long orderId = intake.getOrder().getId();
+        // 1.释放预占的优惠券
+        releaseCoupons(intake.getOrder().getUserId(), orderId);
+        // 2.标记下单失败，用户查询订单状态时可以看到
+        Map<String, String> fields = new HashMap<>(2);
+        fields.put("status", RedisConstants.IntakeStatus.FAILED);
+        fields.put("reason", TradeErrorInfo.PLACE_ORDER_FAILED);
+        redisTemplate.opsForHash().putAll(RedisConstants.ORDER_INTAKE_KEY_PREFIX + orderId, fields);
+    }
+
     @Override
     @Transactional
     public void cancelOrder(Long orderId) {
@@ -293,6 +514,8 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         }
         // 5.更新订单条目的状态
         detailService.updateStatusByOrderId(orderId, OrderStatus.CLOSED.getValue());
+        // 6.释放订单预占的优惠券
+        TransactionUtils.afterCommit(() -> releaseCoupons(userId, orderId));
     }
 
     @Override
@@ -381,7 +604,8 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         // 1.查询订单
         Order order = getById(orderId);
         if (order == null) {
-            throw new BizIllegalException(ORDER_NOT_EXISTS);
+            // 1.1.订单还没写入数据库，查询受理状态
+            return queryIntakeStatus(orderId);
         }
         // 2.计算超时时间
         LocalDateTime outTime = null;
@@ -397,6 +621,27 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 .build();
     }
 
+    private PlaceOrderResultVO queryIntakeStatus(Long orderId) {
+        // 1.查询受理状态
+        Map<Object, Object> intake = redisTemplate.opsForHash().entries(RedisConstants.ORDER_INTAKE_KEY_PREFIX + orderId);
+        if (CollUtils.isEmpty(intake) || !UserContext.getUser().toString().equals(intake.get("userId"))) {
+            throw new BizIllegalException(ORDER_NOT_EXISTS);
+        }
+        Object payAmount = intake.get("payAmount");
+        PlaceOrderResultVO.PlaceOrderResultVOBuilder builder = PlaceOrderResultVO.builder()
+                .orderId(orderId)
+                .payAmount(payAmount == null ? null : Integer.valueOf(payAmount.toString()));
+        // 2.下单失败
+        if (RedisConstants.IntakeStatus.FAILED.equals(intake.get("status"))) {
+            return builder.processing(false)
+                    .status(OrderStatus.CLOSED.getValue())
+                    .failedReason((String) intake.get("reason"))
+                    .build();
+        }
+        // 3.排队写入中
+        return builder.processing(true).status(OrderStatus.NO_PAY.getValue()).build();
+    }
+
     @Override
     @Transactional
     public void handlePaySuccess(PayResultDTO payResult) {
@@ -405,7 +650,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         if (order == null) {
             return;
         }
-        // 2.更新订单状态
+        // 2.更新订单状态，只有待支付和已关闭的订单可以变为已支付，重复的支付通知或已退款的订单直接忽略
         Order o = new Order();
         o.setId(order.getId());
         o.setStatus(OrderStatus.PAYED.getValue());
@@ -413,9 +658,24 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         o.setPayChannel(payResult.getPayChannel());
         o.setPayOrderNo(payResult.getPayOrderNo());
         o.setMessage("用户支付成功");
-        updateById(o);
+        boolean success = update(o, new LambdaUpdateWrapper<Order>()
+                .eq(Order::getId, o.getId())
+                .in(Order::getStatus, OrderStatus.NO_PAY.getValue(), OrderStatus.CLOSED.getValue()));
+        if (!success) {
+            return;
+        }
         // 3.更新订单条目
         detailService.markDetailSuccessByOrderId(o.getId(), payResult.getPayChannel(), payResult.getSuccessTime());
+        // 3.1.通知促销服务核销订单使用的优惠券，发送失败时事务回滚，支付结果消息会重新投递
+        if (StringUtils.isNotBlank(order.getCouponIds())) {
+            List<Long> couponIds = CollUtils.convertToLong(StringUtils.split(order.getCouponIds(), ','));
+            rabbitMqHelper.sendAndConfirm(
+                    MqConstants.Exchange.PROMOTION_EXCHANGE,
+                    MqConstants.Key.COUPON_USE,
+                    new CouponUseDTO(order.getId(), order.getUserId(), couponIds),
+                    CONFIRM_TIMEOUT);
+            TransactionUtils.afterCommit(() -> confirmCoupons(order.getUserId(), o.getId()));
+        }
         // 4.查询订单包含的课程信息
         List<Long> cIds = detailService.queryCourseIdsByOrderId(o.getId());
         // 5.发送MQ消息，通知报名成功
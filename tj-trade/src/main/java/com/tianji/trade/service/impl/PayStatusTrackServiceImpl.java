@@ -0,0 +1,213 @@
+package com.tianji.trade.service.impl;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.pay.sdk.client.PayClient;
+import com.tianji.pay.sdk.dto.PayResultDTO;
+import com.tianji.trade.constants.OrderStatus;
+import com.tianji.trade.constants.RedisConstants;
+import com.tianji.trade.domain.po.Order;
+import com.tianji.trade.service.IOrderService;
+import com.tianji.trade.service.IPayStatusTrackService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 两级时间轮：下一分钟以内到期的任务直接放入秒级槽位，更远的任务先放入分钟级槽位，
+ * 到期前一分钟再降级到秒级槽位。每个槽位是一个zset，另有索引记录非空槽位，拉取时无需扫描空槽位。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PayStatusTrackServiceImpl implements IPayStatusTrackService {
+
+    /**
+     * 每次查询后的等待时间，单位秒
+     */
+    private static final long[] DELAY_SECONDS = {3, 5, 15, 30, 60, 120};
+    /**
+     * 批量查询支付状态的每批订单数量
+     */
+    private static final int BATCH_SIZE = 100;
+    /**
+     * 每次最多拉取的槽位数量
+     */
+    private static final int MAX_SLOTS_PER_POLL = 60;
+    /**
+     * 处理中任务的租约时长，超时未处理完的任务会被重新放回时间轮
+     */
+    private static final long LEASE_MILLIS = 60_000;
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> POLL_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/pay_wheel_poll.lua"), List.class);
+    private static final RedisScript<Long> ADD_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/pay_wheel_add.lua"), Long.class);
+    private static final RedisScript<Long> CASCADE_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/pay_wheel_cascade.lua"), Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final PayClient payClient;
+    private final IOrderService orderService;
+
+    @Override
+    public void track(Long orderId) {
+        schedule(orderId, 0);
+    }
+
+    @Override
+    public int pollDueOrders() {
+        long now = System.currentTimeMillis();
+        long nowSecond = now / 1000;
+        // 1.把下一分钟以内的分钟级槽位降级到秒级槽位
+        cascadeMinuteSlots(nowSecond / 60 + 1);
+        // 2.租约过期的任务重新放回时间轮
+        recoverExpiredTasks(now);
+        // 3.拉取到期的秒级槽位
+        Set<String> slots = redisTemplate.opsForZSet().rangeByScore(
+                RedisConstants.PAY_WHEEL_SECOND_SLOTS, 0, nowSecond, 0, MAX_SLOTS_PER_POLL);
+        if (CollUtils.isEmpty(slots)) {
+            return 0;
+        }
+        List<String> tasks = new ArrayList<>();
+        for (String slot : slots) {
+            List<?> members = redisTemplate.execute(POLL_SCRIPT,
+                    Arrays.asList(RedisConstants.PAY_WHEEL_SECOND_PREFIX + slot,
+                            RedisConstants.PAY_WHEEL_SECOND_SLOTS, RedisConstants.PAY_WHEEL_INFLIGHT_KEY),
+                    slot, String.valueOf(now + LEASE_MILLIS));
+            if (members != null) {
+                members.forEach(m -> tasks.add(m.toString()));
+            }
+        }
+        // 4.分批查询支付状态
+        for (int from = 0; from < tasks.size(); from += BATCH_SIZE) {
+            handleBatch(tasks.subList(from, Math.min(from + BATCH_SIZE, tasks.size())));
+        }
+        return tasks.size();
+    }
+
+    private void handleBatch(List<String> tasks) {
+        // 1.解析任务，同一订单只保留查询次数最多的任务
+        Map<Long, Integer> attempts = new HashMap<>(tasks.size());
+        for (String task : tasks) {
+            int idx = task.indexOf(':');
+            attempts.merge(Long.valueOf(task.substring(0, idx)), Integer.valueOf(task.substring(idx + 1)), Math::max);
+        }
+        try {
+            // 2.过滤掉已经支付或关闭的订单
+            List<Long> orderIds = orderService.lambdaQuery()
+                    .select(Order::getId)
+                    .in(Order::getId, attempts.keySet())
+                    .eq(Order::getStatus, OrderStatus.NO_PAY.getValue())
+                    .list()
+                    .stream().map(Order::getId).collect(Collectors.toList());
+            if (!orderIds.isEmpty()) {
+                // 3.批量查询支付状态
+                Map<Long, PayResultDTO> results = CollUtils.emptyIfNull(payClient.queryPayResults(orderIds))
+                        .stream().collect(Collectors.toMap(PayResultDTO::getBizOrderId, Function.identity(), (a, b) -> a));
+                for (Long orderId : orderIds) {
+                    handleResult(orderId, attempts.get(orderId), results.get(orderId));
+                }
+            }
+        } catch (Exception e) {
+            // 4.查询失败，任务留在处理中集合，租约到期后重新放回时间轮
+            log.error("批量查询支付状态失败，订单数量：{}", attempts.size(), e);
+            return;
+        }
+        // 5.处理完成，移除处理中的任务
+        redisTemplate.opsForZSet().remove(RedisConstants.PAY_WHEEL_INFLIGHT_KEY, tasks.toArray());
+    }
+
+    private void handleResult(Long orderId, int attempt, PayResultDTO result) {
+        // 1.支付成功
+        if (result != null && result.getStatus() == PayResultDTO.SUCCESS) {
+            try {
+                orderService.handlePaySuccess(result);
+                return;
+            } catch (Exception e) {
+                log.error("处理订单{}支付成功结果失败", orderId, e);
+            }
+        }
+        // 2.支付中、支付失败或处理失败，继续追踪，重试次数用尽则结束
+        if (attempt + 1 < DELAY_SECONDS.length) {
+            schedule(orderId, attempt + 1);
+        }
+    }
+
+    private void schedule(Long orderId, int attempt) {
+        long due = System.currentTimeMillis() + DELAY_SECONDS[attempt] * 1000;
+        addToWheel(orderId + ":" + attempt, due);
+    }
+
+    private void addToWheel(String task, long due) {
+        long dueSecond = due / 1000;
+        long dueMinute = dueSecond / 60;
+        // 1.到期时间超过下一分钟，先放入分钟级槽位
+        if (dueMinute > System.currentTimeMillis() / 60_000 + 1) {
+            redisTemplate.execute(ADD_SCRIPT,
+                    Arrays.asList(RedisConstants.PAY_WHEEL_MINUTE_PREFIX + dueMinute, RedisConstants.PAY_WHEEL_MINUTE_SLOTS),
+                    String.valueOf(dueMinute), String.valueOf(due), task);
+            return;
+        }
+        // 2.否则直接放入秒级槽位
+        redisTemplate.execute(ADD_SCRIPT,
+                Arrays.asList(RedisConstants.PAY_WHEEL_SECOND_PREFIX + dueSecond, RedisConstants.PAY_WHEEL_SECOND_SLOTS),
+                String.valueOf(dueSecond), String.valueOf(due), task);
+    }
+
+    private void cascadeMinuteSlots(long maxMinute) {
+        Set<String> slots = redisTemplate.opsForZSet().rangeByScore(RedisConstants.PAY_WHEEL_MINUTE_SLOTS, 0, maxMinute);
+        if (CollUtils.isEmpty(slots)) {
+            return;
+        }
+        for (String slot : slots) {
+            // 1.读出分钟级槽位中的任务，分批降级，脚本用到的秒级槽位key都在KEYS中声明
+            String minuteKey = RedisConstants.PAY_WHEEL_MINUTE_PREFIX + slot;
+            Set<ZSetOperations.TypedTuple<String>> members = redisTemplate.opsForZSet().rangeWithScores(minuteKey, 0, -1);
+            List<ZSetOperations.TypedTuple<String>> tasks = CollUtils.isEmpty(members)
+                    ? CollUtils.emptyList() : new ArrayList<>(members);
+            int from = 0;
+            do {
+                List<ZSetOperations.TypedTuple<String>> batch = tasks.subList(from, Math.min(from + BATCH_SIZE, tasks.size()));
+                List<String> keys = new ArrayList<>(batch.size() + 3);
+                keys.add(minuteKey);
+                keys.add(RedisConstants.PAY_WHEEL_MINUTE_SLOTS);
+                keys.add(RedisConstants.PAY_WHEEL_SECOND_SLOTS);
+                List<String> args = new ArrayList<>(batch.size() * 2 + 1);
+                args.add(slot);
+                for (ZSetOperations.TypedTuple<String> task : batch) {
+                    long due = task.getScore() == null ? 0 : task.getScore().longValue();
+                    keys.add(RedisConstants.PAY_WHEEL_SECOND_PREFIX + due / 1000);
+                    args.add(String.valueOf(due));
+                    args.add(task.getValue());
+                }
+                // 2.空槽位也执行一次，从索引中移除
+                redisTemplate.execute(CASCADE_SCRIPT, keys, args.toArray());
+                from += BATCH_SIZE;
+            } while (from < tasks.size());
+        }
+    }
+
+    private void recoverExpiredTasks(long now) {
+        Set<String> tasks = redisTemplate.opsForZSet().rangeByScore(
+                RedisConstants.PAY_WHEEL_INFLIGHT_KEY, 0, now, 0, BATCH_SIZE);
+        if (CollUtils.isEmpty(tasks)) {
+            return;
+        }
+        for (String task : tasks) {
+            // 移除成功的节点才能放回时间轮，避免多个节点重复放回
+            Long removed = redisTemplate.opsForZSet().remove(RedisConstants.PAY_WHEEL_INFLIGHT_KEY, task);
+            if (removed != null && removed > 0) {
+                addToWheel(task, now);
+            }
+        }
+    }
+}
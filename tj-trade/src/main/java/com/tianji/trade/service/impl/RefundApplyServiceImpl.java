@@ -21,6 +21,7 @@ import com.tianji.pay.sdk.constants.PayChannel;
 import com.tianji.pay.sdk.constants.RefundChannelEnum;
 import com.tianji.pay.sdk.dto.RefundApplyDTO;
 import com.tianji.pay.sdk.dto.RefundResultDTO;
+import com.tianji.trade.config.TradeProperties;
 import com.tianji.trade.constants.OrderStatus;
 import com.tianji.trade.constants.RefundStatus;
 import com.tianji.trade.constants.TradeErrorInfo;
@@ -35,6 +36,7 @@ import com.tianji.trade.domain.vo.RefundApplyPageVO;
 import com.tianji.trade.domain.vo.RefundApplyVO;
 import com.tianji.trade.mapper.OrderMapper;
 import com.tianji.trade.mapper.RefundApplyMapper;
+import com.tianji.trade.service.IEnrollStatService;
 import com.tianji.trade.service.IOrderDetailService;
 import com.tianji.trade.service.IRefundApplyService;
 import lombok.RequiredArgsConstructor;
@@ -68,6 +70,8 @@ public class RefundApplyServiceImpl extends ServiceImpl<RefundApplyMapper, Refun
     private final RoleCache roleCache;
     private final ThreadPoolTaskExecutor sendRefundRequestExecutor;
     private final RabbitMqHelper rabbitMqHelper;
+    private final IEnrollStatService enrollStatService;
+    private final TradeProperties tradeProperties;
 
     @Override
     public List<RefundApply> queryByDetailId(Long id) {
@@ -160,6 +164,10 @@ public class RefundApplyServiceImpl extends ServiceImpl<RefundApplyMapper, Refun
         d.setStatus(OrderStatus.REFUNDED.getValue());
         d.setRefundStatus(refundApply.getStatus());
         detailService.updateById(d);
+        // 8.1.首次退款时，报名人数转为退款人数，同一个事务中更新统计
+        if (!OrderStatus.REFUNDED.equalsValue(detail.getStatus())) {
+            enrollStatService.incrRefund(detail);
+        }
         // 9.如果是管理员申请的，立刻异步发送退款请求
         if(!isStudent) {
             sendRefundRequestAsync(refundApply);
@@ -458,19 +466,13 @@ public class RefundApplyServiceImpl extends ServiceImpl<RefundApplyMapper, Refun
     }
 
     @Override
-    public List<RefundApply> queryApplyToSend(int index, int size) {
-        Page<RefundApply> page = lambdaQuery()
-                .eq(RefundApply::getStatus, AGREE.getValue())
-                .page(new Page<>(index, size));
-        if (page == null || CollUtils.isEmpty(page.getRecords())) {
-            return CollUtils.emptyList();
-        }
-        return page.getRecords();
+    public List<RefundApply> queryApplyToSend(int shardIndex, int shardTotal, long lastId, int size) {
+        return getBaseMapper().queryByStatusAfter(AGREE.getValue(), shardIndex, shardTotal, lastId, size);
     }
 
     @Override
     @Transactional
-    public void sendRefundRequest(RefundApply refundApply) {
+    public RefundResultDTO sendRefundRequest(RefundApply refundApply) {
         // 1.组织请求参数
         RefundApplyDTO applyDTO = RefundApplyDTO.builder()
                 .bizOrderNo(refundApply.getOrderId())
@@ -480,27 +482,15 @@ public class RefundApplyServiceImpl extends ServiceImpl<RefundApplyMapper, Refun
         // 2.发送退款请求
         RefundResultDTO result = payClient.applyRefund(applyDTO);
 
-        // 3.处理退款结果
-        handleRefundResult(result);
-    }
+        // 3.渠道限流或繁忙，不记为退款失败，等下次任务重发
+        if (result.getStatus() == RefundResultDTO.FAILED
+                && tradeProperties.getRefundDispatch().getThrottleCodes().contains(result.getCode())) {
+            return result;
+        }
 
-    @Override
-    @Transactional
-    public boolean checkRefundStatus(RefundApply refundApply) {
-        // 1.先检查是否已经退款成功
-        Integer status = refundApply.getStatus();
-        if(!AGREE.equalsValue(status)){
-            return true;
-        }
-        // 2.远程查询，判断是否已经退款成功
-        RefundResultDTO result = payClient.queryRefundResult(refundApply.getId());
-        if (result == null) {
-            // 退款数据不存在，放弃处理
-            return false;
-        }
-        // 3.处理退款结果
+        // 4.处理退款结果
         handleRefundResult(result);
-        return result.getStatus() != RefundResultDTO.RUNNING;
+        return result;
     }
 
     private void sendRefundRequestAsync(RefundApply refundApply) {
@@ -0,0 +1,221 @@
+package com.tianji.trade.service.impl;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.pay.sdk.client.PayClient;
+import com.tianji.pay.sdk.dto.RefundResultDTO;
+import com.tianji.trade.config.TradeProperties;
+import com.tianji.trade.domain.po.Order;
+import com.tianji.trade.domain.po.RefundApply;
+import com.tianji.trade.service.IOrderService;
+import com.tianji.trade.service.IRefundApplyService;
+import com.tianji.trade.service.IRefundDispatchService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RefundDispatchServiceImpl implements IRefundDispatchService {
+
+    /**
+     * 查不到支付渠道的订单共用的渠道名
+     */
+    private static final String UNKNOWN_CHANNEL = "unknown";
+
+    private final IRefundApplyService refundApplyService;
+    private final IOrderService orderService;
+    private final PayClient payClient;
+    private final TradeProperties tradeProperties;
+    private final ThreadPoolTaskExecutor refundDispatchExecutor;
+
+    /**
+     * 每个支付渠道的令牌桶，跨任务保留，出错后降低的速率在后续任务中逐步恢复，分片总数变化时重建
+     */
+    private final Map<String, ChannelLimiter> limiters = new ConcurrentHashMap<>();
+
+    @Override
+    public int dispatchShard(int shardIndex, int shardTotal, int size) {
+        long lastId = 0;
+        int total = 0;
+        // 按id游标分批处理，直到分片内的退款申请全部处理完
+        while (true) {
+            List<RefundApply> applies = refundApplyService.queryApplyToSend(shardIndex, shardTotal, lastId, size);
+            if (CollUtils.isEmpty(applies)) {
+                break;
+            }
+            total += dispatch(applies, shardTotal);
+            if (applies.size() < size) {
+                break;
+            }
+            lastId = applies.get(applies.size() - 1).getId();
+        }
+        return total;
+    }
+
+    private int dispatch(List<RefundApply> applies, int shardTotal) {
+        // 1.批量查询退款状态，已有结果的直接处理
+        List<RefundApply> toSend = filterUnsent(applies);
+        if (toSend.isEmpty()) {
+            return 0;
+        }
+        // 2.查询订单的支付渠道
+        Set<Long> orderIds = toSend.stream().map(RefundApply::getOrderId).collect(Collectors.toSet());
+        Map<Long, String> channelMap = orderService.lambdaQuery()
+                .select(Order::getId, Order::getPayChannel)
+                .in(Order::getId, orderIds)
+                .list()
+                .stream()
+                .filter(o -> o.getPayChannel() != null)
+                .collect(Collectors.toMap(Order::getId, Order::getPayChannel));
+        // 3.按渠道限流并发发送，渠道暂停时跳过该渠道的剩余申请，等下次任务再发
+        Set<String> pausedChannels = new HashSet<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(toSend.size());
+        for (RefundApply apply : toSend) {
+            String channel = channelMap.getOrDefault(apply.getOrderId(), UNKNOWN_CHANNEL);
+            if (pausedChannels.contains(channel)) {
+                continue;
+            }
+            ChannelLimiter limiter = limiters.compute(channel, (c, l) -> l != null && l.shardTotal == shardTotal ?
+                    l : new ChannelLimiter(tradeProperties.getRefundDispatch(), shardTotal));
+            try {
+                if (!limiter.acquire()) {
+                    log.warn("支付渠道{}出错较多，暂停发送退款申请", channel);
+                    pausedChannels.add(channel);
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            futures.add(CompletableFuture.runAsync(() -> send(apply, limiter), refundDispatchExecutor));
+        }
+        // 4.等待本批发送完成，再查询下一批
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return futures.size();
+    }
+
+    private List<RefundApply> filterUnsent(List<RefundApply> applies) {
+        List<Long> ids = applies.stream().map(RefundApply::getId).collect(Collectors.toList());
+        Map<Long, RefundResultDTO> results = CollUtils.emptyIfNull(payClient.queryRefundResults(ids)).stream()
+                .collect(Collectors.toMap(RefundResultDTO::getBizRefundOrderId, Function.identity(), (a, b) -> a));
+        List<RefundApply> toSend = new ArrayList<>(applies.size());
+        for (RefundApply apply : applies) {
+            RefundResultDTO result = results.get(apply.getId());
+            // 1.支付中心还没有退款单，需要发送退款申请
+            if (result == null) {
+                toSend.add(apply);
+                continue;
+            }
+            // 2.退款中，由支付中心继续跟踪渠道结果
+            if (result.getStatus() == RefundResultDTO.RUNNING) {
+                continue;
+            }
+            // 3.退款已经结束，更新退款申请
+            try {
+                refundApplyService.handleRefundResult(result);
+            } catch (Exception e) {
+                log.error("处理退款申请{}的退款结果失败", apply.getId(), e);
+            }
+        }
+        return toSend;
+    }
+
+    private void send(RefundApply apply, ChannelLimiter limiter) {
+        try {
+            // 渠道返回失败（包括限流、繁忙）与请求异常一样降速并暂停，只有渠道受理了请求才提速
+            RefundResultDTO result = refundApplyService.sendRefundRequest(apply);
+            if (result == null || result.getStatus() == RefundResultDTO.FAILED) {
+                log.warn("退款申请{}被支付渠道拒绝，错误码：{}，原因：{}",
+                        apply.getId(), result == null ? null : result.getCode(), result == null ? null : result.getMsg());
+                limiter.onError();
+                return;
+            }
+            limiter.onSuccess();
+        } catch (Exception e) {
+            log.error("发送退款申请{}失败", apply.getId(), e);
+            limiter.onError();
+        } finally {
+            limiter.release();
+        }
+    }
+
+    /**
+     * 单个支付渠道的令牌桶，请求成功时逐步提速，出错时速率减半并暂停一段时间，连续出错时暂停时间翻倍
+     * 每个分片在各自的执行器上独立限流，配置的速率和在途数按分片总数平分，集群的总量才与配置一致
+     */
+    private static class ChannelLimiter {
+        private final TradeProperties.RefundDispatchProperties config;
+        private final int shardTotal;
+        private final Semaphore inFlight;
+        private final double minRate;
+        private final double maxRate;
+        private double rate;
+        private double tokens;
+        private long lastRefillTime;
+        private long backoffMillis;
+        private long pausedUntil;
+
+        ChannelLimiter(TradeProperties.RefundDispatchProperties config, int shardTotal) {
+            this.config = config;
+            this.shardTotal = shardTotal;
+            this.inFlight = new Semaphore(Math.max(1, config.getMaxConcurrency() / shardTotal));
+            this.minRate = 1.0 / shardTotal;
+            this.maxRate = (double) config.getMaxRate() / shardTotal;
+            this.rate = (double) config.getInitRate() / shardTotal;
+            this.tokens = rate;
+            this.lastRefillTime = System.currentTimeMillis();
+        }
+
+        /**
+         * 获取一个令牌和一个在途名额，渠道暂停中返回false
+         */
+        boolean acquire() throws InterruptedException {
+            while (true) {
+                long waitMillis;
+                synchronized (this) {
+                    long now = System.currentTimeMillis();
+                    if (now < pausedUntil) {
+                        return false;
+                    }
+                    // 按经过的时间补充令牌，最多攒1秒的量，速率低于每秒1个时最多攒1个
+                    tokens = Math.min(Math.max(1, rate), tokens + (now - lastRefillTime) * rate / 1000);
+                    lastRefillTime = now;
+                    if (tokens >= 1) {
+                        tokens -= 1;
+                        break;
+                    }
+                    waitMillis = (long) Math.ceil((1 - tokens) * 1000 / rate);
+                }
+                Thread.sleep(waitMillis);
+            }
+            inFlight.acquire();
+            return true;
+        }
+
+        void release() {
+            inFlight.release();
+        }
+
+        synchronized void onSuccess() {
+            // 每个分片加速 1/shardTotal，集群整体每次加速1
+            rate = Math.min(maxRate, rate + minRate);
+            backoffMillis = 0;
+        }
+
+        synchronized void onError() {
+            rate = Math.max(minRate, rate / 2);
+            backoffMillis = backoffMillis == 0 ?
+                    config.getBaseBackoffMillis() : Math.min(config.getMaxBackoffMillis(), backoffMillis * 2);
+            pausedUntil = System.currentTimeMillis() + backoffMillis;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+-- KEYS[1]：用户购物车key
+-- ARGV[1]：课程id，ARGV[2]：购物车条目json，ARGV[3]：购物车课程上限，ARGV[4]：购物车有效期，单位秒
+-- 返回值：1 添加成功，0 课程已在购物车，-1 购物车已满，-2 购物车未加载
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -2
+end
+if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then
+    return 0
+end
+-- 减去已加载标记字段
+if redis.call('HLEN', KEYS[1]) - 1 >= tonumber(ARGV[3]) then
+    return -1
+end
+redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+redis.call('EXPIRE', KEYS[1], ARGV[4])
+return 1
@@ -0,0 +1,9 @@
+-- KEYS[1]：订单预占的优惠券集合key，KEYS[2..n]：用户对每张优惠券的预占key，所有key都以{用户id}作为hash tag
+-- ARGV[1]：订单id，只释放仍被当前订单占用的券
+for i = 2, #KEYS do
+    if redis.call('GET', KEYS[i]) == ARGV[1] then
+        redis.call('DEL', KEYS[i])
+    end
+end
+redis.call('DEL', KEYS[1])
+return 1
@@ -0,0 +1,16 @@
+-- KEYS[1]：订单预占的优惠券集合key，KEYS[2..n]：用户对每张优惠券的预占key，所有key都以{用户id}作为hash tag
+-- ARGV[1]：订单id，ARGV[2]：有效期，单位秒，ARGV[3..n]：优惠券id
+-- 返回值：1 全部预占成功，0 有券已被其它订单占用，此时不会预占任何券
+for i = 2, #KEYS do
+    local owner = redis.call('GET', KEYS[i])
+    if owner and owner ~= ARGV[1] then
+        return 0
+    end
+end
+for i = 2, #KEYS do
+    redis.call('SET', KEYS[i], ARGV[1], 'EX', ARGV[2])
+end
+redis.call('DEL', KEYS[1])
+redis.call('SADD', KEYS[1], unpack(ARGV, 3))
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+return 1
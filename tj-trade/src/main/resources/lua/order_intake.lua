@@ -0,0 +1,9 @@
+-- KEYS[1]：下单受理key
+-- ARGV[1]：用户id，ARGV[2]：实付金额，ARGV[3]：有效期，单位秒
+-- 返回值：1 首次受理，0 重复提交
+if redis.call('EXISTS', KEYS[1]) == 1 then
+    return 0
+end
+redis.call('HSET', KEYS[1], 'userId', ARGV[1], 'status', '0', 'payAmount', ARGV[2])
+redis.call('EXPIRE', KEYS[1], ARGV[3])
+return 1
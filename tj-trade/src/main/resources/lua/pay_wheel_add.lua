@@ -0,0 +1,5 @@
+-- KEYS[1]：时间轮槽位key，KEYS[2]：非空槽位索引key
+-- ARGV[1]：槽位值，ARGV[2]：到期时间毫秒值，ARGV[3]：任务
+redis.call('ZADD', KEYS[1], ARGV[2], ARGV[3])
+redis.call('ZADD', KEYS[2], ARGV[1], ARGV[1])
+return 1
@@ -0,0 +1,20 @@
+-- KEYS[1]：分钟级槽位key，KEYS[2]：分钟级槽位索引key，KEYS[3]：秒级槽位索引key，
+-- KEYS[4]及之后：每个任务降级到的秒级槽位key，与ARGV中的任务一一对应
+-- ARGV[1]：分钟级槽位值，之后每两个参数为一个任务：到期时间毫秒值、任务
+-- 所有key带有相同的hash tag，集群模式下在同一个slot
+-- 返回值：降级到秒级槽位的任务数量
+local moved = 0
+for i = 2, #ARGV, 2 do
+    -- 只移动仍在分钟级槽位中的任务，已经被其它节点降级的任务不重复移动
+    if redis.call('ZREM', KEYS[1], ARGV[i + 1]) == 1 then
+        local second = math.floor(tonumber(ARGV[i]) / 1000)
+        redis.call('ZADD', KEYS[3 + i / 2], ARGV[i], ARGV[i + 1])
+        redis.call('ZADD', KEYS[3], second, second)
+        moved = moved + 1
+    end
+end
+-- 槽位已经清空才从索引中移除，拉取之后新加入的任务留到下一次降级
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    redis.call('ZREM', KEYS[2], ARGV[1])
+end
+return moved
@@ -0,0 +1,10 @@
+-- KEYS[1]：秒级槽位key，KEYS[2]：秒级槽位索引key，KEYS[3]：处理中任务key
+-- ARGV[1]：槽位值，ARGV[2]：租约到期时间毫秒值
+-- 返回值：槽位中的所有任务，取出的同时放入处理中集合，多个节点同时拉取时只有一个能拿到
+local members = redis.call('ZRANGE', KEYS[1], 0, -1)
+for i = 1, #members do
+    redis.call('ZADD', KEYS[3], ARGV[2], members[i])
+end
+redis.call('DEL', KEYS[1])
+redis.call('ZREM', KEYS[2], ARGV[1])
+return members
@@ -6,6 +6,8 @@ import com.tianji.api.client.auth.AuthClient;
 import com.tianji.api.dto.auth.RoleDTO;
 import com.tianji.api.dto.user.LoginFormDTO;
 import com.tianji.api.dto.user.UserDTO;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.constants.MqConstants;
 import com.tianji.common.domain.dto.LoginUserDTO;
 import com.tianji.common.enums.UserType;
 import com.tianji.common.exceptions.BadRequestException;
@@ -14,6 +16,7 @@ import com.tianji.common.exceptions.UnauthorizedException;
 import com.tianji.common.utils.AssertUtils;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.StringUtils;
+import com.tianji.common.utils.TransactionUtils;
 import com.tianji.common.utils.UserContext;
 import com.tianji.user.domain.dto.UserFormDTO;
 import com.tianji.user.domain.po.User;
@@ -52,6 +55,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     private AuthClient authClient;
     @Autowired
     private IUserDetailService detailService;
+    @Autowired
+    private RabbitMqHelper rabbitMqHelper;
 
     @Override
     public LoginUserDTO queryUserDetail(LoginFormDTO loginDTO, boolean isStaff) {
@@ -209,6 +214,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         UserDetail detail = BeanUtils.toBean(userDTO, UserDetail.class);
         detail.setType(null);
         detailService.updateById(detail);
+        // 3.通知名称变更
+        publishNameChange(detail.getId(), detail.getName());
     }
 
     @Override
@@ -240,6 +247,23 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         detail.setRoleId(null);
         detail.setType(null);
         detailService.updateById(detail);
+        // 3.通知名称变更
+        publishNameChange(detail.getId(), detail.getName());
+    }
+
+    /**
+     * 用户名称被修改时发送消息，搜索服务据此更新索引库中冗余的教师名称
+     */
+    private void publishNameChange(Long userId, String name) {
+        if (userId == null || StringUtils.isBlank(name)) {
+            return;
+        }
+        UserDTO user = new UserDTO();
+        user.setId(userId);
+        user.setName(name);
+        // 事务提交后再发送，避免事务回滚后搜索服务写入了没有生效的名称
+        TransactionUtils.afterCommit(() ->
+                rabbitMqHelper.send(MqConstants.Exchange.USER_EXCHANGE, MqConstants.Key.USER_NAME_CHANGE_KEY, user));
     }
 
     public User loginByPw(LoginFormDTO loginDTO) {